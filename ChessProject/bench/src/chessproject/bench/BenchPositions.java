@@ -0,0 +1,49 @@
+package chessproject.bench;
+
+import chessproject.Position;
+
+// Fixed corpus of positions used by the benchmarks: openings, middlegames with tactics,
+// positions in check, checkmates and endgames, so no single code path dominates the numbers.
+public final class BenchPositions {
+    public static final String[] FENS = {
+        Position.START_FEN,
+        "rnbqkbnr/pppp1ppp/8/4p3/4P3/5N2/PPPP1PPP/RNBQKB1R b KQkq - 1 2",
+        "r1bqkb1r/pppp1ppp/2n2n2/4p2Q/2B1P3/8/PPPP1PPP/RNB1K1NR w KQkq - 4 4",
+        "r1bqk2r/pp2bppp/2nppn2/8/3NP3/2N1B3/PPP1BPPP/R2QK2R w KQkq - 2 8",
+        "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+        "r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P3/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10",
+        "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1",
+        "rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8",
+        "2rq1rk1/pp1bppbp/2np1np1/8/3NP3/1BN1BP2/PPPQ2PP/2KR3R b - - 8 11",
+        "r1b2rk1/2q1bppp/p2ppn2/1p6/3BPP2/2N2B2/PPPQ2PP/R4R1K b - - 3 13",
+        "2kr3r/ppp2ppp/2n1b3/2bqp3/8/2P2N2/PP1PBPPP/R1BQ1RK1 w - - 0 11",
+        "r2q1rk1/ppp2ppp/2np1n2/2b1p1B1/2B1P1b1/2NP1N2/PPP2PPP/R2Q1RK1 w - - 6 8",
+        // In check
+        "rnbqkbnr/ppp2ppp/3p4/1B2p3/4P3/8/PPPP1PPP/RNBQK1NR b KQkq - 1 3",
+        "4k3/8/8/8/8/8/3q4/4K3 w - - 0 1",
+        // Checkmates
+        "r1bqkbnr/pppp1Qpp/2n5/4p3/2B1P3/8/PPPP1PPP/RNB1K1NR b KQkq - 0 4",
+        "rnb1kbnr/pppp1ppp/8/4p3/6Pq/5P2/PPPPP2P/RNBQKBNR w KQkq - 1 3",
+        "6rk/5Npp/8/8/8/8/8/K7 b - - 0 1",
+        // Endgames
+        "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+        "8/8/4k3/8/2p5/8/B2R4/6K1 w - - 0 1",
+        "8/5pk1/6p1/7p/P6P/6P1/5PK1/8 w - - 0 40",
+        "8/8/8/4k3/8/8/4K3/4R3 w - - 0 1",
+        "1k6/8/8/8/8/8/8/1K1N1B2 w - - 0 1",
+        "8/8/1p1k4/1P6/8/4K3/8/8 b - - 0 1",
+        "4r1k1/5ppp/8/8/8/8/5PPP/3R2K1 w - - 0 30",
+    };
+
+    private BenchPositions() {
+    }
+
+    public static Position[] load() {
+        Position[] positions = new Position[FENS.length];
+        for (int i = 0; i < FENS.length; i++) {
+            positions[i] = new Position();
+            positions[i].setFen(FENS[i]);
+        }
+        return positions;
+    }
+}
@@ -0,0 +1,68 @@
+package chessproject.bench;
+
+import chessproject.Evaluator;
+import chessproject.MoveGenerator;
+import chessproject.Position;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Static evaluation. evaluate is one call per operation, cycling through the BenchPositions
+// corpus, so its score is evaluations per second; after the first pass every pawn structure is
+// in the cache, as it mostly is in a search. makeEvaluateUnmake is one pass over every legal
+// move of the corpus the way the search visits leaves, incremental updates included.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class EvalBenchmark {
+    private Position[] positions;
+    private int[][] legalMoves;
+    private final Evaluator evaluator = new Evaluator();
+    private int next;
+
+    @Setup
+    public void setup() {
+        positions = BenchPositions.load();
+        legalMoves = new int[positions.length][];
+        int[] buffer = new int[MoveGenerator.MAX_MOVES];
+        for (int i = 0; i < positions.length; i++) {
+            int count = MoveGenerator.generateLegal(positions[i], buffer);
+            legalMoves[i] = Arrays.copyOf(buffer, count);
+        }
+    }
+
+    @Benchmark
+    public int evaluate() {
+        Position position = positions[next];
+        if (++next == positions.length) {
+            next = 0;
+        }
+        return evaluator.evaluate(position);
+    }
+
+    @Benchmark
+    public int makeEvaluateUnmake() {
+        int total = 0;
+        for (int i = 0; i < positions.length; i++) {
+            Position position = positions[i];
+            for (int move : legalMoves[i]) {
+                position.makeMove(move);
+                total += evaluator.evaluate(position);
+                position.unmakeMove(move);
+            }
+        }
+        return total;
+    }
+}
@@ -0,0 +1,110 @@
+package chessproject.bench;
+
+import chessproject.MoveGenerator;
+import chessproject.Piece;
+import chessproject.Position;
+import chessproject.Rules;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+// Hot paths of the rules engine, each measured over one pass of the BenchPositions corpus.
+// Run with "ant bench" (which adds -prof gc) to get allocation rates next to throughput.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class RulesBenchmark {
+    private Position[] positions;
+    private int[][] legalMoves;
+    private final int[] buffer = new int[MoveGenerator.MAX_MOVES];
+
+    @Setup
+    public void setup() {
+        positions = BenchPositions.load();
+        legalMoves = new int[positions.length][];
+        for (int i = 0; i < positions.length; i++) {
+            int count = MoveGenerator.generateLegal(positions[i], buffer);
+            legalMoves[i] = Arrays.copyOf(buffer, count);
+        }
+    }
+
+    @Benchmark
+    public int isKingInCheck() {
+        int checks = 0;
+        for (Position position : positions) {
+            if (Rules.isKingInCheck(position, position.sideToMove())) {
+                checks++;
+            }
+        }
+        return checks;
+    }
+
+    // Every from/to pair for every piece of the side to move, like the old highlight loop
+    @Benchmark
+    public int isValidMove() {
+        int valid = 0;
+        for (Position position : positions) {
+            for (int fromRow = 0; fromRow < 8; fromRow++) {
+                for (int fromCol = 0; fromCol < 8; fromCol++) {
+                    int piece = position.pieceAt(fromRow, fromCol);
+                    if (piece == Piece.NONE || Piece.color(piece) != position.sideToMove()) {
+                        continue;
+                    }
+                    for (int toRow = 0; toRow < 8; toRow++) {
+                        for (int toCol = 0; toCol < 8; toCol++) {
+                            if (Rules.isValidMove(position, fromRow, fromCol, toRow, toCol)) {
+                                valid++;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return valid;
+    }
+
+    @Benchmark
+    public int isCheckmate() {
+        int mates = 0;
+        for (Position position : positions) {
+            if (Rules.isCheckmate(position, position.sideToMove(), buffer)) {
+                mates++;
+            }
+        }
+        return mates;
+    }
+
+    @Benchmark
+    public int generateLegal() {
+        int total = 0;
+        for (Position position : positions) {
+            total += MoveGenerator.generateLegal(position, buffer);
+        }
+        return total;
+    }
+
+    @Benchmark
+    public void makeUnmake(Blackhole blackhole) {
+        for (int i = 0; i < positions.length; i++) {
+            Position position = positions[i];
+            for (int move : legalMoves[i]) {
+                position.makeMove(move);
+                blackhole.consume(position.occupied());
+                position.unmakeMove(move);
+            }
+        }
+    }
+}
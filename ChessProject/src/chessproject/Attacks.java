@@ -0,0 +1,211 @@
+package chessproject;
+
+// Precomputed attack tables. Knight, king and pawn attacks are plain per-square lookups;
+// rook and bishop attacks use "fancy" magic bitboards: the relevant blockers are multiplied
+// by a per-square magic number and the top bits index a shared attack table.
+//
+// The magic numbers were found with a seeded random search and are checked for destructive
+// collisions while the tables are filled. Everything is built once in the static initializer,
+// so lookups never allocate.
+public final class Attacks {
+    private static final long[] KNIGHT = new long[64];
+    private static final long[] KING = new long[64];
+    private static final long[][] PAWN = new long[2][64];
+
+    private static final long[] ROOK_MASK = new long[64];
+    private static final int[] ROOK_SHIFT = new int[64];
+    private static final int[] ROOK_OFFSET = new int[64];
+    private static final long[] BISHOP_MASK = new long[64];
+    private static final int[] BISHOP_SHIFT = new int[64];
+    private static final int[] BISHOP_OFFSET = new int[64];
+    private static final long[] SLIDER_TABLE;
+
+    // Squares strictly between two aligned squares, and the full line through them
+    private static final long[][] BETWEEN = new long[64][64];
+    private static final long[][] LINE = new long[64][64];
+
+    private static final long[] ROOK_MAGIC = {
+        0x1080004008801020L, 0x0840092002C03000L, 0x1900200010400900L, 0x0880100008000480L,
+        0x4200100420080200L, 0x8100020100080400L, 0x0200040110886200L, 0x0200008040220411L,
+        0x0404800084400220L, 0x0000401000402000L, 0x0086001081220440L, 0x0408800800100280L,
+        0x000A001201040820L, 0x8848800200840080L, 0x4001000100040200L, 0x0442000102105084L,
+        0x9080010020804100L, 0x0040404000201009L, 0x0000808010002009L, 0x2200090021D00100L,
+        0x0008008008040080L, 0x0004004002010040L, 0x0011040008015042L, 0x00000A0001768104L,
+        0x0000800080204009L, 0x2010004140002001L, 0x9800200280100080L, 0x1000100080080080L,
+        0x0050500500080100L, 0x0000020080040080L, 0x0C10010400420810L, 0x1040008200005104L,
+        0x01808240088004A0L, 0x0882804004802000L, 0x0880402001001100L, 0x2000210409001000L,
+        0x2000480131001500L, 0x0000800400800200L, 0x000002380C001003L, 0x4600084882000431L,
+        0x0080002000504000L, 0x0300500020004002L, 0x0040408200220011L, 0x0010040008004040L,
+        0x0000080004008080L, 0x0010040002008080L, 0x2012004881020004L, 0x8300842444820011L,
+        0x0088403882010200L, 0x0820400080210100L, 0x0110910040A00300L, 0x0801100280080480L,
+        0x0242009008200600L, 0x1002000489500200L, 0x0040800200010080L, 0x0091800041000080L,
+        0x0000209300488001L, 0x04C1002414824001L, 0x020020000B001041L, 0x7000100004200901L,
+        0x8002002004100802L, 0x30010002084C0007L, 0x0888221800813004L, 0x4000002840840112L
+    };
+
+    private static final long[] BISHOP_MAGIC = {
+        0x20C0090901061081L, 0x0024040094030104L, 0x8210810200290200L, 0x0011040484620000L,
+        0x0081104002221000L, 0x0009012011001350L, 0x0081010802400380L, 0x0000420210010408L,
+        0x0008105002280050L, 0x0001028484040044L, 0x2A00880810408804L, 0x7020022282000100L,
+        0x0084040420100A50L, 0x000401010840E000L, 0x2020020210420888L, 0x0008084202012010L,
+        0x2010400810018800L, 0x0445122008020840L, 0x0804100808002008L, 0x0008002104110100L,
+        0x0061005820080800L, 0x2001000200820100L, 0x480C210084010800L, 0x3004442500480420L,
+        0x1010102240048100L, 0x00182009084220A3L, 0x8803090A10004205L, 0x0208080040202020L,
+        0x000C044084010040L, 0x00A1010002004106L, 0x6008210020640202L, 0x1600902112860801L,
+        0x00042008C1220200L, 0x010C042002440140L, 0x5022080200040820L, 0x0402004042940100L,
+        0x0860108400008020L, 0x000C080022021000L, 0x0264080652822100L, 0x4005031221010401L,
+        0x0004502410008400L, 0x000500B010A20400L, 0x0415094050080800L, 0x080000201800A104L,
+        0x4022A80304000110L, 0x4012140802028020L, 0x40200104010100A0L, 0x12810806008B0C41L,
+        0x0020441008080000L, 0x2002120084045420L, 0x0704020062080002L, 0x0000001084040001L,
+        0x0322200891240200L, 0xF040200210024800L, 0x0140824832008042L, 0x000210020A004602L,
+        0x0083042805141020L, 0x002C12009A011000L, 0x0041A00044140400L, 0x00004004020A0202L,
+        0x0000140010020210L, 0x2864160811012200L, 0x2060080841082A17L, 0xA010041108003100L
+    };
+
+    private static final int[][] ROOK_DIRECTIONS = {{0, 1}, {1, 0}, {0, -1}, {-1, 0}};
+    private static final int[][] BISHOP_DIRECTIONS = {{-1, -1}, {-1, 1}, {1, -1}, {1, 1}};
+
+    static {
+        int[][] knightSteps = {{-2, -1}, {-2, 1}, {2, -1}, {2, 1}, {-1, -2}, {-1, 2}, {1, -2}, {1, 2}};
+        for (int sq = 0; sq < 64; sq++) {
+            int rank = sq >>> 3;
+            int file = sq & 7;
+            for (int[] step : knightSteps) {
+                KNIGHT[sq] |= bit(rank + step[0], file + step[1]);
+            }
+            for (int dr = -1; dr <= 1; dr++) {
+                for (int df = -1; df <= 1; df++) {
+                    if (dr != 0 || df != 0) {
+                        KING[sq] |= bit(rank + dr, file + df);
+                    }
+                }
+            }
+            PAWN[Piece.WHITE][sq] = bit(rank + 1, file - 1) | bit(rank + 1, file + 1);
+            PAWN[Piece.BLACK][sq] = bit(rank - 1, file - 1) | bit(rank - 1, file + 1);
+        }
+
+        int size = 0;
+        for (int sq = 0; sq < 64; sq++) {
+            ROOK_MASK[sq] = relevantMask(sq, ROOK_DIRECTIONS);
+            BISHOP_MASK[sq] = relevantMask(sq, BISHOP_DIRECTIONS);
+            ROOK_SHIFT[sq] = 64 - Long.bitCount(ROOK_MASK[sq]);
+            BISHOP_SHIFT[sq] = 64 - Long.bitCount(BISHOP_MASK[sq]);
+            ROOK_OFFSET[sq] = size;
+            size += 1 << Long.bitCount(ROOK_MASK[sq]);
+            BISHOP_OFFSET[sq] = size;
+            size += 1 << Long.bitCount(BISHOP_MASK[sq]);
+        }
+        SLIDER_TABLE = new long[size];
+        for (int sq = 0; sq < 64; sq++) {
+            fillTable(sq, ROOK_MASK[sq], ROOK_MAGIC[sq], ROOK_SHIFT[sq], ROOK_OFFSET[sq], ROOK_DIRECTIONS);
+            fillTable(sq, BISHOP_MASK[sq], BISHOP_MAGIC[sq], BISHOP_SHIFT[sq], BISHOP_OFFSET[sq], BISHOP_DIRECTIONS);
+        }
+
+        for (int a = 0; a < 64; a++) {
+            for (int b = 0; b < 64; b++) {
+                if (a == b) {
+                    continue;
+                }
+                long bits = (1L << a) | (1L << b);
+                if ((rook(a, 0L) & (1L << b)) != 0) {
+                    BETWEEN[a][b] = rook(a, 1L << b) & rook(b, 1L << a);
+                    LINE[a][b] = (rook(a, 0L) & rook(b, 0L)) | bits;
+                } else if ((bishop(a, 0L) & (1L << b)) != 0) {
+                    BETWEEN[a][b] = bishop(a, 1L << b) & bishop(b, 1L << a);
+                    LINE[a][b] = (bishop(a, 0L) & bishop(b, 0L)) | bits;
+                }
+            }
+        }
+    }
+
+    private Attacks() {
+    }
+
+    public static long knight(int square) {
+        return KNIGHT[square];
+    }
+
+    public static long king(int square) {
+        return KING[square];
+    }
+
+    // Squares a pawn of the given color on the given square attacks
+    public static long pawn(int color, int square) {
+        return PAWN[color][square];
+    }
+
+    public static long rook(int square, long occupied) {
+        return SLIDER_TABLE[ROOK_OFFSET[square]
+                + (int) (((occupied & ROOK_MASK[square]) * ROOK_MAGIC[square]) >>> ROOK_SHIFT[square])];
+    }
+
+    public static long bishop(int square, long occupied) {
+        return SLIDER_TABLE[BISHOP_OFFSET[square]
+                + (int) (((occupied & BISHOP_MASK[square]) * BISHOP_MAGIC[square]) >>> BISHOP_SHIFT[square])];
+    }
+
+    public static long queen(int square, long occupied) {
+        return rook(square, occupied) | bishop(square, occupied);
+    }
+
+    // Squares strictly between a and b, empty if they are not on a common rank, file or diagonal
+    public static long between(int a, int b) {
+        return BETWEEN[a][b];
+    }
+
+    // The whole rank, file or diagonal through a and b, empty if they are not aligned
+    public static long line(int a, int b) {
+        return LINE[a][b];
+    }
+
+    private static long bit(int rank, int file) {
+        return rank >= 0 && rank < 8 && file >= 0 && file < 8 ? 1L << (rank * 8 + file) : 0L;
+    }
+
+    // Slow ray walk, only used to build the tables
+    private static long slidingAttacks(int sq, long occupied, int[][] directions) {
+        long attacks = 0L;
+        for (int[] dir : directions) {
+            int r = (sq >>> 3) + dir[0];
+            int f = (sq & 7) + dir[1];
+            while (r >= 0 && r < 8 && f >= 0 && f < 8) {
+                long b = 1L << (r * 8 + f);
+                attacks |= b;
+                if ((occupied & b) != 0) {
+                    break; // Blocked by another piece
+                }
+                r += dir[0];
+                f += dir[1];
+            }
+        }
+        return attacks;
+    }
+
+    // Squares whose occupancy matters: the rays without their last (edge) square
+    private static long relevantMask(int sq, int[][] directions) {
+        long mask = 0L;
+        for (int[] dir : directions) {
+            int r = (sq >>> 3) + dir[0];
+            int f = (sq & 7) + dir[1];
+            while (r + dir[0] >= 0 && r + dir[0] < 8 && f + dir[1] >= 0 && f + dir[1] < 8) {
+                mask |= 1L << (r * 8 + f);
+                r += dir[0];
+                f += dir[1];
+            }
+        }
+        return mask;
+    }
+
+    private static void fillTable(int sq, long mask, long magic, int shift, int offset, int[][] directions) {
+        long subset = 0L;
+        do {
+            int index = offset + (int) ((subset * magic) >>> shift);
+            long attacks = slidingAttacks(sq, subset, directions);
+            if (SLIDER_TABLE[index] != 0L && SLIDER_TABLE[index] != attacks) {
+                throw new IllegalStateException("Bad magic for square " + sq);
+            }
+            SLIDER_TABLE[index] = attacks;
+            subset = (subset - mask) & mask; // Carry-Rippler enumeration of all subsets
+        } while (subset != 0L);
+    }
+}
@@ -0,0 +1,437 @@
+package chessproject;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+// Headless batch analysis: reads positions from job files, searches them on a pool of worker
+// threads and appends one result line per job to an output file as soon as it is done.
+//
+// Jobs come from a single queue file or from every *.jobs, *.fen and *.pgn file of a directory,
+// in name order. A .jobs line is
+//   <id> [priority=P] [time=MS] [nodes=N] [depth=D] fen <FEN>
+//   <id> [priority=P] [time=MS] [nodes=N] [depth=D] pgn <file>
+// where a pgn job is one job per game, for the position after its last move, with ids
+// <id>#1, <id>#2, ... and the file relative to the jobs file. Higher priorities go first, equal
+// ones in the order they were read. A job that sets any of time, nodes and depth has no limit on
+// the ones it leaves out; otherwise the defaults from the command line apply. In a .fen file
+// every line is a job with id <file>:<line>, in a .pgn file every game one with id <file>#<game>.
+// Blank lines and lines starting with '#' are skipped. With --watch the files are read again
+// every second, new lines and new files become jobs and the analyzer runs until it is killed.
+//
+// The output has tab-separated columns: id, best move, score ("cp 23" or "mate -4" from the
+// side to move's point of view), depth, nodes, nodes per second, milliseconds and the PV.
+// A position without legal moves gets "-" and "mate 0" or "cp 0", an invalid one, or one the
+// search fails on, "error" and the message. Every id written is then added to the checkpoint
+// file (default <out>.done), and both files are forced to disk, so after a crash or a kill a
+// restart with the same arguments skips every finished job. A crash between the two writes makes that one job run again.
+//
+// Each worker has its own single-threaded Search and table, cleared before every job so results
+// do not depend on the order jobs were run in. -Dchessproject.nnue selects an NNUE network as
+// in the GUI.
+//
+// Usage:
+//   java -cp ChessProject.jar chessproject.BatchAnalyzer --jobs <dir or file> --out <file>
+//        [--checkpoint file] [--threads N] [--hash MB] [--time MS] [--nodes N] [--depth D] [--watch]
+public final class BatchAnalyzer {
+    private static final long NO_TIME_LIMIT = TimeUnit.DAYS.toMillis(1);
+    private static final long POLL_MILLIS = 1000;
+    private static final long PROGRESS_MILLIS = 10_000;
+
+    // One position to analyze; limits are Long.MAX_VALUE or Search.MAX_PLY when not set
+    static final class Job implements Comparable<Job> {
+        final String id;
+        final String fen;
+        final int priority;
+        final long timeMillis;
+        final long maxNodes;
+        final int maxDepth;
+        final long sequence;
+
+        Job(String id, String fen, int priority, long timeMillis, long maxNodes, int maxDepth, long sequence) {
+            this.id = id;
+            this.fen = fen;
+            this.priority = priority;
+            this.timeMillis = timeMillis;
+            this.maxNodes = maxNodes;
+            this.maxDepth = maxDepth;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Job other) {
+            return priority != other.priority ? Integer.compare(other.priority, priority)
+                    : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    // Limits for jobs that set none of their own
+    private final long defaultTime;
+    private final long defaultNodes;
+    private final int defaultDepth;
+
+    private final Path jobs;
+    private final boolean directory;
+    // Bytes and lines consumed so far per line-based file; pgn files are read once, when first seen
+    private final Map<Path, long[]> consumed = new HashMap<>();
+    private final Set<Path> pgnRead = new HashSet<>();
+    private final Set<String> done;
+    private final Set<String> queued = new HashSet<>();
+    private final PriorityBlockingQueue<Job> queue = new PriorityBlockingQueue<>();
+    private long sequence;
+
+    private final FileChannel output;
+    private final FileChannel checkpoint;
+    private final AtomicInteger completed = new AtomicInteger();
+    private volatile boolean inputFinished;
+
+    private BatchAnalyzer(Path jobs, Path out, Path checkpointPath, long defaultTime, long defaultNodes, int defaultDepth)
+            throws IOException {
+        this.jobs = jobs;
+        this.directory = Files.isDirectory(jobs);
+        this.defaultTime = defaultTime;
+        this.defaultNodes = defaultNodes;
+        this.defaultDepth = defaultDepth;
+        this.done = readCheckpoint(checkpointPath);
+        boolean newOutput = !Files.exists(out) || Files.size(out) == 0;
+        this.output = FileChannel.open(out, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        this.checkpoint = FileChannel.open(checkpointPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        if (newOutput) {
+            append(output, "# id\tbest\tscore\tdepth\tnodes\tnps\tms\tpv\n");
+        }
+    }
+
+    private static Set<String> readCheckpoint(Path path) throws IOException {
+        Set<String> ids = new HashSet<>();
+        if (Files.exists(path)) {
+            // A line cut short by a crash is not a finished job
+            String text = Files.readString(path, StandardCharsets.UTF_8);
+            int end = text.lastIndexOf('\n');
+            for (String line : text.substring(0, end + 1).split("\n")) {
+                if (!line.isEmpty()) {
+                    ids.add(line);
+                }
+            }
+        }
+        return ids;
+    }
+
+    // Reads new jobs from the job files into the queue; returns how many were added
+    private int poll() throws IOException {
+        List<Path> files = new ArrayList<>();
+        if (directory) {
+            try (Stream<Path> list = Files.list(jobs)) {
+                list.filter(path -> {
+                    String name = path.getFileName().toString();
+                    return Files.isRegularFile(path)
+                            && (name.endsWith(".jobs") || name.endsWith(".fen") || name.endsWith(".pgn"));
+                }).sorted().forEach(files::add);
+            }
+        } else {
+            files.add(jobs);
+        }
+        int added = 0;
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            if (name.endsWith(".pgn")) {
+                if (pgnRead.add(file)) {
+                    added += addGames(name, file, 0, defaultTime, defaultNodes, defaultDepth);
+                }
+                continue;
+            }
+            long[] position = consumed.computeIfAbsent(file, path -> new long[2]);
+            for (String line : newLines(file, position)) {
+                position[1]++;
+                line = line.strip();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                if (name.endsWith(".fen")) {
+                    added += add(name + ":" + position[1], line, 0, defaultTime, defaultNodes, defaultDepth);
+                } else {
+                    added += addJobLine(file, position[1], line);
+                }
+            }
+        }
+        return added;
+    }
+
+    // The complete lines added to file since position[0], which is moved past them
+    private static List<String> newLines(Path file, long[] position) throws IOException {
+        List<String> lines = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size <= position[0]) {
+                return lines;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(size - position[0], Integer.MAX_VALUE - 8));
+            while (buffer.hasRemaining() && channel.read(buffer, position[0] + buffer.position()) > 0) {
+                // Until the buffer is full or the file ends
+            }
+            // A line still being written is picked up next time
+            byte[] bytes = buffer.array();
+            int end = buffer.position();
+            while (end > 0 && bytes[end - 1] != '\n') {
+                end--;
+            }
+            if (end > 0) {
+                lines.addAll(List.of(new String(bytes, 0, end - 1, StandardCharsets.UTF_8).split("\n", -1)));
+            }
+            position[0] += end;
+        }
+        return lines;
+    }
+
+    private int addJobLine(Path file, long lineNumber, String line) {
+        String[] tokens = line.split("\\s+");
+        String id = tokens[0];
+        int priority = 0;
+        long time = Long.MAX_VALUE;
+        long nodes = Long.MAX_VALUE;
+        int depth = Search.MAX_PLY;
+        boolean limited = false;
+        try {
+            for (int i = 1; i < tokens.length; i++) {
+                String token = tokens[i];
+                if (token.equals("fen") || token.equals("pgn")) {
+                    if (!limited) {
+                        time = defaultTime;
+                        nodes = defaultNodes;
+                        depth = defaultDepth;
+                    }
+                    String rest = String.join(" ", java.util.Arrays.copyOfRange(tokens, i + 1, tokens.length));
+                    if (token.equals("fen")) {
+                        return add(id, rest, priority, time, nodes, depth);
+                    }
+                    Path pgn = file.resolveSibling(rest);
+                    return addGames(id, pgn, priority, time, nodes, depth);
+                }
+                int eq = token.indexOf('=');
+                String key = eq < 0 ? token : token.substring(0, eq);
+                String value = token.substring(eq + 1);
+                switch (key) {
+                    case "priority":
+                        priority = Integer.parseInt(value);
+                        break;
+                    case "time":
+                        time = Long.parseLong(value);
+                        limited = true;
+                        break;
+                    case "nodes":
+                        nodes = Long.parseLong(value);
+                        limited = true;
+                        break;
+                    case "depth":
+                        depth = Integer.parseInt(value);
+                        limited = true;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("unknown option " + token);
+                }
+            }
+            throw new IllegalArgumentException("no fen or pgn");
+        } catch (IllegalArgumentException | IOException e) {
+            System.err.println(file.getFileName() + ":" + lineNumber + ": " + e.getMessage());
+            return 0;
+        }
+    }
+
+    private int addGames(String id, Path pgn, int priority, long time, long nodes, int depth) throws IOException {
+        int added = 0;
+        int number = 0;
+        Position position = new Position();
+        try (PgnReader reader = PgnReader.open(pgn)) {
+            while (reader.hasNext()) {
+                PgnGame game = reader.next();
+                number++;
+                if (!game.isValid()) {
+                    System.err.println(pgn.getFileName() + " game " + number + ": " + game.error());
+                    continue;
+                }
+                position.setFen(game.startFen());
+                for (int i = 0; i < game.moveCount(); i++) {
+                    position.makeMove(game.move(i));
+                }
+                added += add(id + "#" + number, position.toFen(), priority, time, nodes, depth);
+            }
+        }
+        return added;
+    }
+
+    private int add(String id, String fen, int priority, long time, long nodes, int depth) {
+        if (done.contains(id) || !queued.add(id)) {
+            return 0;
+        }
+        queue.add(new Job(id, fen, priority, Math.min(time, NO_TIME_LIMIT), nodes, Math.min(depth, Search.MAX_PLY), sequence++));
+        return 1;
+    }
+
+    private void work(int hashMegabytes, NnueNetwork network) {
+        Search search = new Search(new TranspositionTable(hashMegabytes));
+        search.setNetwork(network);
+        Position position = new Position();
+        try {
+            while (true) {
+                Job job = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (job == null) {
+                    if (inputFinished && queue.isEmpty()) {
+                        return;
+                    }
+                    continue;
+                }
+                finish(job.id, analyze(search, position, job));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // The result columns after the id. A job that fails, whether on its FEN or inside the search,
+    // gets an error row so it is checkpointed and the worker moves on to the next one
+    private static String analyze(Search search, Position position, Job job) {
+        try {
+            return search(search, position, job);
+        } catch (RuntimeException e) {
+            return "error\t" + (e instanceof IllegalArgumentException ? e.getMessage() : e.toString());
+        }
+    }
+
+    private static String search(Search search, Position position, Job job) {
+        position.setFen(job.fen);
+        search.table().clear();
+        long start = System.nanoTime();
+        SearchResult result = search.search(position, job.timeMillis, job.maxDepth, job.maxNodes, null);
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        if (result == null) {
+            return "-\t" + (position.isInCheck(position.sideToMove()) ? "mate 0" : "cp 0") + "\t0\t0\t0\t" + millis + "\t";
+        }
+        String score = result.isMate() ? "mate " + result.mateIn() : "cp " + result.score;
+        return Move.toUci(result.bestMove) + "\t" + score + "\t" + result.depth + "\t" + result.nodes + "\t"
+                + result.nodesPerSecond() + "\t" + millis + "\t" + result.pvString();
+    }
+
+    private synchronized void finish(String id, String columns) {
+        try {
+            append(output, id + "\t" + columns + "\n");
+            output.force(false);
+            append(checkpoint, id + "\n");
+            checkpoint.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        completed.incrementAndGet();
+    }
+
+    private static void append(FileChannel channel, String text) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Path jobs = null;
+        Path out = null;
+        Path checkpointPath = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int hashMegabytes = Search.DEFAULT_HASH_MB;
+        long time = 5000;
+        long nodes = Long.MAX_VALUE;
+        int depth = Search.MAX_PLY;
+        boolean watch = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--jobs":
+                    jobs = Path.of(args[++i]);
+                    break;
+                case "--out":
+                    out = Path.of(args[++i]);
+                    break;
+                case "--checkpoint":
+                    checkpointPath = Path.of(args[++i]);
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "--hash":
+                    hashMegabytes = Integer.parseInt(args[++i]);
+                    break;
+                case "--time":
+                    time = Long.parseLong(args[++i]);
+                    break;
+                case "--nodes":
+                    nodes = Long.parseLong(args[++i]);
+                    break;
+                case "--depth":
+                    depth = Integer.parseInt(args[++i]);
+                    break;
+                case "--watch":
+                    watch = true;
+                    break;
+                default:
+                    System.err.println("Unknown argument: " + args[i]);
+                    System.exit(2);
+            }
+        }
+        if (jobs == null || out == null) {
+            System.err.println("Usage: BatchAnalyzer --jobs <dir or file> --out <file> [--checkpoint file] [--threads N]"
+                    + " [--hash MB] [--time MS] [--nodes N] [--depth D] [--watch]");
+            System.exit(2);
+        }
+        if (checkpointPath == null) {
+            checkpointPath = out.resolveSibling(out.getFileName() + ".done");
+        }
+
+        BatchAnalyzer analyzer = new BatchAnalyzer(jobs, out, checkpointPath, time, nodes, depth);
+        int queued = analyzer.poll();
+        System.out.printf("%,d jobs queued, %,d already done, %d threads%n", queued, analyzer.done.size(), threads);
+        NnueNetwork network = NnueNetwork.fromSystemProperty();
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            int hash = hashMegabytes;
+            workers[i] = new Thread(() -> analyzer.work(hash, network), "batch-worker-" + (i + 1));
+            workers[i].start();
+        }
+
+        long start = System.nanoTime();
+        long lastProgress = System.nanoTime();
+        if (watch) {
+            while (true) {
+                Thread.sleep(POLL_MILLIS);
+                queued += analyzer.poll();
+                if (System.nanoTime() - lastProgress >= PROGRESS_MILLIS * 1_000_000L) {
+                    lastProgress = System.nanoTime();
+                    System.out.printf("%,d of %,d jobs done%n", analyzer.completed.get(), queued);
+                }
+            }
+        }
+        analyzer.inputFinished = true;
+        for (Thread worker : workers) {
+            while (worker.isAlive()) {
+                worker.join(PROGRESS_MILLIS);
+                if (worker.isAlive()) {
+                    System.out.printf("%,d of %,d jobs done%n", analyzer.completed.get(), queued);
+                }
+            }
+        }
+        analyzer.output.close();
+        analyzer.checkpoint.close();
+        System.out.printf("%,d jobs done in %.1f s%n", analyzer.completed.get(), (System.nanoTime() - start) / 1e9);
+    }
+}
@@ -0,0 +1,330 @@
+package chessproject;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import javax.swing.ImageIcon;
+import javax.swing.JComponent;
+import javax.swing.Timer;
+
+// The board as one component: squares, highlights and pieces are painted in a single
+// paintComponent pass, and every change repaints only the rectangles it touches. This replaces
+// 64 JButtons that each repaint on their own, e.g. 64 times when the highlights are cleared.
+//
+// Clicks are reported per square through SquareListener, the same (row, col) as the buttons
+// reported. A piece of the side to move can also be dragged: the press reports its square,
+// the release the square it was dropped on. Pressing the piece that is already selected is only
+// reported on release without a drag, since reporting it at once would deselect the piece about
+// to be dragged. Moves can be animated by sliding the piece.
+//
+// Squares are drawn for the Game's current position, so after the game changes call
+// repaintSquare for every square that did (ChessProject already does this per move).
+public final class BoardView extends JComponent {
+    public interface SquareListener {
+        void squareClicked(int row, int col);
+    }
+
+    private static final Color LIGHT = Color.WHITE;
+    private static final Color DARK = Color.GRAY;
+    private static final Color LIGHT_HIGHLIGHT = new Color(173, 216, 230);
+    private static final Color DARK_HIGHLIGHT = new Color(100, 149, 237);
+    private static final Color LIGHT_BOOK = new Color(170, 220, 160);
+    private static final Color DARK_BOOK = new Color(90, 170, 90);
+    private static final int DRAG_THRESHOLD = 4; // Pixels before a press turns into a drag
+    private static final int ANIMATION_MILLIS = 150;
+    private static final int FRAME_MILLIS = 15;
+
+    private final Game game;
+    private final SpriteCache sprites;
+    private final SquareListener listener;
+    private long highlighted; // Position squares, a1 = bit 0
+    private long bookSquares; // Highlighted squares an opening book move goes to
+    private int selectedRow = -1, selectedCol = -1;
+
+    // Drag state: the square pressed and the mouse position while dragging
+    private int pressRow = -1, pressCol = -1;
+    private boolean dragging;
+    private boolean pressDeferred; // The press was on the selected piece and not reported yet
+    private int dragX, dragY;
+
+    // Animation state: a piece sliding onto (animRow, animCol), drawn at animX/animY
+    private final Timer animationTimer;
+    private int animRow = -1, animCol = -1;
+    private int animFromX, animFromY, animToX, animToY;
+    private int animX, animY;
+    private long animStart;
+
+    public BoardView(Game game, SpriteCache sprites, SquareListener listener) {
+        this.game = game;
+        this.sprites = sprites;
+        this.listener = listener;
+        setPreferredSize(new Dimension(600, 600));
+        setOpaque(true);
+
+        MouseAdapter mouse = new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent e) {
+                onPress(e);
+            }
+
+            @Override
+            public void mouseDragged(MouseEvent e) {
+                onDrag(e);
+            }
+
+            @Override
+            public void mouseReleased(MouseEvent e) {
+                onRelease(e);
+            }
+        };
+        addMouseListener(mouse);
+        addMouseMotionListener(mouse);
+        animationTimer = new Timer(FRAME_MILLIS, e -> stepAnimation());
+    }
+
+    // Bitboard of squares to show highlighted; only the squares that change are repainted
+    public void setHighlights(long squares) {
+        long changed = highlighted ^ squares;
+        highlighted = squares;
+        while (changed != 0) {
+            int sq = Long.numberOfTrailingZeros(changed);
+            changed &= changed - 1;
+            repaintSquare(Position.row(sq), Position.col(sq));
+        }
+    }
+
+    // Squares to show in the book color; they should be highlighted too
+    public void setBookSquares(long squares) {
+        long changed = bookSquares ^ squares;
+        bookSquares = squares;
+        while (changed != 0) {
+            int sq = Long.numberOfTrailingZeros(changed);
+            changed &= changed - 1;
+            repaintSquare(Position.row(sq), Position.col(sq));
+        }
+    }
+
+    public void clearHighlights() {
+        setHighlights(0);
+        setBookSquares(0);
+    }
+
+    // The square the listener currently has selected, -1 for none
+    public void setSelected(int row, int col) {
+        selectedRow = row;
+        selectedCol = col;
+    }
+
+    public void repaintSquare(int row, int col) {
+        repaint(squareBounds(row, col));
+    }
+
+    // Slides the piece now standing on (toRow, toCol) in from (fromRow, fromCol)
+    public void animateMove(int fromRow, int fromCol, int toRow, int toCol) {
+        finishAnimation();
+        Rectangle from = squareBounds(fromRow, fromCol);
+        Rectangle to = squareBounds(toRow, toCol);
+        animRow = toRow;
+        animCol = toCol;
+        animFromX = from.x;
+        animFromY = from.y;
+        animToX = to.x;
+        animToY = to.y;
+        animX = from.x;
+        animY = from.y;
+        animStart = System.nanoTime();
+        repaint(from);
+        repaint(to);
+        animationTimer.start();
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        Rectangle clip = g.getClipBounds();
+        if (clip == null) {
+            clip = new Rectangle(0, 0, getWidth(), getHeight());
+        }
+        g.setColor(getBackground() != null ? getBackground() : Color.LIGHT_GRAY);
+        g.fillRect(clip.x, clip.y, clip.width, clip.height);
+
+        int square = squareSize();
+        for (int row = 0; row < 8; row++) {
+            for (int col = 0; col < 8; col++) {
+                Rectangle bounds = squareBounds(row, col);
+                if (!bounds.intersects(clip)) {
+                    continue;
+                }
+                boolean light = (row + col) % 2 == 0;
+                long bit = 1L << Position.square(row, col);
+                if ((bookSquares & bit) != 0) {
+                    g.setColor(light ? LIGHT_BOOK : DARK_BOOK);
+                } else if ((highlighted & bit) != 0) {
+                    g.setColor(light ? LIGHT_HIGHLIGHT : DARK_HIGHLIGHT);
+                } else {
+                    g.setColor(light ? LIGHT : DARK);
+                }
+                g.fillRect(bounds.x, bounds.y, bounds.width, bounds.height);
+
+                boolean lifted = dragging && row == pressRow && col == pressCol;
+                boolean sliding = row == animRow && col == animCol;
+                if (!lifted && !sliding) {
+                    paintPiece(g, game.pieceAt(row, col), bounds.x, bounds.y, square);
+                }
+            }
+        }
+        // Moving pieces go on top of every square
+        if (animRow >= 0) {
+            paintPiece(g, game.pieceAt(animRow, animCol), animX, animY, square);
+        }
+        if (dragging) {
+            paintPiece(g, game.pieceAt(pressRow, pressCol), dragX - square / 2, dragY - square / 2, square);
+        }
+    }
+
+    private void paintPiece(Graphics g, int piece, int x, int y, int square) {
+        if (piece == Piece.NONE) {
+            return;
+        }
+        ImageIcon icon = sprites.icon(piece);
+        if (icon != null) {
+            icon.paintIcon(this, g, x + (square - icon.getIconWidth()) / 2, y + (square - icon.getIconHeight()) / 2);
+        } else {
+            g.setColor(Color.BLACK);
+            g.drawString(Piece.name(piece), x + square / 3, y + square / 2);
+        }
+    }
+
+    private void onPress(MouseEvent e) {
+        if (!isEnabled()) {
+            return;
+        }
+        finishAnimation();
+        int row = rowAt(e.getY());
+        int col = colAt(e.getX());
+        if (row < 0 || col < 0) {
+            return;
+        }
+        int piece = game.pieceAt(row, col);
+        // Only a piece that may move can be picked up
+        if (piece != Piece.NONE && Piece.color(piece) == game.sideToMove()) {
+            pressRow = row;
+            pressCol = col;
+        } else {
+            pressRow = -1;
+        }
+        dragX = e.getX();
+        dragY = e.getY();
+        pressDeferred = pressRow >= 0 && row == selectedRow && col == selectedCol;
+        if (!pressDeferred) {
+            listener.squareClicked(row, col);
+        }
+    }
+
+    private void onDrag(MouseEvent e) {
+        if (pressRow < 0) {
+            return;
+        }
+        if (!dragging) {
+            if (Math.abs(e.getX() - dragX) < DRAG_THRESHOLD && Math.abs(e.getY() - dragY) < DRAG_THRESHOLD) {
+                return;
+            }
+            dragging = true;
+            repaintSquare(pressRow, pressCol);
+        }
+        repaint(pieceBounds(dragX, dragY));
+        dragX = e.getX();
+        dragY = e.getY();
+        repaint(pieceBounds(dragX, dragY));
+    }
+
+    private void onRelease(MouseEvent e) {
+        if (!dragging) {
+            if (pressDeferred) {
+                listener.squareClicked(pressRow, pressCol);
+            }
+            pressRow = -1;
+            pressDeferred = false;
+            return;
+        }
+        dragging = false;
+        repaint(pieceBounds(dragX, dragY));
+        repaintSquare(pressRow, pressCol);
+        int row = rowAt(e.getY());
+        int col = colAt(e.getX());
+        int fromRow = pressRow;
+        int fromCol = pressCol;
+        pressRow = -1;
+        pressDeferred = false;
+        if (row < 0 || col < 0) {
+            // Dropped off the board: same as clicking the piece again, which deselects it
+            listener.squareClicked(fromRow, fromCol);
+        } else if (row != fromRow || col != fromCol) {
+            listener.squareClicked(row, col);
+        }
+    }
+
+    private void stepAnimation() {
+        double t = Math.min(1.0, (System.nanoTime() - animStart) / (ANIMATION_MILLIS * 1e6));
+        repaint(pieceBoundsAt(animX, animY));
+        animX = (int) Math.round(animFromX + (animToX - animFromX) * t);
+        animY = (int) Math.round(animFromY + (animToY - animFromY) * t);
+        repaint(pieceBoundsAt(animX, animY));
+        if (t >= 1.0) {
+            finishAnimation();
+        }
+    }
+
+    private void finishAnimation() {
+        if (animRow < 0) {
+            return;
+        }
+        animationTimer.stop();
+        repaint(pieceBoundsAt(animX, animY));
+        repaintSquare(animRow, animCol);
+        animRow = -1;
+        animCol = -1;
+    }
+
+    private int squareSize() {
+        return Math.max(1, Math.min(getWidth(), getHeight()) / 8);
+    }
+
+    // The board is centred in the component
+    private int originX() {
+        return (getWidth() - 8 * squareSize()) / 2;
+    }
+
+    private int originY() {
+        return (getHeight() - 8 * squareSize()) / 2;
+    }
+
+    private Rectangle squareBounds(int row, int col) {
+        int square = squareSize();
+        return new Rectangle(originX() + col * square, originY() + row * square, square, square);
+    }
+
+    // A square-sized area with its corner at (x, y), where sliding pieces are drawn
+    private Rectangle pieceBoundsAt(int x, int y) {
+        int square = squareSize();
+        return new Rectangle(x, y, square, square);
+    }
+
+    // A square-sized area centred on the mouse, where a dragged piece is drawn
+    private Rectangle pieceBounds(int x, int y) {
+        int square = squareSize();
+        return new Rectangle(x - square / 2, y - square / 2, square, square);
+    }
+
+    private int rowAt(int y) {
+        int row = Math.floorDiv(y - originY(), squareSize());
+        return row >= 0 && row < 8 ? row : -1;
+    }
+
+    private int colAt(int x) {
+        int col = Math.floorDiv(x - originX(), squareSize());
+        return col >= 0 && col < 8 ? col : -1;
+    }
+}
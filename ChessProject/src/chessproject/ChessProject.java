@@ -3,16 +3,55 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.nio.file.Path;
 
 public class ChessProject {
     private JFrame frame;
     private JButton[][] buttons = new JButton[8][8];
-    private String[][] board = new String[8][8];
+    private final Game game = new Game();
     private int selectedRow = -1, selectedCol = -1;
-    private boolean whiteTurn = true;
     private boolean kingInCheckNotified = false; // Track if we've already shown check notification
     
+    // Piece images are decoded once and re-scaled off the EDT when the board is resized
+    private static final int PIECE_SIZE = 50;
+    private final SpriteCache sprites = new SpriteCache(PIECE_SIZE);
+    
+    // The board is one custom-painted BoardView unless -Dchessproject.board=buttons asks for
+    // the grid of 64 JButtons; boardView is null in that case
+    private static final boolean USE_BOARD_VIEW = !"buttons".equals(System.getProperty("chessproject.board"));
+    private BoardView boardView;
+    
+    // Computer opponent: plays Black, searches on a worker thread so the EDT never blocks.
+    // The search uses every core unless -Dchessproject.threads=N says otherwise, and evaluates
+    // with an NNUE network if -Dchessproject.nnue names one (see NnueNetwork.fromSystemProperty).
+    private static final long COMPUTER_MOVE_MILLIS = 2000;
+    private static final int SEARCH_THREADS = Integer.getInteger("chessproject.threads", Runtime.getRuntime().availableProcessors());
+    private static final int HASH_MB = 64;
+    private final int computerColor = Piece.BLACK;
+    private final ParallelSearch search = new ParallelSearch(SEARCH_THREADS, HASH_MB);
+    private JCheckBox computerCheckBox;
+    private JButton undoButton;
+    private JButton redoButton;
+    private JLabel statusLabel;
+    private SwingWorker<SearchResult, SearchResult> searchWorker;
+    private int gameNumber; // Lets a search that outlived its game or position discard its move
+    
+    // Opening book, -Dchessproject.book or book.bin (see OpeningBookBuilder); none if missing.
+    // The computer plays from it without searching, and the book moves of the selected piece
+    // are shown in green.
+    private final OpeningBook book = OpeningBook.openIfPresent(Path.of(System.getProperty("chessproject.book", "book.bin")));
+    private final java.util.Random bookRandom = new java.util.Random();
+    private final int[] bookMoves = new int[MoveGenerator.MAX_MOVES];
+    private final int[] bookWeights = new int[MoveGenerator.MAX_MOVES];
+    private final int[] bookScores = new int[MoveGenerator.MAX_MOVES];
+    // Endgame tables, -Dchessproject.tablebases or the tb directory (see TablebaseGenerator). The
+    // computer plays perfectly from them, and a game that reaches them ends with their result.
+    private final Tablebase tablebase = Tablebase.load(Path.of(System.getProperty("chessproject.tablebases", "tb")));
+    
     public ChessProject() {
+        search.setNetwork(NnueNetwork.fromSystemProperty());
         frame = new JFrame("Chess Game");
         frame.setSize(600, 650); // Increased height to accommodate control panel
         frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
@@ -22,6 +61,21 @@ public class ChessProject {
         
         // Create the chess board panel
         JPanel boardPanel = new JPanel(new GridLayout(8, 8));
+        if (USE_BOARD_VIEW) {
+            boardView = new BoardView(game, sprites, (row, col) -> {
+                onButtonClick(row, col);
+                boardView.setSelected(selectedRow, selectedCol);
+            });
+        }
+        JComponent board = USE_BOARD_VIEW ? boardView : boardPanel;
+        board.addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentResized(ComponentEvent e) {
+                // Pieces take two thirds of a square, 50 px on the default 75 px squares
+                int square = Math.min(board.getWidth(), board.getHeight()) / 8;
+                sprites.resize(square * PIECE_SIZE / 75, () -> updateAllButtons());
+            }
+        });
         
         // Create control panel for buttons
         JPanel controlPanel = new JPanel();
@@ -35,24 +89,70 @@ public class ChessProject {
         });
         controlPanel.add(replayButton);
         
+        JButton saveButton = new JButton("Save PGN");
+        saveButton.setFocusPainted(false);
+        saveButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                savePgn();
+            }
+        });
+        controlPanel.add(saveButton);
+        
+        undoButton = new JButton("Undo");
+        undoButton.setFocusPainted(false);
+        undoButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                undoMove();
+            }
+        });
+        controlPanel.add(undoButton);
+        
+        redoButton = new JButton("Redo");
+        redoButton.setFocusPainted(false);
+        redoButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                redoMove();
+            }
+        });
+        controlPanel.add(redoButton);
+        
+        computerCheckBox = new JCheckBox("Play vs Computer");
+        computerCheckBox.setFocusPainted(false);
+        computerCheckBox.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                maybeStartComputerMove();
+            }
+        });
+        controlPanel.add(computerCheckBox);
+        
+        statusLabel = new JLabel(" ");
+        controlPanel.add(statusLabel);
+        updateHistoryButtons();
+        
         // Add panels to main panel
-        mainPanel.add(boardPanel, BorderLayout.CENTER);
+        mainPanel.add(board, BorderLayout.CENTER);
         mainPanel.add(controlPanel, BorderLayout.SOUTH);
         
         // Add main panel to frame
         frame.add(mainPanel);
 
         initializeBoard();
-        initializeUI(boardPanel);
+        if (!USE_BOARD_VIEW) {
+            initializeUI(boardPanel);
+        }
 
         frame.setVisible(true);
         
         // Check if a king is in check at game start
         SwingUtilities.invokeLater(() -> {
-            if (isKingInCheck('W')) {
+            if (isKingInCheck(Piece.WHITE)) {
                 JOptionPane.showMessageDialog(frame, "White King is in check!");
                 kingInCheckNotified = true;
-            } else if (isKingInCheck('B')) {
+            } else if (isKingInCheck(Piece.BLACK)) {
                 JOptionPane.showMessageDialog(frame, "Black King is in check!");
                 kingInCheckNotified = true;
             }
@@ -60,20 +160,7 @@ public class ChessProject {
     }
 
     private void initializeBoard() {
-        String[] pieces = {"R", "N", "B", "Q", "K", "B", "N", "R"};
-        for (int i = 0; i < 8; i++) {
-            board[0][i] = "B" + pieces[i];
-            board[1][i] = "BP";
-            board[6][i] = "WP";
-            board[7][i] = "W" + pieces[i];
-        }
-        
-        // Clear the middle rows
-        for (int row = 2; row < 6; row++) {
-            for (int col = 0; col < 8; col++) {
-                board[row][col] = null;
-            }
-        }
+        game.resetGame();
     }
 
     private void initializeUI(JPanel boardPanel) {
@@ -107,55 +194,156 @@ public class ChessProject {
     
     // Reset the game to initial state
     private void resetGame() {
+        // Abandon any computer move still being searched for the old game
+        abandonComputerMove();
+        statusLabel.setText(" ");
+        
         // Reset board state
         initializeBoard();
         
         // Update UI to match new board state
-        for (int row = 0; row < 8; row++) {
-            for (int col = 0; col < 8; col++) {
-                updateButton(row, col);
-            }
-        }
+        updateAllButtons();
         
         // Reset game variables
         selectedRow = -1;
         selectedCol = -1;
-        whiteTurn = true;
         kingInCheckNotified = false;
+        if (boardView != null) {
+            boardView.setSelected(-1, -1);
+        }
         
         // Reset highlights
         resetHighlights();
+        updateHistoryButtons();
         
         // Optional: Display a message
         JOptionPane.showMessageDialog(frame, "Game has been reset. White's turn to play.");
     }
 
+    // Takes back the last move; against the computer also its reply, so it is the player's turn
+    private void undoMove() {
+        abandonComputerMove();
+        if (game.undoMove() == Move.NONE) {
+            return;
+        }
+        while (computerCheckBox.isSelected() && game.sideToMove() == computerColor && game.canUndo()) {
+            game.undoMove();
+        }
+        historyChanged();
+    }
+    
+    // Replays the last undone move, and against the computer its reply if that was undone too
+    private void redoMove() {
+        abandonComputerMove();
+        if (game.redoMove() == Move.NONE) {
+            return;
+        }
+        while (computerCheckBox.isSelected() && game.sideToMove() == computerColor && game.canRedo()) {
+            game.redoMove();
+        }
+        historyChanged();
+        announceCheck();
+        maybeStartComputerMove();
+    }
+    
+    // Stops a search for a move in a position the game is about to leave
+    private void abandonComputerMove() {
+        gameNumber++;
+        if (searchWorker != null) {
+            search.stop();
+        }
+    }
+    
+    // Redraws the board after undo or redo, which can change any number of squares
+    private void historyChanged() {
+        selectedRow = -1;
+        selectedCol = -1;
+        kingInCheckNotified = false;
+        resetHighlights();
+        if (boardView != null) {
+            boardView.setSelected(-1, -1);
+        }
+        updateAllButtons();
+        updateHistoryButtons();
+        statusLabel.setText(" ");
+        showTablebaseResult();
+    }
+    
+    private void updateHistoryButtons() {
+        undoButton.setEnabled(game.canUndo());
+        redoButton.setEnabled(game.canRedo());
+    }
+
+    private void updateAllButtons() {
+        if (boardView != null) {
+            boardView.repaint();
+            return;
+        }
+        for (int row = 0; row < 8; row++) {
+            for (int col = 0; col < 8; col++) {
+                updateButton(row, col);
+            }
+        }
+    }
+
     private void updateButton(int row, int col) {
-        if (board[row][col] != null) {
-            setPieceImage(row, col, board[row][col]);
+        if (boardView != null) {
+            boardView.repaintSquare(row, col);
+            return;
+        }
+        int piece = game.pieceAt(row, col);
+        if (piece != Piece.NONE) {
+            setPieceImage(row, col, piece);
         } else {
             buttons[row][col].setIcon(null);
             buttons[row][col].setText("");
         }
     }
 
-    private void setPieceImage(int row, int col, String piece) {
-        String imagePath = "resources/" + piece + ".png";
-        ImageIcon icon = new ImageIcon(imagePath);
-        Image img = icon.getImage().getScaledInstance(50, 50, Image.SCALE_SMOOTH);
-        buttons[row][col].setIcon(new ImageIcon(img));
-        buttons[row][col].setText("");
+    // Icons are shared from the sprite cache; setting the one already shown is a no-op
+    private void setPieceImage(int row, int col, int piece) {
+        ImageIcon icon = sprites.icon(piece);
+        buttons[row][col].setIcon(icon);
+        buttons[row][col].setText(icon == null ? Piece.name(piece) : ""); // Image failed to load
     }
 
+    // Times the click up to the end of the repaint it causes: the repaint manager queues its
+    // paint while the click is handled, so a task queued after that runs once it is done. Dialogs
+    // shown by the click count too.
     private void onButtonClick(int row, int col) {
-        char currentColor = whiteTurn ? 'W' : 'B';
+        if (!Metrics.ENABLED && !Metrics.ClickEvent.TYPE.isEnabled()) {
+            handleClick(row, col);
+            return;
+        }
+        Metrics.ClickEvent event = new Metrics.ClickEvent();
+        long start = System.nanoTime();
+        event.begin();
+        handleClick(row, col);
+        SwingUtilities.invokeLater(() -> {
+            if (Metrics.ENABLED) {
+                Metrics.CLICK_LATENCY.record(System.nanoTime() - start);
+            }
+            event.end();
+            if (event.shouldCommit()) {
+                event.square = Position.squareName(Position.square(row, col));
+                event.commit();
+            }
+        });
+    }
+
+    private void handleClick(int row, int col) {
+        // The board belongs to the computer while it is thinking
+        if (searchWorker != null) return;
+        
+        int currentColor = game.sideToMove();
+        boolean whiteTurn = currentColor == Piece.WHITE;
         boolean currentKingInCheck = isKingInCheck(currentColor);
+        int clicked = game.pieceAt(row, col);
         
         if (selectedRow == -1 && selectedCol == -1) {
             // First click - selecting a piece
-            if (board[row][col] != null) {
-                char pieceColor = board[row][col].charAt(0);
-                if ((whiteTurn && pieceColor == 'W') || (!whiteTurn && pieceColor == 'B')) {
+            if (clicked != Piece.NONE) {
+                if (Piece.color(clicked) == currentColor) {
                     selectedRow = row;
                     selectedCol = col;
                     highlightLegalMoves(row, col);
@@ -185,21 +373,11 @@ public class ChessProject {
                     // Move was successful
                     selectedRow = -1;
                     selectedCol = -1;
-                    whiteTurn = !whiteTurn;
-                    kingInCheckNotified = false; // Reset for next player's turn
-                    
-                    // Check for opponent's king in check or checkmate
-                    char opponentColor = whiteTurn ? 'W' : 'B';
-                    if (isKingInCheck(opponentColor)) {
-                        if (isCheckmate(opponentColor)) {
-                            JOptionPane.showMessageDialog(frame, (!whiteTurn ? "White" : "Black") + " wins! Checkmate!");
-                        } else {
-                            JOptionPane.showMessageDialog(frame, (opponentColor == 'W' ? "White" : "Black") + " King is in check!");
-                        }
-                    }
+                    announceCheck();
+                    maybeStartComputerMove();
                 }
                 // If tryMove returns false, it will already have shown an appropriate message
-            } else if (board[row][col] != null && board[row][col].charAt(0) == currentColor) {
+            } else if (clicked != Piece.NONE && Piece.color(clicked) == currentColor) {
                 // Clicking a different piece of the same color
                 selectedRow = row;
                 selectedCol = col;
@@ -214,39 +392,70 @@ public class ChessProject {
     
     // Highlight legal moves for better user experience
     private void highlightLegalMoves(int row, int col) {
-        if (board[row][col] == null) return;
+        int from = Position.square(row, col);
+        long targets = 0;
         
-        for (int toRow = 0; toRow < 8; toRow++) {
-            for (int toCol = 0; toCol < 8; toCol++) {
-                if (isValidMove(row, col, toRow, toCol)) {
-                    // Try the move to see if it would leave the king in check
-                    String originalSrc = board[row][col];
-                    String originalDest = board[toRow][toCol];
-                    
-                    board[toRow][toCol] = originalSrc;
-                    board[row][col] = null;
-                    
-                    char pieceColor = originalSrc.charAt(0);
-                    boolean kingStillInCheck = isKingInCheck(pieceColor);
-                    
-                    // Revert the move
-                    board[row][col] = originalSrc;
-                    board[toRow][toCol] = originalDest;
-                    
-                    if (!kingStillInCheck) {
-                        // Legal move - highlight the square
-                        Color originalColor = buttons[toRow][toCol].getBackground();
-                        buttons[toRow][toCol].setBackground(
-                            originalColor == Color.WHITE ? new Color(173, 216, 230) : new Color(100, 149, 237)
-                        );
-                    }
-                }
+        for (int i = 0; i < game.legalMoveCount(); i++) {
+            int move = game.legalMove(i);
+            if (Move.from(move) == from) {
+                targets |= 1L << Move.to(move);
+            }
+        }
+        long bookTargets = showBookMoves(from);
+        if (boardView != null) {
+            // One repaint of just the squares that change
+            boardView.setHighlights(targets);
+            boardView.setBookSquares(bookTargets);
+            return;
+        }
+        while (targets != 0) {
+            // Legal move - highlight the square, in green if the book plays it
+            int to = Long.numberOfTrailingZeros(targets);
+            targets &= targets - 1;
+            int toRow = Position.row(to);
+            int toCol = Position.col(to);
+            boolean light = (toRow + toCol) % 2 == 0;
+            if ((bookTargets & (1L << to)) != 0) {
+                buttons[toRow][toCol].setBackground(light ? new Color(170, 220, 160) : new Color(90, 170, 90));
+            } else {
+                buttons[toRow][toCol].setBackground(light ? new Color(173, 216, 230) : new Color(100, 149, 237));
+            }
+        }
+    }
+    
+    // Lists the book moves of the piece on from in the status line and returns their squares
+    private long showBookMoves(int from) {
+        if (book == null) {
+            return 0;
+        }
+        Position position = new Position(game.position());
+        int n = book.probe(position, bookMoves, bookWeights, bookScores);
+        int total = 0;
+        for (int i = 0; i < n; i++) {
+            total += bookWeights[i];
+        }
+        long squares = 0;
+        StringBuilder text = new StringBuilder();
+        int[] buffer = new int[MoveGenerator.MAX_MOVES];
+        for (int i = 0; i < n; i++) {
+            if (Move.from(bookMoves[i]) != from) {
+                continue;
             }
+            squares |= 1L << Move.to(bookMoves[i]);
+            text.append(text.length() == 0 ? "Book: " : ", ")
+                    .append(San.toSan(position, bookMoves[i], buffer))
+                    .append(String.format(" %d%% (scores %d%%)", bookWeights[i] * 100 / total, bookScores[i]));
         }
+        statusLabel.setText(text.length() == 0 ? " " : text.toString());
+        return squares;
     }
     
     // Reset all square highlights
     private void resetHighlights() {
+        if (boardView != null) {
+            boardView.clearHighlights();
+            return;
+        }
         for (int r = 0; r < 8; r++) {
             for (int c = 0; c < 8; c++) {
                 buttons[r][c].setBackground((r + c) % 2 == 0 ? Color.WHITE : Color.GRAY);
@@ -256,420 +465,250 @@ public class ChessProject {
     
     // Tries to make a move and returns true if successful
     private boolean tryMove(int fromRow, int fromCol, int toRow, int toCol) {
-        String movingPiece = board[fromRow][fromCol];
-        String capturedPiece = board[toRow][toCol];
-        char pieceColor = movingPiece.charAt(0);
+        Game.MoveResult result = game.checkMove(fromRow, fromCol, toRow, toCol);
         
-        // Store original state for castling
-        boolean wasCastle = false;
-        int rookFromRow = -1, rookFromCol = -1, rookToRow = -1, rookToCol = -1;
-        String rookPiece = null;
-        
-        // Make the move
-        if (movingPiece.charAt(1) == 'K' && Math.abs(fromCol - toCol) == 2) {
-            // Castling
-            wasCastle = true;
-            rookFromRow = fromRow;
-            rookFromCol = (toCol > fromCol) ? 7 : 0;
-            rookToRow = fromRow;
-            rookToCol = (toCol > fromCol) ? toCol - 1 : toCol + 1;
-            rookPiece = board[rookFromRow][rookFromCol];
-            
-            board[toRow][toCol] = movingPiece;
-            board[fromRow][fromCol] = null;
-            board[rookToRow][rookToCol] = rookPiece;
-            board[rookFromRow][rookFromCol] = null;
-        } else {
-            // Regular move
-            board[toRow][toCol] = movingPiece;
-            board[fromRow][fromCol] = null;
-        }
-        
-        // Check if our king is in check after the move
-        if (isKingInCheck(pieceColor)) {
-            // Invalid move - revert it
-            if (wasCastle) {
-                board[fromRow][fromCol] = movingPiece;
-                board[toRow][toCol] = null;
-                board[rookFromRow][rookFromCol] = rookPiece;
-                board[rookToRow][rookToCol] = null;
-                updateButton(rookFromRow, rookFromCol);
-                updateButton(rookToRow, rookToCol);
-            } else {
-                board[fromRow][fromCol] = movingPiece;
-                board[toRow][toCol] = capturedPiece;
-            }
-            
-            updateButton(fromRow, fromCol);
-            updateButton(toRow, toCol);
-            
-            // Show appropriate message
-            if (isKingInCheck(pieceColor)) {
-                JOptionPane.showMessageDialog(frame, "Your king is in check! This move doesn't resolve the check.");
-            } else {
-                JOptionPane.showMessageDialog(frame, "Invalid move: Your king would be in check!");
-            }
-            
+        // The piece can move there, but not without leaving our king in check
+        if (result == Game.MoveResult.CHECK_NOT_RESOLVED) {
+            JOptionPane.showMessageDialog(frame, "Your king is in check! This move doesn't resolve the check.");
+            return false;
+        } else if (result == Game.MoveResult.KING_EXPOSED) {
+            JOptionPane.showMessageDialog(frame, "Invalid move: Your king would be in check!");
+            return false;
+        } else if (result != Game.MoveResult.OK) {
             return false;
         }
         
         // Check for pawn promotion
-        if (movingPiece.charAt(1) == 'P' && (toRow == 0 || toRow == 7)) {
-            promotePawn(toRow, toCol);
-        }
-        
-        // Update the UI
-        updateButton(fromRow, fromCol);
-        updateButton(toRow, toCol);
-        if (wasCastle) {
-            updateButton(rookFromRow, rookFromCol);
-            updateButton(rookToRow, rookToCol);
-        }
+        int promotionType = game.isPromotion(fromRow, fromCol, toRow, toCol) ? promotePawn() : Piece.QUEEN;
+        game.tryMove(fromRow, fromCol, toRow, toCol, promotionType);
+        moveApplied(game.lastMove());
         
         return true;
     }
     
-    // Handle pawn promotion
-    private void promotePawn(int row, int col) {
-        String[] options = {"Queen", "Rook", "Bishop", "Knight"};
-        int choice = JOptionPane.showOptionDialog(
-            frame, 
-            "Choose a piece for pawn promotion:", 
-            "Pawn Promotion", 
-            JOptionPane.DEFAULT_OPTION, 
-            JOptionPane.QUESTION_MESSAGE, 
-            null, 
-            options, 
-            options[0]
-        );
+    // Plays a legal move chosen by the computer
+    private void applyMove(int move) {
+        game.playMove(move);
+        moveApplied(move);
+    }
+    
+    // Refreshes the squares a move just played has changed
+    private void moveApplied(int move) {
+        int fromRow = Position.row(Move.from(move));
+        int fromCol = Position.col(Move.from(move));
+        int toRow = Position.row(Move.to(move));
+        int toCol = Position.col(Move.to(move));
         
-        char color = board[row][col].charAt(0);
-        char promotionPiece;
+        kingInCheckNotified = false; // Reset for next player's turn
         
-        switch (choice) {
-            case 1: promotionPiece = 'R'; break;
-            case 2: promotionPiece = 'B'; break;
-            case 3: promotionPiece = 'N'; break;
-            default: promotionPiece = 'Q'; break;
+        // Update the UI
+        updateButton(fromRow, fromCol);
+        updateButton(toRow, toCol);
+        if (Move.isCastle(move)) {
+            int rookFromCol = (toCol > fromCol) ? 7 : 0;
+            int rookToCol = (toCol > fromCol) ? toCol - 1 : toCol + 1;
+            updateButton(fromRow, rookFromCol);
+            updateButton(toRow, rookToCol);
+        } else if (Move.flags(move) == Move.EN_PASSANT) {
+            updateButton(fromRow, toCol);
         }
-        
-        board[row][col] = color + "" + promotionPiece;
-        updateButton(row, col);
+        updateHistoryButtons();
+        showTablebaseResult();
     }
-
-    private boolean isKingInCheck(char kingColor) {
-        int kingRow = -1, kingCol = -1;
-
-        // Locate the king
-        for (int row = 0; row < 8; row++) {
-            for (int col = 0; col < 8; col++) {
-                if (board[row][col] != null && board[row][col].equals(kingColor + "K")) {
-                    kingRow = row;
-                    kingCol = col;
-                    break;
-                }
-            }
-            if (kingRow != -1) break;
+    
+    // Shows what the endgame tables say about the position, if they cover it, and ends the game
+    // with that result: from here on perfect play decides it
+    private void showTablebaseResult() {
+        Position position = new Position(game.position());
+        String result = tablebase.adjudicate(position);
+        if (result == null || game.status() != Game.Status.PLAYING) {
+            return;
         }
-
-        if (kingRow == -1 || kingCol == -1) return false; // King not found (shouldn't happen)
-
-        // Check for attacks by opponent's pieces
-        return isAttackedByPawn(kingRow, kingCol, kingColor) ||
-               isAttackedByKnight(kingRow, kingCol, kingColor) ||
-               isAttackedBySlidingPiece(kingRow, kingCol, kingColor, new char[]{'R', 'Q'}) ||  // Rooks & Queens
-               isAttackedBySlidingPiece(kingRow, kingCol, kingColor, new char[]{'B', 'Q'}) ||  // Bishops & Queens
-               isAttackedByKing(kingRow, kingCol, kingColor);
-    }
-
-    // Check if king is attacked by a pawn
-    private boolean isAttackedByPawn(int kingRow, int kingCol, char kingColor) {
-        int direction = (kingColor == 'W') ? -1 : 1;
-        int attackRow = kingRow + direction;
-        char enemyColor = (kingColor == 'W') ? 'B' : 'W';
-        
-        if (attackRow >= 0 && attackRow < 8) {
-            if (kingCol > 0 && board[attackRow][kingCol - 1] != null && 
-                board[attackRow][kingCol - 1].equals(enemyColor + "P")) {
-                return true;
-            }
-            if (kingCol < 7 && board[attackRow][kingCol + 1] != null && 
-                board[attackRow][kingCol + 1].equals(enemyColor + "P")) {
-                return true;
-            }
+        game.adjudicate(result);
+        int score = tablebase.probe(position);
+        if (score == 0) {
+            statusLabel.setText("Tablebase: draw, " + result);
+        } else {
+            boolean whiteWins = (score > 0) == (game.sideToMove() == Piece.WHITE);
+            int plies = Search.MATE - Math.abs(score);
+            statusLabel.setText(String.format("Tablebase: %s mates in %d, %s", whiteWins ? "White" : "Black", (plies + 1) / 2, result));
         }
-        return false;
     }
-
-    // Check if king is attacked by a knight
-    private boolean isAttackedByKnight(int kingRow, int kingCol, char kingColor) {
-        int[][] knightMoves = {{-2, -1}, {-2, 1}, {2, -1}, {2, 1}, {-1, -2}, {-1, 2}, {1, -2}, {1, 2}};
-        char enemyColor = (kingColor == 'W') ? 'B' : 'W';
-
-        for (int[] move : knightMoves) {
-            int newRow = kingRow + move[0];
-            int newCol = kingCol + move[1];
-            if (newRow >= 0 && newRow < 8 && newCol >= 0 && newCol < 8 &&
-                board[newRow][newCol] != null && board[newRow][newCol].equals(enemyColor + "N")) {
-                return true;
+    
+    // Check for the king of the side to move in check or checkmate, or a draw
+    private void announceCheck() {
+        int opponentColor = game.sideToMove();
+        if (isKingInCheck(opponentColor)) {
+            if (isCheckmate(opponentColor)) {
+                JOptionPane.showMessageDialog(frame, (opponentColor == Piece.BLACK ? "White" : "Black") + " wins! Checkmate!");
+            } else {
+                JOptionPane.showMessageDialog(frame, (opponentColor == Piece.WHITE ? "White" : "Black") + " King is in check!");
             }
+        } else if (game.status() == Game.Status.STALEMATE) {
+            JOptionPane.showMessageDialog(frame, "Draw by stalemate.");
         }
-        return false;
-    }
-
-    // Check if king is attacked by a rook, bishop, or queen
-    private boolean isAttackedBySlidingPiece(int kingRow, int kingCol, char kingColor, char[] pieceTypes) {
-        int[][] directions = (pieceTypes[0] == 'R') ? new int[][]{{0, 1}, {1, 0}, {0, -1}, {-1, 0}} // Rook & Queen (straight)
-                                                 : new int[][]{{-1, -1}, {-1, 1}, {1, -1}, {1, 1}}; // Bishop & Queen (diagonal)
-
-        char enemyColor = (kingColor == 'W') ? 'B' : 'W';
-
-        for (int[] dir : directions) {
-            int row = kingRow + dir[0];
-            int col = kingCol + dir[1];
-
-            while (row >= 0 && row < 8 && col >= 0 && col < 8) {
-                if (board[row][col] != null) {
-                    if (board[row][col].charAt(0) == enemyColor && 
-                        (board[row][col].charAt(1) == pieceTypes[0] || board[row][col].charAt(1) == pieceTypes[1])) {
-                        return true;
-                    }
-                    break; // Blocked by another piece
-                }
-                row += dir[0];
-                col += dir[1];
-            }
+        if (game.status() == Game.Status.FIFTY_MOVES) {
+            JOptionPane.showMessageDialog(frame, "Draw by the fifty-move rule.");
+        } else if (game.status() == Game.Status.REPETITION) {
+            JOptionPane.showMessageDialog(frame, "Draw by threefold repetition.");
+        } else if (game.status() == Game.Status.ADJUDICATED) {
+            JOptionPane.showMessageDialog(frame, "Adjudicated by the endgame tables: " + game.result());
         }
-        return false;
     }
-
-    // Check if king is attacked by another king
-    private boolean isAttackedByKing(int kingRow, int kingCol, char kingColor) {
-        char enemyColor = (kingColor == 'W') ? 'B' : 'W';
-
-        for (int r = -1; r <= 1; r++) {
-            for (int c = -1; c <= 1; c++) {
-                if (r == 0 && c == 0) continue; // Skip the center
-                int newRow = kingRow + r;
-                int newCol = kingCol + c;
-                if (newRow >= 0 && newRow < 8 && newCol >= 0 && newCol < 8 &&
-                    board[newRow][newCol] != null && board[newRow][newCol].equals(enemyColor + "K")) {
-                    return true;
-                }
-            }
+    
+    // Writes the moves played so far as a PGN file chosen by the user
+    private void savePgn() {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setSelectedFile(new java.io.File("game.pgn"));
+        if (chooser.showSaveDialog(frame) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        PgnGame pgn = PgnGame.of(game);
+        pgn.setTag("Event", "Casual game");
+        pgn.setTag("Site", "ChessProject");
+        pgn.setTag("Date", java.time.LocalDate.now().format(java.time.format.DateTimeFormatter.ofPattern("yyyy.MM.dd")));
+        pgn.setTag("Round", "-");
+        boolean computerPlays = computerCheckBox.isSelected();
+        pgn.setTag("White", computerPlays && computerColor == Piece.WHITE ? "Computer" : "Player");
+        pgn.setTag("Black", computerPlays && computerColor == Piece.BLACK ? "Computer" : "Player");
+        try (PgnWriter writer = PgnWriter.open(chooser.getSelectedFile().toPath())) {
+            writer.write(pgn);
+        } catch (java.io.IOException ex) {
+            JOptionPane.showMessageDialog(frame, "Cannot save the game: " + ex.getMessage());
         }
-        return false;
     }
-
-    // Check if a king is in checkmate
-    private boolean isCheckmate(char kingColor) {
-        // If king is not in check, it's not checkmate
-        if (!isKingInCheck(kingColor)) {
-            return false;
+    
+    // Starts a background search if it is the computer's turn
+    private void maybeStartComputerMove() {
+        if (!computerCheckBox.isSelected() || searchWorker != null
+                || game.sideToMove() != computerColor || game.status() != Game.Status.PLAYING) {
+            return;
         }
         
-        // Check if any piece can make a move that gets out of check
-        for (int fromRow = 0; fromRow < 8; fromRow++) {
-            for (int fromCol = 0; fromCol < 8; fromCol++) {
-                if (board[fromRow][fromCol] != null && board[fromRow][fromCol].charAt(0) == kingColor) {
-                    // For each friendly piece
-                    for (int toRow = 0; toRow < 8; toRow++) {
-                        for (int toCol = 0; toCol < 8; toCol++) {
-                            if (isValidMove(fromRow, fromCol, toRow, toCol)) {
-                                // Try the move
-                                String originalSrc = board[fromRow][fromCol];
-                                String originalDest = board[toRow][toCol];
-                                boolean wasCastle = false;
-                                String rookPiece = null;
-                                int rookFromRow = -1, rookFromCol = -1, rookToRow = -1, rookToCol = -1;
-                                
-                                // Handle castle
-                                if (originalSrc.charAt(1) == 'K' && Math.abs(fromCol - toCol) == 2) {
-                                    wasCastle = true;
-                                    rookFromRow = fromRow;
-                                    rookFromCol = (toCol > fromCol) ? 7 : 0;
-                                    rookToRow = fromRow;
-                                    rookToCol = (toCol > fromCol) ? toCol - 1 : toCol + 1;
-                                    rookPiece = board[rookFromRow][rookFromCol];
-                                    
-                                    board[fromRow][fromCol] = null;
-                                    board[toRow][toCol] = originalSrc;
-                                    board[rookFromRow][rookFromCol] = null;
-                                    board[rookToRow][rookToCol] = rookPiece;
-                                } else {
-                                    // Regular move
-                                    board[toRow][toCol] = originalSrc;
-                                    board[fromRow][fromCol] = null;
-                                }
-                                
-                                boolean stillInCheck = isKingInCheck(kingColor);
-                                
-                                // Revert move
-                                if (wasCastle) {
-                                    board[fromRow][fromCol] = originalSrc;
-                                    board[toRow][toCol] = null;
-                                    board[rookFromRow][rookFromCol] = rookPiece;
-                                    board[rookToRow][rookToCol] = null;
-                                } else {
-                                    board[fromRow][fromCol] = originalSrc;
-                                    board[toRow][toCol] = originalDest;
-                                }
-                                
-                                if (!stillInCheck) {
-                                    return false; // Found a move that escapes check
-                                }
-                            }
-                        }
-                    }
-                }
-            }
+        int bookMove = book != null ? book.pick(new Position(game.position()), bookRandom) : Move.NONE;
+        if (bookMove != Move.NONE) {
+            statusLabel.setText("Book move");
+            playComputerMove(bookMove);
+            return;
         }
         
-        // No valid moves found that escape check
-        return true;
-    }
-
-    private boolean isValidMove(int fromRow, int fromCol, int toRow, int toCol) {
-        String piece = board[fromRow][fromCol];
-        if (piece == null) return false;
-        
-        // Can't move to a square with your own piece
-        if (board[toRow][toCol] != null && board[toRow][toCol].charAt(0) == piece.charAt(0)) {
-            return false;
+        int tablebaseMove = tablebase.bestMove(new Position(game.position()));
+        if (tablebaseMove != Move.NONE) {
+            playComputerMove(tablebaseMove);
+            return;
         }
         
-        char type = piece.charAt(1);
-
-        switch (type) {
-            case 'P': // Pawn
-                int direction = piece.charAt(0) == 'W' ? -1 : 1;
-                int startRow = piece.charAt(0) == 'W' ? 6 : 1;
-                
-                // Regular move forward
-                if (toCol == fromCol && toRow == fromRow + direction && board[toRow][toCol] == null) {
-                    return true;
-                }
-                
-                // Double move from start position
-                if (fromRow == startRow && toCol == fromCol && toRow == fromRow + 2 * direction &&
-                    board[fromRow + direction][fromCol] == null && board[toRow][toCol] == null) {
-                    return true;
+        final Position snapshot = new Position(game.position());
+        final int searchedGame = gameNumber;
+        statusLabel.setText("Thinking...");
+        if (boardView != null) {
+            boardView.setEnabled(false);
+        }
+        searchWorker = new SwingWorker<SearchResult, SearchResult>() {
+            @Override
+            protected SearchResult doInBackground() {
+                return search.search(snapshot, COMPUTER_MOVE_MILLIS, Search.MAX_PLY, result -> publish(result));
+            }
+            
+            @Override
+            protected void process(java.util.List<SearchResult> results) {
+                SearchResult latest = results.get(results.size() - 1);
+                statusLabel.setText(String.format("Depth %d, %,d nps", latest.depth, latest.nodesPerSecond()));
+            }
+            
+            @Override
+            protected void done() {
+                searchWorker = null;
+                if (boardView != null) {
+                    boardView.setEnabled(true);
                 }
-                
-                // Capture diagonally
-                if (Math.abs(toCol - fromCol) == 1 && toRow == fromRow + direction &&
-                    board[toRow][toCol] != null && board[toRow][toCol].charAt(0) != piece.charAt(0)) {
-                    return true;
+                SearchResult result;
+                try {
+                    result = get();
+                } catch (Exception e) {
+                    statusLabel.setText("Search failed: " + e.getMessage());
+                    return;
                 }
-                
-                return false;
-                
-            case 'R': // Rook
-                return (fromRow == toRow || fromCol == toCol) && isPathClear(fromRow, fromCol, toRow, toCol);
-                
-            case 'B': // Bishop
-                return Math.abs(fromRow - toRow) == Math.abs(fromCol - toCol) && isPathClear(fromRow, fromCol, toRow, toCol);
-                
-            case 'Q': // Queen
-                return (fromRow == toRow || fromCol == toCol || Math.abs(fromRow - toRow) == Math.abs(fromCol - toCol)) && 
-                       isPathClear(fromRow, fromCol, toRow, toCol);
-                
-            case 'K': // King
-                // Normal king move (one square in any direction)
-                if (Math.abs(fromRow - toRow) <= 1 && Math.abs(fromCol - toCol) <= 1) {
-                    return true;
+                if (searchedGame != gameNumber || result == null) {
+                    // The game was reset or a move undone while the computer was thinking
+                    maybeStartComputerMove();
+                    return;
                 }
-                // Castling
-                return canCastle(fromRow, fromCol, toRow, toCol);
-                
-            case 'N': // Knight
-                return (Math.abs(fromRow - toRow) == 2 && Math.abs(fromCol - toCol) == 1) ||
-                       (Math.abs(fromRow - toRow) == 1 && Math.abs(fromCol - toCol) == 2);
-                
-            default:
-                return false;
-        }
+                playComputerMove(result.bestMove);
+            }
+        };
+        searchWorker.execute();
     }
-
-    private boolean canCastle(int fromRow, int fromCol, int toRow, int toCol) {
-        if (board[fromRow][fromCol] == null || board[fromRow][fromCol].charAt(1) != 'K') {
-            return false; // Must be a king
+    
+    private void playComputerMove(int move) {
+        selectedRow = -1;
+        selectedCol = -1;
+        resetHighlights();
+        applyMove(move);
+        if (boardView != null) {
+            boardView.setSelected(-1, -1);
+            boardView.animateMove(Position.row(Move.from(move)), Position.col(Move.from(move)),
+                    Position.row(Move.to(move)), Position.col(Move.to(move)));
         }
-
-        if (fromRow != toRow || Math.abs(fromCol - toCol) != 2) {
-            return false; // Must move horizontally by exactly 2 squares
+        announceCheck();
+    }
+    
+    // Handle pawn promotion, returns the chosen piece type
+    private int promotePawn() {
+        String[] options = {"Queen", "Rook", "Bishop", "Knight"};
+        int choice = JOptionPane.showOptionDialog(
+            frame, 
+            "Choose a piece for pawn promotion:", 
+            "Pawn Promotion", 
+            JOptionPane.DEFAULT_OPTION, 
+            JOptionPane.QUESTION_MESSAGE, 
+            null, 
+            options, 
+            options[0]
+        );
+        
+        switch (choice) {
+            case 1: return Piece.ROOK;
+            case 2: return Piece.BISHOP;
+            case 3: return Piece.KNIGHT;
+            default: return Piece.QUEEN;
         }
+    }
 
-        char kingColor = board[fromRow][fromCol].charAt(0);
-        if (isKingInCheck(kingColor)) {
-            return false; // Can't castle while in check
-        }
+    private boolean isKingInCheck(int kingColor) {
+        return Rules.isKingInCheck(game.position(), kingColor);
+    }
 
-        int rookCol = (toCol > fromCol) ? 7 : 0; // Determine which rook (kingside or queenside)
-        if (board[fromRow][rookCol] == null || board[fromRow][rookCol].charAt(1) != 'R' ||
-            board[fromRow][rookCol].charAt(0) != kingColor) {
-            return false; // Rook must be in the corner and of same color
+    // Check if a king is in checkmate
+    private boolean isCheckmate(int kingColor) {
+        Metrics.CheckmateTestEvent event = new Metrics.CheckmateTestEvent();
+        event.begin();
+        // Only the side to move can be mated, by being in check without a legal move
+        boolean checkmate = kingColor == game.sideToMove() && game.status() == Game.Status.CHECKMATE;
+        if (Metrics.ENABLED) {
+            Metrics.CHECKMATE_TESTS.increment();
         }
-
-        // Check that the path between king and rook is clear
-        int step = (toCol > fromCol) ? 1 : -1;
-        for (int c = fromCol + step; c != rookCol; c += step) {
-            if (board[fromRow][c] != null) {
-                return false; // Path is blocked
-            }
+        if (event.shouldCommit()) {
+            event.color = kingColor == Piece.WHITE ? "White" : "Black";
+            event.checkmate = checkmate;
+            event.commit();
         }
-
-        // Check that the king doesn't pass through check
-        int midCol = fromCol + step; // Square the king passes through
-        String originalKing = board[fromRow][fromCol];
-        board[fromRow][fromCol] = null;
-        board[fromRow][midCol] = originalKing;
-        
-        boolean passesCheck = isKingInCheck(kingColor);
-        
-        // Restore the king
-        board[fromRow][midCol] = null;
-        board[fromRow][fromCol] = originalKing;
-        
-        return !passesCheck;
+        return checkmate;
     }
 
-    private void performCastle(int fromRow, int fromCol, int toRow, int toCol) {
-        int rookCol = (toCol > fromCol) ? 7 : 0;
-        int newRookCol = (toCol > fromCol) ? toCol - 1 : toCol + 1;
-
-        board[toRow][toCol] = board[fromRow][fromCol]; // Move king
-        board[fromRow][fromCol] = null;
-        board[toRow][newRookCol] = board[fromRow][rookCol]; // Move rook
-        board[fromRow][rookCol] = null;
-
-        updateButton(fromRow, fromCol);
-        updateButton(toRow, toCol);
-        updateButton(fromRow, rookCol);
-        updateButton(toRow, newRookCol);
-    }
-    
-    private boolean isPathClear(int fromRow, int fromCol, int toRow, int toCol) {
-        int rowStep = Integer.compare(toRow - fromRow, 0);
-        int colStep = Integer.compare(toCol - fromCol, 0);
-        
-        int r = fromRow + rowStep;
-        int c = fromCol + colStep;
-        
-        while (r != toRow || c != toCol) {
-            if (board[r][c] != null) {
-                return false; // Path is blocked
-            }
-            r += rowStep;
-            c += colStep;
-        }
-        
-        return true;
+    // Whether the piece moves like that, before checking that our own king stays safe
+    private boolean isValidMove(int fromRow, int fromCol, int toRow, int toCol) {
+        return Rules.isValidMove(game.position(), fromRow, fromCol, toRow, toCol);
     }
 
-    public static void main(String[] args) {
+    // --uci runs the UCI engine on stdin and stdout instead of the window
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("--uci")) {
+            Uci.main(java.util.Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
         SwingUtilities.invokeLater(() -> {
             new ChessProject();
         });
     }
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -0,0 +1,370 @@
+package chessproject;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+// The distance to mate of every position of one material class, such as KQvK or KRPvKR, for
+// both sides to move. Castling rights are never set in these positions and en passant rights are
+// ignored (see Tablebase for how probing makes up for them).
+//
+// A position's index is its piece squares as base-64 digits: the white king first, then the
+// black king and the other pieces in the order of the name. Board symmetry shrinks the white
+// king's digit: without pawns the board can be mirrored and rotated so the white king stands in
+// the a1-d1-d4 triangle (10 squares), with pawns only mirrored left to right so it stands on
+// files a-d (32 squares). Indexes that are not the canonical form of their position, such as
+// the second of two identical rooks on the lower square, are stored as ILLEGAL.
+//
+// A code per position: ILLEGAL, DRAW or DTM_BASE plus the plies to mate with best play. An odd
+// number of plies is a win for the side to move, an even one a loss; 0 plies is checkmate.
+//
+// File layout (big-endian): MAGIC, the name as writeUTF, bits per code, positions per side to
+// move, then the codes of white to move and black to move as one bit stream in longs, each code
+// starting at the lowest free bit.
+public final class EndgameTable {
+    public static final int UNKNOWN = 0; // Only while generating
+    public static final int ILLEGAL = 1;
+    public static final int DRAW = 2;
+    public static final int DTM_BASE = 3;
+    public static final int MAX_DTM = 255 - DTM_BASE;
+    public static final int MAX_MEN = 5;
+    static final long MAGIC = 0x4350_5442_4454_4D01L; // "CPTBDTM" and format version 1
+
+    private static final String LETTERS = "KQRBNP";
+    private static final int[] LETTER_TYPES = {Piece.KING, Piece.QUEEN, Piece.ROOK, Piece.BISHOP, Piece.KNIGHT, Piece.PAWN};
+    private static final int[] LETTER_VALUES = {0, 9, 5, 3, 3, 1};
+
+    // White king squares of the canonical forms and their digit
+    private static final int[] TRIANGLE = {0, 1, 2, 3, 9, 10, 11, 18, 19, 27};
+    private static final int[] HALF = new int[32];
+    private static final int[] TRIANGLE_DIGIT = new int[64];
+    private static final int[] HALF_DIGIT = new int[64];
+
+    static {
+        Arrays.fill(TRIANGLE_DIGIT, -1);
+        Arrays.fill(HALF_DIGIT, -1);
+        for (int i = 0; i < TRIANGLE.length; i++) {
+            TRIANGLE_DIGIT[TRIANGLE[i]] = i;
+        }
+        for (int i = 0; i < HALF.length; i++) {
+            HALF[i] = (i >>> 2) * 8 + (i & 3);
+            HALF_DIGIT[HALF[i]] = i;
+        }
+    }
+
+    private final String name;
+    private final int[] slotPiece; // Piece on each index digit; 0 is the white king, 1 the black king
+    private final int men;
+    private final boolean pawns;
+    private final int size;
+
+    // Codes as one byte per position while generating, or the packed file
+    private byte[][] codes;
+    private FileChannel channel;
+    private MappedByteBuffer packed;
+    private int bits;
+    private int dataOffset;
+
+    // name is like "KQvK": the white pieces, "v", the black pieces, each starting with the king
+    public EndgameTable(String name) {
+        int split = name.indexOf('v');
+        if (split < 1 || name.charAt(0) != 'K' || split + 1 >= name.length() || name.charAt(split + 1) != 'K') {
+            throw new IllegalArgumentException("Bad material class: " + name);
+        }
+        this.name = name;
+        this.men = name.length() - 1;
+        if (men > MAX_MEN) {
+            throw new IllegalArgumentException("At most " + MAX_MEN + " men: " + name);
+        }
+        slotPiece = new int[men];
+        slotPiece[0] = Piece.make(Piece.WHITE, Piece.KING);
+        slotPiece[1] = Piece.make(Piece.BLACK, Piece.KING);
+        boolean hasPawns = false;
+        int slot = 2;
+        for (int side = 0; side < 2; side++) {
+            String pieces = side == 0 ? name.substring(1, split) : name.substring(split + 2);
+            int previous = 1;
+            for (int i = 0; i < pieces.length(); i++) {
+                int letter = LETTERS.indexOf(pieces.charAt(i));
+                if (letter < previous) {
+                    throw new IllegalArgumentException("Bad material class: " + name);
+                }
+                previous = letter;
+                slotPiece[slot++] = Piece.make(side, LETTER_TYPES[letter]);
+                hasPawns |= LETTER_TYPES[letter] == Piece.PAWN;
+            }
+        }
+        pawns = hasPawns;
+        size = (pawns ? HALF.length : TRIANGLE.length) << (6 * (men - 1));
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public int men() {
+        return men;
+    }
+
+    // Indexes per side to move
+    public int size() {
+        return size;
+    }
+
+    public boolean hasPawns() {
+        return pawns;
+    }
+
+    int slotPiece(int slot) {
+        return slotPiece[slot];
+    }
+
+    public boolean isLoaded() {
+        return codes != null || packed != null;
+    }
+
+    // Bits per code in the file, 8 while generating
+    public int bits() {
+        return codes != null ? 8 : bits;
+    }
+
+    // The code of an index with the given side to move
+    public int code(int stm, int index) {
+        if (codes != null) {
+            return codes[stm][index] & 0xFF;
+        }
+        long bit = ((long) stm * size + index) * bits;
+        int word = (int) (bit >>> 6);
+        int shift = (int) bit & 63;
+        long value = packed.getLong(dataOffset + word * Long.BYTES) >>> shift;
+        if (shift + bits > 64) {
+            value |= packed.getLong(dataOffset + (word + 1) * Long.BYTES) << (64 - shift);
+        }
+        return (int) value & ((1 << bits) - 1);
+    }
+
+    // The code of a position of this material; flipped reads it with the colors swapped and the
+    // board turned over, for a position whose black pieces match this table's white ones.
+    // squares and scratch need room for men() entries.
+    public int code(Position pos, boolean flipped, int[] squares, int[] scratch) {
+        if (!squaresOf(pos, flipped, squares)) {
+            return UNKNOWN;
+        }
+        return code(flipped ? pos.sideToMove ^ 1 : pos.sideToMove, index(squares, scratch));
+    }
+
+    // Byte codes to fill in by TablebaseGenerator
+    byte[][] allocate() {
+        codes = new byte[2][size];
+        return codes;
+    }
+
+    // The canonical index of the pieces on squares, in digit order. scratch is overwritten.
+    int index(int[] squares, int[] scratch) {
+        int best = Integer.MAX_VALUE;
+        for (int t = 0, transforms = pawns ? 2 : 8; t < transforms; t++) {
+            int king = transform(squares[0], t);
+            int digit = pawns ? HALF_DIGIT[king] : TRIANGLE_DIGIT[king];
+            if (digit < 0) {
+                continue;
+            }
+            for (int i = 1; i < men; i++) {
+                scratch[i] = transform(squares[i], t);
+            }
+            // Identical pieces are listed lowest square first
+            for (int i = 3; i < men; i++) {
+                int square = scratch[i];
+                int j = i;
+                for (; j > 2 && slotPiece[j - 1] == slotPiece[i] && scratch[j - 1] > square; j--) {
+                    scratch[j] = scratch[j - 1];
+                }
+                scratch[j] = square;
+            }
+            int index = digit;
+            for (int i = 1; i < men; i++) {
+                index = index << 6 | scratch[i];
+            }
+            best = Math.min(best, index);
+        }
+        return best;
+    }
+
+    void decode(int index, int[] squares) {
+        for (int i = men - 1; i > 0; i--) {
+            squares[i] = index & 63;
+            index >>>= 6;
+        }
+        squares[0] = pawns ? HALF[index] : TRIANGLE[index];
+    }
+
+    // Sets up pos with the pieces on squares; false if that is not a legal position: two pieces
+    // on a square, a pawn on the first or last rank, or the side not to move in check
+    boolean setup(Position pos, int[] squares, int stm) {
+        pos.clear();
+        long occupied = 0;
+        for (int i = 0; i < men; i++) {
+            int square = squares[i];
+            int rank = square >>> 3;
+            if ((occupied & 1L << square) != 0 || Piece.type(slotPiece[i]) == Piece.PAWN && (rank == 0 || rank == 7)) {
+                return false;
+            }
+            occupied |= 1L << square;
+            pos.addPiece(slotPiece[i], square);
+        }
+        pos.sideToMove = stm;
+        pos.key = pos.computeKey();
+        return !pos.isInCheck(stm ^ 1);
+    }
+
+    // The squares of this table's pieces in pos, false if pos has other material
+    boolean squaresOf(Position pos, boolean flipped, int[] squares) {
+        if (Long.bitCount(pos.occupied) != men) {
+            return false;
+        }
+        long taken = 0;
+        for (int i = 0; i < men; i++) {
+            int piece = slotPiece[i];
+            if (flipped) {
+                piece = Piece.make(Piece.color(piece) ^ 1, Piece.type(piece));
+            }
+            long candidates = pos.pieces[piece] & ~taken;
+            if (candidates == 0) {
+                return false;
+            }
+            int square = Long.numberOfTrailingZeros(candidates);
+            taken |= 1L << square;
+            squares[i] = flipped ? square ^ 56 : square;
+        }
+        return true;
+    }
+
+    // Symmetry t of the board: bit 2 swaps files and ranks, bit 1 mirrors the ranks, bit 0 the files
+    private static int transform(int square, int t) {
+        if ((t & 4) != 0) {
+            square = (square & 7) << 3 | square >>> 3;
+        }
+        if ((t & 2) != 0) {
+            square ^= 56;
+        }
+        if ((t & 1) != 0) {
+            square ^= 7;
+        }
+        return square;
+    }
+
+    // The material class of a position, like "KRPvKR"; flipped names the black pieces first
+    public static String materialName(Position pos, boolean flipped) {
+        StringBuilder name = new StringBuilder(12);
+        for (int side = 0; side < 2; side++) {
+            int color = flipped ? side ^ 1 : side;
+            if (side == 1) {
+                name.append('v');
+            }
+            for (int letter = 0; letter < LETTERS.length(); letter++) {
+                for (int n = Long.bitCount(pos.pieces[Piece.make(color, LETTER_TYPES[letter])]); n > 0; n--) {
+                    name.append(LETTERS.charAt(letter));
+                }
+            }
+        }
+        return name.toString();
+    }
+
+    // The name with the sides swapped, "KvKQ" for "KQvK"
+    public static String flippedName(String name) {
+        int split = name.indexOf('v');
+        return name.substring(split + 1) + "v" + name.substring(0, split);
+    }
+
+    // The orientation tables are generated and stored in: the side with more material is white
+    public static String canonicalName(String name) {
+        String flipped = flippedName(name);
+        int balance = material(name.substring(0, name.indexOf('v'))) - material(flipped.substring(0, flipped.indexOf('v')));
+        return balance > 0 || balance == 0 && name.compareTo(flipped) <= 0 ? name : flipped;
+    }
+
+    private static int material(String side) {
+        int total = 0;
+        for (int i = 0; i < side.length(); i++) {
+            total += LETTER_VALUES[LETTERS.indexOf(side.charAt(i))];
+        }
+        return total;
+    }
+
+    public void write(Path path) throws IOException {
+        int maxCode = 0;
+        for (byte[] side : codes) {
+            for (byte code : side) {
+                maxCode = Math.max(maxCode, code & 0xFF);
+            }
+        }
+        int width = 32 - Integer.numberOfLeadingZeros(maxCode);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16))) {
+            out.writeLong(MAGIC);
+            out.writeUTF(name);
+            out.writeInt(width);
+            out.writeInt(size);
+            long word = 0;
+            int used = 0;
+            for (byte[] side : codes) {
+                for (byte code : side) {
+                    long value = code & 0xFF;
+                    word |= value << used;
+                    used += width;
+                    if (used >= 64) {
+                        out.writeLong(word);
+                        used -= 64;
+                        word = used == 0 ? 0 : value >>> (width - used);
+                    }
+                }
+            }
+            if (used > 0) {
+                out.writeLong(word);
+            }
+        }
+    }
+
+    public static EndgameTable open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Table over 2 GB: " + path);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.capacity() < 16 || buffer.getLong(0) != MAGIC) {
+                throw new IOException("Not an endgame table: " + path);
+            }
+            byte[] nameBytes = new byte[buffer.getShort(8) & 0xFFFF];
+            buffer.get(10, nameBytes);
+            EndgameTable table = new EndgameTable(new String(nameBytes, StandardCharsets.US_ASCII));
+            int offset = 10 + nameBytes.length;
+            table.bits = buffer.getInt(offset);
+            if (buffer.getInt(offset + 4) != table.size || table.bits < 1 || table.bits > 8
+                    || buffer.capacity() - offset - 8 < (2L * table.size * table.bits + 63) / 64 * Long.BYTES) {
+                throw new IOException("Corrupt endgame table: " + path);
+            }
+            table.channel = channel;
+            table.packed = buffer;
+            table.dataOffset = offset + 8;
+            return table;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // Drops the codes or closes the file
+    public void close() throws IOException {
+        codes = null;
+        packed = null;
+        if (channel != null) {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,298 @@
+package chessproject;
+
+// Static evaluation in centipawns from the point of view of the side to move.
+//
+// Every term has a middlegame and an endgame value, blended by the game phase: 24 with all
+// minor and major pieces on the board (knight and bishop 1, rook 2, queen 4), falling to 0 as
+// they come off. Material and piece-square tables are summed by Position itself as pieces are
+// added, removed and moved, so evaluate() starts from two ready numbers and only computes
+//   pawn structure   doubled, isolated and passed pawns, from a cache keyed on both pawn
+//                    bitboards since pawns rarely move compared to how often they are looked at
+//   king safety      the pawn shield in front of each king, and attacks on the squares around it
+//   mobility         squares each piece reaches that are not own pieces or guarded by enemy pawns
+//   bishop pair
+//
+// evaluate() allocates nothing. The pawn cache makes an Evaluator stateful: give each searching
+// thread its own.
+public final class Evaluator {
+    public static final int[] PIECE_VALUE = {100, 320, 330, 500, 900, 0};
+    static final int[] ENDGAME_VALUE = {120, 300, 330, 540, 960, 0};
+    static final int[] PHASE = {0, 1, 1, 2, 4, 0};
+    public static final int TOTAL_PHASE = 24;
+
+    // Tables are written from White's side with rank 8 on top, as you would look at a board,
+    // so White reads them at square ^ 56 and Black at the square itself. The middlegame ones
+    // are the well-known "simplified evaluation function" values.
+    private static final int[][] PST = {
+        { // Pawn
+             0,  0,  0,  0,  0,  0,  0,  0,
+            50, 50, 50, 50, 50, 50, 50, 50,
+            10, 10, 20, 30, 30, 20, 10, 10,
+             5,  5, 10, 25, 25, 10,  5,  5,
+             0,  0,  0, 20, 20,  0,  0,  0,
+             5, -5,-10,  0,  0,-10, -5,  5,
+             5, 10, 10,-20,-20, 10, 10,  5,
+             0,  0,  0,  0,  0,  0,  0,  0
+        },
+        { // Knight
+            -50,-40,-30,-30,-30,-30,-40,-50,
+            -40,-20,  0,  0,  0,  0,-20,-40,
+            -30,  0, 10, 15, 15, 10,  0,-30,
+            -30,  5, 15, 20, 20, 15,  5,-30,
+            -30,  0, 15, 20, 20, 15,  0,-30,
+            -30,  5, 10, 15, 15, 10,  5,-30,
+            -40,-20,  0,  5,  5,  0,-20,-40,
+            -50,-40,-30,-30,-30,-30,-40,-50
+        },
+        { // Bishop
+            -20,-10,-10,-10,-10,-10,-10,-20,
+            -10,  0,  0,  0,  0,  0,  0,-10,
+            -10,  0,  5, 10, 10,  5,  0,-10,
+            -10,  5,  5, 10, 10,  5,  5,-10,
+            -10,  0, 10, 10, 10, 10,  0,-10,
+            -10, 10, 10, 10, 10, 10, 10,-10,
+            -10,  5,  0,  0,  0,  0,  5,-10,
+            -20,-10,-10,-10,-10,-10,-10,-20
+        },
+        { // Rook
+              0,  0,  0,  0,  0,  0,  0,  0,
+              5, 10, 10, 10, 10, 10, 10,  5,
+             -5,  0,  0,  0,  0,  0,  0, -5,
+             -5,  0,  0,  0,  0,  0,  0, -5,
+             -5,  0,  0,  0,  0,  0,  0, -5,
+             -5,  0,  0,  0,  0,  0,  0, -5,
+             -5,  0,  0,  0,  0,  0,  0, -5,
+              0,  0,  0,  5,  5,  0,  0,  0
+        },
+        { // Queen
+            -20,-10,-10, -5, -5,-10,-10,-20,
+            -10,  0,  0,  0,  0,  0,  0,-10,
+            -10,  0,  5,  5,  5,  5,  0,-10,
+             -5,  0,  5,  5,  5,  5,  0, -5,
+              0,  0,  5,  5,  5,  5,  0, -5,
+            -10,  5,  5,  5,  5,  5,  0,-10,
+            -10,  0,  5,  0,  0,  0,  0,-10,
+            -20,-10,-10, -5, -5,-10,-10,-20
+        },
+        { // King
+            -30,-40,-40,-50,-50,-40,-40,-30,
+            -30,-40,-40,-50,-50,-40,-40,-30,
+            -30,-40,-40,-50,-50,-40,-40,-30,
+            -30,-40,-40,-50,-50,-40,-40,-30,
+            -20,-30,-30,-40,-40,-30,-30,-20,
+            -10,-20,-20,-20,-20,-20,-20,-10,
+             20, 20,  0,  0,  0,  0, 20, 20,
+             20, 30, 10,  0,  0, 10, 30, 20
+        }
+    };
+
+    // Endgame tables where they differ: pawns gain by advancing, rooks want the seventh rank
+    // and the king the centre
+    private static final int[][] ENDGAME_PST = {
+        { // Pawn
+             0,  0,  0,  0,  0,  0,  0,  0,
+            80, 80, 80, 80, 80, 80, 80, 80,
+            50, 50, 50, 50, 50, 50, 50, 50,
+            30, 30, 30, 30, 30, 30, 30, 30,
+            15, 15, 15, 15, 15, 15, 15, 15,
+             5,  5,  5,  5,  5,  5,  5,  5,
+             0,  0,  0,  0,  0,  0,  0,  0,
+             0,  0,  0,  0,  0,  0,  0,  0
+        },
+        PST[Piece.KNIGHT],
+        PST[Piece.BISHOP],
+        { // Rook
+              0,  0,  0,  0,  0,  0,  0,  0,
+             10, 10, 10, 10, 10, 10, 10, 10,
+              0,  0,  0,  0,  0,  0,  0,  0,
+              0,  0,  0,  0,  0,  0,  0,  0,
+              0,  0,  0,  0,  0,  0,  0,  0,
+              0,  0,  0,  0,  0,  0,  0,  0,
+              0,  0,  0,  0,  0,  0,  0,  0,
+              0,  0,  0,  0,  0,  0,  0,  0
+        },
+        PST[Piece.QUEEN],
+        { // King
+            -50,-40,-30,-20,-20,-30,-40,-50,
+            -30,-20,-10,  0,  0,-10,-20,-30,
+            -30,-10, 20, 30, 30, 20,-10,-30,
+            -30,-10, 30, 40, 40, 30,-10,-30,
+            -30,-10, 30, 40, 40, 30,-10,-30,
+            -30,-10, 20, 30, 30, 20,-10,-30,
+            -30,-30,  0,  0,  0,  0,-30,-30,
+            -50,-30,-30,-30,-30,-30,-30,-50
+        }
+    };
+
+    // Material plus table value of each piece on each square, negative for Black; Position
+    // keeps the sums of these up to date
+    static final int[][] MIDDLEGAME = new int[12][64];
+    static final int[][] ENDGAME = new int[12][64];
+
+    private static final int DOUBLED_MG = -10, DOUBLED_EG = -20;
+    private static final int ISOLATED_MG = -10, ISOLATED_EG = -15;
+    private static final int[] PASSED_MG = {0, 5, 10, 15, 25, 40, 60, 0}; // By rank from the pawn's side
+    private static final int[] PASSED_EG = {0, 10, 20, 35, 60, 100, 150, 0};
+    private static final int SHIELD_NEAR = 12, SHIELD_FAR = 6;
+    private static final int BISHOP_PAIR_MG = 30, BISHOP_PAIR_EG = 50;
+    // Mobility per square above an average count, knight to queen
+    private static final int[] MOBILITY_MG = {0, 4, 5, 2, 1};
+    private static final int[] MOBILITY_EG = {0, 4, 5, 4, 2};
+    private static final int[] MOBILITY_BASE = {0, 4, 6, 7, 13};
+    // Weight of an attack on a square next to the enemy king, knight to queen
+    private static final int[] KING_ATTACK = {0, 2, 2, 3, 5};
+
+    static final long[] FILES = new long[8];
+    static final long[] ADJACENT_FILES = new long[8];
+    static final long[][] PASSED_SPAN = new long[2][64]; // Squares ahead on the file and both sides
+    private static final long[][] SHIELD = new long[2][64]; // One rank ahead of the king, three files
+    private static final long[][] SHIELD_SECOND = new long[2][64]; // Two ranks ahead
+
+    static {
+        for (int piece = 0; piece < 12; piece++) {
+            int type = Piece.type(piece);
+            boolean white = Piece.color(piece) == Piece.WHITE;
+            for (int sq = 0; sq < 64; sq++) {
+                int tableSquare = white ? sq ^ 56 : sq;
+                int sign = white ? 1 : -1;
+                MIDDLEGAME[piece][sq] = sign * (PIECE_VALUE[type] + PST[type][tableSquare]);
+                ENDGAME[piece][sq] = sign * (ENDGAME_VALUE[type] + ENDGAME_PST[type][tableSquare]);
+            }
+        }
+        for (int file = 0; file < 8; file++) {
+            FILES[file] = Position.FILE_A << file;
+        }
+        for (int file = 0; file < 8; file++) {
+            ADJACENT_FILES[file] = (file > 0 ? FILES[file - 1] : 0) | (file < 7 ? FILES[file + 1] : 0);
+        }
+        for (int sq = 0; sq < 64; sq++) {
+            int file = sq & 7;
+            int rank = sq >>> 3;
+            long span = FILES[file] | ADJACENT_FILES[file];
+            long above = rank == 7 ? 0 : -1L << (8 * (rank + 1));
+            long below = rank == 0 ? 0 : -1L >>> (8 * (8 - rank));
+            PASSED_SPAN[Piece.WHITE][sq] = span & above;
+            PASSED_SPAN[Piece.BLACK][sq] = span & below;
+            long near = Attacks.king(sq) | 1L << sq;
+            SHIELD[Piece.WHITE][sq] = rank < 7 ? (near << 8) & (0xFFL << (8 * (rank + 1))) : 0;
+            SHIELD[Piece.BLACK][sq] = rank > 0 ? (near >>> 8) & (0xFFL << (8 * (rank - 1))) : 0;
+            SHIELD_SECOND[Piece.WHITE][sq] = SHIELD[Piece.WHITE][sq] << 8;
+            SHIELD_SECOND[Piece.BLACK][sq] = SHIELD[Piece.BLACK][sq] >>> 8;
+        }
+    }
+
+    // Pawn cache: both pawn bitboards of an entry are stored, so a hit is exact
+    private static final int PAWN_CACHE_BITS = 14;
+    private final long[] cachedWhitePawns = new long[1 << PAWN_CACHE_BITS];
+    private final long[] cachedBlackPawns = new long[1 << PAWN_CACHE_BITS];
+    private final int[] cachedMiddlegame = new int[1 << PAWN_CACHE_BITS];
+    private final int[] cachedEndgame = new int[1 << PAWN_CACHE_BITS];
+    private long pawnProbes;
+    private long pawnHits;
+
+    // Terms being summed by evaluate(), White's view
+    private int middlegame;
+    private int endgame;
+
+    public int evaluate(Position pos) {
+        long whitePawns = pos.pieces[Piece.WHITE_PAWN];
+        long blackPawns = pos.pieces[Piece.BLACK_PAWN];
+        int slot = (int) ((whitePawns * 0x9E3779B97F4A7C15L ^ blackPawns * 0xC2B2AE3D27D4EB4FL) >>> (64 - PAWN_CACHE_BITS));
+        pawnProbes++;
+        if (Metrics.ENABLED) {
+            Metrics.PAWN_CACHE_PROBES.increment();
+        }
+        if (cachedWhitePawns[slot] != whitePawns || cachedBlackPawns[slot] != blackPawns) {
+            middlegame = 0;
+            endgame = 0;
+            pawnStructure(whitePawns, blackPawns, Piece.WHITE, 1);
+            pawnStructure(blackPawns, whitePawns, Piece.BLACK, -1);
+            cachedWhitePawns[slot] = whitePawns;
+            cachedBlackPawns[slot] = blackPawns;
+            cachedMiddlegame[slot] = middlegame;
+            cachedEndgame[slot] = endgame;
+        } else {
+            pawnHits++;
+            if (Metrics.ENABLED) {
+                Metrics.PAWN_CACHE_HITS.increment();
+            }
+        }
+        middlegame = pos.middlegame + cachedMiddlegame[slot];
+        endgame = pos.endgame + cachedEndgame[slot];
+
+        // Squares guarded by pawns, which pieces do not count as reachable
+        long whitePawnAttacks = ((whitePawns << 7) & ~Position.FILE_H) | ((whitePawns << 9) & ~Position.FILE_A);
+        long blackPawnAttacks = ((blackPawns >>> 9) & ~Position.FILE_H) | ((blackPawns >>> 7) & ~Position.FILE_A);
+        pieceActivity(pos, Piece.WHITE, blackPawnAttacks, 1);
+        pieceActivity(pos, Piece.BLACK, whitePawnAttacks, -1);
+
+        int whiteKing = pos.kingSquare(Piece.WHITE);
+        int blackKing = pos.kingSquare(Piece.BLACK);
+        middlegame += SHIELD_NEAR * Long.bitCount(SHIELD[Piece.WHITE][whiteKing] & whitePawns)
+                + SHIELD_FAR * Long.bitCount(SHIELD_SECOND[Piece.WHITE][whiteKing] & whitePawns)
+                - SHIELD_NEAR * Long.bitCount(SHIELD[Piece.BLACK][blackKing] & blackPawns)
+                - SHIELD_FAR * Long.bitCount(SHIELD_SECOND[Piece.BLACK][blackKing] & blackPawns);
+
+        int phase = Math.min(pos.phase, TOTAL_PHASE);
+        int score = (middlegame * phase + endgame * (TOTAL_PHASE - phase)) / TOTAL_PHASE;
+        return pos.sideToMove == Piece.WHITE ? score : -score;
+    }
+
+    // Share of evaluate() calls answered from the pawn cache
+    public double pawnHitRate() {
+        return pawnProbes == 0 ? 0 : (double) pawnHits / pawnProbes;
+    }
+
+    // Adds the pawn structure of one side, sign 1 for White and -1 for Black
+    private void pawnStructure(long ours, long theirs, int color, int sign) {
+        for (int file = 0; file < 8; file++) {
+            int count = Long.bitCount(ours & FILES[file]);
+            if (count > 1) {
+                middlegame += sign * (count - 1) * DOUBLED_MG;
+                endgame += sign * (count - 1) * DOUBLED_EG;
+            }
+            if (count > 0 && (ours & ADJACENT_FILES[file]) == 0) {
+                middlegame += sign * count * ISOLATED_MG;
+                endgame += sign * count * ISOLATED_EG;
+            }
+        }
+        for (long pawns = ours; pawns != 0; pawns &= pawns - 1) {
+            int sq = Long.numberOfTrailingZeros(pawns);
+            if ((PASSED_SPAN[color][sq] & theirs) == 0) {
+                int rank = color == Piece.WHITE ? sq >>> 3 : 7 - (sq >>> 3);
+                middlegame += sign * PASSED_MG[rank];
+                endgame += sign * PASSED_EG[rank];
+            }
+        }
+    }
+
+    // Adds mobility, attacks near the enemy king and the bishop pair of one side
+    private void pieceActivity(Position pos, int color, long guarded, int sign) {
+        long occupied = pos.occupied;
+        long kingZone = Attacks.king(pos.kingSquare(color ^ 1));
+        long reachable = ~pos.colors[color] & ~guarded;
+        int attackers = 0;
+        int attackWeight = 0;
+        for (int type = Piece.KNIGHT; type <= Piece.QUEEN; type++) {
+            for (long bb = pos.pieces[Piece.make(color, type)]; bb != 0; bb &= bb - 1) {
+                long attacks = MoveGenerator.attacks(type, Long.numberOfTrailingZeros(bb), occupied);
+                int mobility = Long.bitCount(attacks & reachable) - MOBILITY_BASE[type];
+                middlegame += sign * mobility * MOBILITY_MG[type];
+                endgame += sign * mobility * MOBILITY_EG[type];
+                long onKing = attacks & kingZone;
+                if (onKing != 0) {
+                    attackers++;
+                    attackWeight += KING_ATTACK[type] * Long.bitCount(onKing);
+                }
+            }
+        }
+        // One piece near the king is no attack; several together grow quickly in danger
+        if (attackers >= 2) {
+            middlegame += sign * Math.min(attackWeight * attackWeight, 500);
+        }
+        if (Long.bitCount(pos.pieces[Piece.make(color, Piece.BISHOP)]) >= 2) {
+            middlegame += sign * BISHOP_PAIR_MG;
+            endgame += sign * BISHOP_PAIR_EG;
+        }
+    }
+}
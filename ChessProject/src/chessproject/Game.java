@@ -0,0 +1,302 @@
+package chessproject;
+
+// One game of chess without any user interface: the board, whose turn it is, the legal moves and
+// the result. This is what the Swing board and the game server both play on. Where the Swing board
+// asks the player with a dialog, callers of Game pass the answer in, e.g. the promotion piece.
+//
+// Squares are board rows and columns like in ChessProject (row 0 is Black's back rank), or UCI
+// coordinates such as "e2e4" and "e7e8q". A Game is not thread-safe.
+//
+// Moves can be taken back and replayed: the history keeps the packed moves past the current one
+// until a different move is played, and Position keeps what unmaking needs (captured piece,
+// castling rights, en-passant square, halfmove clock), so undo and redo are one unmake or make.
+// The game is drawn by threefold repetition or the fifty-move rule as soon as either happens;
+// repetitions are found by comparing Zobrist keys of the positions since the last capture or
+// pawn move, which Position keeps anyway.
+//
+// A caller that knows the outcome without playing on, such as the endgame tables, can end the
+// game with adjudicate; taking a move back or starting again reopens it.
+public final class Game {
+    public enum MoveResult {
+        OK,
+        GAME_OVER,
+        NO_PIECE,         // Nothing on the from square
+        NOT_YOUR_TURN,    // The piece belongs to the other side
+        INVALID_MOVE,     // The piece does not move like that
+        CHECK_NOT_RESOLVED, // The king is in check and stays in check
+        KING_EXPOSED      // The move would put the own king in check
+    }
+
+    public enum Status {
+        PLAYING,
+        CHECKMATE,
+        STALEMATE,
+        FIFTY_MOVES,      // 100 plies without a capture or pawn move
+        REPETITION,       // The same position for the third time
+        ADJUDICATED       // Ended by adjudicate with a result
+    }
+
+    private final Position position = new Position();
+    private final int[] legalMoves = new int[MoveGenerator.MAX_MOVES];
+    private int legalMoveCount;
+    private int lastMove = Move.NONE;
+    private String startFen;
+    private int[] history = new int[64]; // Moves played since the start position, for PGN export
+    private int moveCount;
+    private int redoCount; // Undone moves still in history after moveCount
+    private String adjudication; // The result passed to adjudicate, null while the game is open
+
+    public Game() {
+        resetGame();
+    }
+
+    public void resetGame() {
+        resetGame(Position.START_FEN);
+    }
+
+    public void resetGame(String fen) {
+        position.setFen(fen);
+        startFen = fen;
+        lastMove = Move.NONE;
+        moveCount = 0;
+        redoCount = 0;
+        adjudication = null;
+        refreshLegalMoves();
+    }
+
+    // Plays the move if it is legal. promotionType is the piece a pawn reaching the last rank
+    // becomes (Piece.KNIGHT to Piece.QUEEN) and is ignored for every other move.
+    public MoveResult tryMove(int fromRow, int fromCol, int toRow, int toCol, int promotionType) {
+        if (promotionType < Piece.KNIGHT || promotionType > Piece.QUEEN) {
+            throw new IllegalArgumentException("Not a promotion piece: " + promotionType);
+        }
+        if (!onBoard(fromRow, fromCol) || !onBoard(toRow, toCol)) {
+            return MoveResult.INVALID_MOVE;
+        }
+        MoveResult problem = checkMove(fromRow, fromCol, toRow, toCol);
+        if (problem != MoveResult.OK) {
+            return problem;
+        }
+        playMove(findLegalMove(fromRow, fromCol, toRow, toCol, promotionType));
+        return MoveResult.OK;
+    }
+
+    // Same as tryMove for a move in UCI notation; a promotion needs its piece letter
+    public MoveResult tryMove(String uci) {
+        if (uci.length() < 4 || uci.length() > 5) {
+            return MoveResult.INVALID_MOVE;
+        }
+        int fromCol = uci.charAt(0) - 'a';
+        int fromRow = '8' - uci.charAt(1);
+        int toCol = uci.charAt(2) - 'a';
+        int toRow = '8' - uci.charAt(3);
+        if (!onBoard(fromRow, fromCol) || !onBoard(toRow, toCol)) {
+            return MoveResult.INVALID_MOVE;
+        }
+        MoveResult problem = checkMove(fromRow, fromCol, toRow, toCol);
+        if (problem != MoveResult.OK) {
+            return problem;
+        }
+        boolean promotion = isPromotion(fromRow, fromCol, toRow, toCol);
+        if (promotion != (uci.length() == 5)) {
+            return MoveResult.INVALID_MOVE;
+        }
+        int promotionType = Piece.QUEEN;
+        if (promotion) {
+            int piece = Piece.fromFenChar(uci.charAt(4));
+            if (piece == Piece.NONE || Piece.type(piece) < Piece.KNIGHT || Piece.type(piece) > Piece.QUEEN) {
+                return MoveResult.INVALID_MOVE;
+            }
+            promotionType = Piece.type(piece);
+        }
+        playMove(findLegalMove(fromRow, fromCol, toRow, toCol, promotionType));
+        return MoveResult.OK;
+    }
+
+    // Why a from/to pair cannot be played, or OK if it is legal (with any promotion piece)
+    public MoveResult checkMove(int fromRow, int fromCol, int toRow, int toCol) {
+        Metrics.MoveValidationEvent event = new Metrics.MoveValidationEvent();
+        event.begin();
+        MoveResult result = validate(fromRow, fromCol, toRow, toCol);
+        if (Metrics.ENABLED) {
+            Metrics.MOVE_VALIDATIONS.increment();
+        }
+        if (event.shouldCommit()) {
+            event.move = Position.squareName(Position.square(fromRow, fromCol)) + Position.squareName(Position.square(toRow, toCol));
+            event.result = result.name();
+            event.commit();
+        }
+        return result;
+    }
+
+    private MoveResult validate(int fromRow, int fromCol, int toRow, int toCol) {
+        if (status() != Status.PLAYING) {
+            return MoveResult.GAME_OVER;
+        }
+        int piece = position.pieceAt(fromRow, fromCol);
+        if (piece == Piece.NONE) {
+            return MoveResult.NO_PIECE;
+        }
+        if (Piece.color(piece) != position.sideToMove()) {
+            return MoveResult.NOT_YOUR_TURN;
+        }
+        if (!Rules.isValidMove(position, fromRow, fromCol, toRow, toCol)) {
+            return MoveResult.INVALID_MOVE;
+        }
+        if (findLegalMove(fromRow, fromCol, toRow, toCol, Piece.QUEEN) == Move.NONE) {
+            return isInCheck() ? MoveResult.CHECK_NOT_RESOLVED : MoveResult.KING_EXPOSED;
+        }
+        return MoveResult.OK;
+    }
+
+    // Whether a legal move between the squares is a pawn promotion, i.e. needs a piece choice
+    public boolean isPromotion(int fromRow, int fromCol, int toRow, int toCol) {
+        int move = findLegalMove(fromRow, fromCol, toRow, toCol, Piece.QUEEN);
+        return move != Move.NONE && Move.isPromotion(move);
+    }
+
+    // Plays a move taken from the legal move list, e.g. one chosen by the search
+    public void playMove(int move) {
+        position.makeMove(move);
+        lastMove = move;
+        if (moveCount == history.length) {
+            history = java.util.Arrays.copyOf(history, history.length * 2);
+        }
+        // Playing the move that would be redone keeps the rest of the redo list
+        redoCount = redoCount > 0 && history[moveCount] == move ? redoCount - 1 : 0;
+        history[moveCount++] = move;
+        refreshLegalMoves();
+    }
+
+    public boolean canUndo() {
+        return moveCount > 0;
+    }
+
+    public boolean canRedo() {
+        return redoCount > 0;
+    }
+
+    // Takes back the last move and returns it, or Move.NONE at the start of the game
+    public int undoMove() {
+        if (moveCount == 0) {
+            return Move.NONE;
+        }
+        int move = history[--moveCount];
+        position.unmakeMove(move);
+        redoCount++;
+        adjudication = null;
+        lastMove = moveCount > 0 ? history[moveCount - 1] : Move.NONE;
+        refreshLegalMoves();
+        return move;
+    }
+
+    // Plays the last undone move again and returns it, or Move.NONE if there is none
+    public int redoMove() {
+        if (redoCount == 0) {
+            return Move.NONE;
+        }
+        int move = history[moveCount];
+        playMove(move);
+        return move;
+    }
+
+    public Status status() {
+        if (legalMoveCount == 0) {
+            return isInCheck() ? Status.CHECKMATE : Status.STALEMATE;
+        }
+        if (position.halfmoveClock() >= 100) {
+            return Status.FIFTY_MOVES;
+        }
+        if (position.repetitions() >= 2) {
+            return Status.REPETITION;
+        }
+        return adjudication != null ? Status.ADJUDICATED : Status.PLAYING;
+    }
+
+    // Ends a game still being played with result, "1-0", "0-1" or "1/2-1/2"
+    public void adjudicate(String result) {
+        if (!result.equals("1-0") && !result.equals("0-1") && !result.equals("1/2-1/2")) {
+            throw new IllegalArgumentException("Not a game result: " + result);
+        }
+        if (status() == Status.PLAYING) {
+            adjudication = result;
+        }
+    }
+
+    // The PGN result: "1-0" or "0-1" after checkmate, "1/2-1/2" after a draw, the adjudicated
+    // result, else "*"
+    public String result() {
+        switch (status()) {
+            case ADJUDICATED:
+                return adjudication;
+            case CHECKMATE:
+                return position.sideToMove() == Piece.WHITE ? "0-1" : "1-0";
+            case STALEMATE:
+            case FIFTY_MOVES:
+            case REPETITION:
+                return "1/2-1/2";
+            default:
+                return "*";
+        }
+    }
+
+    public boolean isInCheck() {
+        return position.isInCheck(position.sideToMove());
+    }
+
+    public int sideToMove() {
+        return position.sideToMove();
+    }
+
+    public int pieceAt(int row, int col) {
+        return position.pieceAt(row, col);
+    }
+
+    public int lastMove() {
+        return lastMove;
+    }
+
+    public String startFen() {
+        return startFen;
+    }
+
+    // Number of moves played since resetGame, not counting undone ones
+    public int moveCount() {
+        return moveCount;
+    }
+
+    public int move(int index) {
+        return history[index];
+    }
+
+    public int legalMoveCount() {
+        return legalMoveCount;
+    }
+
+    public int legalMove(int index) {
+        return legalMoves[index];
+    }
+
+    // The live position; callers must not modify it
+    public Position position() {
+        return position;
+    }
+
+    public String toFen() {
+        return position.toFen();
+    }
+
+    // Looks up a from/to pair in the legal move list, Move.NONE if it is not legal
+    private int findLegalMove(int fromRow, int fromCol, int toRow, int toCol, int promotionType) {
+        return Rules.findLegalMove(legalMoves, legalMoveCount, fromRow, fromCol, toRow, toCol, promotionType);
+    }
+
+    // Legal moves for the side to move, regenerated once per turn
+    private void refreshLegalMoves() {
+        legalMoveCount = MoveGenerator.generateLegal(position, legalMoves);
+    }
+
+    private static boolean onBoard(int row, int col) {
+        return row >= 0 && row < 8 && col >= 0 && col < 8;
+    }
+}
@@ -0,0 +1,254 @@
+package chessproject;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+// Read side of the binary game store: an append-only data file of records (games, see
+// GameCodec, and positions, see PackedPosition) and an index file holding the offset of every
+// record as a big-endian long. Both files are memory-mapped, so fetching record n is two reads
+// from the mapping and no parsing at all; only a game's moves need decoding, which regenerates
+// the legal moves ply by ply.
+//
+// An archive "db" is the files db.cpa (data) and db.cpi (index). The mapping covers the files as
+// they were when opened and is limited to 2 GB of data. Decoding uses scratch state, so give each
+// thread its own GameArchive; mapping the same files again is cheap.
+//
+// Usage:
+//   java -cp ChessProject.jar chessproject.GameArchive import db games.pgn [more.pgn ...]
+//   java -cp ChessProject.jar chessproject.GameArchive export db games.pgn
+//   java -cp ChessProject.jar chessproject.GameArchive add-fen db "<fen>"
+//   java -cp ChessProject.jar chessproject.GameArchive show db <record>
+//   java -cp ChessProject.jar chessproject.GameArchive bench db
+public final class GameArchive implements Closeable {
+    public static final int GAME = 1;
+    public static final int POSITION = 2;
+    static final long MAGIC = 0x4350_4152_4348_0001L; // "CPARCH" and format version 1
+
+    private final FileChannel dataChannel;
+    private final MappedByteBuffer data;
+    private final MappedByteBuffer index;
+    private final int count;
+    private final GameCodec codec = new GameCodec();
+
+    private GameArchive(FileChannel dataChannel, MappedByteBuffer data, MappedByteBuffer index) throws IOException {
+        this.dataChannel = dataChannel;
+        this.data = data;
+        this.index = index;
+        this.count = index.capacity() / Long.BYTES;
+        if (data.capacity() < Long.BYTES || data.getLong(0) != MAGIC) {
+            throw new IOException("Not a game archive");
+        }
+    }
+
+    public static GameArchive open(Path archive) throws IOException {
+        FileChannel dataChannel = FileChannel.open(dataPath(archive), StandardOpenOption.READ);
+        try (FileChannel indexChannel = FileChannel.open(indexPath(archive), StandardOpenOption.READ)) {
+            if (dataChannel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Archive data over 2 GB, split it into several archives");
+            }
+            MappedByteBuffer data = dataChannel.map(FileChannel.MapMode.READ_ONLY, 0, dataChannel.size());
+            MappedByteBuffer index = indexChannel.map(FileChannel.MapMode.READ_ONLY, 0, indexChannel.size() & ~7L);
+            return new GameArchive(dataChannel, data, index);
+        } catch (IOException | RuntimeException e) {
+            dataChannel.close();
+            throw e;
+        }
+    }
+
+    static Path dataPath(Path archive) {
+        return archive.resolveSibling(archive.getFileName() + ".cpa");
+    }
+
+    static Path indexPath(Path archive) {
+        return archive.resolveSibling(archive.getFileName() + ".cpi");
+    }
+
+    // Number of records
+    public int size() {
+        return count;
+    }
+
+    // GAME or POSITION
+    public int kind(int record) {
+        return data.get(offset(record));
+    }
+
+    public int plies(int record) {
+        return GameCodec.plies(data, payload(record, GAME));
+    }
+
+    public String result(int record) {
+        return GameCodec.result(data, payload(record, GAME));
+    }
+
+    // Loads a game's start position into start and its moves into moves, which must hold
+    // plies(record) of them; returns the ply count. Allocates nothing.
+    public int game(int record, Position start, int[] moves) {
+        return codec.decode(data, payload(record, GAME), start, moves);
+    }
+
+    public PgnGame game(int record) {
+        return codec.decode(data, payload(record, GAME));
+    }
+
+    // Loads a stored position; for a game record, the position the game starts from
+    public void position(int record, Position out) {
+        if (kind(record) == GAME) {
+            game(record, out, new int[plies(record)]);
+        } else {
+            PackedPosition.unpack(data, payload(record, POSITION), out);
+        }
+    }
+
+    public String fen(int record) {
+        Position position = new Position();
+        position(record, position);
+        return position.toFen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        dataChannel.close();
+    }
+
+    private int offset(int record) {
+        if (record < 0 || record >= count) {
+            throw new IndexOutOfBoundsException("Record " + record + " of " + count);
+        }
+        return (int) index.getLong(record * Long.BYTES);
+    }
+
+    // Offset of the record's payload, after checking it is of the expected kind
+    private int payload(int record, int kind) {
+        int offset = offset(record);
+        if (data.get(offset) != kind) {
+            throw new IllegalArgumentException("Record " + record + " is not a " + (kind == GAME ? "game" : "position"));
+        }
+        return offset + 1;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: GameArchive import|export|add-fen|show|bench <archive> [arguments]");
+            System.exit(2);
+        }
+        Path archive = Path.of(args[1]);
+        switch (args[0]) {
+            case "import":
+                importPgn(archive, args);
+                break;
+            case "export":
+                exportPgn(archive, Path.of(args[2]));
+                break;
+            case "add-fen":
+                try (GameArchiveWriter writer = GameArchiveWriter.open(archive)) {
+                    System.out.println("Record " + writer.addFen(args[2]));
+                }
+                break;
+            case "show":
+                try (GameArchive reader = open(archive)) {
+                    int record = Integer.parseInt(args[2]);
+                    if (reader.kind(record) == POSITION) {
+                        System.out.println(reader.fen(record));
+                    } else {
+                        StringWriter text = new StringWriter();
+                        new PgnWriter(text).write(reader.game(record));
+                        System.out.print(text);
+                    }
+                }
+                break;
+            case "bench":
+                bench(archive);
+                break;
+            default:
+                System.err.println("Unknown command: " + args[0]);
+                System.exit(2);
+        }
+    }
+
+    private static void importPgn(Path archive, String[] args) throws IOException {
+        long start = System.nanoTime();
+        long pgnBytes = 0;
+        long plies = 0;
+        int games = 0;
+        int skipped = 0;
+        try (GameArchiveWriter writer = GameArchiveWriter.open(archive)) {
+            for (int i = 2; i < args.length; i++) {
+                try (PgnReader reader = PgnReader.open(Path.of(args[i]))) {
+                    while (reader.hasNext()) {
+                        PgnGame game = reader.next();
+                        if (!game.isValid() || game.moveCount() > GameCodec.MAX_PLIES) {
+                            skipped++;
+                            continue;
+                        }
+                        writer.addGame(game);
+                        games++;
+                        plies += game.moveCount();
+                    }
+                    pgnBytes += reader.bytesRead();
+                }
+            }
+        }
+        long archiveBytes = Files.size(dataPath(archive)) + Files.size(indexPath(archive));
+        System.out.printf("Imported %,d games (%,d skipped), %,d plies in %.2f s%n", games, skipped, plies, (System.nanoTime() - start) / 1e9);
+        System.out.printf("PGN %,.1f MB, archive %,.1f MB in total%n", pgnBytes / 1e6, archiveBytes / 1e6);
+    }
+
+    private static void exportPgn(Path archive, Path pgn) throws IOException {
+        int games = 0;
+        try (GameArchive reader = open(archive); PgnWriter writer = PgnWriter.open(pgn)) {
+            for (int record = 0; record < reader.size(); record++) {
+                if (reader.kind(record) == GAME) {
+                    writer.write(reader.game(record));
+                    games++;
+                }
+            }
+        }
+        System.out.printf("Exported %,d games%n", games);
+    }
+
+    // Sequential and random-access decoding rates, against reading the same games as PGN text
+    private static void bench(Path archive) throws IOException {
+        try (GameArchive reader = open(archive)) {
+            Position start = new Position();
+            int[] moves = new int[GameCodec.MAX_PLIES];
+            for (int pass = 0; pass < 3; pass++) {
+                long begin = System.nanoTime();
+                long plies = 0;
+                int games = 0;
+                for (int record = 0; record < reader.size(); record++) {
+                    if (reader.kind(record) == GAME) {
+                        plies += reader.game(record, start, moves);
+                        games++;
+                    }
+                }
+                long nanos = System.nanoTime() - begin;
+                System.out.printf("sequential  %,d games in %.2f s: %,.0f games/s, %,.0f plies/s%n",
+                        games, nanos / 1e9, games * 1e9 / nanos, plies * 1e9 / nanos);
+            }
+            Random random = new Random(1);
+            int lookups = Math.min(100_000, reader.size());
+            long begin = System.nanoTime();
+            long plies = 0;
+            for (int i = 0; i < lookups; i++) {
+                int record = random.nextInt(reader.size());
+                if (reader.kind(record) == GAME) {
+                    plies += reader.game(record, start, moves);
+                } else {
+                    reader.position(record, start);
+                }
+            }
+            long nanos = System.nanoTime() - begin;
+            System.out.printf("random      %,d records in %.2f s: %,.0f records/s, %,.0f plies/s%n",
+                    lookups, nanos / 1e9, lookups * 1e9 / nanos, plies * 1e9 / nanos);
+        }
+    }
+}
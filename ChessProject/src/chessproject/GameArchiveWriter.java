@@ -0,0 +1,115 @@
+package chessproject;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Appends games and positions to a GameArchive, creating it if needed. Records go to the data
+// file and their offsets to the index; on flush the data is written before the index, so an
+// interrupted run leaves at worst unindexed bytes at the end of the data file, never an index
+// entry without its record.
+public final class GameArchiveWriter implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 17; // Holds the largest possible game
+
+    private final FileChannel data;
+    private final FileChannel index;
+    private final ByteBuffer dataBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final ByteBuffer indexBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final GameCodec codec = new GameCodec();
+    private long offset; // Where the next record starts in the data file
+    private int count;
+
+    private GameArchiveWriter(FileChannel data, FileChannel index) throws IOException {
+        this.data = data;
+        this.index = index;
+        if (data.size() == 0) {
+            dataBuffer.putLong(GameArchive.MAGIC);
+        }
+        offset = data.size() + dataBuffer.position();
+        count = (int) (index.size() / Long.BYTES);
+    }
+
+    public static GameArchiveWriter open(Path archive) throws IOException {
+        FileChannel data = FileChannel.open(GameArchive.dataPath(archive),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        FileChannel index = FileChannel.open(GameArchive.indexPath(archive),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        return new GameArchiveWriter(data, index);
+    }
+
+    // Appends a game and returns its record number
+    public int addGame(PgnGame game) throws IOException {
+        reserve(1 + GameCodec.maxSize(game.moveCount()));
+        int start = dataBuffer.position();
+        dataBuffer.put((byte) GameArchive.GAME);
+        try {
+            codec.encode(game, dataBuffer);
+        } catch (IllegalArgumentException e) {
+            dataBuffer.position(start);
+            throw e;
+        }
+        return addRecord(dataBuffer.position() - start);
+    }
+
+    // Appends a position and returns its record number
+    public int addPosition(Position position) throws IOException {
+        reserve(1 + PackedPosition.SIZE);
+        dataBuffer.put((byte) GameArchive.POSITION);
+        PackedPosition.pack(position, dataBuffer);
+        return addRecord(1 + PackedPosition.SIZE);
+    }
+
+    public int addFen(String fen) throws IOException {
+        Position position = new Position();
+        position.setFen(fen);
+        return addPosition(position);
+    }
+
+    // Records in the archive, including those already there when it was opened
+    public int count() {
+        return count;
+    }
+
+    public void flush() throws IOException {
+        write(data, dataBuffer);
+        write(index, indexBuffer);
+        data.force(false);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            data.close();
+            index.close();
+        }
+    }
+
+    private int addRecord(int length) throws IOException {
+        if (indexBuffer.remaining() < Long.BYTES) {
+            write(data, dataBuffer); // Data before index, see above
+            write(index, indexBuffer);
+        }
+        indexBuffer.putLong(offset);
+        offset += length;
+        return count++;
+    }
+
+    private void reserve(int bytes) throws IOException {
+        if (dataBuffer.remaining() < bytes) {
+            write(data, dataBuffer);
+        }
+    }
+
+    private static void write(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
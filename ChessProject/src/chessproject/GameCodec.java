@@ -0,0 +1,148 @@
+package chessproject;
+
+import java.nio.ByteBuffer;
+
+// Binary game encoding. Each move is stored as its index in the MoveGenerator.generateLegal
+// list of the position it is played in, in just enough bits to tell that many moves apart: 0 bits
+// for a forced move, at most 8 since no position has more than 218 legal moves. A typical game
+// costs a little over 5 bits per ply. Decoding regenerates the legal moves at every ply, so it
+// depends on generateLegal keeping its move order.
+//
+// Layout:
+//   byte 0        result (bits 0-1, see RESULTS), start position follows (bit 2)
+//   32 bytes      the start position (see PackedPosition), only if bit 2 is set
+//   2 bytes       ply count, big-endian
+//   ...           the move indexes, packed most significant bit first
+public final class GameCodec {
+    public static final String[] RESULTS = {"*", "1-0", "0-1", "1/2-1/2"};
+    public static final int MAX_PLIES = 65535;
+    private static final int HAS_START = 4;
+
+    private final Position position = new Position();
+    private final int[] moves = new int[MoveGenerator.MAX_MOVES];
+
+    // The encoded size of a game is at most this many bytes
+    public static int maxSize(int plies) {
+        return 1 + PackedPosition.SIZE + 2 + plies;
+    }
+
+    // Appends the game at the buffer's position, which must have maxSize(moveCount) bytes left.
+    // Throws IllegalArgumentException if a move is not legal where it is played.
+    public void encode(PgnGame game, ByteBuffer out) {
+        if (game.moveCount() > MAX_PLIES) {
+            throw new IllegalArgumentException("Too many plies: " + game.moveCount());
+        }
+        position.setFen(game.startFen());
+        boolean standardStart = game.tag("FEN") == null;
+        out.put((byte) (resultCode(game.result()) | (standardStart ? 0 : HAS_START)));
+        if (!standardStart) {
+            PackedPosition.pack(position, out);
+        }
+        out.putShort((short) game.moveCount());
+
+        long bits = 0; // Pending bits, right-aligned
+        int pending = 0;
+        for (int i = 0; i < game.moveCount(); i++) {
+            int move = game.move(i);
+            int count = MoveGenerator.generateLegal(position, moves);
+            int index = indexOf(move, count);
+            if (index < 0) {
+                throw new IllegalArgumentException("Illegal move " + Move.toUci(move) + " at ply " + (i + 1));
+            }
+            int width = width(count);
+            bits = bits << width | index;
+            pending += width;
+            while (pending >= 8) {
+                pending -= 8;
+                out.put((byte) (bits >>> pending));
+            }
+            position.makeMove(move);
+        }
+        if (pending > 0) {
+            out.put((byte) (bits << (8 - pending)));
+        }
+    }
+
+    // Decodes the game at offset: loads its start position into start and its moves into out,
+    // which must hold the ply count (see plies). Returns the ply count.
+    public int decode(ByteBuffer in, int offset, Position start, int[] out) {
+        int header = in.get(offset);
+        int pos = offset + 1;
+        if ((header & HAS_START) != 0) {
+            PackedPosition.unpack(in, pos, start);
+            pos += PackedPosition.SIZE;
+        } else {
+            start.setStartPosition();
+        }
+        int plies = in.getShort(pos) & 0xFFFF;
+        pos += 2;
+
+        position.copyFrom(start);
+        long bits = 0;
+        int available = 0;
+        for (int i = 0; i < plies; i++) {
+            int count = MoveGenerator.generateLegal(position, moves);
+            int width = width(count);
+            if (available < width) {
+                bits = bits << 8 | (in.get(pos++) & 0xFF);
+                available += 8;
+            }
+            available -= width;
+            int index = (int) (bits >>> available) & ((1 << width) - 1);
+            if (index >= count) {
+                throw new IllegalArgumentException("Corrupt game record at " + offset + ", ply " + (i + 1));
+            }
+            out[i] = moves[index];
+            position.makeMove(moves[index]);
+        }
+        return plies;
+    }
+
+    public PgnGame decode(ByteBuffer in, int offset) {
+        Position start = new Position();
+        int[] buffer = new int[plies(in, offset)];
+        int plies = decode(in, offset, start, buffer);
+        PgnGame game = new PgnGame();
+        if (!start.toFen().equals(Position.START_FEN)) {
+            game.setTag("SetUp", "1");
+            game.setTag("FEN", start.toFen());
+        }
+        for (int i = 0; i < plies; i++) {
+            game.addMove(buffer[i]);
+        }
+        game.setResult(result(in, offset));
+        return game;
+    }
+
+    public static int plies(ByteBuffer in, int offset) {
+        int start = (in.get(offset) & HAS_START) != 0 ? PackedPosition.SIZE : 0;
+        return in.getShort(offset + 1 + start) & 0xFFFF;
+    }
+
+    public static String result(ByteBuffer in, int offset) {
+        return RESULTS[in.get(offset) & 3];
+    }
+
+    private static int resultCode(String result) {
+        for (int i = 1; i < RESULTS.length; i++) {
+            if (RESULTS[i].equals(result)) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    private int indexOf(int move, int count) {
+        for (int i = 0; i < count; i++) {
+            if (moves[i] == move) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Bits needed for an index below count
+    private static int width(int count) {
+        return 32 - Integer.numberOfLeadingZeros(count - 1);
+    }
+}
@@ -0,0 +1,214 @@
+package chessproject;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Load test for GameServer: plays thousands of games at the same time, each on its own virtual
+// thread, picking random legal moves from the server's replies. Reports the round-trip latency
+// of the move requests, which is the time the server needs to validate and play a move plus
+// the loopback network.
+//
+// All games are in progress at once, but at most --connections move requests are in flight at
+// a time so the test does not need a socket (and the server a file descriptor) per game. Time
+// spent waiting for a free connection is not counted as latency.
+//
+// Usage:
+//   java -cp ChessProject.jar chessproject.GameLoadTest [--local | --url http://127.0.0.1:8080]
+//        [--games 10000] [--plies 40] [--connections 1000] [--seed 1]
+// --local starts a server inside the test on a free port instead of using a running one.
+public final class GameLoadTest {
+    private static final int DEFAULT_GAMES = 10_000;
+    private static final int DEFAULT_PLIES = 40;
+    private static final int DEFAULT_CONNECTIONS = 1000;
+
+    private final HttpClient client;
+    private final String baseUrl;
+    private final Semaphore connections;
+    private final ConcurrentLinkedQueue<long[]> latencies = new ConcurrentLinkedQueue<>();
+    private final AtomicLong rejectedMoves = new AtomicLong();
+    private final AtomicLong failedGames = new AtomicLong();
+
+    private GameLoadTest(HttpClient client, String baseUrl, int connections) {
+        this.client = client;
+        this.baseUrl = baseUrl;
+        this.connections = new Semaphore(connections);
+    }
+
+    // Plays one game of up to plies random moves, recording the latency of every move request
+    private void playGame(long seed, int plies, CountDownLatch start) {
+        Random random = new Random(seed);
+        long[] nanos = new long[plies + 1];
+        int moves = 0;
+        try {
+            start.await();
+            String state = send(HttpRequest.newBuilder(URI.create(baseUrl + "/games"))
+                    .POST(HttpRequest.BodyPublishers.noBody()), 201, nanos, moves);
+            String gameUrl = baseUrl + "/games/" + numberField(state, "id");
+            while (moves < plies && "PLAYING".equals(stringField(state, "status"))) {
+                String[] legal = legalMoves(state);
+                String move = legal[random.nextInt(legal.length)];
+                state = send(HttpRequest.newBuilder(URI.create(gameUrl + "/move"))
+                        .POST(HttpRequest.BodyPublishers.ofString(move)), 200, nanos, moves++);
+                if (!"OK".equals(stringField(state, "result"))) {
+                    rejectedMoves.incrementAndGet(); // The server refused a move it listed as legal
+                    break;
+                }
+            }
+            send(HttpRequest.newBuilder(URI.create(gameUrl)).DELETE(), 204, nanos, moves);
+        } catch (IOException | RuntimeException e) {
+            if (failedGames.getAndIncrement() == 0) {
+                System.err.println("First failed game: " + e);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        latencies.add(Arrays.copyOf(nanos, moves));
+    }
+
+    // Sends a request once a connection is free and stores its round-trip time in nanos[slot]
+    private String send(HttpRequest.Builder request, int expectedStatus, long[] nanos, int slot)
+            throws IOException, InterruptedException {
+        HttpResponse<String> response;
+        connections.acquire();
+        try {
+            long begin = System.nanoTime();
+            response = client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+            nanos[slot] = System.nanoTime() - begin;
+        } finally {
+            connections.release();
+        }
+        if (response.statusCode() != expectedStatus) {
+            throw new IOException("HTTP " + response.statusCode() + ": " + response.body());
+        }
+        return response.body();
+    }
+
+    // Just enough JSON for the server's flat replies
+    private static String stringField(String json, String name) {
+        String key = "\"" + name + "\":\"";
+        int start = json.indexOf(key);
+        if (start < 0) {
+            return null;
+        }
+        start += key.length();
+        return json.substring(start, json.indexOf('"', start));
+    }
+
+    private static long numberField(String json, String name) {
+        String key = "\"" + name + "\":";
+        int start = json.indexOf(key) + key.length();
+        int end = start;
+        while (end < json.length() && Character.isDigit(json.charAt(end))) {
+            end++;
+        }
+        return Long.parseLong(json.substring(start, end));
+    }
+
+    private static String[] legalMoves(String json) {
+        int start = json.indexOf("\"legal\":[") + "\"legal\":[".length();
+        int end = json.indexOf(']', start);
+        if (end == start) {
+            return new String[0];
+        }
+        return json.substring(start, end).replace("\"", "").split(",");
+    }
+
+    private static double percentileMillis(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+
+    public static void main(String[] args) throws Exception {
+        String url = "http://127.0.0.1:" + GameServer.DEFAULT_PORT;
+        boolean local = false;
+        int games = DEFAULT_GAMES;
+        int plies = DEFAULT_PLIES;
+        int connections = DEFAULT_CONNECTIONS;
+        long seed = 1;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--url":
+                    url = args[++i];
+                    break;
+                case "--local":
+                    local = true;
+                    break;
+                case "--games":
+                    games = Integer.parseInt(args[++i]);
+                    break;
+                case "--plies":
+                    plies = Integer.parseInt(args[++i]);
+                    break;
+                case "--connections":
+                    connections = Integer.parseInt(args[++i]);
+                    break;
+                case "--seed":
+                    seed = Long.parseLong(args[++i]);
+                    break;
+                default:
+                    System.err.println("Unknown argument: " + args[i]);
+                    System.exit(2);
+            }
+        }
+
+        GameServer server = null;
+        if (local) {
+            server = new GameServer(0);
+            server.start();
+            url = "http://127.0.0.1:" + server.port();
+        }
+
+        long wallNanos;
+        GameLoadTest test;
+        // The client gets its own executor: the games' executor is shut down to wait for them
+        try (ExecutorService clientThreads = Executors.newVirtualThreadPerTaskExecutor();
+             HttpClient client = HttpClient.newBuilder()
+                     .version(HttpClient.Version.HTTP_1_1)
+                     .executor(clientThreads)
+                     .build();
+             ExecutorService threads = Executors.newVirtualThreadPerTaskExecutor()) {
+            test = new GameLoadTest(client, url, connections);
+            CountDownLatch start = new CountDownLatch(1);
+            for (int game = 0; game < games; game++) {
+                long gameSeed = seed * 1_000_003L + game;
+                int gamePlies = plies;
+                threads.submit(() -> test.playGame(gameSeed, gamePlies, start));
+            }
+            long begin = System.nanoTime();
+            start.countDown();
+            threads.shutdown();
+            while (!threads.awaitTermination(1, TimeUnit.SECONDS)) {
+                // Keep waiting, every game ends on its own
+            }
+            wallNanos = System.nanoTime() - begin;
+        } finally {
+            if (server != null) {
+                server.stop();
+            }
+        }
+
+        long[] all = test.latencies.stream().flatMapToLong(Arrays::stream).sorted().toArray();
+        System.out.printf("%,d games, %,d moves in %.1f s (%,.0f moves/s), %d failed games, %d rejected moves%n",
+                games, all.length, wallNanos / 1e9, all.length / (wallNanos / 1e9),
+                test.failedGames.get(), test.rejectedMoves.get());
+        System.out.printf("move latency  p50 %.2f ms  p90 %.2f ms  p99 %.2f ms  max %.2f ms%n",
+                percentileMillis(all, 50), percentileMillis(all, 90), percentileMillis(all, 99),
+                percentileMillis(all, 100));
+        System.exit(test.failedGames.get() == 0 && test.rejectedMoves.get() == 0 ? 0 : 1);
+    }
+}
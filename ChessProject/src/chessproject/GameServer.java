@@ -0,0 +1,234 @@
+package chessproject;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Headless HTTP server hosting many games at once, one Game per session. Every exchange is
+// handled on its own virtual thread, so thousands of mostly idle connections cost little more
+// than their sockets. Binds to the loopback interface only.
+//
+//   POST   /games             new game, optionally from ?fen=<url-encoded FEN>   201
+//   GET    /games/{id}        current state
+//   POST   /games/{id}/move   body is the move in UCI notation, e.g. e2e4 or e7e8q
+//   POST   /games/{id}/reset  back to the position the game was created from
+//   DELETE /games/{id}        ends the session                                  204
+//
+// Responses are JSON objects: id, fen, turn, status, check, legal (UCI moves) and, for moves,
+// result (a Game.MoveResult name). A rejected move is still a 200 response; it is the move that
+// was wrong, not the request. A body that does not name two squares is not a move at all: 400.
+//
+// Usage:
+//   java -cp ChessProject.jar chessproject.GameServer [--port 8080]
+public final class GameServer {
+    public static final int DEFAULT_PORT = 8080;
+    private static final int BACKLOG = 4096;
+    private static final int MAX_BODY = 64;
+
+    static {
+        // The JDK server writes the headers and the body of a reply separately. Without
+        // TCP_NODELAY the body then waits for the client's delayed ACK, about 40 ms per request.
+        // Read once when the first server is created, so it has to be set before that.
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final ConcurrentHashMap<Long, Game> games = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong(1);
+
+    // Port 0 picks a free port, see port()
+    public GameServer(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), BACKLOG);
+        server.createContext("/games", this::handle);
+        server.setExecutor(executor);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    public int gameCount() {
+        return games.size();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String method = exchange.getRequestMethod();
+            String[] path = exchange.getRequestURI().getPath().split("/");
+            // path[0] is empty, path[1] is "games"
+            if (path.length < 2 || !path[1].equals("games")) {
+                send(exchange, 404, error("Not found: " + exchange.getRequestURI().getPath()));
+                return;
+            }
+            if (path.length == 2) {
+                if (!method.equals("POST")) {
+                    send(exchange, 405, error("Use POST to create a game"));
+                    return;
+                }
+                createGame(exchange);
+                return;
+            }
+
+            long id;
+            try {
+                id = Long.parseLong(path[2]);
+            } catch (NumberFormatException e) {
+                send(exchange, 404, error("No such game: " + path[2]));
+                return;
+            }
+            Game game = games.get(id);
+            if (game == null || path.length > 4) {
+                send(exchange, 404, error("No such game: " + exchange.getRequestURI().getPath()));
+                return;
+            }
+            String action = path.length == 4 ? path[3] : "";
+            // Build the reply under the game's lock but send it outside: a virtual thread
+            // blocking on I/O inside synchronized would pin its carrier thread
+            String reply;
+            switch (method + " " + action) {
+                case "GET ":
+                    synchronized (game) {
+                        reply = state(id, game, null);
+                    }
+                    break;
+                case "DELETE ":
+                    games.remove(id);
+                    send(exchange, 204, null);
+                    return;
+                case "POST move":
+                    String uci = readBody(exchange);
+                    if (!isUciMove(uci)) {
+                        send(exchange, 400, error("Not a move in UCI notation"));
+                        return;
+                    }
+                    synchronized (game) {
+                        reply = state(id, game, game.tryMove(uci));
+                    }
+                    break;
+                case "POST reset":
+                    synchronized (game) {
+                        game.resetGame(game.startFen());
+                        reply = state(id, game, null);
+                    }
+                    break;
+                default:
+                    send(exchange, 405, error("Unsupported request: " + method + " " + exchange.getRequestURI().getPath()));
+                    return;
+            }
+            send(exchange, 200, reply);
+        }
+    }
+
+    private void createGame(HttpExchange exchange) throws IOException {
+        Game game = new Game();
+        String query = exchange.getRequestURI().getQuery(); // Already decoded
+        if (query != null && query.startsWith("fen=")) {
+            try {
+                game.resetGame(query.substring(4));
+            } catch (RuntimeException e) {
+                // Whatever the FEN trips over is the client's input, not a server failure
+                send(exchange, 400, error("Bad FEN: " + (e instanceof IllegalArgumentException ? e.getMessage() : e.toString())));
+                return;
+            }
+        }
+        long id = nextId.getAndIncrement();
+        games.put(id, game);
+        send(exchange, 201, state(id, game, null));
+    }
+
+    // Two squares and an optional promotion letter; whether it is legal is the game's business
+    private static boolean isUciMove(String uci) {
+        if (uci.length() < 4 || uci.length() > 5) {
+            return false;
+        }
+        for (int i = 0; i < 4; i += 2) {
+            char file = uci.charAt(i), rank = uci.charAt(i + 1);
+            if (file < 'a' || file > 'h' || rank < '1' || rank > '8') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String readBody(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] body = in.readNBytes(MAX_BODY);
+            return new String(body, StandardCharsets.US_ASCII).trim();
+        }
+    }
+
+    private static String state(long id, Game game, Game.MoveResult result) {
+        StringBuilder json = new StringBuilder(256 + 8 * game.legalMoveCount());
+        json.append("{\"id\":").append(id);
+        if (result != null) {
+            json.append(",\"result\":\"").append(result.name()).append('"');
+        }
+        json.append(",\"fen\":\"").append(game.toFen()).append('"');
+        json.append(",\"turn\":\"").append(game.sideToMove() == Piece.WHITE ? "white" : "black").append('"');
+        json.append(",\"status\":\"").append(game.status().name()).append('"');
+        json.append(",\"check\":").append(game.isInCheck());
+        json.append(",\"legal\":[");
+        for (int i = 0; i < game.legalMoveCount(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append('"').append(Move.toUci(game.legalMove(i))).append('"');
+        }
+        return json.append("]}").toString();
+    }
+
+    private static String error(String message) {
+        return "{\"error\":\"" + message.replace("\\", "\\\\").replace("\"", "\\\"") + "\"}";
+    }
+
+    private static void send(HttpExchange exchange, int status, String json) throws IOException {
+        if (json == null) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = DEFAULT_PORT;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--port":
+                    port = Integer.parseInt(args[++i]);
+                    break;
+                default:
+                    System.err.println("Unknown argument: " + args[i]);
+                    System.exit(2);
+            }
+        }
+        GameServer server = new GameServer(port);
+        server.start();
+        System.out.println("Game server listening on http://127.0.0.1:" + server.port() + "/games");
+    }
+}
@@ -0,0 +1,81 @@
+package chessproject;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Lock-free histogram of durations in nanoseconds with about 6% resolution: every power of two
+// is split into 16 linear buckets, from 1 microsecond up to about 2 hours; shorter durations
+// share the first bucket and longer ones the last. Recording is two atomic adds.
+public final class LatencyHistogram {
+    private static final int SUB_BUCKETS = 16;
+    private static final int SUB_BITS = 4;
+    private static final int MIN_SHIFT = 10; // Durations below 2^10 ns (about 1 microsecond) share bucket 0
+    private static final int OCTAVES = 30;
+
+    private final AtomicLongArray counts = new AtomicLongArray(OCTAVES * SUB_BUCKETS);
+    private final LongAdder total = new LongAdder();
+
+    public void record(long nanos) {
+        counts.incrementAndGet(bucket(nanos));
+        total.add(nanos);
+    }
+
+    static int bucket(long nanos) {
+        long value = Math.max(nanos, 0) >>> MIN_SHIFT;
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int octave = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS + 1; // 1 for [16, 32)
+        if (octave >= OCTAVES) {
+            return OCTAVES * SUB_BUCKETS - 1;
+        }
+        int sub = (int) (value >>> (octave - 1)) - SUB_BUCKETS;
+        return octave * SUB_BUCKETS + sub;
+    }
+
+    // The smallest duration that falls in bucket
+    static long lowerBound(int bucket) {
+        int octave = bucket / SUB_BUCKETS;
+        int sub = bucket % SUB_BUCKETS;
+        long value = octave == 0 ? sub : (long) (SUB_BUCKETS + sub) << (octave - 1);
+        return value << MIN_SHIFT;
+    }
+
+    public long count() {
+        long count = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    public long totalNanos() {
+        return total.sum();
+    }
+
+    // Upper edge of the bucket holding the given fraction (0 to 1) of the recorded durations,
+    // 0 if nothing was recorded
+    public long percentile(double fraction) {
+        long count = count();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(fraction * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return i + 1 < counts.length() ? lowerBound(i + 1) : lowerBound(i);
+            }
+        }
+        return lowerBound(counts.length() - 1);
+    }
+
+    // count, mean and percentiles in milliseconds, e.g. for a metrics dump
+    public String summary() {
+        long count = count();
+        return String.format("count %d  mean %.3f  p50 %.3f  p90 %.3f  p99 %.3f  p99.9 %.3f  max %.3f ms",
+                count, count == 0 ? 0 : totalNanos() / 1e6 / count, percentile(0.5) / 1e6, percentile(0.9) / 1e6,
+                percentile(0.99) / 1e6, percentile(0.999) / 1e6, percentile(1) / 1e6);
+    }
+}
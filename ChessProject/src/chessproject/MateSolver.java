@@ -0,0 +1,439 @@
+package chessproject;
+
+import java.util.Arrays;
+
+// Proves or disproves that the side to move can force mate within n moves, with depth-first
+// proof-number search (df-pn). Every node has a proof number phi and a disproof number delta from
+// the point of view of its side to move: how many leaves would at least have to be resolved to
+// show that this side gets what it wants (the attacker a mate, the defender an escape), and to
+// show that it does not. A node's phi is the smallest delta of its children and its delta the sum
+// of their phis. The search always expands the most proving child and only backs up when the
+// node's numbers reach the thresholds it was given, so it behaves like best-first proof-number
+// search while using memory only for the transposition table.
+//
+// The remaining plies are part of every node, so the search graph has no cycles and a table
+// entry is only valid for the same distance to the horizon. Attacker nodes one ply from the
+// horizon are solved outright by trying every move for mate. An unexpanded defender node starts
+// with a delta of its number of legal replies, which sends the search down checks first.
+//
+// While a node is expanded it keeps its children's numbers in a buffer of its own and updates
+// them from what each child search returns, so it never depends on the table for them: a child
+// whose entry was lost to a collision cannot look unexpanded again and be picked over and over.
+// The table holds buckets of two entries. The first keeps whichever of the two is further from
+// the horizon, a proven or disproven one winning a tie, and the second always takes the newest
+// entry that did not make it into the first.
+//
+// Entries are keyed on the Zobrist key, so the table is kept across positions and proofs of
+// shared subtrees carry over until clear(). A MateSolver is single-threaded; give each thread its
+// own. See PuzzleMiner for running many positions in parallel.
+public final class MateSolver {
+    public static final int MATE = 1;
+    public static final int NO_MATE = 0;
+    public static final int UNKNOWN = -1; // The node budget ran out first
+    public static final int MAX_MOVES_TO_MATE = 16;
+    public static final int DEFAULT_TABLE_BITS = 18;
+    static final int INFINITY = 1 << 28;
+
+    // Name, FEN, moves and the expected mateIn result (0 for no mate), each within SUITE_NODES
+    private static final Object[][] SUITE = {
+        {"kiwipete", "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1", 3, 0},
+        {"morphy", "kbK5/pp6/1P6/8/8/8/8/R7 w - - 0 1", 3, 2},
+        {"queen and knight", "rn2kb1r/4p2p/p4pN1/qpp3P1/PnpP1B2/3Q1P2/RP2P2P/1N2KB1b b kq - 7 18", 3, 3},
+    };
+    private static final long SUITE_NODES = 200_000;
+
+    private final long[] keys;
+    private final int[] phis;
+    private final int[] deltas;
+    private final byte[] depths; // Plies of each entry
+    private final int mask;
+    private final Position position = new Position();
+    private final int[][] moveBuffers = new int[2 * MAX_MOVES_TO_MATE][MoveGenerator.MAX_MOVES];
+    private final long[][] keyBuffers = new long[2 * MAX_MOVES_TO_MATE][MoveGenerator.MAX_MOVES]; // Keys after each move
+    private final int[][] phiBuffers = new int[2 * MAX_MOVES_TO_MATE][MoveGenerator.MAX_MOVES]; // Numbers of each child
+    private final int[][] deltaBuffers = new int[2 * MAX_MOVES_TO_MATE][MoveGenerator.MAX_MOVES];
+    private final int[] probe = new int[2]; // phi and delta from lookup, initialize and mid
+    private long nodes;
+    private long totalNodes;
+    private long nodeLimit;
+
+    public MateSolver() {
+        this(DEFAULT_TABLE_BITS);
+    }
+
+    // The table has 2^tableBits entries of 17 bytes
+    public MateSolver(int tableBits) {
+        if (tableBits < 1 || tableBits > 30) {
+            throw new IllegalArgumentException("Table bits must be 1 to 30: " + tableBits);
+        }
+        keys = new long[1 << tableBits];
+        phis = new int[1 << tableBits];
+        deltas = new int[1 << tableBits];
+        depths = new byte[1 << tableBits];
+        mask = keys.length - 1;
+    }
+
+    // MATE if the side to move mates within n moves, NO_MATE if it cannot, UNKNOWN if that was not
+    // settled within nodeLimit nodes
+    public int solve(Position start, int n, long nodeLimit) {
+        checkMoves(n);
+        position.copyFrom(start);
+        return solvePlies(2 * n - 1, nodeLimit);
+    }
+
+    // The fewest moves to mate up to maxN, 0 if there is no mate within maxN, or UNKNOWN if a
+    // search ran out of nodes before that was settled
+    public int mateIn(Position start, int maxN, long nodeLimit) {
+        checkMoves(maxN);
+        for (int n = 1; n <= maxN; n++) {
+            position.copyFrom(start);
+            int result = solvePlies(2 * n - 1, nodeLimit);
+            if (result != NO_MATE) {
+                return result == MATE ? n : UNKNOWN;
+            }
+        }
+        return 0;
+    }
+
+    // The first moves that mate within n moves, which a puzzle wants to be exactly one; null if a
+    // search ran out of nodes
+    public int[] keyMoves(Position start, int n, long nodeLimit) {
+        checkMoves(n);
+        position.copyFrom(start);
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+        int count = MoveGenerator.generateLegal(position, moves);
+        int found = 0;
+        for (int i = 0; i < count; i++) {
+            position.makeMove(moves[i]);
+            int result = solvePlies(2 * n - 2, nodeLimit);
+            position.unmakeMove(moves[i]);
+            if (result == UNKNOWN) {
+                return null;
+            }
+            if (result == MATE) {
+                moves[found++] = moves[i];
+            }
+        }
+        return Arrays.copyOf(moves, found);
+    }
+
+    // A main line of a mate in n: the first attacker move that keeps the mate at every step, and
+    // the defence that puts it off longest. Null if a search ran out of nodes.
+    public int[] line(Position start, int n, long nodeLimit) {
+        checkMoves(n);
+        position.copyFrom(start);
+        int[] line = new int[2 * n - 1];
+        int length = 0;
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+        int[] replies = new int[MoveGenerator.MAX_MOVES];
+        for (int remaining = n; remaining > 0; ) {
+            int count = MoveGenerator.generateLegal(position, moves);
+            int chosen = Move.NONE;
+            for (int i = 0; i < count && chosen == Move.NONE; i++) {
+                position.makeMove(moves[i]);
+                int result = solvePlies(2 * remaining - 2, nodeLimit);
+                if (result == UNKNOWN) {
+                    return null;
+                }
+                if (result == MATE) {
+                    chosen = moves[i];
+                } else {
+                    position.unmakeMove(moves[i]);
+                }
+            }
+            if (chosen == Move.NONE) {
+                return null; // Not a mate after all, e.g. an entry was overwritten mid-proof
+            }
+            line[length++] = chosen;
+            int replyCount = MoveGenerator.generateLegal(position, replies);
+            if (replyCount == 0) {
+                break; // Mated
+            }
+            int bestReply = Move.NONE;
+            int longest = 0;
+            for (int i = 0; i < replyCount; i++) {
+                position.makeMove(replies[i]);
+                int k = 1;
+                for (; k < remaining; k++) {
+                    int result = solvePlies(2 * k - 1, nodeLimit);
+                    if (result == UNKNOWN) {
+                        return null;
+                    }
+                    if (result == MATE) {
+                        break;
+                    }
+                }
+                position.unmakeMove(replies[i]);
+                if (k > longest) {
+                    longest = k;
+                    bestReply = replies[i];
+                }
+            }
+            if (longest == remaining) {
+                return null;
+            }
+            position.makeMove(bestReply);
+            line[length++] = bestReply;
+            remaining = longest;
+        }
+        return Arrays.copyOf(line, length);
+    }
+
+    // Forgets every table entry, so what a solve finds within its node limit does not depend on
+    // the positions solved before it
+    public void clear() {
+        Arrays.fill(keys, 0);
+    }
+
+    // Nodes searched by the last solve, and by all of them
+    public long nodes() {
+        return nodes;
+    }
+
+    public long totalNodes() {
+        return totalNodes;
+    }
+
+    private static void checkMoves(int n) {
+        if (n < 1 || n > MAX_MOVES_TO_MATE) {
+            throw new IllegalArgumentException("Moves to mate must be 1 to " + MAX_MOVES_TO_MATE + ": " + n);
+        }
+    }
+
+    // Solves the current position with the given plies to the horizon; the side to move is the
+    // attacker for an odd number of plies and the defender for an even one
+    private int solvePlies(int plies, long nodeLimit) {
+        nodes = 0;
+        this.nodeLimit = nodeLimit;
+        mid(plies, INFINITY, INFINITY);
+        totalNodes += nodes;
+        if (probe[0] == 0) {
+            return (plies & 1) == 1 ? MATE : NO_MATE;
+        }
+        if (probe[1] == 0) {
+            return (plies & 1) == 1 ? NO_MATE : MATE;
+        }
+        return UNKNOWN;
+    }
+
+    // Expands the current position until its phi reaches thPhi or its delta thDelta, and leaves
+    // its numbers in probe
+    private void mid(int plies, int thPhi, int thDelta) {
+        nodes++;
+        long key = position.key();
+        boolean attacker = (plies & 1) == 1;
+        int[] moves = moveBuffers[plies];
+        int count = MoveGenerator.generateLegal(position, moves);
+        if (count == 0) {
+            // Only a stalemated defender gets away
+            boolean escaped = !attacker && !position.isInCheck(position.sideToMove());
+            finish(key, plies, escaped ? 0 : INFINITY, escaped ? INFINITY : 0);
+            return;
+        }
+        if (plies == 0) {
+            finish(key, plies, 0, INFINITY);
+            return;
+        }
+        if (plies == 1) {
+            // Every move tried is a position visited, so each one counts against the node limit
+            boolean mates = false;
+            for (int i = 0; i < count && !mates; i++) {
+                nodes++;
+                position.makeMove(moves[i]);
+                mates = position.isInCheck(position.sideToMove()) && !MoveGenerator.hasLegalMove(position, moveBuffers[0]);
+                position.unmakeMove(moves[i]);
+            }
+            finish(key, plies, mates ? 0 : INFINITY, mates ? INFINITY : 0);
+            return;
+        }
+
+        long[] childKeys = keyBuffers[plies];
+        int[] childPhis = phiBuffers[plies];
+        int[] childDeltas = deltaBuffers[plies];
+        for (int i = 0; i < count; i++) {
+            position.makeMove(moves[i]);
+            childKeys[i] = position.key();
+            if (!lookup(childKeys[i], plies - 1)) {
+                initialize(plies - 1, attacker);
+            }
+            position.unmakeMove(moves[i]);
+            childPhis[i] = probe[0];
+            childDeltas[i] = probe[1];
+        }
+        while (true) {
+            int phi = INFINITY;
+            int delta = 0;
+            int best = -1;
+            int bestPhi = 0;
+            int secondDelta = INFINITY;
+            for (int i = 0; i < count; i++) {
+                delta = Math.min(INFINITY, delta + childPhis[i]);
+                if (childDeltas[i] < phi) {
+                    secondDelta = phi;
+                    phi = childDeltas[i];
+                    best = i;
+                    bestPhi = childPhis[i];
+                } else if (childDeltas[i] < secondDelta) {
+                    secondDelta = childDeltas[i];
+                }
+            }
+            if (phi >= thPhi || delta >= thDelta || nodes >= nodeLimit) {
+                finish(key, plies, phi, delta);
+                return;
+            }
+            int childThPhi = (int) Math.min(INFINITY, (long) thDelta - delta + bestPhi);
+            // Some slack past the runner-up (the 1 + epsilon trick) so the search does not keep
+            // switching between children whose numbers are close
+            int childThDelta = Math.min(thPhi, secondDelta + 1 + secondDelta / 4);
+            position.makeMove(moves[best]);
+            mid(plies - 1, childThPhi, childThDelta);
+            position.unmakeMove(moves[best]);
+            childPhis[best] = probe[0];
+            childDeltas[best] = probe[1];
+        }
+    }
+
+    private void finish(long key, int plies, int phi, int delta) {
+        store(key, plies, phi, delta);
+        probe[0] = phi;
+        probe[1] = delta;
+    }
+
+    // Loads the initial numbers of a child that is not in the table into probe, and stores them
+    // so the next look is a plain probe
+    private void initialize(int plies, boolean parentIsAttacker) {
+        long key = position.key();
+        if (!parentIsAttacker || plies == 0) {
+            probe[0] = 1;
+            probe[1] = 1;
+            return;
+        }
+        int replies = MoveGenerator.generateLegal(position, moveBuffers[plies]);
+        if (replies == 0) {
+            boolean mated = position.isInCheck(position.sideToMove());
+            probe[0] = mated ? INFINITY : 0;
+            probe[1] = mated ? 0 : INFINITY;
+        } else {
+            probe[0] = 1;
+            probe[1] = replies;
+        }
+        store(key, plies, probe[0], probe[1]);
+    }
+
+    private static long nodeKey(long key, int plies) {
+        return key ^ (plies + 1) * 0x9E3779B97F4A7C15L;
+    }
+
+    // The first entry of the node's bucket
+    private int bucket(long nodeKey) {
+        return (int) (nodeKey >>> 32) & mask & ~1;
+    }
+
+    private boolean lookup(long key, int plies) {
+        long nodeKey = nodeKey(key, plies);
+        int slot = bucket(nodeKey);
+        if (keys[slot] != nodeKey) {
+            slot++;
+        }
+        if (keys[slot] == nodeKey) {
+            probe[0] = phis[slot];
+            probe[1] = deltas[slot];
+            return true;
+        }
+        probe[0] = 1;
+        probe[1] = 1;
+        return false;
+    }
+
+    // A node that wins the first entry of its bucket moves the one there to the second
+    private void store(long key, int plies, int phi, int delta) {
+        long nodeKey = nodeKey(key, plies);
+        int slot = bucket(nodeKey);
+        if (keys[slot] != nodeKey) {
+            if (keeps(slot, plies, phi, delta)) {
+                slot++;
+            } else {
+                keys[slot + 1] = keys[slot];
+                phis[slot + 1] = phis[slot];
+                deltas[slot + 1] = deltas[slot];
+                depths[slot + 1] = depths[slot];
+            }
+        }
+        keys[slot] = nodeKey;
+        phis[slot] = phi;
+        deltas[slot] = delta;
+        depths[slot] = (byte) plies;
+    }
+
+    // Whether the entry in slot is worth more than the new one: it is further from the horizon,
+    // or as far and settled while the new one is not
+    private boolean keeps(int slot, int plies, int phi, int delta) {
+        if (keys[slot] == 0 || depths[slot] != plies) {
+            return keys[slot] != 0 && depths[slot] > plies;
+        }
+        boolean settled = phis[slot] == 0 || deltas[slot] == 0;
+        return settled && phi != 0 && delta != 0;
+    }
+
+    // Runs the built-in suite, returns false if any result is wrong or was not settled
+    public static boolean runSuite() {
+        boolean allPassed = true;
+        MateSolver solver = new MateSolver();
+        Position position = new Position();
+        for (Object[] entry : SUITE) {
+            position.setFen((String) entry[1]);
+            int expected = (Integer) entry[3];
+            long before = solver.totalNodes();
+            int n = solver.mateIn(position, (Integer) entry[2], SUITE_NODES);
+            boolean ok = n == expected;
+            allPassed &= ok;
+            String result = n == UNKNOWN ? "unknown" : n == 0 ? "no mate in " + entry[2] : "mate in " + n;
+            System.out.printf("%-18s %-14s %,10d nodes  %s%n", entry[0], result, solver.totalNodes() - before,
+                    ok ? "ok" : "FAILED, expected " + (expected == 0 ? "no mate" : "mate in " + expected));
+        }
+        return allPassed;
+    }
+
+    // Solves FENs given on the command line, or checks the built-in suite:
+    //   java -cp ChessProject.jar chessproject.MateSolver [--nodes N] <moves> "<fen>" ...
+    //   java -cp ChessProject.jar chessproject.MateSolver --suite
+    public static void main(String[] args) {
+        if (args.length == 1 && args[0].equals("--suite")) {
+            System.exit(runSuite() ? 0 : 1);
+        }
+        long nodeLimit = 1_000_000;
+        int i = 0;
+        if (args.length > 1 && args[0].equals("--nodes")) {
+            nodeLimit = Long.parseLong(args[1]);
+            i = 2;
+        }
+        if (args.length - i < 2) {
+            System.err.println("Usage: MateSolver [--nodes N] <moves> <fen> ... | --suite");
+            System.exit(2);
+        }
+        int maxN = Integer.parseInt(args[i++]);
+        MateSolver solver = new MateSolver();
+        Position position = new Position();
+        for (; i < args.length; i++) {
+            position.setFen(args[i]);
+            long start = System.nanoTime();
+            long nodesBefore = solver.totalNodes();
+            int n = solver.mateIn(position, maxN, nodeLimit);
+            StringBuilder out = new StringBuilder(args[i]).append('\t');
+            if (n > 0) {
+                out.append("mate in ").append(n);
+                int[] line = solver.line(position, n, nodeLimit);
+                if (line != null) {
+                    out.append('\t');
+                    for (int move : line) {
+                        out.append(Move.toUci(move)).append(' ');
+                    }
+                }
+            } else {
+                out.append(n == 0 ? "no mate in " + maxN : "unknown");
+            }
+            System.out.println(out);
+            System.out.printf("  %,d nodes in %.1f ms%n", solver.totalNodes() - nodesBefore, (System.nanoTime() - start) / 1e6);
+        }
+    }
+}
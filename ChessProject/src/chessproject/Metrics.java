@@ -0,0 +1,188 @@
+package chessproject;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// Process-wide counters and the click latency histogram, plus the Flight Recorder events for
+// move validation, checkmate tests and clicks.
+//
+// The counters are only touched behind "if (Metrics.ENABLED)". ENABLED is a static final read
+// once from -Dchessproject.metrics=true, so with it off the JIT drops those branches and the
+// hot paths (check tests and table probes run once per node) cost nothing. The counters are
+// LongAdders because the search threads all bump the same ones. Transposition tables keep their
+// own probe and store counters under the same switch; the snapshot adds up those of every table
+// still in use.
+//
+// The events follow the usual JFR pattern and are independent of ENABLED: they are recorded
+// whenever a recording has them on, e.g.
+//   java -XX:StartFlightRecording:filename=chess.jfr,settings=profile -jar ChessProject.jar
+// and without a recording begin and commit are empty methods on a scalar-replaced object.
+//
+// With ENABLED, a snapshot of everything is written when the JVM exits, and every
+// -Dchessproject.metrics.interval seconds if set, to -Dchessproject.metrics.file: a path, or
+// "stdout" (the default) or "stderr". A file is replaced in one step so it can be polled. The UCI
+// engine owns stdout, so use a file or stderr there.
+public final class Metrics {
+    public static final boolean ENABLED = Boolean.getBoolean("chessproject.metrics");
+
+    // Summed once per search rather than per node
+    public static final LongAdder SEARCH_NODES = new LongAdder();
+    public static final LongAdder SEARCHES = new LongAdder();
+    public static final LongAdder MOVE_VALIDATIONS = new LongAdder();
+    public static final LongAdder CHECK_TESTS = new LongAdder();
+    public static final LongAdder CHECKMATE_TESTS = new LongAdder();
+    public static final LongAdder PAWN_CACHE_PROBES = new LongAdder();
+    public static final LongAdder PAWN_CACHE_HITS = new LongAdder();
+    // From the mouse click on a square to the end of the repaint it causes
+    public static final LatencyHistogram CLICK_LATENCY = new LatencyHistogram();
+
+    private static final long START_NANOS = System.nanoTime();
+    // Weak, so a table that is no longer used can still be collected
+    private static final Set<TranspositionTable> TABLES = Collections.newSetFromMap(new WeakHashMap<>());
+
+    static {
+        if (ENABLED) {
+            Runtime.getRuntime().addShutdownHook(new Thread(Metrics::dump, "metrics-dump"));
+            long interval = Long.getLong("chessproject.metrics.interval", 0);
+            if (interval > 0) {
+                ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(task -> {
+                    Thread thread = new Thread(task, "metrics-timer");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                timer.scheduleAtFixedRate(Metrics::dump, interval, interval, TimeUnit.SECONDS);
+            }
+        }
+    }
+
+    private Metrics() {
+    }
+
+    // Called by every TranspositionTable created with ENABLED
+    static void register(TranspositionTable table) {
+        synchronized (TABLES) {
+            TABLES.add(table);
+        }
+    }
+
+    public static String snapshot() {
+        StringBuilder out = new StringBuilder();
+        long elapsed = System.nanoTime() - START_NANOS;
+        out.append(String.format("# chessproject metrics at %s, %.1f s after start%n", Instant.now(), elapsed / 1e9));
+        line(out, "searches", SEARCHES.sum());
+        line(out, "search.nodes", SEARCH_NODES.sum());
+        line(out, "move.validations", MOVE_VALIDATIONS.sum());
+        line(out, "check.tests", CHECK_TESTS.sum());
+        line(out, "checkmate.tests", CHECKMATE_TESTS.sum());
+        long probes = 0;
+        long hits = 0;
+        long stores = 0;
+        long collisions = 0;
+        synchronized (TABLES) {
+            for (TranspositionTable table : TABLES) {
+                probes += table.probes();
+                hits += table.hits();
+                stores += table.stores();
+                collisions += table.collisions();
+            }
+        }
+        line(out, "tt.probes", probes);
+        line(out, "tt.hits", hits);
+        line(out, "tt.stores", stores);
+        line(out, "tt.collisions", collisions);
+        line(out, "pawn.cache.probes", PAWN_CACHE_PROBES.sum());
+        line(out, "pawn.cache.hits", PAWN_CACHE_HITS.sum());
+        out.append(String.format("%-20s %s%n", "click.latency", CLICK_LATENCY.summary()));
+        return out.toString();
+    }
+
+    private static void line(StringBuilder out, String name, long value) {
+        out.append(String.format("%-20s %,d%n", name, value));
+    }
+
+    // Writes a snapshot to the configured target; failures are reported but never thrown, as this
+    // runs from the shutdown hook and the timer
+    public static void dump() {
+        String target = System.getProperty("chessproject.metrics.file", "stdout");
+        try {
+            dump(target);
+        } catch (UncheckedIOException e) {
+            System.err.println("Cannot write metrics to " + target + ": " + e.getCause().getMessage());
+        }
+    }
+
+    public static void dump(String target) {
+        String text = snapshot();
+        switch (target) {
+            case "stdout":
+                System.out.print(text);
+                System.out.flush();
+                return;
+            case "stderr":
+                System.err.print(text);
+                return;
+            default:
+                Path file = Paths.get(target).toAbsolutePath();
+                try {
+                    Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+                    Files.write(temp, text.getBytes(StandardCharsets.UTF_8));
+                    Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+        }
+    }
+
+    @Name("chessproject.MoveValidation")
+    @Label("Move Validation")
+    @Category("Chess")
+    @Description("Game.checkMove: whether a from/to pair can be played")
+    static final class MoveValidationEvent extends Event {
+        @Label("Move")
+        String move;
+        @Label("Result")
+        String result;
+    }
+
+    @Name("chessproject.CheckmateTest")
+    @Label("Checkmate Test")
+    @Category("Chess")
+    @Description("Whether the king of one color is checkmated")
+    static final class CheckmateTestEvent extends Event {
+        @Label("Color")
+        String color;
+        @Label("Checkmate")
+        boolean checkmate;
+    }
+
+    @Name("chessproject.Click")
+    @Label("Click to Repaint")
+    @Category("Chess")
+    @Description("From a click on the board to the end of the repaint it causes, on the event dispatch thread")
+    static final class ClickEvent extends Event {
+        // Asked before each click so no event is allocated while nothing records it
+        static final EventType TYPE = EventType.getEventType(ClickEvent.class);
+
+        @Label("Square")
+        String square;
+    }
+}
@@ -0,0 +1,65 @@
+package chessproject;
+
+// Moves are packed into a single int so they can live in plain int[] buffers:
+// bits 0-5 from square, bits 6-11 to square, bits 12-15 flags.
+// Squares are numbered a1 = 0 ... h8 = 63 (see Position.square).
+public final class Move {
+    public static final int NONE = 0;
+
+    public static final int QUIET = 0;
+    public static final int DOUBLE_PUSH = 1;
+    public static final int KING_CASTLE = 2;
+    public static final int QUEEN_CASTLE = 3;
+    public static final int CAPTURE = 4;
+    public static final int EN_PASSANT = 5;
+    public static final int PROMOTION = 8;          // + promotion type - KNIGHT
+    public static final int PROMOTION_CAPTURE = 12; // + promotion type - KNIGHT
+
+    private Move() {
+    }
+
+    public static int encode(int from, int to, int flags) {
+        return from | (to << 6) | (flags << 12);
+    }
+
+    public static int from(int move) {
+        return move & 63;
+    }
+
+    public static int to(int move) {
+        return (move >>> 6) & 63;
+    }
+
+    public static int flags(int move) {
+        return (move >>> 12) & 15;
+    }
+
+    public static boolean isCapture(int move) {
+        return (move & (CAPTURE << 12)) != 0;
+    }
+
+    public static boolean isPromotion(int move) {
+        return (move & (PROMOTION << 12)) != 0;
+    }
+
+    public static boolean isCastle(int move) {
+        int flags = flags(move);
+        return flags == KING_CASTLE || flags == QUEEN_CASTLE;
+    }
+
+    // Piece type (Piece.KNIGHT..Piece.QUEEN) a promotion move turns the pawn into
+    public static int promotionType(int move) {
+        return Piece.KNIGHT + (flags(move) & 3);
+    }
+
+    // Long algebraic form used by UCI and perft output, e.g. "e2e4" or "e7e8q"
+    public static String toUci(int move) {
+        StringBuilder sb = new StringBuilder(5);
+        sb.append(Position.squareName(from(move)));
+        sb.append(Position.squareName(to(move)));
+        if (isPromotion(move)) {
+            sb.append("nbrq".charAt(promotionType(move) - Piece.KNIGHT));
+        }
+        return sb.toString();
+    }
+}
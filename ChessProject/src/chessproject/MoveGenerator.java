@@ -0,0 +1,286 @@
+package chessproject;
+
+// Legal move generation into caller-owned int[] buffers (see Move for the packing).
+//
+// Instead of making every pseudo-legal move and asking whether the king is left in check,
+// the generator works out up front which pieces are pinned (they may only move along the
+// pin line) and, when in check, which squares block or capture the checker (the check mask).
+// King moves are tested against attacks with the king lifted off the board. Only en passant,
+// which removes two pieces from one rank, needs an extra slider test.
+public final class MoveGenerator {
+    // No legal chess position has more than 218 moves
+    public static final int MAX_MOVES = 256;
+
+    private static final long RANK_1 = 0xFFL;
+    private static final long RANK_8 = RANK_1 << 56;
+
+    private MoveGenerator() {
+    }
+
+    public static int generateLegal(Position pos, int[] moves) {
+        return generateLegal(pos, moves, 0);
+    }
+
+    // Writes all legal moves starting at moves[start] and returns the index after the last one
+    public static int generateLegal(Position pos, int[] moves, int start) {
+        return generate(pos, moves, start, true);
+    }
+
+    // Legal captures and promotions only, for quiescence search
+    public static int generateCaptures(Position pos, int[] moves, int start) {
+        return generate(pos, moves, start, false);
+    }
+
+    private static int generate(Position pos, int[] moves, int start, boolean quiets) {
+        int us = pos.sideToMove;
+        int them = us ^ 1;
+        long own = pos.colors[us];
+        long enemy = pos.colors[them];
+        long occupied = pos.occupied;
+        int king = pos.kingSquare(us);
+        int n = start;
+
+        long checkers = pos.attackersTo(king, occupied) & enemy;
+        long targetMask = quiets ? ~own : enemy;
+
+        // King moves, tested with the king lifted off the board so it cannot hide behind itself
+        long kingless = occupied ^ (1L << king);
+        long targets = Attacks.king(king) & targetMask;
+        while (targets != 0) {
+            int to = Long.numberOfTrailingZeros(targets);
+            targets &= targets - 1;
+            if (!pos.isSquareAttacked(to, them, kingless)) {
+                moves[n++] = Move.encode(king, to, (enemy & (1L << to)) != 0 ? Move.CAPTURE : Move.QUIET);
+            }
+        }
+
+        // In double check only the king can move
+        if (Long.bitCount(checkers) > 1) {
+            return n;
+        }
+        long checkMask = checkers == 0
+                ? -1L
+                : Attacks.between(king, Long.numberOfTrailingZeros(checkers)) | checkers;
+        long pieceTargets = checkMask & targetMask;
+
+        long theirQueens = pos.pieces[Piece.make(them, Piece.QUEEN)];
+        long theirRooks = pos.pieces[Piece.make(them, Piece.ROOK)] | theirQueens;
+        long theirBishops = pos.pieces[Piece.make(them, Piece.BISHOP)] | theirQueens;
+
+        // A friendly piece is pinned when it is the only piece between our king and an enemy slider
+        long pinned = 0L;
+        long snipers = (Attacks.rook(king, enemy) & theirRooks) | (Attacks.bishop(king, enemy) & theirBishops);
+        while (snipers != 0) {
+            int sniper = Long.numberOfTrailingZeros(snipers);
+            snipers &= snipers - 1;
+            long blockers = Attacks.between(king, sniper) & occupied;
+            if ((blockers & (blockers - 1)) == 0 && (blockers & own) != 0) {
+                pinned |= blockers;
+            }
+        }
+
+        // Knights: a pinned knight can never move
+        long knights = pos.pieces[Piece.make(us, Piece.KNIGHT)] & ~pinned;
+        while (knights != 0) {
+            int from = Long.numberOfTrailingZeros(knights);
+            knights &= knights - 1;
+            n = addMoves(moves, n, from, Attacks.knight(from) & pieceTargets, enemy);
+        }
+
+        // Sliders
+        long queens = pos.pieces[Piece.make(us, Piece.QUEEN)];
+        long diagonal = pos.pieces[Piece.make(us, Piece.BISHOP)] | queens;
+        while (diagonal != 0) {
+            int from = Long.numberOfTrailingZeros(diagonal);
+            diagonal &= diagonal - 1;
+            long attacks = Attacks.bishop(from, occupied) & pieceTargets;
+            if ((pinned & (1L << from)) != 0) {
+                attacks &= Attacks.line(king, from);
+            }
+            n = addMoves(moves, n, from, attacks, enemy);
+        }
+        long straight = pos.pieces[Piece.make(us, Piece.ROOK)] | queens;
+        while (straight != 0) {
+            int from = Long.numberOfTrailingZeros(straight);
+            straight &= straight - 1;
+            long attacks = Attacks.rook(from, occupied) & pieceTargets;
+            if ((pinned & (1L << from)) != 0) {
+                attacks &= Attacks.line(king, from);
+            }
+            n = addMoves(moves, n, from, attacks, enemy);
+        }
+
+        // Pawns
+        int up = us == Piece.WHITE ? 8 : -8;
+        long promotionRank = us == Piece.WHITE ? RANK_8 : RANK_1;
+        int startRank = us == Piece.WHITE ? 1 : 6;
+        long pawns = pos.pieces[Piece.make(us, Piece.PAWN)];
+        while (pawns != 0) {
+            int from = Long.numberOfTrailingZeros(pawns);
+            pawns &= pawns - 1;
+            long allowed = (pinned & (1L << from)) != 0 ? Attacks.line(king, from) & checkMask : checkMask;
+
+            int to = from + up;
+            if ((occupied & (1L << to)) == 0) {
+                if ((allowed & (1L << to)) != 0) {
+                    if ((promotionRank & (1L << to)) != 0) {
+                        n = addPromotions(moves, n, from, to, Move.PROMOTION);
+                    } else if (quiets) {
+                        moves[n++] = Move.encode(from, to, Move.QUIET);
+                    }
+                }
+                int twoUp = to + up;
+                if (quiets && (from >>> 3) == startRank && (occupied & (1L << twoUp)) == 0
+                        && (allowed & (1L << twoUp)) != 0) {
+                    moves[n++] = Move.encode(from, twoUp, Move.DOUBLE_PUSH);
+                }
+            }
+
+            long captures = Attacks.pawn(us, from) & enemy & allowed;
+            while (captures != 0) {
+                int target = Long.numberOfTrailingZeros(captures);
+                captures &= captures - 1;
+                if ((promotionRank & (1L << target)) != 0) {
+                    n = addPromotions(moves, n, from, target, Move.PROMOTION_CAPTURE);
+                } else {
+                    moves[n++] = Move.encode(from, target, Move.CAPTURE);
+                }
+            }
+
+            int ep = pos.epSquare;
+            if (ep >= 0 && (Attacks.pawn(us, from) & (1L << ep)) != 0) {
+                int victim = ep - up;
+                if ((checkMask & ((1L << ep) | (1L << victim))) != 0) {
+                    // Both pawns leave their squares, so re-test every slider line to the king
+                    long after = (occupied ^ (1L << from) ^ (1L << victim)) | (1L << ep);
+                    if ((Attacks.rook(king, after) & theirRooks) == 0
+                            && (Attacks.bishop(king, after) & theirBishops) == 0) {
+                        moves[n++] = Move.encode(from, ep, Move.EN_PASSANT);
+                    }
+                }
+            }
+        }
+
+        // Castling: never out of check, through an attacked square or past a piece
+        if (quiets && checkers == 0) {
+            int rights = pos.castlingRights >>> (us * 2);
+            int base = us == Piece.WHITE ? 0 : 56;
+            if ((rights & Position.WHITE_KINGSIDE) != 0
+                    && (occupied & (0x60L << base)) == 0
+                    && !pos.isSquareAttacked(base + 5, them)
+                    && !pos.isSquareAttacked(base + 6, them)) {
+                moves[n++] = Move.encode(base + 4, base + 6, Move.KING_CASTLE);
+            }
+            if ((rights & Position.WHITE_QUEENSIDE) != 0
+                    && (occupied & (0x0EL << base)) == 0
+                    && !pos.isSquareAttacked(base + 3, them)
+                    && !pos.isSquareAttacked(base + 2, them)) {
+                moves[n++] = Move.encode(base + 4, base + 2, Move.QUEEN_CASTLE);
+            }
+        }
+        return n;
+    }
+
+    public static boolean hasLegalMove(Position pos, int[] buffer) {
+        return generateLegal(pos, buffer, 0) > 0;
+    }
+
+    // Cheap sanity check for moves that did not come from the generator (UI clicks, killer
+    // and hash moves): does the piece move like that, ignoring whether the king is left in check?
+    public static boolean isPseudoLegal(Position pos, int move) {
+        int from = Move.from(move);
+        int to = Move.to(move);
+        int flags = Move.flags(move);
+        int us = pos.sideToMove;
+        int piece = pos.mailbox[from];
+        if (move == Move.NONE || piece == Piece.NONE || Piece.color(piece) != us) {
+            return false;
+        }
+        int target = pos.mailbox[to];
+        if (target != Piece.NONE && Piece.color(target) == us) {
+            return false;
+        }
+        if (flags != Move.EN_PASSANT && Move.isCapture(move) != (target != Piece.NONE)) {
+            return false;
+        }
+
+        int type = Piece.type(piece);
+        if (type == Piece.PAWN) {
+            int up = us == Piece.WHITE ? 8 : -8;
+            boolean lastRank = ((us == Piece.WHITE ? RANK_8 : RANK_1) & (1L << to)) != 0;
+            if (Move.isPromotion(move) != lastRank || Move.isCastle(move)) {
+                return false;
+            }
+            switch (flags) {
+                case Move.DOUBLE_PUSH:
+                    return to == from + 2 * up && (from >>> 3) == (us == Piece.WHITE ? 1 : 6)
+                            && pos.mailbox[from + up] == Piece.NONE && target == Piece.NONE;
+                case Move.EN_PASSANT:
+                    return to == pos.epSquare && (Attacks.pawn(us, from) & (1L << to)) != 0;
+                default:
+                    if (Move.isCapture(move)) {
+                        return (Attacks.pawn(us, from) & (1L << to)) != 0;
+                    }
+                    return to == from + up && target == Piece.NONE;
+            }
+        }
+
+        if (Move.isCastle(move)) {
+            int them = us ^ 1;
+            int base = us == Piece.WHITE ? 0 : 56;
+            if (type != Piece.KING || from != base + 4 || pos.isSquareAttacked(from, them)) {
+                return false;
+            }
+            if (flags == Move.KING_CASTLE) {
+                return to == base + 6 && (pos.castlingRights & (Position.WHITE_KINGSIDE << (us * 2))) != 0
+                        && (pos.occupied & (0x60L << base)) == 0
+                        && !pos.isSquareAttacked(base + 5, them) && !pos.isSquareAttacked(base + 6, them);
+            }
+            return to == base + 2 && (pos.castlingRights & (Position.WHITE_QUEENSIDE << (us * 2))) != 0
+                    && (pos.occupied & (0x0EL << base)) == 0
+                    && !pos.isSquareAttacked(base + 3, them) && !pos.isSquareAttacked(base + 2, them);
+        }
+        if (flags != Move.QUIET && flags != Move.CAPTURE) {
+            return false;
+        }
+        return (attacks(type, from, pos.occupied) & (1L << to)) != 0;
+    }
+
+    // Full legality test for a pseudo-legal move
+    public static boolean isLegal(Position pos, int move) {
+        int us = pos.sideToMove;
+        pos.makeMove(move);
+        boolean legal = !pos.isInCheck(us);
+        pos.unmakeMove(move);
+        return legal;
+    }
+
+    // Squares a non-pawn piece of the given type attacks from the given square
+    public static long attacks(int type, int square, long occupied) {
+        switch (type) {
+            case Piece.KNIGHT: return Attacks.knight(square);
+            case Piece.BISHOP: return Attacks.bishop(square, occupied);
+            case Piece.ROOK: return Attacks.rook(square, occupied);
+            case Piece.QUEEN: return Attacks.queen(square, occupied);
+            case Piece.KING: return Attacks.king(square);
+            default: return 0L;
+        }
+    }
+
+    private static int addMoves(int[] moves, int n, int from, long targets, long enemy) {
+        while (targets != 0) {
+            int to = Long.numberOfTrailingZeros(targets);
+            targets &= targets - 1;
+            moves[n++] = Move.encode(from, to, (enemy & (1L << to)) != 0 ? Move.CAPTURE : Move.QUIET);
+        }
+        return n;
+    }
+
+    private static int addPromotions(int[] moves, int n, int from, int to, int baseFlags) {
+        moves[n++] = Move.encode(from, to, baseFlags + Piece.QUEEN - Piece.KNIGHT);
+        moves[n++] = Move.encode(from, to, baseFlags + Piece.ROOK - Piece.KNIGHT);
+        moves[n++] = Move.encode(from, to, baseFlags + Piece.BISHOP - Piece.KNIGHT);
+        moves[n++] = Move.encode(from, to, baseFlags);
+        return n;
+    }
+}
@@ -0,0 +1,185 @@
+package chessproject;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Checks and times NnueEvaluator. The check plays random games from a few start positions and
+// at every position compares the incrementally updated evaluation with a full recompute, the
+// Vector API kernel with the scalar one, and the evaluation after unmaking every legal move
+// with the one before; castling, en passant and promotions all come up. The benchmark then
+// measures evaluations per second with each kernel: incremental is make, evaluate and unmake
+// of every legal move of the collected positions, the way a search visits leaves, and full is
+// a recompute of the hidden layer per evaluation.
+//
+// The Vector API kernel needs the incubator module, without it only the scalar one is run:
+//   java --add-modules jdk.incubator.vector -cp ChessProject.jar chessproject.NnueBenchmark
+//        [--net file] [--games N] [--seconds S]
+public final class NnueBenchmark {
+    private static final String[] START_FENS = {
+        Position.START_FEN,
+        "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+        "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+        "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1",
+        "rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8",
+    };
+    private static final int MAX_GAME_PLIES = 200;
+
+    private NnueBenchmark() {
+    }
+
+    // Plays games random games, checking every position on the way, and returns the positions
+    // they went through
+    private static List<Position> check(NnueNetwork network, int games) {
+        List<NnueEvaluator> evaluators = new ArrayList<>();
+        evaluators.add(new NnueEvaluator(network, false));
+        if (NnueEvaluator.vectorAvailable()) {
+            evaluators.add(new NnueEvaluator(network, true));
+        }
+        Random random = new Random(1);
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+        int[] played = new int[MAX_GAME_PLIES];
+        List<Position> positions = new ArrayList<>();
+        for (int game = 0; game < games; game++) {
+            Position position = new Position();
+            position.setFen(START_FENS[game % START_FENS.length]);
+            for (NnueEvaluator evaluator : evaluators) {
+                evaluator.reset(position);
+            }
+            int plies = 0;
+            while (plies < MAX_GAME_PLIES) {
+                positions.add(new Position(position));
+                int expected = evaluators.get(0).evaluateFromScratch(position);
+                for (NnueEvaluator evaluator : evaluators) {
+                    expect(evaluator.evaluate(position) == expected, evaluator, "incremental", position);
+                    expect(evaluator.evaluateFromScratch(position) == expected, evaluator, "full", position);
+                }
+                int count = MoveGenerator.generateLegal(position, moves);
+                if (count == 0 || position.halfmoveClock() >= 100) {
+                    break;
+                }
+                for (NnueEvaluator evaluator : evaluators) {
+                    for (int i = 0; i < count; i++) {
+                        evaluator.makeMove(position, moves[i]);
+                        expect(evaluator.evaluate(position) == evaluator.evaluateFromScratch(position), evaluator,
+                                "after " + Move.toUci(moves[i]), position);
+                        evaluator.unmakeMove(position, moves[i]);
+                        expect(evaluator.evaluate(position) == expected, evaluator, "unmake " + Move.toUci(moves[i]), position);
+                    }
+                }
+                played[plies++] = moves[random.nextInt(count)];
+                // The other evaluators play the move on a copy so the position only moves once
+                for (int i = 1; i < evaluators.size(); i++) {
+                    evaluators.get(i).makeMove(new Position(position), played[plies - 1]);
+                }
+                evaluators.get(0).makeMove(position, played[plies - 1]);
+            }
+            // Back to the start the way a search returns to its root
+            Position root = new Position();
+            root.setFen(START_FENS[game % START_FENS.length]);
+            int rootScore = evaluators.get(0).evaluateFromScratch(root);
+            NnueEvaluator first = evaluators.get(0);
+            for (int i = plies - 1; i >= 0; i--) {
+                first.unmakeMove(position, played[i]);
+            }
+            expect(position.toFen().equals(root.toFen()) && first.evaluate(position) == rootScore, first, "unwind", position);
+        }
+        return positions;
+    }
+
+    private static void expect(boolean ok, NnueEvaluator evaluator, String what, Position position) {
+        if (!ok) {
+            throw new AssertionError(evaluator.kernelName() + " " + what + " wrong in " + position.toFen());
+        }
+    }
+
+    // Make, evaluate and unmake of every legal move; returns evaluations per second
+    private static double incremental(NnueEvaluator evaluator, List<Position> positions, int[][] legalMoves, long nanos) {
+        long evaluations = 0;
+        long sink = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            for (int i = 0; i < positions.size(); i++) {
+                Position position = positions.get(i);
+                evaluator.reset(position);
+                for (int move : legalMoves[i]) {
+                    evaluator.makeMove(position, move);
+                    sink += evaluator.evaluate(position);
+                    evaluator.unmakeMove(position, move);
+                }
+                evaluations += legalMoves[i].length;
+            }
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < nanos);
+        return sink == Long.MIN_VALUE ? 0 : evaluations * 1e9 / elapsed;
+    }
+
+    private static double full(NnueEvaluator evaluator, List<Position> positions, long nanos) {
+        long evaluations = 0;
+        long sink = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            for (Position position : positions) {
+                sink += evaluator.evaluateFromScratch(position);
+            }
+            evaluations += positions.size();
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < nanos);
+        return sink == Long.MIN_VALUE ? 0 : evaluations * 1e9 / elapsed;
+    }
+
+    public static void main(String[] args) throws IOException {
+        NnueNetwork network = null;
+        int games = 20;
+        double seconds = 3;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--net":
+                    network = NnueNetwork.load(Path.of(args[++i]));
+                    break;
+                case "--games":
+                    games = Integer.parseInt(args[++i]);
+                    break;
+                case "--seconds":
+                    seconds = Double.parseDouble(args[++i]);
+                    break;
+                default:
+                    System.err.println("Unknown argument: " + args[i]);
+                    System.exit(2);
+            }
+        }
+        if (network == null) {
+            network = NnueNetwork.testNetwork();
+        }
+
+        List<Position> positions = check(network, games);
+        System.out.printf("Check ok: %,d positions from %d games, hidden layer %d%n",
+                positions.size(), games, network.hiddenSize());
+        if (!NnueEvaluator.vectorAvailable()) {
+            System.out.println("Vector API not available, run with --add-modules jdk.incubator.vector");
+        }
+
+        int[][] legalMoves = new int[positions.size()][];
+        int[] buffer = new int[MoveGenerator.MAX_MOVES];
+        for (int i = 0; i < positions.size(); i++) {
+            int count = MoveGenerator.generateLegal(positions.get(i), buffer);
+            legalMoves[i] = java.util.Arrays.copyOf(buffer, count);
+        }
+        long nanos = (long) (seconds * 1e9);
+        for (boolean vector : new boolean[] {false, true}) {
+            if (vector && !NnueEvaluator.vectorAvailable()) {
+                continue;
+            }
+            NnueEvaluator evaluator = new NnueEvaluator(network, vector);
+            // Warm up the JIT on both paths before measuring
+            incremental(evaluator, positions, legalMoves, nanos / 3);
+            full(evaluator, positions, nanos / 3);
+            System.out.printf("%-16s incremental %,13.0f evals/s   full %,12.0f evals/s%n", evaluator.kernelName(),
+                    incremental(evaluator, positions, legalMoves, nanos), full(evaluator, positions, nanos));
+        }
+    }
+}
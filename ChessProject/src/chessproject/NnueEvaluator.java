@@ -0,0 +1,141 @@
+package chessproject;
+
+import java.util.Arrays;
+
+// Evaluates positions with an NnueNetwork. The hidden layer (the accumulator) is kept for both
+// perspectives on a stack with one entry per ply: makeMove writes the next entry from the
+// current one by adding and subtracting at most two input weight rows each, and unmakeMove just
+// pops it. Moves must go through this class so the stack follows the position; reset starts it
+// over from a full recompute.
+//
+// The kernel is the Vector API one when the JVM runs with --add-modules jdk.incubator.vector,
+// plain loops otherwise. Not thread-safe: each search thread needs its own evaluator.
+public final class NnueEvaluator {
+    private final NnueNetwork network;
+    private final NnueKernel kernel;
+    private final int hidden;
+    private final int zeroRow;
+    // Entry i holds White's hidden layer at [i * 2H, i * 2H + H) and Black's after it
+    private int[] stack;
+    private int top;
+
+    public NnueEvaluator(NnueNetwork network) {
+        this(network, NnueKernel.best());
+    }
+
+    // Uses the Vector API kernel if vector is true and it is available, the scalar one otherwise
+    public NnueEvaluator(NnueNetwork network, boolean vector) {
+        this(network, vector ? NnueKernel.best() : NnueKernel.scalar());
+    }
+
+    private NnueEvaluator(NnueNetwork network, NnueKernel kernel) {
+        this.network = network;
+        this.kernel = kernel;
+        this.hidden = network.hidden;
+        this.zeroRow = NnueNetwork.INPUTS * hidden;
+        this.stack = new int[(Search.MAX_PLY + 2) * 2 * hidden];
+    }
+
+    public static boolean vectorAvailable() {
+        return NnueKernel.vector() != null;
+    }
+
+    public String kernelName() {
+        return kernel.name();
+    }
+
+    public NnueNetwork network() {
+        return network;
+    }
+
+    public void reset(Position pos) {
+        top = 0;
+        refresh(pos, stack, 0);
+    }
+
+    // Recomputes both perspectives of pos into acc at offset
+    private void refresh(Position pos, int[] acc, int offset) {
+        int[] weights = network.inputWeights;
+        for (int perspective = Piece.WHITE; perspective <= Piece.BLACK; perspective++) {
+            int base = offset + perspective * hidden;
+            System.arraycopy(network.hiddenBias, 0, acc, base, hidden);
+            for (long bits = pos.occupied; bits != 0; bits &= bits - 1) {
+                int square = Long.numberOfTrailingZeros(bits);
+                int row = NnueNetwork.input(perspective, pos.mailbox[square], square) * hidden;
+                kernel.update(acc, base, base, weights, row, zeroRow, zeroRow, zeroRow, hidden);
+            }
+        }
+    }
+
+    public void makeMove(Position pos, int move) {
+        int from = Move.from(move);
+        int to = Move.to(move);
+        int flags = Move.flags(move);
+        int piece = pos.mailbox[from];
+        int us = Piece.color(piece);
+        int placed = Move.isPromotion(move) ? Piece.make(us, Move.promotionType(move)) : piece;
+
+        // Rows as (piece, square) pairs; a negative piece stands for the row of zeros
+        int addPiece1 = -1, addSquare1 = 0, subPiece1 = -1, subSquare1 = 0;
+        if (flags == Move.KING_CASTLE || flags == Move.QUEEN_CASTLE) {
+            addPiece1 = subPiece1 = Piece.make(us, Piece.ROOK);
+            addSquare1 = flags == Move.KING_CASTLE ? to - 1 : to + 1;
+            subSquare1 = flags == Move.KING_CASTLE ? to + 1 : to - 2;
+        } else if (Move.isCapture(move)) {
+            subSquare1 = flags == Move.EN_PASSANT ? to ^ 8 : to;
+            subPiece1 = pos.mailbox[subSquare1];
+        }
+
+        if (top + 1 == stack.length / (2 * hidden)) {
+            stack = Arrays.copyOf(stack, stack.length * 2);
+        }
+        int src = top * 2 * hidden;
+        int dst = src + 2 * hidden;
+        int[] weights = network.inputWeights;
+        for (int perspective = Piece.WHITE; perspective <= Piece.BLACK; perspective++) {
+            int offset = perspective * hidden;
+            kernel.update(stack, dst + offset, src + offset, weights,
+                    row(perspective, placed, to), row(perspective, addPiece1, addSquare1),
+                    row(perspective, piece, from), row(perspective, subPiece1, subSquare1), hidden);
+        }
+        top++;
+        pos.makeMove(move);
+        assert inSync(pos) : "NNUE accumulator out of sync after " + Move.toUci(move);
+    }
+
+    public void unmakeMove(Position pos, int move) {
+        pos.unmakeMove(move);
+        top--;
+    }
+
+    private int row(int perspective, int piece, int square) {
+        return piece < 0 ? zeroRow : NnueNetwork.input(perspective, piece, square) * hidden;
+    }
+
+    // Centipawns from the side to move's point of view, like Evaluator.evaluate
+    public int evaluate(Position pos) {
+        int base = top * 2 * hidden;
+        int us = base + pos.sideToMove * hidden;
+        int them = base + (pos.sideToMove ^ 1) * hidden;
+        return scale(kernel.output(stack, us, them, network.outputWeights, hidden, NnueNetwork.QA));
+    }
+
+    // The same value computed without the accumulator stack, for checking the incremental path
+    public int evaluateFromScratch(Position pos) {
+        int[] acc = new int[2 * hidden];
+        refresh(pos, acc, 0);
+        int us = pos.sideToMove * hidden;
+        return scale(kernel.output(acc, us, hidden - us, network.outputWeights, hidden, NnueNetwork.QA));
+    }
+
+    private int scale(int sum) {
+        long value = (long) sum + network.outputBias;
+        return (int) (value * NnueNetwork.SCALE / (NnueNetwork.QA * NnueNetwork.QB));
+    }
+
+    boolean inSync(Position pos) {
+        int[] acc = new int[2 * hidden];
+        refresh(pos, acc, 0);
+        return Arrays.equals(acc, 0, 2 * hidden, stack, top * 2 * hidden, (top + 1) * 2 * hidden);
+    }
+}
@@ -0,0 +1,63 @@
+package chessproject;
+
+// The arithmetic of NnueEvaluator on int arrays, either in plain loops or with the Vector API.
+// Both give exactly the same results.
+interface NnueKernel {
+    // acc[dst + i] = acc[src + i] + w[add0 + i] + w[add1 + i] - w[sub0 + i] - w[sub1 + i] for
+    // i below length; unused rows point at the row of zeros
+    void update(int[] acc, int dst, int src, int[] w, int add0, int add1, int sub0, int sub1, int length);
+
+    // The output layer before bias and scaling: the sum of clipped acc[us + i] * out[i] and
+    // clipped acc[them + i] * out[length + i], clipped to [0, clip]
+    int output(int[] acc, int us, int them, int[] out, int length, int clip);
+
+    String name();
+
+    static NnueKernel scalar() {
+        return Scalar.INSTANCE;
+    }
+
+    // The Vector API kernel, null when the JVM was started without
+    // --add-modules jdk.incubator.vector
+    static NnueKernel vector() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return null;
+        }
+        try {
+            return new NnueVectorKernel();
+        } catch (LinkageError e) {
+            return null;
+        }
+    }
+
+    static NnueKernel best() {
+        NnueKernel vector = vector();
+        return vector != null ? vector : scalar();
+    }
+
+    final class Scalar implements NnueKernel {
+        static final Scalar INSTANCE = new Scalar();
+
+        @Override
+        public void update(int[] acc, int dst, int src, int[] w, int add0, int add1, int sub0, int sub1, int length) {
+            for (int i = 0; i < length; i++) {
+                acc[dst + i] = acc[src + i] + w[add0 + i] + w[add1 + i] - w[sub0 + i] - w[sub1 + i];
+            }
+        }
+
+        @Override
+        public int output(int[] acc, int us, int them, int[] out, int length, int clip) {
+            int sum = 0;
+            for (int i = 0; i < length; i++) {
+                sum += Math.min(Math.max(acc[us + i], 0), clip) * out[i];
+                sum += Math.min(Math.max(acc[them + i], 0), clip) * out[length + i];
+            }
+            return sum;
+        }
+
+        @Override
+        public String name() {
+            return "scalar";
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package chessproject;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+// Weights of an NNUE evaluation network: 768 inputs (piece color relative to the side the
+// accumulator is for, piece type, square seen from that side) feed a hidden layer of H
+// neurons, computed once for White and once for Black with the same weights. The output
+// neuron reads both halves, side to move first, through a clipped ReLU.
+//
+// File layout (big-endian, all weights are 16-bit integers):
+//   MAGIC, H as an int
+//   768 rows of H input weights, row (relative color * 6 + type) * 64 + square
+//   H hidden biases, 2H output weights, the output bias as an int
+// Hidden values are clipped to [0, QA], output weights are scaled by QB and the output by
+// SCALE / (QA * QB) to centipawns.
+//
+// The bundled network (see testNetwork and random) is not trained: it counts material with
+// some noise, enough to exercise the code, benchmark it and search sensibly. Pass a trained
+// network in the same layout for real play.
+public final class NnueNetwork {
+    public static final int INPUTS = 768;
+    public static final int QA = 255;
+    public static final int QB = 64;
+    public static final int SCALE = 400;
+    static final long MAGIC = 0x4350_4E4E_5545_0001L; // "CPNNUE" and format version 1
+    static final String TEST_NETWORK = "nnue-test.bin";
+
+    final int hidden;
+    // Input weights with one extra row of zeros, which NnueEvaluator adds for "no piece"
+    final int[] inputWeights;
+    final int[] hiddenBias;
+    final int[] outputWeights;
+    final int outputBias;
+
+    private NnueNetwork(int hidden, int[] inputWeights, int[] hiddenBias, int[] outputWeights, int outputBias) {
+        this.hidden = hidden;
+        this.inputWeights = inputWeights;
+        this.hiddenBias = hiddenBias;
+        this.outputWeights = outputWeights;
+        this.outputBias = outputBias;
+    }
+
+    public int hiddenSize() {
+        return hidden;
+    }
+
+    // Index of an input for the accumulator of perspective
+    static int input(int perspective, int piece, int square) {
+        int relative = Piece.color(piece) == perspective ? 0 : 6;
+        return (relative + Piece.type(piece)) * 64 + (perspective == Piece.WHITE ? square : square ^ 56);
+    }
+
+    public static NnueNetwork load(Path path) throws IOException {
+        try (InputStream in = Files.newInputStream(path)) {
+            return read(in);
+        }
+    }
+
+    // The network named by -Dchessproject.nnue: a file, "test" for the bundled one, or null if
+    // the property is not set or the file cannot be read
+    public static NnueNetwork fromSystemProperty() {
+        String name = System.getProperty("chessproject.nnue", "");
+        if (name.isEmpty()) {
+            return null;
+        }
+        if (name.equals("test")) {
+            return testNetwork();
+        }
+        try {
+            return load(Path.of(name));
+        } catch (IOException e) {
+            System.err.println("Cannot load NNUE network " + name + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    // The small random network bundled with the classes
+    public static NnueNetwork testNetwork() {
+        try (InputStream in = NnueNetwork.class.getResourceAsStream(TEST_NETWORK)) {
+            if (in == null) {
+                throw new IllegalStateException("Bundled network " + TEST_NETWORK + " is missing");
+            }
+            return read(in);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read bundled network " + TEST_NETWORK, e);
+        }
+    }
+
+    private static NnueNetwork read(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(stream, 1 << 16));
+        if (in.readLong() != MAGIC) {
+            throw new IOException("Not an NNUE network");
+        }
+        int hidden = in.readInt();
+        if (hidden < 1 || hidden > 4096) {
+            throw new IOException("Bad hidden layer size " + hidden);
+        }
+        int[] inputWeights = new int[(INPUTS + 1) * hidden];
+        for (int i = 0; i < INPUTS * hidden; i++) {
+            inputWeights[i] = in.readShort();
+        }
+        int[] hiddenBias = new int[hidden];
+        for (int i = 0; i < hidden; i++) {
+            hiddenBias[i] = in.readShort();
+        }
+        int[] outputWeights = new int[2 * hidden];
+        for (int i = 0; i < 2 * hidden; i++) {
+            outputWeights[i] = in.readShort();
+        }
+        return new NnueNetwork(hidden, inputWeights, hiddenBias, outputWeights, in.readInt());
+    }
+
+    public void write(Path path) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16))) {
+            out.writeLong(MAGIC);
+            out.writeInt(hidden);
+            for (int i = 0; i < INPUTS * hidden; i++) {
+                out.writeShort(inputWeights[i]);
+            }
+            for (int weight : hiddenBias) {
+                out.writeShort(weight);
+            }
+            for (int weight : outputWeights) {
+                out.writeShort(weight);
+            }
+            out.writeInt(outputBias);
+        }
+    }
+
+    // A stand-in for a trained network: every hidden neuron measures the material balance from
+    // its perspective, each with its own slope so they saturate at different imbalances, plus
+    // random noise per input that acts like piece-square values. The output comes out near
+    // Evaluator's material score and is color-symmetric. The bundled network is random(32, 1).
+    public static NnueNetwork random(int hidden, long seed) {
+        Random random = new Random(seed);
+        int[] slopes = new int[hidden];
+        int slopeSum = 0;
+        for (int i = 0; i < hidden; i++) {
+            slopes[i] = 2 + random.nextInt(9);
+            slopeSum += slopes[i];
+        }
+        int[] inputWeights = new int[(INPUTS + 1) * hidden];
+        for (int input = 0; input < INPUTS; input++) {
+            int relative = input / 64 / 6;
+            int value = Evaluator.PIECE_VALUE[input / 64 % 6] * (relative == 0 ? 1 : -1);
+            for (int i = 0; i < hidden; i++) {
+                inputWeights[input * hidden + i] = value * slopes[i] / 100 + random.nextInt(5) - 2;
+            }
+        }
+        int[] hiddenBias = new int[hidden];
+        Arrays.fill(hiddenBias, QA / 2);
+        // Both halves see the balance, so each contributes half of a centipawn per centipawn
+        int weight = Math.max(1, Math.round((float) QA * QB / (2 * SCALE) * 100 / slopeSum));
+        int[] outputWeights = new int[2 * hidden];
+        for (int i = 0; i < hidden; i++) {
+            outputWeights[i] = weight;
+            outputWeights[hidden + i] = -weight;
+        }
+        return new NnueNetwork(hidden, inputWeights, hiddenBias, outputWeights, 0);
+    }
+
+    // Writes a random network: NnueNetwork <hidden> <seed> <file>
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3) {
+            System.err.println("Usage: NnueNetwork <hidden> <seed> <file>");
+            System.exit(2);
+        }
+        random(Integer.parseInt(args[0]), Long.parseLong(args[1])).write(Path.of(args[2]));
+    }
+}
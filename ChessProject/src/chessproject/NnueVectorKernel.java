@@ -0,0 +1,50 @@
+package chessproject;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+// NnueKernel on the Vector API, in the widest int vectors the CPU has. It is its own class so
+// that nothing links against jdk.incubator.vector unless NnueKernel.vector() found the module.
+final class NnueVectorKernel implements NnueKernel {
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+    @Override
+    public void update(int[] acc, int dst, int src, int[] w, int add0, int add1, int sub0, int sub1, int length) {
+        int i = 0;
+        for (int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()) {
+            IntVector.fromArray(SPECIES, acc, src + i)
+                    .add(IntVector.fromArray(SPECIES, w, add0 + i))
+                    .add(IntVector.fromArray(SPECIES, w, add1 + i))
+                    .sub(IntVector.fromArray(SPECIES, w, sub0 + i))
+                    .sub(IntVector.fromArray(SPECIES, w, sub1 + i))
+                    .intoArray(acc, dst + i);
+        }
+        for (; i < length; i++) {
+            acc[dst + i] = acc[src + i] + w[add0 + i] + w[add1 + i] - w[sub0 + i] - w[sub1 + i];
+        }
+    }
+
+    @Override
+    public int output(int[] acc, int us, int them, int[] out, int length, int clip) {
+        IntVector sum = IntVector.zero(SPECIES);
+        int i = 0;
+        for (int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()) {
+            IntVector ours = IntVector.fromArray(SPECIES, acc, us + i).max(0).min(clip);
+            IntVector theirs = IntVector.fromArray(SPECIES, acc, them + i).max(0).min(clip);
+            sum = sum.add(ours.mul(IntVector.fromArray(SPECIES, out, i)))
+                    .add(theirs.mul(IntVector.fromArray(SPECIES, out, length + i)));
+        }
+        int total = sum.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            total += Math.min(Math.max(acc[us + i], 0), clip) * out[i];
+            total += Math.min(Math.max(acc[them + i], 0), clip) * out[length + i];
+        }
+        return total;
+    }
+
+    @Override
+    public String name() {
+        return "vector " + SPECIES.vectorBitSize() + "-bit";
+    }
+}
@@ -0,0 +1,188 @@
+package chessproject;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+// A memory-mapped opening book. The file uses the Polyglot layout: 16-byte big-endian entries
+//   key     8 bytes  position hash, entries sorted by it as an unsigned number
+//   move    2 bytes  to file, to rank, from file, from rank (3 bits each, low to high), then the
+//                    promotion piece (1 knight ... 4 queen); castling is written as the king
+//                    taking its own rook, e1h1
+//   weight  2 bytes  games the move was played in (see OpeningBookBuilder for the scaling)
+//   learn   4 bytes  wins (high 16 bits) and draws (low 16 bits) for the side playing the move,
+//                    scaled like the weight
+// with a position's entries in order of decreasing weight. The key is Position.key(), not
+// Polyglot's own Random64 hash, so books made by other Polyglot tools give no hits here.
+//
+// Probing is a binary search over the mapping and allocates nothing, so the book can be asked
+// about every position without cost.
+public final class OpeningBook implements Closeable {
+    public static final int ENTRY_SIZE = 16;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer entries;
+    private final int count;
+
+    private OpeningBook(FileChannel channel, MappedByteBuffer entries) {
+        this.channel = channel;
+        this.entries = entries;
+        this.count = entries.capacity() / ENTRY_SIZE;
+    }
+
+    public static OpeningBook open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size % ENTRY_SIZE != 0 || size > Integer.MAX_VALUE) {
+                throw new IOException("Not an opening book: " + path);
+            }
+            return new OpeningBook(channel, channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // The book at path, or null if there is none or it cannot be read
+    public static OpeningBook openIfPresent(Path path) {
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+        try {
+            return open(path);
+        } catch (IOException e) {
+            System.err.println("Cannot open opening book " + path + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Number of entries
+    public int size() {
+        return count;
+    }
+
+    // Writes the book moves of the position that are legal in it to moves[] and their weights
+    // to weights[], most played first, and returns how many there are. scores[] gets the score
+    // of each move in percent for the side playing it, if it is not null.
+    public int probe(Position pos, int[] moves, int[] weights, int[] scores) {
+        long key = pos.key();
+        int n = 0;
+        for (int i = lowerBound(key); i < count && key(i) == key && n < moves.length; i++) {
+            int base = i * ENTRY_SIZE;
+            int move = fromPolyglot(pos, entries.getShort(base + 8) & 0xFFFF);
+            int weight = entries.getShort(base + 10) & 0xFFFF;
+            if (move == Move.NONE || weight == 0) {
+                continue; // A hash collision or a move the builder filtered out
+            }
+            moves[n] = move;
+            weights[n] = weight;
+            if (scores != null) {
+                int learn = entries.getInt(base + 12);
+                scores[n] = ((learn >>> 16) * 2 + (learn & 0xFFFF)) * 50 / weight;
+            }
+            n++;
+        }
+        return n;
+    }
+
+    // A book move picked at random in proportion to how often it was played, Move.NONE if the
+    // position is not in the book
+    public int pick(Position pos, Random random) {
+        long key = pos.key();
+        int first = lowerBound(key);
+        int total = 0;
+        for (int i = first; i < count && key(i) == key; i++) {
+            total += weight(pos, i);
+        }
+        if (total == 0) {
+            return Move.NONE;
+        }
+        int r = random.nextInt(total);
+        for (int i = first; ; i++) {
+            r -= weight(pos, i);
+            if (r < 0) {
+                return fromPolyglot(pos, entries.getShort(i * ENTRY_SIZE + 8) & 0xFFFF);
+            }
+        }
+    }
+
+    // Weight of an entry, 0 if its move is not legal in the position
+    private int weight(Position pos, int index) {
+        int base = index * ENTRY_SIZE;
+        boolean legal = fromPolyglot(pos, entries.getShort(base + 8) & 0xFFFF) != Move.NONE;
+        return legal ? entries.getShort(base + 10) & 0xFFFF : 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private long key(int index) {
+        return entries.getLong(index * ENTRY_SIZE);
+    }
+
+    // First entry whose key is not below key, in unsigned order
+    private int lowerBound(long key) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (Long.compareUnsigned(key(mid), key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    public static int toPolyglot(int move) {
+        int from = Move.from(move);
+        int to = Move.to(move);
+        if (Move.flags(move) == Move.KING_CASTLE) {
+            to = from + 3;
+        } else if (Move.flags(move) == Move.QUEEN_CASTLE) {
+            to = from - 4;
+        }
+        int promotion = Move.isPromotion(move) ? Move.promotionType(move) : 0;
+        return to | from << 6 | promotion << 12;
+    }
+
+    // The legal move of the position a Polyglot move stands for, Move.NONE if there is none
+    public static int fromPolyglot(Position pos, int polyglot) {
+        int to = polyglot & 63;
+        int from = (polyglot >>> 6) & 63;
+        int promotion = (polyglot >>> 12) & 7;
+        int piece = pos.mailbox[from];
+        if (piece == Piece.NONE || Piece.color(piece) != pos.sideToMove) {
+            return Move.NONE;
+        }
+        int target = pos.mailbox[to];
+        int type = Piece.type(piece);
+        int flags;
+        if (type == Piece.KING && target == Piece.make(pos.sideToMove, Piece.ROOK)) {
+            flags = to > from ? Move.KING_CASTLE : Move.QUEEN_CASTLE;
+            to = to > from ? from + 2 : from - 2;
+        } else if (promotion != 0) {
+            if (type != Piece.PAWN || promotion > Piece.QUEEN) {
+                return Move.NONE;
+            }
+            flags = (target != Piece.NONE ? Move.PROMOTION_CAPTURE : Move.PROMOTION) + promotion - Piece.KNIGHT;
+        } else if (type == Piece.PAWN && Math.abs(to - from) == 16) {
+            flags = Move.DOUBLE_PUSH;
+        } else if (type == Piece.PAWN && target == Piece.NONE && ((to - from) & 7) != 0) {
+            flags = Move.EN_PASSANT;
+        } else {
+            flags = target != Piece.NONE ? Move.CAPTURE : Move.QUIET;
+        }
+        int move = Move.encode(from, to, flags);
+        return MoveGenerator.isPseudoLegal(pos, move) && MoveGenerator.isLegal(pos, move) ? move : Move.NONE;
+    }
+}
@@ -0,0 +1,203 @@
+package chessproject;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+// Builds an OpeningBook from PGN files and game archives. Every (position, move) pair of the
+// first plies of every finished game is counted with the game's result for the side that played
+// the move; transpositions meet in the same position key. Moves played in fewer than min-games
+// games are dropped, and the rest are written sorted by key and, within a position, by how often
+// they were played. When a position has a move with more games than 16 bits can count, all of
+// its entries are scaled down together so frequencies and scores stay right.
+//
+// Usage:
+//   java -cp ChessProject.jar chessproject.OpeningBookBuilder [--plies N] [--min-games G] book.bin games.pgn [db.cpa ...]
+// Files ending in .cpa are read as game archives (see GameArchive), anything else as PGN.
+public final class OpeningBookBuilder {
+    private static final int DEFAULT_PLIES = 24;
+    private static final int DEFAULT_MIN_GAMES = 2;
+
+    // Open-addressing table of (position key, move) -> games, wins, draws
+    private long[] keys = new long[1 << 16];
+    private int[] moves = new int[1 << 16];
+    private int[] games = new int[1 << 16];
+    private int[] wins = new int[1 << 16];
+    private int[] draws = new int[1 << 16];
+    private int used;
+
+    private final int maxPlies;
+    private final Position position = new Position();
+    private long gamesAdded;
+
+    public OpeningBookBuilder(int maxPlies) {
+        this.maxPlies = maxPlies;
+    }
+
+    // Counts the first plies of a game; unfinished games ("*") are skipped
+    public void add(PgnGame game) {
+        int result;
+        switch (game.result()) {
+            case "1-0": result = 1; break;
+            case "0-1": result = -1; break;
+            case "1/2-1/2": result = 0; break;
+            default: return;
+        }
+        position.setFen(game.startFen());
+        int plies = Math.min(game.moveCount(), maxPlies);
+        for (int i = 0; i < plies; i++) {
+            int move = game.move(i);
+            int slot = slot(position.key(), OpeningBook.toPolyglot(move));
+            games[slot]++;
+            int forMover = position.sideToMove() == Piece.WHITE ? result : -result;
+            if (forMover > 0) {
+                wins[slot]++;
+            } else if (forMover == 0) {
+                draws[slot]++;
+            }
+            position.makeMove(move);
+        }
+        gamesAdded++;
+    }
+
+    public long gamesAdded() {
+        return gamesAdded;
+    }
+
+    // Writes the book and returns the number of entries
+    public int write(Path path, int minGames) throws IOException {
+        Integer[] order = new Integer[used];
+        int n = 0;
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (moves[slot] != 0 && games[slot] >= minGames) {
+                order[n++] = slot;
+            }
+        }
+        order = Arrays.copyOf(order, n);
+        Arrays.sort(order, (a, b) -> {
+            int byKey = Long.compareUnsigned(keys[a], keys[b]);
+            return byKey != 0 ? byKey : Integer.compare(games[b], games[a]);
+        });
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16))) {
+            for (int start = 0; start < n; ) {
+                // Entries of one position: the most played comes first and sets the scale
+                int end = start + 1;
+                while (end < n && keys[order[end]] == keys[order[start]]) {
+                    end++;
+                }
+                double scale = Math.min(1.0, 65535.0 / games[order[start]]);
+                for (int i = start; i < end; i++) {
+                    int slot = order[i];
+                    out.writeLong(keys[slot]);
+                    out.writeShort(moves[slot]);
+                    out.writeShort(Math.max(1, (int) (games[slot] * scale)));
+                    out.writeShort((int) (wins[slot] * scale));
+                    out.writeShort((int) (draws[slot] * scale));
+                }
+                start = end;
+            }
+        }
+        return n;
+    }
+
+    // The slot for a (key, move) pair, claimed if it is new; Polyglot moves are never 0 (a1a1)
+    private int slot(long key, int move) {
+        if (used * 2 >= keys.length) {
+            grow();
+        }
+        int mask = keys.length - 1;
+        int slot = hash(key, move) & mask;
+        while (moves[slot] != 0) {
+            if (keys[slot] == key && moves[slot] == move) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        moves[slot] = move;
+        used++;
+        return slot;
+    }
+
+    private static int hash(long key, int move) {
+        long h = (key ^ move * 0x9E3779B97F4A7C15L) * 0xBF58476D1CE4E5B9L;
+        return (int) (h >>> 32);
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldMoves = moves;
+        int[] oldGames = games;
+        int[] oldWins = wins;
+        int[] oldDraws = draws;
+        int size = oldKeys.length * 2;
+        keys = new long[size];
+        moves = new int[size];
+        games = new int[size];
+        wins = new int[size];
+        draws = new int[size];
+        used = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldMoves[i] != 0) {
+                int slot = slot(oldKeys[i], oldMoves[i]);
+                games[slot] = oldGames[i];
+                wins[slot] = oldWins[i];
+                draws[slot] = oldDraws[i];
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int plies = DEFAULT_PLIES;
+        int minGames = DEFAULT_MIN_GAMES;
+        int i = 0;
+        for (; i < args.length && args[i].startsWith("--"); i++) {
+            switch (args[i]) {
+                case "--plies":
+                    plies = Integer.parseInt(args[++i]);
+                    break;
+                case "--min-games":
+                    minGames = Integer.parseInt(args[++i]);
+                    break;
+                default:
+                    System.err.println("Unknown argument: " + args[i]);
+                    System.exit(2);
+            }
+        }
+        if (args.length - i < 2) {
+            System.err.println("Usage: OpeningBookBuilder [--plies N] [--min-games G] <book.bin> <games.pgn|db.cpa> ...");
+            System.exit(2);
+        }
+        Path book = Path.of(args[i++]);
+        long start = System.nanoTime();
+        OpeningBookBuilder builder = new OpeningBookBuilder(plies);
+        for (; i < args.length; i++) {
+            String file = args[i];
+            if (file.endsWith(".cpa")) {
+                try (GameArchive archive = GameArchive.open(Path.of(file.substring(0, file.length() - 4)))) {
+                    for (int record = 0; record < archive.size(); record++) {
+                        if (archive.kind(record) == GameArchive.GAME) {
+                            builder.add(archive.game(record));
+                        }
+                    }
+                }
+            } else {
+                try (PgnReader reader = PgnReader.open(Path.of(file))) {
+                    while (reader.hasNext()) {
+                        PgnGame game = reader.next();
+                        if (game.isValid()) {
+                            builder.add(game);
+                        }
+                    }
+                }
+            }
+        }
+        int entries = builder.write(book, minGames);
+        System.out.printf("%,d games, %,d entries, %,.1f MB in %.1f s%n",
+                builder.gamesAdded(), entries, Files.size(book) / 1e6, (System.nanoTime() - start) / 1e9);
+    }
+}
@@ -0,0 +1,97 @@
+package chessproject;
+
+import java.nio.ByteBuffer;
+
+// A position in a fixed 32 bytes:
+//   bytes  0-7   occupancy bitboard, a1 = bit 0
+//   bytes  8-23  one 4-bit piece code (see Piece) per occupied square in square order, low
+//                nibble first; a legal position has at most 32 pieces
+//   byte  24     side to move (bit 0) and castling rights (bits 1-4)
+//   byte  25     en-passant square + 1, 0 for none
+//   byte  26     halfmove clock, capped at 255
+//   bytes 27-28  fullmove number, capped at 65535
+//   bytes 29-31  zero
+// Multi-byte fields are big-endian like the rest of ByteBuffer.
+public final class PackedPosition {
+    public static final int SIZE = 32;
+
+    private PackedPosition() {
+    }
+
+    // Writes the position at the buffer's current position and advances it
+    public static void pack(Position pos, ByteBuffer out) {
+        long occupied = pos.occupied;
+        if (Long.bitCount(occupied) > 32) {
+            throw new IllegalArgumentException("More than 32 pieces: " + pos.toFen());
+        }
+        out.putLong(occupied);
+        long low = 0;
+        long high = 0;
+        int count = 0;
+        while (occupied != 0) {
+            int sq = Long.numberOfTrailingZeros(occupied);
+            occupied &= occupied - 1;
+            long code = pos.mailbox[sq];
+            if (count < 16) {
+                low |= code << (4 * count);
+            } else {
+                high |= code << (4 * (count - 16));
+            }
+            count++;
+        }
+        // Reversed so the first nibble lands in the first byte
+        out.putLong(Long.reverseBytes(low));
+        out.putLong(Long.reverseBytes(high));
+        out.put((byte) (pos.sideToMove | pos.castlingRights << 1));
+        out.put((byte) (pos.epSquare + 1));
+        out.put((byte) Math.min(pos.halfmoveClock, 255));
+        out.putShort((short) Math.min(pos.fullmoveNumber, 65535));
+        out.put((byte) 0).putShort((short) 0);
+    }
+
+    // Loads the position stored at offset, without moving the buffer's position
+    public static void unpack(ByteBuffer in, int offset, Position pos) {
+        pos.clear();
+        long occupied = in.getLong(offset);
+        long nibbles = Long.reverseBytes(in.getLong(offset + 8));
+        int count = 0;
+        while (occupied != 0) {
+            int sq = Long.numberOfTrailingZeros(occupied);
+            occupied &= occupied - 1;
+            if (count == 16) {
+                nibbles = Long.reverseBytes(in.getLong(offset + 16));
+            }
+            int piece = (int) (nibbles >>> (4 * (count & 15))) & 15;
+            if (piece > Piece.BLACK_KING) {
+                throw new IllegalArgumentException("Bad piece code " + piece + " in packed position");
+            }
+            pos.addPiece(piece, sq);
+            count++;
+        }
+        int state = in.get(offset + 24);
+        pos.sideToMove = state & 1;
+        pos.castlingRights = (state >>> 1) & 15;
+        pos.epSquare = (in.get(offset + 25) & 0xFF) - 1;
+        pos.halfmoveClock = in.get(offset + 26) & 0xFF;
+        pos.fullmoveNumber = in.getShort(offset + 27) & 0xFFFF;
+        pos.key = pos.computeKey();
+    }
+
+    public static byte[] pack(Position pos) {
+        ByteBuffer buffer = ByteBuffer.allocate(SIZE);
+        pack(pos, buffer);
+        return buffer.array();
+    }
+
+    public static String toFen(byte[] packed) {
+        Position pos = new Position();
+        unpack(ByteBuffer.wrap(packed), 0, pos);
+        return pos.toFen();
+    }
+
+    public static byte[] fromFen(String fen) {
+        Position pos = new Position();
+        pos.setFen(fen);
+        return pack(pos);
+    }
+}
@@ -0,0 +1,142 @@
+package chessproject;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Lazy SMP: every thread runs its own Search on the same root and they cooperate only through one
+// shared TranspositionTable. Helper threads skip some iteration depths so they run ahead of the
+// main thread and fill the table with deeper results it can cut off on.
+//
+// The calling thread is the main thread: it owns the time limit, reports iterations to the
+// listener and its result is the one returned. Helpers run until the main thread finishes and are
+// then stopped. Helper threads are daemons kept in a pool for the lifetime of the instance; call
+// close() to release them early.
+public final class ParallelSearch implements AutoCloseable {
+    private static final long HELPER_MILLIS = TimeUnit.DAYS.toMillis(1); // Helpers stop with the main thread
+
+    private final TranspositionTable table;
+    private final Search main;
+    private final Search[] helpers;
+    private final ExecutorService pool;
+
+    public ParallelSearch(int threads, int hashMegabytes) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Need at least one search thread: " + threads);
+        }
+        table = new TranspositionTable(hashMegabytes);
+        main = new Search(table);
+        helpers = new Search[threads - 1];
+        for (int i = 0; i < helpers.length; i++) {
+            helpers[i] = new Search(table);
+        }
+        AtomicInteger threadNumber = new AtomicInteger(1);
+        pool = helpers.length == 0 ? null : Executors.newFixedThreadPool(helpers.length, runnable -> {
+            Thread thread = new Thread(runnable, "search-helper-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public int threads() {
+        return helpers.length + 1;
+    }
+
+    public TranspositionTable table() {
+        return table;
+    }
+
+    // Search.setNetwork for every thread; call it between searches
+    public void setNetwork(NnueNetwork network) {
+        main.setNetwork(network);
+        for (Search helper : helpers) {
+            helper.setNetwork(network);
+        }
+    }
+
+    // Same contract as Search.search; root must not be modified until this returns.
+    // Results passed to the listener and returned count the nodes of all threads.
+    public SearchResult search(Position root, long timeMillis, int maxDepth, Search.Listener listener) {
+        main.clearStop();
+        table.newSearch();
+        Future<?>[] running = new Future<?>[helpers.length];
+        for (int i = 0; i < helpers.length; i++) {
+            Search helper = helpers[i];
+            int index = i + 1;
+            helper.clearStop();
+            running[i] = pool.submit(() -> helper.iterate(root, HELPER_MILLIS, Search.MAX_PLY, null, index));
+        }
+
+        SearchResult result;
+        try {
+            result = main.iterate(root, timeMillis, maxDepth,
+                    listener == null ? null : iteration -> listener.onIteration(withAllNodes(iteration)), 0);
+        } finally {
+            for (Search helper : helpers) {
+                helper.stop();
+            }
+            awaitHelpers(running);
+        }
+        return result == null ? null : withAllNodes(result);
+    }
+
+    // Same as above, also stopping once the main thread has searched maxNodes nodes
+    public SearchResult search(Position root, long timeMillis, int maxDepth, long maxNodes, Search.Listener listener) {
+        main.limitNodes(maxNodes);
+        try {
+            return search(root, timeMillis, maxDepth, listener);
+        } finally {
+            main.limitNodes(Long.MAX_VALUE);
+        }
+    }
+
+    // Asks a running search to return as soon as possible; safe to call from any thread
+    public void stop() {
+        main.stop();
+        for (Search helper : helpers) {
+            helper.stop();
+        }
+    }
+
+    public long nodes() {
+        long nodes = main.nodes();
+        for (Search helper : helpers) {
+            nodes += helper.nodes();
+        }
+        return nodes;
+    }
+
+    @Override
+    public void close() {
+        if (pool != null) {
+            stop();
+            pool.shutdownNow();
+        }
+    }
+
+    private SearchResult withAllNodes(SearchResult result) {
+        return new SearchResult(result.bestMove, result.score, result.depth, nodes(), result.nanos, result.pv);
+    }
+
+    private static void awaitHelpers(Future<?>[] running) {
+        boolean interrupted = false;
+        for (Future<?> future : running) {
+            while (true) {
+                try {
+                    future.get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true; // Helpers are already stopping, finish waiting for them
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("Search helper failed", e.getCause());
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
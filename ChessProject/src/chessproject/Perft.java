@@ -0,0 +1,148 @@
+package chessproject;
+
+// Headless perft runner: counts the leaf nodes of the legal move tree to a fixed depth.
+// Comparing the counts with published values is the standard way to validate a move generator,
+// and nodes per second gives a quick speed figure for make/unmake and generation.
+//
+// Usage:
+//   java -cp ChessProject.jar chessproject.Perft                      run the built-in suite
+//   java -cp ChessProject.jar chessproject.Perft --suite 5            suite, at most depth 5
+//   java -cp ChessProject.jar chessproject.Perft --fen "<fen>" --depth 4 [--divide]
+public final class Perft {
+    // Name, FEN and expected node counts for depth 1, 2, 3, ...
+    private static final Object[][] SUITE = {
+        {"start position", Position.START_FEN,
+            new long[]{20, 400, 8902, 197281, 4865609, 119060324}},
+        {"kiwipete", "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+            new long[]{48, 2039, 97862, 4085603, 193690690}},
+        {"position 3", "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+            new long[]{14, 191, 2812, 43238, 674624, 11030083}},
+        {"position 4", "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1",
+            new long[]{6, 264, 9467, 422333, 15833292}},
+        {"position 4 mirrored", "r2q1rk1/pP1p2pp/Q4n2/bbp1p3/Np6/1B3NBn/pPPP1PPP/R3K2R b KQ - 0 1",
+            new long[]{6, 264, 9467, 422333, 15833292}},
+        {"position 5", "rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8",
+            new long[]{44, 1486, 62379, 2103487, 89941194}},
+    };
+
+    private static final int DEFAULT_SUITE_DEPTH = 5;
+
+    private final Position position;
+    private final int[] moves;
+
+    public Perft(Position position, int maxDepth) {
+        this.position = position;
+        // One shared buffer, each ply writes its moves after the previous ply's
+        this.moves = new int[MoveGenerator.MAX_MOVES * Math.max(1, maxDepth)];
+    }
+
+    public long perft(int depth) {
+        return depth <= 0 ? 1 : perft(depth, 0);
+    }
+
+    private long perft(int depth, int start) {
+        int end = MoveGenerator.generateLegal(position, moves, start);
+        if (depth == 1) {
+            return end - start; // Bulk counting: no need to make the last ply
+        }
+        long nodes = 0;
+        for (int i = start; i < end; i++) {
+            int move = moves[i];
+            position.makeMove(move);
+            nodes += perft(depth - 1, end);
+            position.unmakeMove(move);
+        }
+        return nodes;
+    }
+
+    // Prints the node count below every root move, useful to bisect a wrong total
+    public long divide(int depth) {
+        int end = MoveGenerator.generateLegal(position, moves, 0);
+        long total = 0;
+        for (int i = 0; i < end; i++) {
+            int move = moves[i];
+            position.makeMove(move);
+            long nodes = depth > 1 ? perft(depth - 1, end) : 1;
+            position.unmakeMove(move);
+            System.out.println(Move.toUci(move) + ": " + nodes);
+            total += nodes;
+        }
+        return total;
+    }
+
+    // Runs the built-in suite up to maxDepth, returns false if any count is wrong
+    public static boolean runSuite(int maxDepth) {
+        boolean allPassed = true;
+        long totalNodes = 0;
+        long totalNanos = 0;
+        for (Object[] entry : SUITE) {
+            String name = (String) entry[0];
+            long[] expected = (long[]) entry[2];
+            Position position = new Position();
+            position.setFen((String) entry[1]);
+            int depth = Math.min(maxDepth, expected.length);
+            Perft perft = new Perft(position, depth);
+
+            long start = System.nanoTime();
+            long nodes = perft.perft(depth);
+            long nanos = System.nanoTime() - start;
+            totalNodes += nodes;
+            totalNanos += nanos;
+
+            boolean passed = nodes == expected[depth - 1];
+            allPassed &= passed;
+            System.out.printf("%-20s depth %d  %,15d nodes  %8.0f ms  %,12d nps  %s%n",
+                    name, depth, nodes, nanos / 1e6, nodesPerSecond(nodes, nanos),
+                    passed ? "ok" : "FAILED (expected " + expected[depth - 1] + ")");
+        }
+        System.out.printf("%-20s          %,15d nodes  %8.0f ms  %,12d nps%n",
+                "total", totalNodes, totalNanos / 1e6, nodesPerSecond(totalNodes, totalNanos));
+        return allPassed;
+    }
+
+    private static long nodesPerSecond(long nodes, long nanos) {
+        return nanos == 0 ? 0 : nodes * 1_000_000_000L / nanos;
+    }
+
+    public static void main(String[] args) {
+        String fen = null;
+        int depth = -1;
+        boolean divide = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--fen":
+                    fen = args[++i];
+                    break;
+                case "--depth":
+                    depth = Integer.parseInt(args[++i]);
+                    break;
+                case "--divide":
+                    divide = true;
+                    break;
+                case "--suite":
+                    if (i + 1 < args.length && !args[i + 1].startsWith("--")) {
+                        depth = Integer.parseInt(args[++i]);
+                    }
+                    break;
+                default:
+                    System.err.println("Unknown argument: " + args[i]);
+                    System.exit(2);
+            }
+        }
+
+        if (fen == null) {
+            boolean passed = runSuite(depth > 0 ? depth : DEFAULT_SUITE_DEPTH);
+            System.exit(passed ? 0 : 1);
+        }
+
+        Position position = new Position();
+        position.setFen(fen);
+        depth = depth > 0 ? depth : DEFAULT_SUITE_DEPTH;
+        Perft perft = new Perft(position, depth);
+        long start = System.nanoTime();
+        long nodes = divide ? perft.divide(depth) : perft.perft(depth);
+        long nanos = System.nanoTime() - start;
+        System.out.printf("depth %d  %,d nodes  %.0f ms  %,d nps%n",
+                depth, nodes, nanos / 1e6, nodesPerSecond(nodes, nanos));
+    }
+}
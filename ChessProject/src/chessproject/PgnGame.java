@@ -0,0 +1,92 @@
+package chessproject;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// One game as read from or written to PGN: its tag pairs in file order, the moves (packed, see
+// Move) from the start position and the result. A game read by PgnReader whose movetext does not
+// replay under the rules keeps the moves up to the first bad one and says why in error().
+public final class PgnGame {
+    private final Map<String, String> tags = new LinkedHashMap<>();
+    private int[] moves = new int[64];
+    private int moveCount;
+    private String result = "*";
+    private String error;
+
+    public PgnGame() {
+    }
+
+    // The moves played so far in a Game, with the result if it is over
+    public static PgnGame of(Game game) {
+        PgnGame pgn = new PgnGame();
+        if (!game.startFen().equals(Position.START_FEN)) {
+            pgn.setTag("SetUp", "1");
+            pgn.setTag("FEN", game.startFen());
+        }
+        for (int i = 0; i < game.moveCount(); i++) {
+            pgn.addMove(game.move(i));
+        }
+        pgn.setResult(game.result());
+        return pgn;
+    }
+
+    public Map<String, String> tags() {
+        return tags;
+    }
+
+    public String tag(String name) {
+        return tags.get(name);
+    }
+
+    public void setTag(String name, String value) {
+        tags.put(name, value);
+    }
+
+    // The position the moves start from, given by the FEN tag
+    public String startFen() {
+        return tags.getOrDefault("FEN", Position.START_FEN);
+    }
+
+    public int moveCount() {
+        return moveCount;
+    }
+
+    public int move(int index) {
+        return moves[index];
+    }
+
+    public int[] moves() {
+        return Arrays.copyOf(moves, moveCount);
+    }
+
+    public void addMove(int move) {
+        if (moveCount == moves.length) {
+            moves = Arrays.copyOf(moves, moves.length * 2);
+        }
+        moves[moveCount++] = move;
+    }
+
+    // "1-0", "0-1", "1/2-1/2" or "*" for unfinished or unknown
+    public String result() {
+        return result;
+    }
+
+    public void setResult(String result) {
+        this.result = result;
+    }
+
+    public boolean isValid() {
+        return error == null;
+    }
+
+    public String error() {
+        return error;
+    }
+
+    void setError(String error) {
+        if (this.error == null) {
+            this.error = error;
+        }
+    }
+}
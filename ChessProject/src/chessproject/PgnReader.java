@@ -0,0 +1,410 @@
+package chessproject;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+// Streaming PGN reader: pulls bytes from a channel through one fixed-size buffer and hands out
+// games one at a time, so memory use depends on the longest game, not on the size of the file.
+// Every game is replayed while it is read: SAN moves are decoded straight from the buffer (see
+// San) and played on a Position, and a game whose moves break the rules is returned with the
+// moves up to the bad one and an error.
+//
+// Comments, variations, NAGs and escape lines are skipped. Tag values are UTF-8.
+//
+// Usage:
+//   java -cp ChessProject.jar chessproject.PgnReader games.pgn [more.pgn ...]
+// validates the files and prints games per second and the first few errors.
+public final class PgnReader implements Iterator<PgnGame>, AutoCloseable {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int MAX_TOKEN = 255;
+    private static final int EOF = -1;
+
+    // Bytes that end a movetext token
+    private static final boolean[] DELIMITER = new boolean[256];
+    static {
+        for (int c = 0; c <= ' '; c++) {
+            DELIMITER[c] = true;
+        }
+        for (char c : "{}();[]$".toCharArray()) {
+            DELIMITER[c] = true;
+        }
+    }
+
+    private final ReadableByteChannel channel;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private final ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+    private int bufferPos;
+    private int bufferLimit;
+    private boolean endOfInput;
+    private byte lastByteBefore = '\n'; // The byte before buffer[0], to find line starts
+    private long bytesRead;
+
+    private final byte[] token = new byte[MAX_TOKEN];
+    private final Position position = new Position();
+    private PgnGame nextGame;
+    private long nextGameOffset;
+    private long gameOffset = -1;
+    private long gamesRead;
+
+    public PgnReader(ReadableByteChannel channel) {
+        this.channel = channel;
+    }
+
+    public static PgnReader open(Path path) throws IOException {
+        return new PgnReader(FileChannel.open(path, StandardOpenOption.READ));
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (nextGame == null) {
+            try {
+                nextGame = readGame();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return nextGame != null;
+    }
+
+    @Override
+    public PgnGame next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        PgnGame game = nextGame;
+        nextGame = null;
+        gameOffset = nextGameOffset;
+        return game;
+    }
+
+    // Where in the input the game last returned by next() starts, counted from the first byte
+    // read from the channel
+    public long gameOffset() {
+        return gameOffset;
+    }
+
+    // The remaining games, read lazily as the stream is consumed
+    public Stream<PgnGame> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    // The position reached by the game last returned by next(), or where its moves stopped
+    // replaying if it is invalid; only until hasNext() reads the next game
+    Position position() {
+        return position;
+    }
+
+    public long bytesRead() {
+        return bytesRead;
+    }
+
+    public long gamesRead() {
+        return gamesRead;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    // Reads and replays the next game, null at the end of the input
+    private PgnGame readGame() throws IOException {
+        int c = skipSeparators();
+        if (c == EOF) {
+            return null;
+        }
+        nextGameOffset = bytesRead - bufferLimit + bufferPos;
+        PgnGame game = new PgnGame();
+        while (c == '[') {
+            readTag(game);
+            c = skipSeparators();
+        }
+
+        String fen = game.tag("FEN");
+        if (fen == null) {
+            position.setStartPosition();
+        } else {
+            try {
+                position.setFen(fen);
+            } catch (RuntimeException e) {
+                // A broken FEN tag spoils this game only, the reader goes on with the next
+                game.setError(e instanceof IllegalArgumentException ? e.getMessage() : "Bad FEN tag: " + e);
+            }
+        }
+        readMovetext(game);
+        gamesRead++;
+        return game;
+    }
+
+    private void readMovetext(PgnGame game) throws IOException {
+        while (true) {
+            int c = skipSeparators();
+            if (c == EOF || c == '[') {
+                return; // No result token, the next game or the end follows
+            }
+            if (c == '*') {
+                read();
+                game.setResult("*");
+                return;
+            }
+            int length = readToken();
+            if (length == 0) {
+                read(); // A stray delimiter such as ')'
+                continue;
+            }
+            int start = 0;
+            if (token[0] >= '0' && token[0] <= '9') {
+                if (isResult(length)) {
+                    game.setResult(new String(token, 0, length, StandardCharsets.US_ASCII));
+                    return;
+                }
+                if (!(length >= 3 && token[0] == '0' && token[1] == '-')) {
+                    // A move number, "12." or "12...", possibly glued to the move: "12.e4"
+                    while (start < length && token[start] >= '0' && token[start] <= '9') {
+                        start++;
+                    }
+                    while (start < length && token[start] == '.') {
+                        start++;
+                    }
+                    if (start == length) {
+                        continue;
+                    }
+                }
+            }
+            if (game.isValid()) {
+                int move = San.parse(position, token, start, length);
+                if (move == Move.NONE) {
+                    game.setError("Illegal or ambiguous move " + new String(token, start, length - start, StandardCharsets.US_ASCII)
+                            + " at ply " + (game.moveCount() + 1));
+                } else {
+                    position.makeMove(move);
+                    game.addMove(move);
+                }
+            }
+        }
+    }
+
+    private boolean isResult(int length) {
+        return length == 3 && token[1] == '-' && (token[0] == '1' && token[2] == '0' || token[0] == '0' && token[2] == '1')
+                || length == 7 && token[0] == '1' && token[1] == '/' && token[2] == '2' && token[3] == '-'
+                        && token[4] == '1' && token[5] == '/' && token[6] == '2';
+    }
+
+    // [Name "value"]; the opening bracket is the current byte
+    private void readTag(PgnGame game) throws IOException {
+        read();
+        skipSpaces();
+        int length = 0;
+        int c;
+        while ((c = peek()) != EOF && c > ' ' && c != '"' && c != ']') {
+            if (length < MAX_TOKEN) {
+                token[length++] = (byte) c;
+            }
+            read();
+        }
+        String name = new String(token, 0, length, StandardCharsets.US_ASCII);
+        skipSpaces();
+        String value = "";
+        if (peek() == '"') {
+            read();
+            length = 0;
+            while ((c = read()) != EOF && c != '"' && c != '\n') {
+                if (c == '\\') {
+                    c = read(); // \" and \\ stand for the character itself
+                }
+                if (length < MAX_TOKEN && c != EOF) {
+                    token[length++] = (byte) c;
+                }
+            }
+            value = new String(token, 0, length, StandardCharsets.UTF_8);
+        }
+        while ((c = peek()) != EOF && c != ']' && c != '\n') {
+            read();
+        }
+        if (c == ']') {
+            read();
+        }
+        if (!name.isEmpty()) {
+            game.setTag(name, value);
+        }
+    }
+
+    // Copies the token at the current position into token[], returns its length. This and
+    // skipSeparators see every byte of the movetext, so they scan the buffer directly.
+    private int readToken() throws IOException {
+        int length = 0;
+        byte[] buf = buffer;
+        do {
+            int pos = bufferPos;
+            int limit = bufferLimit;
+            while (pos < limit && !DELIMITER[buf[pos] & 0xFF]) {
+                if (length < MAX_TOKEN) {
+                    token[length++] = buf[pos];
+                }
+                pos++;
+            }
+            bufferPos = pos;
+            if (pos < limit) {
+                return length;
+            }
+        } while (fill());
+        return length;
+    }
+
+    // Skips white space, comments, variations, NAGs and escape lines; returns the next byte
+    private int skipSeparators() throws IOException {
+        byte[] buf = buffer;
+        while (true) {
+            int pos = bufferPos;
+            int limit = bufferLimit;
+            while (pos < limit && (buf[pos] & 0xFF) <= ' ') {
+                pos++;
+            }
+            bufferPos = pos;
+            if (pos == limit) {
+                if (!fill()) {
+                    return EOF;
+                }
+                continue;
+            }
+            int c = buf[pos] & 0xFF;
+            if (c == '%' && atLineStart() || c == ';') {
+                skipLine();
+            } else if (c == '{') {
+                skipComment();
+            } else if (c == '(') {
+                skipVariation();
+            } else if (c == '$') {
+                read();
+                while ((c = peek()) >= '0' && c <= '9') {
+                    read();
+                }
+            } else if (c == '!' || c == '?' || c == ')') {
+                read(); // Annotation glyphs written apart from the move, stray closing brackets
+            } else {
+                return c;
+            }
+        }
+    }
+
+    private void skipSpaces() throws IOException {
+        int c;
+        while ((c = peek()) != EOF && c <= ' ' && c != '\n') {
+            read();
+        }
+    }
+
+    private void skipLine() throws IOException {
+        int c;
+        while ((c = read()) != EOF && c != '\n') {
+            // Skip
+        }
+    }
+
+    private void skipComment() throws IOException {
+        int c;
+        while ((c = read()) != EOF && c != '}') {
+            // Skip
+        }
+    }
+
+    // Variations nest and may contain comments with brackets in them
+    private void skipVariation() throws IOException {
+        int depth = 0;
+        int c;
+        while ((c = read()) != EOF) {
+            if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                if (--depth == 0) {
+                    return;
+                }
+            } else if (c == '{') {
+                skipComment();
+            } else if (c == ';') {
+                skipLine();
+            }
+        }
+    }
+
+    private int peek() throws IOException {
+        if (bufferPos == bufferLimit && !fill()) {
+            return EOF;
+        }
+        return buffer[bufferPos] & 0xFF;
+    }
+
+    private int read() throws IOException {
+        if (bufferPos == bufferLimit && !fill()) {
+            return EOF;
+        }
+        return buffer[bufferPos++] & 0xFF;
+    }
+
+    // Whether the current byte is the first of a line
+    private boolean atLineStart() {
+        return (bufferPos > 0 ? buffer[bufferPos - 1] : lastByteBefore) == '\n';
+    }
+
+    private boolean fill() throws IOException {
+        if (endOfInput) {
+            return false;
+        }
+        if (bufferLimit > 0) {
+            lastByteBefore = buffer[bufferLimit - 1];
+        }
+        byteBuffer.clear();
+        int n;
+        do {
+            n = channel.read(byteBuffer);
+        } while (n == 0);
+        if (n < 0) {
+            endOfInput = true;
+            return false;
+        }
+        bufferPos = 0;
+        bufferLimit = n;
+        bytesRead += n;
+        return true;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: PgnReader <file.pgn> [more.pgn ...]");
+            System.exit(2);
+        }
+        long games = 0;
+        long invalid = 0;
+        long plies = 0;
+        long bytes = 0;
+        long start = System.nanoTime();
+        for (String file : args) {
+            try (PgnReader reader = open(Path.of(file))) {
+                while (reader.hasNext()) {
+                    PgnGame game = reader.next();
+                    games++;
+                    plies += game.moveCount();
+                    if (!game.isValid() && invalid++ < 10) {
+                        System.out.println(file + ", game " + reader.gamesRead() + ": " + game.error());
+                    }
+                }
+                bytes += reader.bytesRead();
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%,d games (%,d invalid), %,d plies, %,.1f MB in %.2f s: %,.0f games/s, %,.0f plies/s, %,.1f MB/s%n",
+                games, invalid, plies, bytes / 1e6, seconds, games / seconds, plies / seconds, bytes / 1e6 / seconds);
+    }
+}
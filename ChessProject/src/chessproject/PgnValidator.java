@@ -0,0 +1,400 @@
+package chessproject;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// Audits a whole PGN database in parallel. The file is cut into byte ranges of a few megabytes
+// that start and end on game boundaries, and the shards are validated on a ForkJoinPool, each with
+// its own PgnReader over a positional view of the one FileChannel. Moves are replayed under the
+// same rules the GUI enforces (legal moves only, nothing after mate or stalemate), and results are
+// checked against the final position and the Result tag. Reports are merged in file order, so
+// errors are numbered and ordered the same whatever the thread count.
+//
+// A game boundary is a line starting with '[' after a line of movetext. A "\n[" inside a
+// multi-line comment could fool that, in which case the game around it is reported as broken.
+//
+// Usage:
+//   java -cp ChessProject.jar chessproject.PgnValidator [--threads N] [--shard-mb M] [--errors E] [--scaling] games.pgn
+//   java -cp ChessProject.jar chessproject.PgnValidator --generate GAMES games.pgn
+// --scaling validates the file with 1, 2, 4, ... up to N threads and compares the wall times.
+// --generate writes a test file of random games, one in 500 of them broken on purpose.
+public final class PgnValidator {
+    private static final long DEFAULT_SHARD_BYTES = 4L << 20;
+    private static final int SCAN_BUFFER = 1 << 16;
+    private static final int MAX_KEPT_ERRORS = 1000;
+
+    private PgnValidator() {
+    }
+
+    // One game that failed validation; game is its 1-based number in the file
+    public static final class GameError {
+        public final long game;
+        public final long offset;
+        public final String message;
+
+        GameError(long game, long offset, String message) {
+            this.game = game;
+            this.offset = offset;
+            this.message = message;
+        }
+
+        @Override
+        public String toString() {
+            return "game " + game + " at byte " + offset + ": " + message;
+        }
+    }
+
+    // Totals for a run of consecutive shards, with the first MAX_KEPT_ERRORS errors in file order
+    public static final class Report {
+        public long games;
+        public long invalid;
+        public long plies;
+        public long bytes;
+        public final List<GameError> errors = new ArrayList<>();
+
+        // Appends the report of the shards that follow this one
+        Report append(Report next) {
+            for (GameError error : next.errors) {
+                if (errors.size() == MAX_KEPT_ERRORS) {
+                    break;
+                }
+                errors.add(new GameError(error.game + games, error.offset, error.message));
+            }
+            games += next.games;
+            invalid += next.invalid;
+            plies += next.plies;
+            bytes += next.bytes;
+            return this;
+        }
+    }
+
+    public static Report validate(Path path, int threads) throws IOException {
+        return validate(path, threads, DEFAULT_SHARD_BYTES);
+    }
+
+    public static Report validate(Path path, int threads, long shardBytes) throws IOException {
+        try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ)) {
+            long[] bounds = shardBounds(file, shardBytes);
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                return pool.invoke(new ShardTask(file, bounds, 0, bounds.length - 1));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    // Splits the shard range in halves until one shard is left; the left half is forked so idle
+    // workers can steal it while this thread goes on with the right half
+    private static final class ShardTask extends RecursiveTask<Report> {
+        private final FileChannel file;
+        private final long[] bounds;
+        private final int from, to;
+
+        ShardTask(FileChannel file, long[] bounds, int from, int to) {
+            this.file = file;
+            this.bounds = bounds;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Report compute() {
+            if (to - from <= 1) {
+                try {
+                    return validateShard(file, bounds[from], bounds[to]);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            int mid = (from + to) >>> 1;
+            ShardTask left = new ShardTask(file, bounds, from, mid);
+            left.fork();
+            Report right = new ShardTask(file, bounds, mid, to).compute();
+            return left.join().append(right);
+        }
+    }
+
+    private static Report validateShard(FileChannel file, long start, long end) throws IOException {
+        Report report = new Report();
+        int[] buffer = new int[MoveGenerator.MAX_MOVES];
+        PgnReader reader = new PgnReader(new RangeChannel(file, start, end));
+        while (reader.hasNext()) {
+            PgnGame game = reader.next();
+            report.games++;
+            report.plies += game.moveCount();
+            String error = game.isValid() ? checkResult(game, reader.position(), buffer) : game.error();
+            if (error != null) {
+                report.invalid++;
+                if (report.errors.size() < MAX_KEPT_ERRORS) {
+                    report.errors.add(new GameError(report.games, start + reader.gameOffset(), error));
+                }
+            }
+        }
+        report.bytes = end - start;
+        return report;
+    }
+
+    // The result must agree with the Result tag, and with the board when the game ended in mate or
+    // stalemate; any result goes for a game that stopped early (resignation, agreement, time)
+    static String checkResult(PgnGame game, Position end, int[] buffer) {
+        String tag = game.tag("Result");
+        if (tag != null && !tag.equals(game.result())) {
+            return "Result tag " + tag + " does not match the result " + game.result() + " after the moves";
+        }
+        if (MoveGenerator.hasLegalMove(end, buffer)) {
+            return null;
+        }
+        if (end.isInCheck(end.sideToMove())) {
+            String expected = end.sideToMove() == Piece.WHITE ? "0-1" : "1-0";
+            return game.result().equals(expected) ? null : "Checkmate, but the result is " + game.result();
+        }
+        return game.result().equals("1/2-1/2") ? null : "Stalemate, but the result is " + game.result();
+    }
+
+    // Shard start offsets: the first game boundary at or after every multiple of shardBytes,
+    // followed by the file size
+    static long[] shardBounds(FileChannel file, long shardBytes) throws IOException {
+        long size = file.size();
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(0L);
+        long previous = 0;
+        for (long target = shardBytes; target < size; target += shardBytes) {
+            long boundary = nextGameStart(file, Math.max(target, previous + 1), size);
+            if (boundary >= size) {
+                break;
+            }
+            if (boundary > previous) {
+                bounds.add(boundary);
+                previous = boundary;
+            }
+        }
+        bounds.add(size);
+        long[] result = new long[bounds.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = bounds.get(i);
+        }
+        return result;
+    }
+
+    // Offset of the first '[' at a line start that follows movetext, at or after from
+    private static long nextGameStart(FileChannel file, long from, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER);
+        // The line holding from may be a tag or movetext, so it neither starts nor ends a game
+        boolean lineStart = false;
+        boolean blankLine = false;
+        boolean afterMovetext = false;
+        long pos = from;
+        while (pos < size) {
+            buffer.clear();
+            int n = file.read(buffer, pos);
+            if (n <= 0) {
+                break;
+            }
+            for (int i = 0; i < n; i++) {
+                byte c = buffer.get(i);
+                if (c == '\n') {
+                    lineStart = true;
+                    blankLine = true;
+                    continue;
+                }
+                if (lineStart) {
+                    lineStart = false;
+                    if (c == '[') {
+                        if (afterMovetext) {
+                            return pos + i;
+                        }
+                        blankLine = false;
+                        continue;
+                    }
+                }
+                if (blankLine && c > ' ') {
+                    blankLine = false;
+                    afterMovetext = c != '[' && c != '%';
+                }
+            }
+            pos += n;
+        }
+        return size;
+    }
+
+    // Reads bytes [start, end) of a file through positional reads, so any number of shards can
+    // share one FileChannel; closing it leaves the file open
+    private static final class RangeChannel implements ReadableByteChannel {
+        private final FileChannel file;
+        private final long end;
+        private long position;
+
+        RangeChannel(FileChannel file, long start, long end) {
+            this.file = file;
+            this.position = start;
+            this.end = end;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            if (position >= end) {
+                return -1;
+            }
+            int oldLimit = dst.limit();
+            dst.limit(dst.position() + (int) Math.min(dst.remaining(), end - position));
+            int n = file.read(dst, position);
+            dst.limit(oldLimit);
+            if (n > 0) {
+                position += n;
+            }
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return file.isOpen();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    // Random legal games with results that fit the final position. Every 500th game has its
+    // FEN tag dropped so its moves no longer replay, and every 500th after that a Result tag that
+    // contradicts the movetext, so a run has errors to find.
+    static void generate(Path path, int games, long seed) throws IOException {
+        Random random = new Random(seed);
+        String[] results = {"1-0", "0-1", "1/2-1/2", "*"};
+        String middlegame = "r1bq1rk1/pp2bppp/2n1pn2/3p4/3P4/2NBPN2/PP3PPP/R2Q1RK1 w - - 0 10";
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+        Position position = new Position();
+        try (Writer out = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            for (int g = 1; g <= games; g++) {
+                boolean dropFen = g % 500 == 0;
+                boolean wrongTag = g % 500 == 250;
+                PgnGame game = new PgnGame();
+                game.setTag("Event", "Generated");
+                game.setTag("Round", Integer.toString(g));
+                game.setTag("White", "Random " + random.nextInt(1000));
+                game.setTag("Black", "Random " + random.nextInt(1000));
+                if (dropFen || random.nextInt(20) == 0) {
+                    game.setTag("SetUp", "1");
+                    game.setTag("FEN", middlegame);
+                }
+                position.setFen(game.startFen());
+                int plies = 20 + random.nextInt(140);
+                String result = results[random.nextInt(results.length)];
+                for (int ply = 0; ply <= plies; ply++) {
+                    int count = MoveGenerator.generateLegal(position, moves);
+                    if (count == 0) {
+                        boolean mate = position.isInCheck(position.sideToMove());
+                        result = !mate ? "1/2-1/2" : position.sideToMove() == Piece.WHITE ? "0-1" : "1-0";
+                        break;
+                    }
+                    if (ply < plies) {
+                        int move = moves[random.nextInt(count)];
+                        game.addMove(move);
+                        position.makeMove(move);
+                    }
+                }
+                game.setResult(result);
+
+                StringWriter text = new StringWriter();
+                new PgnWriter(text).write(game);
+                String pgn = text.toString();
+                if (dropFen) {
+                    pgn = pgn.replace("[SetUp \"1\"]\n", "").replace("[FEN \"" + middlegame + "\"]\n", "");
+                } else if (wrongTag) {
+                    String other = result.equals("1-0") ? "0-1" : "1-0";
+                    pgn = pgn.replace("[Result \"" + result + "\"]", "[Result \"" + other + "\"]");
+                }
+                out.write(pgn);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        long shardBytes = DEFAULT_SHARD_BYTES;
+        int shownErrors = 20;
+        boolean scaling = false;
+        int generateGames = 0;
+        String file = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "--shard-mb":
+                    shardBytes = Long.parseLong(args[++i]) << 20;
+                    break;
+                case "--errors":
+                    shownErrors = Integer.parseInt(args[++i]);
+                    break;
+                case "--scaling":
+                    scaling = true;
+                    break;
+                case "--generate":
+                    generateGames = Integer.parseInt(args[++i]);
+                    break;
+                default:
+                    if (args[i].startsWith("--") || file != null) {
+                        System.err.println("Unknown argument: " + args[i]);
+                        System.exit(2);
+                    }
+                    file = args[i];
+            }
+        }
+        if (file == null) {
+            System.err.println("Usage: PgnValidator [--threads N] [--shard-mb M] [--errors E] [--scaling] [--generate GAMES] <file.pgn>");
+            System.exit(2);
+        }
+        Path path = Path.of(file);
+        if (generateGames > 0) {
+            long start = System.nanoTime();
+            generate(path, generateGames, 1);
+            System.out.printf("Wrote %,d games, %,.1f MB in %.1f s%n", generateGames, Files.size(path) / 1e6, (System.nanoTime() - start) / 1e9);
+            return;
+        }
+
+        if (!scaling) {
+            long start = System.nanoTime();
+            Report report = validate(path, threads, shardBytes);
+            long nanos = System.nanoTime() - start;
+            for (int i = 0; i < Math.min(shownErrors, report.errors.size()); i++) {
+                System.out.println(report.errors.get(i));
+            }
+            System.out.printf("%,d games (%,d invalid), %,d plies, %,.1f MB in %.2f s with %d threads: %,.0f games/s, %,.1f MB/s%n",
+                    report.games, report.invalid, report.plies, report.bytes / 1e6, nanos / 1e9, threads,
+                    report.games * 1e9 / nanos, report.bytes * 1e3 / nanos);
+            return;
+        }
+
+        System.out.printf("%s, %,.1f MB, %d cores%n", file, Files.size(path) / 1e6, Runtime.getRuntime().availableProcessors());
+        validate(path, threads, shardBytes); // Warms up the JIT and the page cache
+        long baseline = 0;
+        for (int t = 1; t <= threads; t = t == threads ? t + 1 : Math.min(t * 2, threads)) {
+            long start = System.nanoTime();
+            Report report = validate(path, t, shardBytes);
+            long nanos = System.nanoTime() - start;
+            if (t == 1) {
+                baseline = nanos;
+            }
+            System.out.printf("%3d threads  %8.0f ms  speedup %5.2f  %,12.0f games/s  %,8d invalid%n",
+                    t, nanos / 1e6, (double) baseline / nanos, report.games * 1e9 / nanos, report.invalid);
+        }
+    }
+}
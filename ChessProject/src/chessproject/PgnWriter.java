@@ -0,0 +1,108 @@
+package chessproject;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+// Writes games in export format: the Seven Tag Roster first (with "?" for unknown values), then
+// any other tags, then the movetext in SAN with move numbers, wrapped before 80 columns and ended
+// by the result.
+public final class PgnWriter implements Closeable {
+    private static final String[] SEVEN_TAG_ROSTER = {"Event", "Site", "Date", "Round", "White", "Black", "Result"};
+    private static final int LINE_WIDTH = 79;
+
+    private final Writer out;
+    private final Position position = new Position();
+    private final int[] buffer = new int[MoveGenerator.MAX_MOVES];
+    private final StringBuilder line = new StringBuilder(LINE_WIDTH + 16);
+
+    public PgnWriter(Writer out) {
+        this.out = out;
+    }
+
+    public static PgnWriter open(Path path) throws IOException {
+        return new PgnWriter(new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(path), StandardCharsets.UTF_8)));
+    }
+
+    public void write(PgnGame game) throws IOException {
+        for (String name : SEVEN_TAG_ROSTER) {
+            String value = name.equals("Result") ? game.result() : game.tag(name);
+            if (value == null) {
+                value = name.equals("Date") ? "????.??.??" : "?";
+            }
+            writeTag(name, value);
+        }
+        for (Map.Entry<String, String> tag : game.tags().entrySet()) {
+            if (!isRosterTag(tag.getKey())) {
+                writeTag(tag.getKey(), tag.getValue());
+            }
+        }
+        out.write('\n');
+
+        position.setFen(game.startFen());
+        line.setLength(0);
+        for (int i = 0; i < game.moveCount(); i++) {
+            int move = game.move(i);
+            if (position.sideToMove() == Piece.WHITE) {
+                append(position.fullmoveNumber() + ".");
+            } else if (i == 0) {
+                append(position.fullmoveNumber() + "...");
+            }
+            append(San.toSan(position, move, buffer));
+            position.makeMove(move);
+        }
+        append(game.result());
+        out.write(line.toString());
+        out.write("\n\n");
+    }
+
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    private void append(String token) throws IOException {
+        if (line.length() > 0 && line.length() + 1 + token.length() > LINE_WIDTH) {
+            out.write(line.toString());
+            out.write('\n');
+            line.setLength(0);
+        }
+        if (line.length() > 0) {
+            line.append(' ');
+        }
+        line.append(token);
+    }
+
+    private void writeTag(String name, String value) throws IOException {
+        out.write('[');
+        out.write(name);
+        out.write(" \"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.write('\\');
+            }
+            out.write(c);
+        }
+        out.write("\"]\n");
+    }
+
+    private static boolean isRosterTag(String name) {
+        for (String roster : SEVEN_TAG_ROSTER) {
+            if (roster.equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,64 @@
+package chessproject;
+
+// Piece and color encoding shared by Position and the rules code.
+// A piece code is color * 6 + type, so it indexes the twelve bitboards in Position directly.
+public final class Piece {
+    public static final int WHITE = 0;
+    public static final int BLACK = 1;
+
+    public static final int PAWN = 0;
+    public static final int KNIGHT = 1;
+    public static final int BISHOP = 2;
+    public static final int ROOK = 3;
+    public static final int QUEEN = 4;
+    public static final int KING = 5;
+
+    public static final int NONE = -1;
+
+    public static final int WHITE_PAWN = 0;
+    public static final int WHITE_KNIGHT = 1;
+    public static final int WHITE_BISHOP = 2;
+    public static final int WHITE_ROOK = 3;
+    public static final int WHITE_QUEEN = 4;
+    public static final int WHITE_KING = 5;
+    public static final int BLACK_PAWN = 6;
+    public static final int BLACK_KNIGHT = 7;
+    public static final int BLACK_BISHOP = 8;
+    public static final int BLACK_ROOK = 9;
+    public static final int BLACK_QUEEN = 10;
+    public static final int BLACK_KING = 11;
+
+    // Same names as the images in resources/, e.g. "WK" for the white king
+    private static final String[] NAMES = {
+        "WP", "WN", "WB", "WR", "WQ", "WK", "BP", "BN", "BB", "BR", "BQ", "BK"
+    };
+    private static final String FEN_CHARS = "PNBRQKpnbrqk";
+
+    private Piece() {
+    }
+
+    public static int make(int color, int type) {
+        return color * 6 + type;
+    }
+
+    public static int color(int piece) {
+        return piece < 6 ? WHITE : BLACK;
+    }
+
+    public static int type(int piece) {
+        return piece < 6 ? piece : piece - 6;
+    }
+
+    public static String name(int piece) {
+        return NAMES[piece];
+    }
+
+    public static char fenChar(int piece) {
+        return FEN_CHARS.charAt(piece);
+    }
+
+    // Returns Piece.NONE for characters that are not a FEN piece letter
+    public static int fromFenChar(char c) {
+        return FEN_CHARS.indexOf(c);
+    }
+}
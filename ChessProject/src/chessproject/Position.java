@@ -0,0 +1,549 @@
+package chessproject;
+
+// Headless chess position stored as twelve 64-bit bitboards (one per piece code, see Piece)
+// plus side to move, castling rights, en-passant square and move counters.
+// A mailbox array mirrors the bitboards so "what is on this square" is a single array read.
+//
+// Squares are numbered a1 = 0, b1 = 1 ... h8 = 63. The Swing board uses row 0 for rank 8,
+// so square(row, col) converts between the two.
+//
+// makeMove/unmakeMove do not allocate: the state that cannot be recomputed on unmake is
+// packed into a long and pushed on a preallocated undo stack. The Zobrist key is updated
+// incrementally by makeMove, and unmakeMove restores it from a parallel key stack. The
+// material and piece-square sums Evaluator starts from follow every piece that is added,
+// removed or moved, so they are never recomputed either.
+public final class Position {
+    public static final int WHITE_KINGSIDE = 1;
+    public static final int WHITE_QUEENSIDE = 2;
+    public static final int BLACK_KINGSIDE = 4;
+    public static final int BLACK_QUEENSIDE = 8;
+
+    public static final String START_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+    public static final long FILE_A = 0x0101010101010101L;
+    public static final long FILE_H = FILE_A << 7;
+
+    // castlingRights &= CASTLING_MASK[from] & CASTLING_MASK[to] after every move
+    private static final int[] CASTLING_MASK = new int[64];
+    static {
+        for (int sq = 0; sq < 64; sq++) {
+            CASTLING_MASK[sq] = 15;
+        }
+        CASTLING_MASK[0] &= ~WHITE_QUEENSIDE;
+        CASTLING_MASK[7] &= ~WHITE_KINGSIDE;
+        CASTLING_MASK[4] &= ~(WHITE_KINGSIDE | WHITE_QUEENSIDE);
+        CASTLING_MASK[56] &= ~BLACK_QUEENSIDE;
+        CASTLING_MASK[63] &= ~BLACK_KINGSIDE;
+        CASTLING_MASK[60] &= ~(BLACK_KINGSIDE | BLACK_QUEENSIDE);
+    }
+
+    final long[] pieces = new long[12];
+    final long[] colors = new long[2];
+    long occupied;
+    final int[] mailbox = new int[64];
+
+    int sideToMove;
+    int castlingRights;
+    int epSquare = -1;
+    int halfmoveClock;
+    int fullmoveNumber = 1;
+    long key;
+    // Evaluator.MIDDLEGAME and ENDGAME summed over the pieces, and the game phase
+    int middlegame;
+    int endgame;
+    int phase;
+
+    // Undo records: captured piece + 1 (4 bits) | castling (4 bits) | ep square + 1 (8 bits) | halfmove clock
+    private long[] undoStack = new long[256];
+    // Zobrist key before each move, so keyStack[0..ply) is the key history of the game/search line
+    private long[] keyStack = new long[256];
+    private int undoSize;
+
+    public Position() {
+        clear();
+    }
+
+    // Independent copy, including the move history, e.g. for a search running on another thread
+    public Position(Position other) {
+        copyFrom(other);
+    }
+
+    public void copyFrom(Position other) {
+        System.arraycopy(other.pieces, 0, pieces, 0, 12);
+        colors[Piece.WHITE] = other.colors[Piece.WHITE];
+        colors[Piece.BLACK] = other.colors[Piece.BLACK];
+        occupied = other.occupied;
+        System.arraycopy(other.mailbox, 0, mailbox, 0, 64);
+        sideToMove = other.sideToMove;
+        castlingRights = other.castlingRights;
+        epSquare = other.epSquare;
+        halfmoveClock = other.halfmoveClock;
+        fullmoveNumber = other.fullmoveNumber;
+        key = other.key;
+        middlegame = other.middlegame;
+        endgame = other.endgame;
+        phase = other.phase;
+        if (undoStack.length < other.undoStack.length) {
+            undoStack = new long[other.undoStack.length];
+            keyStack = new long[other.keyStack.length];
+        }
+        System.arraycopy(other.undoStack, 0, undoStack, 0, other.undoSize);
+        System.arraycopy(other.keyStack, 0, keyStack, 0, other.undoSize);
+        undoSize = other.undoSize;
+    }
+
+    public static int square(int row, int col) {
+        return (7 - row) * 8 + col;
+    }
+
+    public static int row(int square) {
+        return 7 - (square >>> 3);
+    }
+
+    public static int col(int square) {
+        return square & 7;
+    }
+
+    public static String squareName(int square) {
+        return "" + (char) ('a' + (square & 7)) + (char) ('1' + (square >>> 3));
+    }
+
+    public void clear() {
+        for (int i = 0; i < 12; i++) {
+            pieces[i] = 0L;
+        }
+        colors[Piece.WHITE] = 0L;
+        colors[Piece.BLACK] = 0L;
+        occupied = 0L;
+        for (int sq = 0; sq < 64; sq++) {
+            mailbox[sq] = Piece.NONE;
+        }
+        sideToMove = Piece.WHITE;
+        castlingRights = 0;
+        epSquare = -1;
+        halfmoveClock = 0;
+        fullmoveNumber = 1;
+        undoSize = 0;
+        middlegame = 0;
+        endgame = 0;
+        phase = 0;
+        key = computeKey();
+    }
+
+    public void setStartPosition() {
+        clear();
+        int[] backRank = {Piece.ROOK, Piece.KNIGHT, Piece.BISHOP, Piece.QUEEN, Piece.KING, Piece.BISHOP, Piece.KNIGHT, Piece.ROOK};
+        for (int col = 0; col < 8; col++) {
+            addPiece(Piece.make(Piece.WHITE, backRank[col]), col);
+            addPiece(Piece.WHITE_PAWN, 8 + col);
+            addPiece(Piece.BLACK_PAWN, 48 + col);
+            addPiece(Piece.make(Piece.BLACK, backRank[col]), 56 + col);
+        }
+        castlingRights = WHITE_KINGSIDE | WHITE_QUEENSIDE | BLACK_KINGSIDE | BLACK_QUEENSIDE;
+        key = computeKey();
+    }
+
+    // Loads a FEN (Forsyth-Edwards Notation) string. The move counters may be omitted.
+    public void setFen(String fen) {
+        String[] fields = fen.trim().split("\\s+");
+        if (fields.length < 4) {
+            throw new IllegalArgumentException("Invalid FEN: " + fen);
+        }
+        clear();
+
+        int rank = 7;
+        int file = 0;
+        for (int i = 0; i < fields[0].length(); i++) {
+            char c = fields[0].charAt(i);
+            if (c == '/') {
+                rank--;
+                file = 0;
+            } else if (c >= '1' && c <= '8') {
+                file += c - '0';
+            } else {
+                int piece = Piece.fromFenChar(c);
+                if (piece == Piece.NONE || rank < 0 || file > 7) {
+                    throw new IllegalArgumentException("Invalid FEN board: " + fields[0]);
+                }
+                addPiece(piece, rank * 8 + file);
+                file++;
+            }
+        }
+        if (Long.bitCount(pieces[Piece.WHITE_KING]) != 1 || Long.bitCount(pieces[Piece.BLACK_KING]) != 1) {
+            throw new IllegalArgumentException("FEN must have exactly one king per side: " + fen);
+        }
+
+        if (((pieces[Piece.WHITE_PAWN] | pieces[Piece.BLACK_PAWN]) & (0xFFL | 0xFFL << 56)) != 0) {
+            throw new IllegalArgumentException("FEN has a pawn on the first or last rank: " + fen);
+        }
+
+        sideToMove = fields[1].equals("b") ? Piece.BLACK : Piece.WHITE;
+        if (isInCheck(sideToMove ^ 1)) {
+            throw new IllegalArgumentException("FEN has the side not to move in check: " + fen);
+        }
+        for (int i = 0; i < fields[2].length(); i++) {
+            int right = "KQkq".indexOf(fields[2].charAt(i));
+            if (right >= 0) {
+                castlingRights |= 1 << right;
+            }
+        }
+        // A right is only kept while the king and that rook are on their home squares, as makeMove
+        // would have cleared it otherwise
+        for (int right = 0; right < 4; right++) {
+            int color = right < 2 ? Piece.WHITE : Piece.BLACK;
+            int base = color == Piece.WHITE ? 0 : 56;
+            int rookSquare = base + ((right & 1) == 0 ? 7 : 0);
+            if (mailbox[base + 4] != Piece.make(color, Piece.KING) || mailbox[rookSquare] != Piece.make(color, Piece.ROOK)) {
+                castlingRights &= ~(1 << right);
+            }
+        }
+        if (!fields[3].equals("-")) {
+            String field = fields[3];
+            // The square a pawn of the side not to move just skipped over
+            char epRank = sideToMove == Piece.WHITE ? '6' : '3';
+            if (field.length() != 2 || field.charAt(0) < 'a' || field.charAt(0) > 'h' || field.charAt(1) != epRank) {
+                throw new IllegalArgumentException("Invalid FEN en passant square: " + fen);
+            }
+            int ep = (field.charAt(0) - 'a') + 8 * (field.charAt(1) - '1');
+            // Keep it only if a pawn can really capture, the same rule makeMove uses
+            if ((Attacks.pawn(sideToMove ^ 1, ep) & pieces[Piece.make(sideToMove, Piece.PAWN)]) != 0) {
+                epSquare = ep;
+            }
+        }
+        halfmoveClock = fields.length > 4 ? Integer.parseInt(fields[4]) : 0;
+        fullmoveNumber = fields.length > 5 ? Integer.parseInt(fields[5]) : 1;
+        key = computeKey();
+    }
+
+    public String toFen() {
+        StringBuilder sb = new StringBuilder(90);
+        for (int rank = 7; rank >= 0; rank--) {
+            int empty = 0;
+            for (int file = 0; file < 8; file++) {
+                int piece = mailbox[rank * 8 + file];
+                if (piece == Piece.NONE) {
+                    empty++;
+                    continue;
+                }
+                if (empty > 0) {
+                    sb.append(empty);
+                    empty = 0;
+                }
+                sb.append(Piece.fenChar(piece));
+            }
+            if (empty > 0) {
+                sb.append(empty);
+            }
+            if (rank > 0) {
+                sb.append('/');
+            }
+        }
+        sb.append(sideToMove == Piece.WHITE ? " w " : " b ");
+        if (castlingRights == 0) {
+            sb.append('-');
+        }
+        for (int i = 0; i < 4; i++) {
+            if ((castlingRights & (1 << i)) != 0) {
+                sb.append("KQkq".charAt(i));
+            }
+        }
+        sb.append(' ').append(epSquare < 0 ? "-" : squareName(epSquare));
+        sb.append(' ').append(halfmoveClock).append(' ').append(fullmoveNumber);
+        return sb.toString();
+    }
+
+    public int pieceAt(int square) {
+        return mailbox[square];
+    }
+
+    public int pieceAt(int row, int col) {
+        return mailbox[square(row, col)];
+    }
+
+    public long pieces(int piece) {
+        return pieces[piece];
+    }
+
+    public long pieces(int color, int type) {
+        return pieces[Piece.make(color, type)];
+    }
+
+    public long colorOccupancy(int color) {
+        return colors[color];
+    }
+
+    public long occupied() {
+        return occupied;
+    }
+
+    public int sideToMove() {
+        return sideToMove;
+    }
+
+    public int castlingRights() {
+        return castlingRights;
+    }
+
+    public int epSquare() {
+        return epSquare;
+    }
+
+    public int halfmoveClock() {
+        return halfmoveClock;
+    }
+
+    public int fullmoveNumber() {
+        return fullmoveNumber;
+    }
+
+    public int kingSquare(int color) {
+        return Long.numberOfTrailingZeros(pieces[Piece.make(color, Piece.KING)]);
+    }
+
+    // Number of moves made since the last clear/setStartPosition
+    public int ply() {
+        return undoSize;
+    }
+
+    // 64-bit Zobrist key of the current position, maintained incrementally
+    public long key() {
+        return key;
+    }
+
+    // Key of the position the given number of moves ago (1 = before the last move)
+    public long keyAt(int movesAgo) {
+        return keyStack[undoSize - movesAgo];
+    }
+
+    // True if this position already occurred since the last capture or pawn move.
+    // Only every second entry can match: the side to move has to be the same.
+    public boolean isRepetition() {
+        int limit = Math.min(halfmoveClock, undoSize);
+        for (int i = 4; i <= limit; i += 2) {
+            if (keyStack[undoSize - i] == key) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // How often this position occurred before, counted like isRepetition over the moves since
+    // the last capture or pawn move: 2 means it is on the board for the third time
+    public int repetitions() {
+        int limit = Math.min(halfmoveClock, undoSize);
+        int count = 0;
+        for (int i = 4; i <= limit; i += 2) {
+            if (keyStack[undoSize - i] == key) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // Key computed from scratch; only needed after loading a position and for verification
+    public long computeKey() {
+        long k = 0L;
+        for (int sq = 0; sq < 64; sq++) {
+            if (mailbox[sq] != Piece.NONE) {
+                k ^= Zobrist.PIECE_SQUARE[mailbox[sq]][sq];
+            }
+        }
+        if (sideToMove == Piece.BLACK) {
+            k ^= Zobrist.SIDE;
+        }
+        k ^= Zobrist.CASTLING[castlingRights];
+        if (epSquare >= 0) {
+            k ^= Zobrist.EP_FILE[epSquare & 7];
+        }
+        return k;
+    }
+
+    // Evaluation sums from scratch against the incremental ones, for assertions
+    boolean evaluationInSync() {
+        int mg = 0;
+        int eg = 0;
+        int ph = 0;
+        for (int sq = 0; sq < 64; sq++) {
+            int piece = mailbox[sq];
+            if (piece != Piece.NONE) {
+                mg += Evaluator.MIDDLEGAME[piece][sq];
+                eg += Evaluator.ENDGAME[piece][sq];
+                ph += Evaluator.PHASE[Piece.type(piece)];
+            }
+        }
+        return mg == middlegame && eg == endgame && ph == phase;
+    }
+
+    void addPiece(int piece, int square) {
+        long bit = 1L << square;
+        pieces[piece] |= bit;
+        colors[Piece.color(piece)] |= bit;
+        occupied |= bit;
+        mailbox[square] = piece;
+        middlegame += Evaluator.MIDDLEGAME[piece][square];
+        endgame += Evaluator.ENDGAME[piece][square];
+        phase += Evaluator.PHASE[Piece.type(piece)];
+    }
+
+    void removePiece(int piece, int square) {
+        long bit = ~(1L << square);
+        pieces[piece] &= bit;
+        colors[Piece.color(piece)] &= bit;
+        occupied &= bit;
+        mailbox[square] = Piece.NONE;
+        middlegame -= Evaluator.MIDDLEGAME[piece][square];
+        endgame -= Evaluator.ENDGAME[piece][square];
+        phase -= Evaluator.PHASE[Piece.type(piece)];
+    }
+
+    private void movePiece(int piece, int from, int to) {
+        long bits = (1L << from) | (1L << to);
+        pieces[piece] ^= bits;
+        colors[Piece.color(piece)] ^= bits;
+        occupied ^= bits;
+        mailbox[from] = Piece.NONE;
+        mailbox[to] = piece;
+        middlegame += Evaluator.MIDDLEGAME[piece][to] - Evaluator.MIDDLEGAME[piece][from];
+        endgame += Evaluator.ENDGAME[piece][to] - Evaluator.ENDGAME[piece][from];
+    }
+
+    public void makeMove(int move) {
+        int from = Move.from(move);
+        int to = Move.to(move);
+        int flags = Move.flags(move);
+        int us = sideToMove;
+        int them = us ^ 1;
+        int piece = mailbox[from];
+        int captureSquare = flags == Move.EN_PASSANT ? to ^ 8 : to;
+        int captured = mailbox[captureSquare];
+
+        if (undoSize == undoStack.length) {
+            undoStack = java.util.Arrays.copyOf(undoStack, undoSize * 2);
+            keyStack = java.util.Arrays.copyOf(keyStack, undoSize * 2);
+        }
+        keyStack[undoSize] = key;
+        undoStack[undoSize++] = (captured + 1)
+                | (castlingRights << 4)
+                | ((epSquare + 1) << 8)
+                | ((long) halfmoveClock << 16);
+
+        long k = key ^ Zobrist.SIDE;
+        halfmoveClock++;
+        if (us == Piece.BLACK) {
+            fullmoveNumber++;
+        }
+        if (epSquare >= 0) {
+            k ^= Zobrist.EP_FILE[epSquare & 7];
+            epSquare = -1;
+        }
+
+        if (captured != Piece.NONE) {
+            removePiece(captured, captureSquare);
+            k ^= Zobrist.PIECE_SQUARE[captured][captureSquare];
+            halfmoveClock = 0;
+        }
+        movePiece(piece, from, to);
+        k ^= Zobrist.PIECE_SQUARE[piece][from] ^ Zobrist.PIECE_SQUARE[piece][to];
+
+        if (Piece.type(piece) == Piece.PAWN) {
+            halfmoveClock = 0;
+            if (flags == Move.DOUBLE_PUSH) {
+                // Only record the en-passant square when an enemy pawn can actually take
+                int passed = (from + to) >>> 1;
+                if ((Attacks.pawn(us, passed) & pieces[Piece.make(them, Piece.PAWN)]) != 0) {
+                    epSquare = passed;
+                    k ^= Zobrist.EP_FILE[passed & 7];
+                }
+            } else if (Move.isPromotion(move)) {
+                int promoted = Piece.make(us, Move.promotionType(move));
+                removePiece(piece, to);
+                addPiece(promoted, to);
+                k ^= Zobrist.PIECE_SQUARE[piece][to] ^ Zobrist.PIECE_SQUARE[promoted][to];
+            }
+        } else if (flags == Move.KING_CASTLE) {
+            int rook = Piece.make(us, Piece.ROOK);
+            movePiece(rook, to + 1, to - 1);
+            k ^= Zobrist.PIECE_SQUARE[rook][to + 1] ^ Zobrist.PIECE_SQUARE[rook][to - 1];
+        } else if (flags == Move.QUEEN_CASTLE) {
+            int rook = Piece.make(us, Piece.ROOK);
+            movePiece(rook, to - 2, to + 1);
+            k ^= Zobrist.PIECE_SQUARE[rook][to - 2] ^ Zobrist.PIECE_SQUARE[rook][to + 1];
+        }
+
+        int rights = castlingRights & CASTLING_MASK[from] & CASTLING_MASK[to];
+        k ^= Zobrist.CASTLING[castlingRights] ^ Zobrist.CASTLING[rights];
+        castlingRights = rights;
+        sideToMove = them;
+        key = k;
+        assert key == computeKey() : "Incremental key out of sync after " + Move.toUci(move);
+        assert evaluationInSync() : "Incremental evaluation out of sync after " + Move.toUci(move);
+    }
+
+    public void unmakeMove(int move) {
+        int from = Move.from(move);
+        int to = Move.to(move);
+        int flags = Move.flags(move);
+        int them = sideToMove;
+        int us = them ^ 1;
+
+        long undo = undoStack[--undoSize];
+        key = keyStack[undoSize];
+        int captured = (int) (undo & 15) - 1;
+        castlingRights = (int) (undo >>> 4) & 15;
+        epSquare = (int) ((undo >>> 8) & 255) - 1;
+        halfmoveClock = (int) (undo >>> 16);
+        if (us == Piece.BLACK) {
+            fullmoveNumber--;
+        }
+        sideToMove = us;
+
+        if (Move.isPromotion(move)) {
+            removePiece(mailbox[to], to);
+            addPiece(Piece.make(us, Piece.PAWN), to);
+        } else if (flags == Move.KING_CASTLE) {
+            movePiece(Piece.make(us, Piece.ROOK), to - 1, to + 1);
+        } else if (flags == Move.QUEEN_CASTLE) {
+            movePiece(Piece.make(us, Piece.ROOK), to + 1, to - 2);
+        }
+        movePiece(mailbox[to], to, from);
+
+        if (captured != Piece.NONE) {
+            addPiece(captured, flags == Move.EN_PASSANT ? to ^ 8 : to);
+        }
+    }
+
+    public boolean isInCheck(int color) {
+        if (Metrics.ENABLED) {
+            Metrics.CHECK_TESTS.increment();
+        }
+        return isSquareAttacked(kingSquare(color), color ^ 1);
+    }
+
+    // True if any piece of byColor attacks the given square
+    public boolean isSquareAttacked(int square, int byColor) {
+        return isSquareAttacked(square, byColor, occupied);
+    }
+
+    // Same as above but with sliding attacks computed against the given occupancy
+    public boolean isSquareAttacked(int square, int byColor, long occupancy) {
+        int base = byColor * 6;
+        long queens = pieces[base + Piece.QUEEN];
+        return (Attacks.pawn(byColor ^ 1, square) & pieces[base + Piece.PAWN]) != 0
+                || (Attacks.knight(square) & pieces[base + Piece.KNIGHT]) != 0
+                || (Attacks.king(square) & pieces[base + Piece.KING]) != 0
+                || (Attacks.rook(square, occupancy) & (pieces[base + Piece.ROOK] | queens)) != 0
+                || (Attacks.bishop(square, occupancy) & (pieces[base + Piece.BISHOP] | queens)) != 0;
+    }
+
+    // All pieces of both colors attacking the given square with the given occupancy
+    public long attackersTo(int square, long occupancy) {
+        return (Attacks.pawn(Piece.BLACK, square) & pieces[Piece.WHITE_PAWN])
+                | (Attacks.pawn(Piece.WHITE, square) & pieces[Piece.BLACK_PAWN])
+                | (Attacks.knight(square) & (pieces[Piece.WHITE_KNIGHT] | pieces[Piece.BLACK_KNIGHT]))
+                | (Attacks.king(square) & (pieces[Piece.WHITE_KING] | pieces[Piece.BLACK_KING]))
+                | (Attacks.rook(square, occupancy) & (pieces[Piece.WHITE_ROOK] | pieces[Piece.BLACK_ROOK]
+                        | pieces[Piece.WHITE_QUEEN] | pieces[Piece.BLACK_QUEEN]))
+                | (Attacks.bishop(square, occupancy) & (pieces[Piece.WHITE_BISHOP] | pieces[Piece.BLACK_BISHOP]
+                        | pieces[Piece.WHITE_QUEEN] | pieces[Piece.BLACK_QUEEN]));
+    }
+}
@@ -0,0 +1,535 @@
+package chessproject;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Search index over a GameArchive: for every term, the records (games and stored positions) that
+// reach a position with that feature at some ply, as a RoaringBitmap. Terms are
+//   material:KRPvKR        exact material, white first as in EndgameTable names
+//   pieces:KRvKR           material without the pawns, so this is any rook endgame
+//   isolated:d             an isolated pawn on the d-file, of either side; also passed:, doubled:
+//   white-isolated:d       the same for one side; also black-, and for passed and doubled
+//   opposite-bishops       one bishop each, on squares of different colors
+//
+// Building replays every game once. A query intersects the lists of its terms, smallest first,
+// and only the records left are replayed to find the first ply where all the terms hold at once
+// (the lists are per game, so two terms can meet in a game at different plies). Updating indexes
+// just the records appended to the archive since the last run and rewrites the index file in one
+// step, so readers never see it half written.
+//
+// The index of archive "db" is db.cpx. Layout (big-endian): MAGIC, the number of archive records
+// covered and the number of terms, a directory sorted by term code of (code as long, offset and
+// length of its list as ints), then the lists (see RoaringBitmap.write). The file is mapped and a
+// list is only decoded when a query asks for it.
+//
+// Usage:
+//   java -cp ChessProject.jar chessproject.PositionIndex update db
+//   java -cp ChessProject.jar chessproject.PositionIndex query [--limit N] db pieces:KRvKR isolated:d
+//   java -cp ChessProject.jar chessproject.PositionIndex terms db
+public final class PositionIndex implements Closeable {
+    static final long MAGIC = 0x4350_4944_5800_0001L; // "CPIDX" and format version 1
+    private static final int HEADER = Long.BYTES + 2 * Integer.BYTES;
+    private static final int DIRECTORY_ENTRY = Long.BYTES + 2 * Integer.BYTES;
+    // Terms one position can have: material, pieces, three pawn kinds by file for each side and
+    // either, opposite bishops
+    static final int MAX_FEATURES = 2 + 3 * 3 * 8 + 1;
+
+    // Term kinds, in the top byte of a term code
+    static final int MATERIAL = 1;
+    static final int PIECES = 2;
+    static final int ISOLATED = 3;
+    static final int PASSED = 4;
+    static final int DOUBLED = 5;
+    static final int OPPOSITE_BISHOPS = 6;
+    private static final String[] KIND_NAMES = {null, "material", "pieces", "isolated", "passed", "doubled", "opposite-bishops"};
+    private static final int EITHER = 2; // Color of the pawn terms that hold for both sides
+    private static final String[] COLOR_PREFIXES = {"white-", "black-", ""};
+
+    private static final String LETTERS = "KQRBNP";
+    private static final int[] LETTER_TYPES = {Piece.KING, Piece.QUEEN, Piece.ROOK, Piece.BISHOP, Piece.KNIGHT, Piece.PAWN};
+    private static final long PAWN_COUNTS = 0xFL | 0xFL << 20; // The pawn nibbles of a material code
+    private static final long LIGHT_SQUARES = 0x55AA55AA55AA55AAL;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer map;
+    private final int records;
+    private final int terms;
+
+    private PositionIndex(FileChannel channel, MappedByteBuffer map) throws IOException {
+        this.channel = channel;
+        this.map = map;
+        if (map.capacity() < HEADER || map.getLong(0) != MAGIC) {
+            throw new IOException("Not a position index");
+        }
+        records = map.getInt(Long.BYTES);
+        terms = map.getInt(Long.BYTES + Integer.BYTES);
+    }
+
+    public static PositionIndex open(Path archive) throws IOException {
+        FileChannel channel = FileChannel.open(indexPath(archive), StandardOpenOption.READ);
+        try {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Position index over 2 GB");
+            }
+            return new PositionIndex(channel, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    static Path indexPath(Path archive) {
+        return archive.resolveSibling(archive.getFileName() + ".cpx");
+    }
+
+    // Archive records covered: those below this number
+    public int records() {
+        return records;
+    }
+
+    public int terms() {
+        return terms;
+    }
+
+    // The records with the term, empty if none
+    public RoaringBitmap postings(long term) {
+        int low = 0;
+        int high = terms - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long code = map.getLong(HEADER + mid * DIRECTORY_ENTRY);
+            if (code < term) {
+                low = mid + 1;
+            } else if (code > term) {
+                high = mid - 1;
+            } else {
+                return postingsAt(mid);
+            }
+        }
+        return new RoaringBitmap();
+    }
+
+    private long termAt(int i) {
+        return map.getLong(HEADER + i * DIRECTORY_ENTRY);
+    }
+
+    private RoaringBitmap postingsAt(int i) {
+        return RoaringBitmap.read(map, map.getInt(HEADER + i * DIRECTORY_ENTRY + Long.BYTES));
+    }
+
+    // The records that have every term somewhere, not necessarily at the same ply
+    public RoaringBitmap candidates(long[] query) {
+        RoaringBitmap[] lists = new RoaringBitmap[query.length];
+        for (int i = 0; i < query.length; i++) {
+            lists[i] = postings(query[i]);
+        }
+        Arrays.sort(lists, (a, b) -> Long.compare(a.cardinality(), b.cardinality()));
+        RoaringBitmap result = lists[0];
+        for (int i = 1; i < lists.length && !result.isEmpty(); i++) {
+            result = result.and(lists[i]);
+        }
+        return result;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    // Appends the term codes of a position to out from index n and returns the new end; out needs
+    // MAX_FEATURES free entries. Pawn terms can repeat, as a side and as either side.
+    static int features(Position pos, long[] out, int n) {
+        long material = materialCode(pos);
+        out[n++] = code(MATERIAL, material);
+        out[n++] = code(PIECES, material & ~PAWN_COUNTS);
+        for (int color = Piece.WHITE; color <= Piece.BLACK; color++) {
+            long ours = pos.pieces[Piece.make(color, Piece.PAWN)];
+            long theirs = pos.pieces[Piece.make(color ^ 1, Piece.PAWN)];
+            for (int file = 0; file < 8; file++) {
+                int count = Long.bitCount(ours & Evaluator.FILES[file]);
+                if (count > 1) {
+                    out[n++] = code(DOUBLED, color * 8 + file);
+                    out[n++] = code(DOUBLED, EITHER * 8 + file);
+                }
+                if (count > 0 && (ours & Evaluator.ADJACENT_FILES[file]) == 0) {
+                    out[n++] = code(ISOLATED, color * 8 + file);
+                    out[n++] = code(ISOLATED, EITHER * 8 + file);
+                }
+            }
+            long passedFiles = 0;
+            for (long pawns = ours; pawns != 0; pawns &= pawns - 1) {
+                int sq = Long.numberOfTrailingZeros(pawns);
+                if ((Evaluator.PASSED_SPAN[color][sq] & theirs) == 0) {
+                    passedFiles |= 1L << (sq & 7);
+                }
+            }
+            for (; passedFiles != 0; passedFiles &= passedFiles - 1) {
+                int file = Long.numberOfTrailingZeros(passedFiles);
+                out[n++] = code(PASSED, color * 8 + file);
+                out[n++] = code(PASSED, EITHER * 8 + file);
+            }
+        }
+        long whiteBishops = pos.pieces[Piece.WHITE_BISHOP];
+        long blackBishops = pos.pieces[Piece.BLACK_BISHOP];
+        if (Long.bitCount(whiteBishops) == 1 && Long.bitCount(blackBishops) == 1
+                && ((whiteBishops & LIGHT_SQUARES) == 0) != ((blackBishops & LIGHT_SQUARES) == 0)) {
+            out[n++] = code(OPPOSITE_BISHOPS, 0);
+        }
+        return n;
+    }
+
+    private static long code(int kind, long value) {
+        return (long) kind << 56 | value;
+    }
+
+    // Piece counts without the kings, 4 bits per piece, by color * 5 + type
+    private static long materialCode(Position pos) {
+        long material = 0;
+        for (int color = Piece.WHITE; color <= Piece.BLACK; color++) {
+            for (int type = Piece.PAWN; type <= Piece.QUEEN; type++) {
+                int count = Math.min(15, Long.bitCount(pos.pieces[Piece.make(color, type)]));
+                material |= (long) count << ((color * 5 + type) * 4);
+            }
+        }
+        return material;
+    }
+
+    // The code of a term written as in the list at the top; throws IllegalArgumentException for
+    // anything else
+    public static long term(String name) {
+        int colon = name.indexOf(':');
+        String kind = colon < 0 ? name : name.substring(0, colon);
+        String argument = colon < 0 ? "" : name.substring(colon + 1);
+        int color = EITHER;
+        for (int c = Piece.WHITE; c <= Piece.BLACK; c++) {
+            if (kind.startsWith(COLOR_PREFIXES[c])) {
+                color = c;
+                kind = kind.substring(COLOR_PREFIXES[c].length());
+            }
+        }
+        int kindCode = Arrays.asList(KIND_NAMES).indexOf(kind);
+        boolean pawnTerm = kindCode == ISOLATED || kindCode == PASSED || kindCode == DOUBLED;
+        if (kindCode < 0 || color != EITHER && !pawnTerm) {
+            throw new IllegalArgumentException("Unknown term: " + name);
+        }
+        if (pawnTerm) {
+            if (argument.length() != 1 || argument.charAt(0) < 'a' || argument.charAt(0) > 'h') {
+                throw new IllegalArgumentException("Expected a file a-h in " + name);
+            }
+            return code(kindCode, color * 8 + argument.charAt(0) - 'a');
+        }
+        if (kindCode == OPPOSITE_BISHOPS) {
+            if (!argument.isEmpty()) {
+                throw new IllegalArgumentException("opposite-bishops takes no argument: " + name);
+            }
+            return code(kindCode, 0);
+        }
+        return code(kindCode, parseMaterial(argument, kindCode == MATERIAL, name));
+    }
+
+    private static long parseMaterial(String argument, boolean pawns, String name) {
+        String[] sides = argument.split("v", -1);
+        if (sides.length != 2) {
+            throw new IllegalArgumentException("Expected material like KRPvKR in " + name);
+        }
+        long material = 0;
+        for (int color = Piece.WHITE; color <= Piece.BLACK; color++) {
+            String side = sides[color];
+            if (side.isEmpty() || side.charAt(0) != 'K') {
+                throw new IllegalArgumentException("Each side starts with its king in " + name);
+            }
+            for (int i = 1; i < side.length(); i++) {
+                int letter = LETTERS.indexOf(side.charAt(i));
+                if (letter <= 0 || !pawns && LETTER_TYPES[letter] == Piece.PAWN) {
+                    throw new IllegalArgumentException("Unexpected '" + side.charAt(i) + "' in " + name);
+                }
+                int shift = (color * 5 + LETTER_TYPES[letter]) * 4;
+                if ((material >>> shift & 0xF) == 15) {
+                    throw new IllegalArgumentException("Too many pieces in " + name);
+                }
+                material += 1L << shift;
+            }
+        }
+        return material;
+    }
+
+    // The term as term() reads it
+    public static String termName(long code) {
+        int kind = (int) (code >>> 56);
+        long value = code & ~(0xFFL << 56);
+        switch (kind) {
+            case MATERIAL:
+            case PIECES:
+                StringBuilder name = new StringBuilder(KIND_NAMES[kind]).append(':');
+                for (int color = Piece.WHITE; color <= Piece.BLACK; color++) {
+                    if (color == Piece.BLACK) {
+                        name.append('v');
+                    }
+                    name.append('K');
+                    for (int letter = 1; letter < LETTERS.length(); letter++) {
+                        for (long n = value >>> ((color * 5 + LETTER_TYPES[letter]) * 4) & 0xF; n > 0; n--) {
+                            name.append(LETTERS.charAt(letter));
+                        }
+                    }
+                }
+                return name.toString();
+            case OPPOSITE_BISHOPS:
+                return KIND_NAMES[kind];
+            default:
+                return COLOR_PREFIXES[(int) value / 8] + KIND_NAMES[kind] + ":" + (char) ('a' + value % 8);
+        }
+    }
+
+    // Indexes the archive records added since the index was last updated, creating it if needed,
+    // and returns how many were added
+    public static int update(Path archive) throws IOException {
+        Map<Long, RoaringBitmap> postings = new HashMap<>();
+        int from = 0;
+        if (Files.exists(indexPath(archive))) {
+            try (PositionIndex old = open(archive)) {
+                from = old.records;
+                for (int i = 0; i < old.terms; i++) {
+                    postings.put(old.termAt(i), old.postingsAt(i));
+                }
+            }
+        }
+        try (GameArchive reader = GameArchive.open(archive)) {
+            if (from > reader.size()) {
+                throw new IOException("The index covers " + from + " records but the archive has only " + reader.size());
+            }
+            Position position = new Position();
+            int[] moves = new int[GameCodec.MAX_PLIES];
+            long[] found = new long[16 * MAX_FEATURES];
+            for (int record = from; record < reader.size(); record++) {
+                int n;
+                if (reader.kind(record) == GameArchive.GAME) {
+                    int plies = reader.game(record, position, moves);
+                    n = features(position, found, 0);
+                    // Terms only change with the material, the pawns and the bishops
+                    long white = position.pieces[Piece.WHITE_PAWN];
+                    long black = position.pieces[Piece.BLACK_PAWN];
+                    long bishops = position.pieces[Piece.WHITE_BISHOP] | position.pieces[Piece.BLACK_BISHOP];
+                    long material = materialCode(position);
+                    for (int ply = 0; ply < plies; ply++) {
+                        position.makeMove(moves[ply]);
+                        long nextBishops = position.pieces[Piece.WHITE_BISHOP] | position.pieces[Piece.BLACK_BISHOP];
+                        long nextMaterial = materialCode(position);
+                        if (position.pieces[Piece.WHITE_PAWN] == white && position.pieces[Piece.BLACK_PAWN] == black
+                                && nextBishops == bishops && nextMaterial == material) {
+                            continue;
+                        }
+                        white = position.pieces[Piece.WHITE_PAWN];
+                        black = position.pieces[Piece.BLACK_PAWN];
+                        bishops = nextBishops;
+                        material = nextMaterial;
+                        if (n + MAX_FEATURES > found.length) {
+                            n = unique(found, n);
+                            if (n + MAX_FEATURES > found.length) {
+                                found = Arrays.copyOf(found, found.length * 2);
+                            }
+                        }
+                        n = features(position, found, n);
+                    }
+                } else {
+                    reader.position(record, position);
+                    n = features(position, found, 0);
+                }
+                n = unique(found, n);
+                for (int i = 0; i < n; i++) {
+                    postings.computeIfAbsent(found[i], term -> new RoaringBitmap()).add(record);
+                }
+            }
+            write(indexPath(archive), reader.size(), postings);
+            return reader.size() - from;
+        }
+    }
+
+    // Sorts the first n codes and drops repeats; returns how many are left
+    private static int unique(long[] codes, int n) {
+        Arrays.sort(codes, 0, n);
+        int kept = 0;
+        for (int i = 0; i < n; i++) {
+            if (kept == 0 || codes[kept - 1] != codes[i]) {
+                codes[kept++] = codes[i];
+            }
+        }
+        return kept;
+    }
+
+    // Writes to a temporary file that then replaces the index
+    private static void write(Path path, int records, Map<Long, RoaringBitmap> postings) throws IOException {
+        long[] codes = new long[postings.size()];
+        int n = 0;
+        for (long code : postings.keySet()) {
+            codes[n++] = code;
+        }
+        Arrays.sort(codes);
+        long offset = HEADER + (long) codes.length * DIRECTORY_ENTRY;
+        int[] offsets = new int[codes.length];
+        for (int i = 0; i < codes.length; i++) {
+            if (offset > Integer.MAX_VALUE) {
+                throw new IOException("Position index over 2 GB");
+            }
+            offsets[i] = (int) offset;
+            offset += postings.get(codes[i]).serializedSize();
+        }
+        Path absolute = path.toAbsolutePath();
+        Path temp = Files.createTempFile(absolute.getParent(), absolute.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+                out.writeLong(MAGIC);
+                out.writeInt(records);
+                out.writeInt(codes.length);
+                for (int i = 0; i < codes.length; i++) {
+                    out.writeLong(codes[i]);
+                    out.writeInt(offsets[i]);
+                    out.writeInt(postings.get(codes[i]).serializedSize());
+                }
+                for (long code : codes) {
+                    postings.get(code).write(out);
+                }
+            }
+            Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    // The first ply of a record where every term holds, with the position loaded into position,
+    // or -1. moves must hold GameCodec.MAX_PLIES moves and found MAX_FEATURES codes.
+    static int firstMatch(GameArchive archive, int record, long[] query, Position position, int[] moves, long[] found) {
+        if (archive.kind(record) != GameArchive.GAME) {
+            archive.position(record, position);
+            return matches(position, query, found) ? 0 : -1;
+        }
+        int plies = archive.game(record, position, moves);
+        for (int ply = 0; ; ply++) {
+            if (matches(position, query, found)) {
+                return ply;
+            }
+            if (ply == plies) {
+                return -1;
+            }
+            position.makeMove(moves[ply]);
+        }
+    }
+
+    private static boolean matches(Position position, long[] query, long[] found) {
+        int n = features(position, found, 0);
+        for (long term : query) {
+            boolean present = false;
+            for (int i = 0; i < n && !present; i++) {
+                present = found[i] == term;
+            }
+            if (!present) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: PositionIndex update|query|terms [--limit N] <archive> [terms ...]");
+            System.exit(2);
+        }
+        String command = args[0];
+        int limit = 20;
+        int i = 1;
+        for (; i < args.length && args[i].startsWith("--"); i++) {
+            if (args[i].equals("--limit")) {
+                limit = Integer.parseInt(args[++i]);
+            } else {
+                System.err.println("Unknown argument: " + args[i]);
+                System.exit(2);
+            }
+        }
+        if (i == args.length) {
+            System.err.println("No archive given");
+            System.exit(2);
+        }
+        Path archive = Path.of(args[i]);
+        switch (command) {
+            case "update": {
+                long start = System.nanoTime();
+                int added = update(archive);
+                double seconds = (System.nanoTime() - start) / 1e9;
+                try (PositionIndex index = open(archive)) {
+                    System.out.printf("Indexed %,d new records (%,d in total) in %.2f s, %,.0f records/s%n",
+                            added, index.records(), seconds, added / seconds);
+                    System.out.printf("%,d terms, %,.1f MB%n", index.terms(), Files.size(indexPath(archive)) / 1e6);
+                }
+                break;
+            }
+            case "query":
+                query(archive, Arrays.copyOfRange(args, i + 1, args.length), limit);
+                break;
+            case "terms":
+                try (PositionIndex index = open(archive)) {
+                    for (int t = 0; t < index.terms(); t++) {
+                        System.out.printf("%-28s %,d%n", termName(index.termAt(t)), index.postingsAt(t).cardinality());
+                    }
+                }
+                break;
+            default:
+                System.err.println("Unknown command: " + command);
+                System.exit(2);
+        }
+    }
+
+    // Prints up to limit records where all the terms hold at one ply, with that ply and position
+    private static void query(Path archive, String[] names, int limit) throws IOException {
+        if (names.length == 0) {
+            System.err.println("No query terms");
+            System.exit(2);
+        }
+        long[] query = new long[names.length];
+        try {
+            for (int i = 0; i < names.length; i++) {
+                query[i] = term(names[i]);
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+        }
+        long start = System.nanoTime();
+        try (PositionIndex index = open(archive); GameArchive reader = GameArchive.open(archive)) {
+            if (index.records() < reader.size()) {
+                System.err.printf("The index covers %,d of %,d records, run update%n", index.records(), reader.size());
+            }
+            RoaringBitmap candidates = index.candidates(query);
+            Position position = new Position();
+            int[] moves = new int[GameCodec.MAX_PLIES];
+            long[] found = new long[MAX_FEATURES];
+            List<String> lines = new ArrayList<>();
+            int replayed = 0;
+            for (int record : candidates.toArray()) {
+                if (lines.size() == limit) {
+                    break;
+                }
+                replayed++;
+                int ply = firstMatch(reader, record, query, position, moves, found);
+                if (ply >= 0) {
+                    lines.add(record + "\t" + ply + "\t" + position.toFen());
+                }
+            }
+            double millis = (System.nanoTime() - start) / 1e6;
+            lines.forEach(System.out::println);
+            System.out.printf("%,d candidate records of %,d, %,d replayed, %,d shown in %.1f ms%n",
+                    candidates.cardinality(), index.records(), replayed, lines.size(), millis);
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package chessproject;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// Mines mate puzzles from games. Every position of every game goes to a MateSolver; a forced mate
+// of --min to --max moves becomes a puzzle, written as a PGN game from the position (FEN tag)
+// with the main line of the mate (see MateSolver.line), if every attacker move of that line is
+// the only one that mates that fast. The positions inside a mate that was found are not solved again, and a
+// position reached in several games is written once.
+//
+// Games are read in batches on the main thread. A batch is split in halves on a ForkJoinPool down
+// to single games, the left half forked so idle workers steal it, and puzzles come back in game
+// order. Each worker thread has its own MateSolver, cleared before every game: the table is
+// shared between the positions of one game, which lie close together, and what the node limit
+// lets through does not depend on which thread got which game, so the output is the same for any
+// thread count.
+//
+// Usage:
+//   java -cp ChessProject.jar chessproject.PuzzleMiner [--threads N] [--min M] [--max M] [--nodes N] puzzles.pgn games.pgn [db.cpa ...]
+// --min and --max are moves to mate (default 2 and 3), --nodes the limit per solve (default
+// 200,000); a position the solver cannot settle within it is counted as unsettled and skipped.
+// Files ending in .cpa are read as game archives (see GameArchive), anything else as PGN.
+public final class PuzzleMiner {
+    private static final int BATCH_GAMES = 32;
+    private static final long PROGRESS_NANOS = 10_000_000_000L;
+
+    private final int minMoves;
+    private final int maxMoves;
+    private final long nodeLimit;
+    private final ThreadLocal<MateSolver> solvers = ThreadLocal.withInitial(MateSolver::new);
+    private final Set<Long> seen = new HashSet<>(); // Keys of the puzzles written
+    private final Report total = new Report();
+    private final long startNanos = System.nanoTime();
+    private long lastProgress = startNanos;
+    private int written;
+
+    public PuzzleMiner(int minMoves, int maxMoves, long nodeLimit) {
+        if (minMoves < 1 || maxMoves < minMoves || maxMoves > MateSolver.MAX_MOVES_TO_MATE) {
+            throw new IllegalArgumentException("Moves to mate must satisfy 1 <= min <= max <= "
+                    + MateSolver.MAX_MOVES_TO_MATE + ": " + minMoves + ", " + maxMoves);
+        }
+        this.minMoves = minMoves;
+        this.maxMoves = maxMoves;
+        this.nodeLimit = nodeLimit;
+    }
+
+    // A game to mine and where it came from, like "games.pgn#12"
+    static final class Source {
+        final String id;
+        final PgnGame game;
+
+        Source(String id, PgnGame game) {
+            this.id = id;
+            this.game = game;
+        }
+    }
+
+    // Totals for a run of consecutive games, with their puzzles in order
+    static final class Report {
+        long games;
+        long positions;
+        long nodes;
+        long mates;
+        long unsettled;
+        long ambiguous; // At some step of the line more than one move mates as fast
+        final List<PgnGame> puzzles = new ArrayList<>();
+        final List<Long> keys = new ArrayList<>(); // Position key of each puzzle
+
+        Report append(Report next) {
+            games += next.games;
+            positions += next.positions;
+            nodes += next.nodes;
+            mates += next.mates;
+            unsettled += next.unsettled;
+            ambiguous += next.ambiguous;
+            puzzles.addAll(next.puzzles);
+            keys.addAll(next.keys);
+            return this;
+        }
+    }
+
+    // Mines a batch on the pool and writes its new puzzles, then clears it. The output is flushed
+    // so an interrupted run keeps every puzzle it has already counted
+    public void mine(ForkJoinPool pool, List<Source> batch, PgnWriter out) throws IOException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        Report report = pool.invoke(new GameTask(batch, 0, batch.size()));
+        batch.clear();
+        for (int i = 0; i < report.puzzles.size(); i++) {
+            if (seen.add(report.keys.get(i))) {
+                out.write(report.puzzles.get(i));
+                written++;
+            }
+        }
+        out.flush();
+        report.puzzles.clear();
+        report.keys.clear();
+        total.append(report);
+        if (System.nanoTime() - lastProgress >= PROGRESS_NANOS) {
+            lastProgress = System.nanoTime();
+            printTotals();
+        }
+    }
+
+    private final class GameTask extends RecursiveTask<Report> {
+        private final List<Source> games;
+        private final int from, to;
+
+        GameTask(List<Source> games, int from, int to) {
+            this.games = games;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Report compute() {
+            if (to - from == 1) {
+                return mineGame(games.get(from));
+            }
+            int mid = (from + to) >>> 1;
+            GameTask left = new GameTask(games, from, mid);
+            left.fork();
+            Report right = new GameTask(games, mid, to).compute();
+            return left.join().append(right);
+        }
+    }
+
+    Report mineGame(Source source) {
+        MateSolver solver = solvers.get();
+        solver.clear();
+        long nodesBefore = solver.totalNodes();
+        Report report = new Report();
+        report.games = 1;
+        PgnGame game = source.game;
+        Position position = new Position();
+        position.setFen(game.startFen());
+        int skipUntil = 0;
+        for (int ply = 0; ; ply++) {
+            if (ply >= skipUntil) {
+                report.positions++;
+                int n = solver.mateIn(position, maxMoves, nodeLimit);
+                if (n == MateSolver.UNKNOWN) {
+                    report.unsettled++;
+                } else if (n > 0) {
+                    report.mates++;
+                    skipUntil = ply + 2 * n - 1;
+                    if (n >= minMoves) {
+                        addPuzzle(report, solver, source, position, ply, n);
+                    }
+                }
+            }
+            if (ply == game.moveCount()) {
+                break;
+            }
+            position.makeMove(game.move(ply));
+        }
+        report.nodes = solver.totalNodes() - nodesBefore;
+        return report;
+    }
+
+    private void addPuzzle(Report report, MateSolver solver, Source source, Position position, int ply, int n) {
+        int[] line = solver.line(position, n, nodeLimit);
+        if (line == null) {
+            report.unsettled++;
+            return;
+        }
+        // The solver has to find the same move at every attacker step, not only the first. The
+        // line ends on the mating move, so the attacker still needs (length - i + 1) / 2 moves
+        Position step = new Position(position);
+        for (int i = 0; i < line.length; i += 2) {
+            int[] keyMoves = solver.keyMoves(step, (line.length - i + 1) / 2, nodeLimit);
+            if (keyMoves == null) {
+                report.unsettled++;
+                return;
+            }
+            if (keyMoves.length != 1) {
+                report.ambiguous++;
+                return;
+            }
+            step.makeMove(line[i]);
+            if (i + 1 < line.length) {
+                step.makeMove(line[i + 1]);
+            }
+        }
+        PgnGame puzzle = new PgnGame();
+        puzzle.setTag("Event", "Mate in " + n);
+        for (String name : new String[] {"White", "Black", "Date"}) {
+            if (source.game.tag(name) != null) {
+                puzzle.setTag(name, source.game.tag(name));
+            }
+        }
+        puzzle.setTag("SetUp", "1");
+        puzzle.setTag("FEN", position.toFen());
+        puzzle.setTag("Source", source.id + " ply " + ply);
+        for (int move : line) {
+            puzzle.addMove(move);
+        }
+        puzzle.setResult(position.sideToMove() == Piece.WHITE ? "1-0" : "0-1");
+        report.puzzles.add(puzzle);
+        report.keys.add(position.key());
+    }
+
+    public static void main(String[] args) throws IOException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        int minMoves = 2;
+        int maxMoves = 3;
+        long nodes = 200_000;
+        int i = 0;
+        for (; i < args.length && args[i].startsWith("--"); i++) {
+            switch (args[i]) {
+                case "--threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "--min":
+                    minMoves = Integer.parseInt(args[++i]);
+                    break;
+                case "--max":
+                    maxMoves = Integer.parseInt(args[++i]);
+                    break;
+                case "--nodes":
+                    nodes = Long.parseLong(args[++i]);
+                    break;
+                default:
+                    System.err.println("Unknown argument: " + args[i]);
+                    System.exit(2);
+            }
+        }
+        if (args.length - i < 2) {
+            System.err.println("Usage: PuzzleMiner [--threads N] [--min M] [--max M] [--nodes N] <puzzles.pgn> <games.pgn|db.cpa> ...");
+            System.exit(2);
+        }
+        Path puzzles = Path.of(args[i++]);
+        PuzzleMiner miner = new PuzzleMiner(minMoves, maxMoves, nodes);
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try (PgnWriter out = PgnWriter.open(puzzles)) {
+            for (; i < args.length; i++) {
+                String file = args[i];
+                List<Source> batch = new ArrayList<>(BATCH_GAMES);
+                if (file.endsWith(".cpa")) {
+                    try (GameArchive archive = GameArchive.open(Path.of(file.substring(0, file.length() - 4)))) {
+                        for (int record = 0; record < archive.size(); record++) {
+                            if (archive.kind(record) == GameArchive.GAME) {
+                                batch.add(new Source(file + "#" + record, archive.game(record)));
+                            }
+                            if (batch.size() == BATCH_GAMES) {
+                                miner.mine(pool, batch, out);
+                            }
+                        }
+                    }
+                } else {
+                    try (PgnReader reader = PgnReader.open(Path.of(file))) {
+                        while (reader.hasNext()) {
+                            PgnGame game = reader.next();
+                            if (game.isValid()) {
+                                batch.add(new Source(file + "#" + reader.gamesRead(), game));
+                            }
+                            if (batch.size() == BATCH_GAMES) {
+                                miner.mine(pool, batch, out);
+                            }
+                        }
+                    }
+                }
+                miner.mine(pool, batch, out);
+            }
+        } finally {
+            pool.shutdown();
+        }
+        miner.printTotals();
+    }
+
+    private void printTotals() {
+        Report t = total;
+        long nanos = System.nanoTime() - startNanos;
+        System.out.printf("%,d games, %,d positions in %.1f s: %,.0f positions/s, %,.0f nodes/s%n",
+                t.games, t.positions, nanos / 1e9, t.positions * 1e9 / nanos, t.nodes * 1e9 / nanos);
+        System.out.printf("%,d mates within %d moves, %,d puzzles written, %,d with more than one mating move at some step, %,d unsettled%n",
+                t.mates, maxMoves, written, t.ambiguous, t.unsettled);
+    }
+}
@@ -0,0 +1,307 @@
+package chessproject;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+// Compressed set of non-negative ints in the roaring bitmap layout: the values are split by their
+// high 16 bits into containers, and each container holds the low 16 bits either as a sorted array
+// (up to 4096 values, 2 bytes each) or as a 65536-bit bitmap (8 KB), whichever is smaller. Sparse
+// and dense runs of ids both stay compact, and intersecting two sets only visits containers whose
+// keys appear in both.
+//
+// Serialized layout (big-endian): the container count, then per container its key, cardinality - 1
+// (both 2 bytes) and either the sorted values or 1024 longs.
+public final class RoaringBitmap {
+    static final int ARRAY_MAX = 4096;
+    private static final int BITMAP_LONGS = 1024;
+
+    private char[] keys = new char[4];
+    // Per container exactly one of these is set
+    private char[][] arrays = new char[4][];
+    private long[][] bitmaps = new long[4][];
+    private int[] cardinalities = new int[4];
+    private int size; // Containers in use
+
+    public void add(int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Negative value " + value);
+        }
+        char key = (char) (value >>> 16);
+        char low = (char) value;
+        int index = size > 0 && keys[size - 1] == key ? size - 1 : containerIndex(key);
+        if (index < 0) {
+            index = -index - 1;
+            insertContainer(index, key);
+        }
+        if (bitmaps[index] != null) {
+            long[] bitmap = bitmaps[index];
+            long bit = 1L << low;
+            if ((bitmap[low >>> 6] & bit) == 0) {
+                bitmap[low >>> 6] |= bit;
+                cardinalities[index]++;
+            }
+            return;
+        }
+        char[] array = arrays[index];
+        int n = cardinalities[index];
+        // Ids mostly arrive in increasing order, so try the end first
+        int at = n > 0 && array[n - 1] < low ? -n - 1 : Arrays.binarySearch(array, 0, n, low);
+        if (at >= 0) {
+            return;
+        }
+        at = -at - 1;
+        if (n == ARRAY_MAX) {
+            long[] bitmap = new long[BITMAP_LONGS];
+            for (int i = 0; i < n; i++) {
+                bitmap[array[i] >>> 6] |= 1L << array[i];
+            }
+            bitmap[low >>> 6] |= 1L << low;
+            arrays[index] = null;
+            bitmaps[index] = bitmap;
+            cardinalities[index]++;
+            return;
+        }
+        if (n == array.length) {
+            array = arrays[index] = Arrays.copyOf(array, Math.min(ARRAY_MAX, n * 2));
+        }
+        System.arraycopy(array, at, array, at + 1, n - at);
+        array[at] = low;
+        cardinalities[index]++;
+    }
+
+    public boolean contains(int value) {
+        if (value < 0) {
+            return false;
+        }
+        int index = containerIndex((char) (value >>> 16));
+        if (index < 0) {
+            return false;
+        }
+        char low = (char) value;
+        if (bitmaps[index] != null) {
+            return (bitmaps[index][low >>> 6] & 1L << low) != 0;
+        }
+        return Arrays.binarySearch(arrays[index], 0, cardinalities[index], low) >= 0;
+    }
+
+    public long cardinality() {
+        long total = 0;
+        for (int i = 0; i < size; i++) {
+            total += cardinalities[i];
+        }
+        return total;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    // The values in both sets
+    public RoaringBitmap and(RoaringBitmap other) {
+        RoaringBitmap result = new RoaringBitmap();
+        int i = 0;
+        int j = 0;
+        char[] buffer = null;
+        while (i < size && j < other.size) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                if (bitmaps[i] != null && other.bitmaps[j] != null) {
+                    result.andBitmaps(keys[i], bitmaps[i], other.bitmaps[j]);
+                } else {
+                    if (buffer == null) {
+                        buffer = new char[ARRAY_MAX];
+                    }
+                    int n;
+                    if (bitmaps[i] == null && other.bitmaps[j] == null) {
+                        n = intersect(arrays[i], cardinalities[i], other.arrays[j], other.cardinalities[j], buffer);
+                    } else if (bitmaps[i] == null) {
+                        n = other.filter(j, arrays[i], cardinalities[i], buffer);
+                    } else {
+                        n = filter(i, other.arrays[j], other.cardinalities[j], buffer);
+                    }
+                    if (n > 0) {
+                        result.appendContainer(keys[i], Arrays.copyOf(buffer, n), null, n);
+                    }
+                }
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    // All values in increasing order
+    public int[] toArray() {
+        long total = cardinality();
+        if (total > Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("Too many values for an array: " + total);
+        }
+        int[] values = new int[(int) total];
+        int n = 0;
+        for (int i = 0; i < size; i++) {
+            int high = keys[i] << 16;
+            if (bitmaps[i] != null) {
+                long[] bitmap = bitmaps[i];
+                for (int w = 0; w < BITMAP_LONGS; w++) {
+                    for (long word = bitmap[w]; word != 0; word &= word - 1) {
+                        values[n++] = high | w << 6 | Long.numberOfTrailingZeros(word);
+                    }
+                }
+            } else {
+                for (int k = 0; k < cardinalities[i]; k++) {
+                    values[n++] = high | arrays[i][k];
+                }
+            }
+        }
+        return values;
+    }
+
+    public int serializedSize() {
+        int bytes = Integer.BYTES;
+        for (int i = 0; i < size; i++) {
+            bytes += 4 + (bitmaps[i] != null ? BITMAP_LONGS * Long.BYTES : cardinalities[i] * Character.BYTES);
+        }
+        return bytes;
+    }
+
+    public void write(DataOutputStream out) throws IOException {
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            out.writeChar(keys[i]);
+            out.writeChar(cardinalities[i] - 1);
+            if (bitmaps[i] != null) {
+                for (long word : bitmaps[i]) {
+                    out.writeLong(word);
+                }
+            } else {
+                for (int k = 0; k < cardinalities[i]; k++) {
+                    out.writeChar(arrays[i][k]);
+                }
+            }
+        }
+    }
+
+    // Reads a set written by write, starting at offset
+    public static RoaringBitmap read(ByteBuffer in, int offset) {
+        RoaringBitmap bitmap = new RoaringBitmap();
+        int containers = in.getInt(offset);
+        int pos = offset + Integer.BYTES;
+        for (int i = 0; i < containers; i++) {
+            char key = in.getChar(pos);
+            int cardinality = in.getChar(pos + 2) + 1;
+            pos += 4;
+            if (cardinality > ARRAY_MAX) {
+                long[] words = new long[BITMAP_LONGS];
+                for (int w = 0; w < BITMAP_LONGS; w++, pos += Long.BYTES) {
+                    words[w] = in.getLong(pos);
+                }
+                bitmap.appendContainer(key, null, words, cardinality);
+            } else {
+                char[] values = new char[cardinality];
+                for (int k = 0; k < cardinality; k++, pos += Character.BYTES) {
+                    values[k] = in.getChar(pos);
+                }
+                bitmap.appendContainer(key, values, null, cardinality);
+            }
+        }
+        return bitmap;
+    }
+
+    // Merges two sorted arrays into out, keeping the values in both; returns how many
+    private static int intersect(char[] a, int aCount, char[] b, int bCount, char[] out) {
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < aCount && j < bCount) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                out[count++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return count;
+    }
+
+    // Copies the values of array that are in bitmap container index to out; returns how many
+    private int filter(int index, char[] array, int n, char[] out) {
+        long[] bitmap = bitmaps[index];
+        int count = 0;
+        for (int k = 0; k < n; k++) {
+            char low = array[k];
+            if ((bitmap[low >>> 6] & 1L << low) != 0) {
+                out[count++] = low;
+            }
+        }
+        return count;
+    }
+
+    private void andBitmaps(char key, long[] a, long[] b) {
+        long[] words = new long[BITMAP_LONGS];
+        int cardinality = 0;
+        for (int w = 0; w < BITMAP_LONGS; w++) {
+            words[w] = a[w] & b[w];
+            cardinality += Long.bitCount(words[w]);
+        }
+        if (cardinality == 0) {
+            return;
+        }
+        if (cardinality > ARRAY_MAX) {
+            appendContainer(key, null, words, cardinality);
+            return;
+        }
+        char[] values = new char[cardinality];
+        int n = 0;
+        for (int w = 0; w < BITMAP_LONGS; w++) {
+            for (long word = words[w]; word != 0; word &= word - 1) {
+                values[n++] = (char) (w << 6 | Long.numberOfTrailingZeros(word));
+            }
+        }
+        appendContainer(key, values, null, cardinality);
+    }
+
+    private int containerIndex(char key) {
+        return Arrays.binarySearch(keys, 0, size, key);
+    }
+
+    private void insertContainer(int index, char key) {
+        ensureCapacity();
+        System.arraycopy(keys, index, keys, index + 1, size - index);
+        System.arraycopy(arrays, index, arrays, index + 1, size - index);
+        System.arraycopy(bitmaps, index, bitmaps, index + 1, size - index);
+        System.arraycopy(cardinalities, index, cardinalities, index + 1, size - index);
+        keys[index] = key;
+        arrays[index] = new char[4];
+        bitmaps[index] = null;
+        cardinalities[index] = 0;
+        size++;
+    }
+
+    // Keys must be appended in increasing order
+    private void appendContainer(char key, char[] array, long[] bitmap, int cardinality) {
+        ensureCapacity();
+        keys[size] = key;
+        arrays[size] = array;
+        bitmaps[size] = bitmap;
+        cardinalities[size] = cardinality;
+        size++;
+    }
+
+    private void ensureCapacity() {
+        if (size == keys.length) {
+            int capacity = size * 2;
+            keys = Arrays.copyOf(keys, capacity);
+            arrays = Arrays.copyOf(arrays, capacity);
+            bitmaps = Arrays.copyOf(bitmaps, capacity);
+            cardinalities = Arrays.copyOf(cardinalities, capacity);
+        }
+    }
+}
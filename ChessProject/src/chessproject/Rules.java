@@ -0,0 +1,76 @@
+package chessproject;
+
+// The rule checks behind the Swing board, as static methods over a Position so they can be
+// used (and benchmarked) without constructing a JFrame. Squares are given as board rows and
+// columns like in ChessProject: row 0 is Black's back rank.
+public final class Rules {
+    private Rules() {
+    }
+
+    public static boolean isKingInCheck(Position position, int kingColor) {
+        return position.isInCheck(kingColor);
+    }
+
+    // Whether the piece moves like that, before checking that its own king stays safe
+    public static boolean isValidMove(Position position, int fromRow, int fromCol, int toRow, int toCol) {
+        if (position.pieceAt(fromRow, fromCol) == Piece.NONE) return false;
+        return MoveGenerator.isPseudoLegal(position, encodeMove(position, fromRow, fromCol, toRow, toCol, Piece.QUEEN));
+    }
+
+    // Checkmate means the side to move is in check and has no legal move.
+    // The buffer must hold MoveGenerator.MAX_MOVES moves.
+    public static boolean isCheckmate(Position position, int kingColor, int[] buffer) {
+        Metrics.CheckmateTestEvent event = new Metrics.CheckmateTestEvent();
+        event.begin();
+        boolean checkmate = kingColor == position.sideToMove() && isKingInCheck(position, kingColor)
+                && !MoveGenerator.hasLegalMove(position, buffer);
+        if (Metrics.ENABLED) {
+            Metrics.CHECKMATE_TESTS.increment();
+        }
+        if (event.shouldCommit()) {
+            event.color = kingColor == Piece.WHITE ? "White" : "Black";
+            event.checkmate = checkmate;
+            event.commit();
+        }
+        return checkmate;
+    }
+
+    // Builds the packed move for a from/to pair on the current board
+    public static int encodeMove(Position position, int fromRow, int fromCol, int toRow, int toCol, int promotionType) {
+        int from = Position.square(fromRow, fromCol);
+        int to = Position.square(toRow, toCol);
+        int type = Piece.type(position.pieceAt(from));
+        boolean capture = position.pieceAt(to) != Piece.NONE;
+
+        if (type == Piece.KING && Math.abs(fromCol - toCol) == 2) {
+            return Move.encode(from, to, toCol > fromCol ? Move.KING_CASTLE : Move.QUEEN_CASTLE);
+        }
+        if (type == Piece.PAWN) {
+            if (to == position.epSquare()) {
+                return Move.encode(from, to, Move.EN_PASSANT);
+            }
+            if (toRow == 0 || toRow == 7) {
+                int flags = (capture ? Move.PROMOTION_CAPTURE : Move.PROMOTION) + promotionType - Piece.KNIGHT;
+                return Move.encode(from, to, flags);
+            }
+            if (Math.abs(fromRow - toRow) == 2) {
+                return Move.encode(from, to, Move.DOUBLE_PUSH);
+            }
+        }
+        return Move.encode(from, to, capture ? Move.CAPTURE : Move.QUIET);
+    }
+
+    // Looks up a from/to pair in a legal move list, Move.NONE if it is not there
+    public static int findLegalMove(int[] moves, int count, int fromRow, int fromCol, int toRow, int toCol, int promotionType) {
+        int from = Position.square(fromRow, fromCol);
+        int to = Position.square(toRow, toCol);
+        for (int i = 0; i < count; i++) {
+            int move = moves[i];
+            if (Move.from(move) == from && Move.to(move) == to
+                    && (!Move.isPromotion(move) || Move.promotionType(move) == promotionType)) {
+                return move;
+            }
+        }
+        return Move.NONE;
+    }
+}
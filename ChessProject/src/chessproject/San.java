@@ -0,0 +1,261 @@
+package chessproject;
+
+// Standard Algebraic Notation, the move format of PGN: "e4", "Nbd7", "exd6", "R1xa3+", "O-O-O",
+// "e8=Q#". Parsing works on raw bytes so a PGN reader can decode moves straight from its input
+// buffer. Instead of generating every legal move and formatting each one for comparison, the
+// parser finds the pieces of the named type that reach the destination through the attack tables
+// and checks legality only when a piece might be pinned.
+public final class San {
+    private static final String PIECE_LETTERS = "PNBRQK";
+
+    private San() {
+    }
+
+    public static int parse(Position pos, CharSequence san) {
+        byte[] bytes = new byte[san.length()];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) san.charAt(i);
+        }
+        return parse(pos, bytes, 0, bytes.length);
+    }
+
+    // Decodes the SAN in bytes[start, end) into a legal move of the position, Move.NONE if it
+    // does not name exactly one. Check and annotation suffixes ("+", "#", "!?") are ignored, and
+    // so is a missing or superfluous "x"; castling may be written with zeros.
+    public static int parse(Position pos, byte[] bytes, int start, int end) {
+        while (end > start && isSuffix(bytes[end - 1])) {
+            end--;
+        }
+        if (end - start < 2) {
+            return Move.NONE;
+        }
+        int us = pos.sideToMove;
+        if (bytes[start] == 'O' || bytes[start] == '0') {
+            return parseCastle(pos, bytes, start, end);
+        }
+
+        // Promotion: "e8=Q", or "e8Q" and "e8=q" as some programs write it
+        int promotionType = Piece.NONE;
+        int last = bytes[end - 1];
+        if (last == 'N' || last == 'B' || last == 'R' || last == 'Q') {
+            promotionType = pieceType(last);
+            end -= bytes[end - 2] == '=' ? 2 : 1;
+        } else if (bytes[end - 2] == '=' && (last == 'n' || last == 'b' || last == 'r' || last == 'q')) {
+            promotionType = pieceType(last - 32);
+            end -= 2;
+        }
+        if (end - start < 2) {
+            return Move.NONE;
+        }
+        int toFile = bytes[end - 2] - 'a';
+        int toRank = bytes[end - 1] - '1';
+        if (toFile < 0 || toFile > 7 || toRank < 0 || toRank > 7) {
+            return Move.NONE;
+        }
+        int to = toRank * 8 + toFile;
+        end -= 2;
+
+        int type = Piece.PAWN;
+        if (bytes[start] >= 'A' && bytes[start] <= 'Z') {
+            type = pieceType(bytes[start]);
+            if (type <= Piece.PAWN) {
+                return Move.NONE;
+            }
+            start++;
+        }
+        // What is left is an optional from file and/or rank and an optional 'x'
+        long fromMask = ~0L;
+        for (int i = start; i < end; i++) {
+            int c = bytes[i];
+            if (c >= 'a' && c <= 'h') {
+                fromMask &= Position.FILE_A << (c - 'a');
+            } else if (c >= '1' && c <= '8') {
+                fromMask &= 0xFFL << (8 * (c - '1'));
+            } else if (c != 'x' && c != ':' && c != '-') {
+                return Move.NONE;
+            }
+        }
+
+        int target = pos.mailbox[to];
+        if (target != Piece.NONE && Piece.color(target) == us) {
+            return Move.NONE;
+        }
+        if (type == Piece.PAWN) {
+            return parsePawn(pos, to, fromMask, promotionType);
+        }
+        if (promotionType != Piece.NONE) {
+            return Move.NONE;
+        }
+        long candidates = MoveGenerator.attacks(type, to, pos.occupied) & pos.pieces(us, type) & fromMask;
+        int flags = target != Piece.NONE ? Move.CAPTURE : Move.QUIET;
+        return unique(pos, candidates, to, flags);
+    }
+
+    private static int parsePawn(Position pos, int to, long fromMask, int promotionType) {
+        int us = pos.sideToMove;
+        long pawns = pos.pieces(us, Piece.PAWN) & fromMask;
+        boolean lastRank = (to >>> 3) == (us == Piece.WHITE ? 7 : 0);
+        if (lastRank != (promotionType != Piece.NONE)) {
+            return Move.NONE;
+        }
+        int target = pos.mailbox[to];
+        boolean fileGiven = fromMask != ~0L;
+        int move;
+        if (target != Piece.NONE || to == pos.epSquare && fileGiven) {
+            // Captures always name the from file; pawns that attack the square move to it
+            if (!fileGiven) {
+                return Move.NONE;
+            }
+            long candidates = pawns & Attacks.pawn(us ^ 1, to);
+            int flags = target == Piece.NONE ? Move.EN_PASSANT : Move.CAPTURE;
+            if (promotionType != Piece.NONE) {
+                flags = Move.PROMOTION_CAPTURE + promotionType - Piece.KNIGHT;
+            }
+            return unique(pos, candidates, to, flags);
+        }
+        int up = us == Piece.WHITE ? 8 : -8;
+        int from = to - up;
+        if (from < 0 || from > 63) {
+            return Move.NONE;
+        }
+        if ((pawns & (1L << from)) != 0) {
+            int flags = promotionType != Piece.NONE ? Move.PROMOTION + promotionType - Piece.KNIGHT : Move.QUIET;
+            move = Move.encode(from, to, flags);
+        } else if (pos.mailbox[from] == Piece.NONE && (to >>> 3) == (us == Piece.WHITE ? 3 : 4)
+                && (pawns & (1L << (from - up))) != 0) {
+            move = Move.encode(from - up, to, Move.DOUBLE_PUSH);
+        } else {
+            return Move.NONE;
+        }
+        return isLegal(pos, move) ? move : Move.NONE;
+    }
+
+    private static int parseCastle(Position pos, byte[] bytes, int start, int end) {
+        byte c = bytes[start];
+        int length = end - start;
+        boolean kingSide = length == 3 && bytes[start + 1] == '-' && bytes[start + 2] == c;
+        boolean queenSide = length == 5 && bytes[start + 1] == '-' && bytes[start + 2] == c
+                && bytes[start + 3] == '-' && bytes[start + 4] == c;
+        if (!kingSide && !queenSide) {
+            return Move.NONE;
+        }
+        int base = pos.sideToMove == Piece.WHITE ? 0 : 56;
+        int move = kingSide
+                ? Move.encode(base + 4, base + 6, Move.KING_CASTLE)
+                : Move.encode(base + 4, base + 2, Move.QUEEN_CASTLE);
+        // isPseudoLegal already checks that the king does not pass through check
+        return MoveGenerator.isPseudoLegal(pos, move) && isLegal(pos, move) ? move : Move.NONE;
+    }
+
+    // The one legal move among candidate from squares, Move.NONE if there is none or several
+    private static int unique(Position pos, long candidates, int to, int flags) {
+        int found = Move.NONE;
+        while (candidates != 0) {
+            int from = Long.numberOfTrailingZeros(candidates);
+            candidates &= candidates - 1;
+            int move = Move.encode(from, to, flags);
+            if (isLegal(pos, move)) {
+                if (found != Move.NONE) {
+                    return Move.NONE; // Ambiguous
+                }
+                found = move;
+            }
+        }
+        return found;
+    }
+
+    // Legality of a pseudo-legal move, without making it unless a pin or check is possible
+    private static boolean isLegal(Position pos, int move) {
+        int us = pos.sideToMove;
+        int from = Move.from(move);
+        int king = pos.kingSquare(us);
+        if (from == king) {
+            return !pos.isSquareAttacked(Move.to(move), us ^ 1, pos.occupied ^ (1L << from));
+        }
+        long sliders = pos.pieces(us ^ 1, Piece.BISHOP) | pos.pieces(us ^ 1, Piece.ROOK) | pos.pieces(us ^ 1, Piece.QUEEN);
+        boolean maybePinned = (Attacks.line(king, from) & sliders) != 0;
+        if (!maybePinned && Move.flags(move) != Move.EN_PASSANT && !pos.isInCheck(us)) {
+            return true;
+        }
+        return MoveGenerator.isLegal(pos, move);
+    }
+
+    private static int pieceType(int letter) {
+        switch (letter) {
+            case 'N': return Piece.KNIGHT;
+            case 'B': return Piece.BISHOP;
+            case 'R': return Piece.ROOK;
+            case 'Q': return Piece.QUEEN;
+            case 'K': return Piece.KING;
+            default: return Piece.NONE;
+        }
+    }
+
+    private static boolean isSuffix(byte c) {
+        return c == '+' || c == '#' || c == '!' || c == '?';
+    }
+
+    // Formats a legal move of the position, including the check or mate suffix. The buffer
+    // must hold MoveGenerator.MAX_MOVES moves.
+    public static String toSan(Position pos, int move, int[] buffer) {
+        StringBuilder sb = new StringBuilder(8);
+        int from = Move.from(move);
+        int to = Move.to(move);
+        int type = Piece.type(pos.mailbox[from]);
+        if (Move.flags(move) == Move.KING_CASTLE) {
+            sb.append("O-O");
+        } else if (Move.flags(move) == Move.QUEEN_CASTLE) {
+            sb.append("O-O-O");
+        } else if (type == Piece.PAWN) {
+            if (Move.isCapture(move)) {
+                sb.append((char) ('a' + (from & 7))).append('x');
+            }
+            sb.append(Position.squareName(to));
+            if (Move.isPromotion(move)) {
+                sb.append('=').append(PIECE_LETTERS.charAt(Move.promotionType(move)));
+            }
+        } else {
+            sb.append(PIECE_LETTERS.charAt(type));
+            appendDisambiguation(sb, pos, move, type);
+            if (Move.isCapture(move)) {
+                sb.append('x');
+            }
+            sb.append(Position.squareName(to));
+        }
+
+        int us = pos.sideToMove;
+        pos.makeMove(move);
+        if (pos.isInCheck(us ^ 1)) {
+            sb.append(MoveGenerator.hasLegalMove(pos, buffer) ? '+' : '#');
+        }
+        pos.unmakeMove(move);
+        return sb.toString();
+    }
+
+    // File if that tells the pieces apart, else rank, else both; only legal rivals count
+    private static void appendDisambiguation(StringBuilder sb, Position pos, int move, int type) {
+        int from = Move.from(move);
+        int to = Move.to(move);
+        long rivals = MoveGenerator.attacks(type, to, pos.occupied) & pos.pieces(pos.sideToMove, type) & ~(1L << from);
+        long legalRivals = 0;
+        while (rivals != 0) {
+            int sq = Long.numberOfTrailingZeros(rivals);
+            rivals &= rivals - 1;
+            if (isLegal(pos, Move.encode(sq, to, Move.flags(move)))) {
+                legalRivals |= 1L << sq;
+            }
+        }
+        if (legalRivals == 0) {
+            return;
+        }
+        boolean sameFile = (legalRivals & (Position.FILE_A << (from & 7))) != 0;
+        boolean sameRank = (legalRivals & (0xFFL << (from & 56))) != 0;
+        if (!sameFile) {
+            sb.append((char) ('a' + (from & 7)));
+        } else if (!sameRank) {
+            sb.append((char) ('1' + (from >>> 3)));
+        } else {
+            sb.append(Position.squareName(from));
+        }
+    }
+}
@@ -0,0 +1,411 @@
+package chessproject;
+
+// Negamax alpha-beta search with iterative deepening for the computer opponent.
+//
+// Each iteration searches one ply deeper, re-using the previous principal variation for move
+// ordering. Leaves are resolved with a captures-only quiescence search so the static evaluation
+// is never taken in the middle of an exchange. Results are kept in a TranspositionTable, which
+// cuts off positions already searched deep enough and otherwise supplies the best move found
+// last time. Moves are ordered PV move first, then the table move, captures by MVV-LVA (most
+// valuable victim, least valuable attacker), promotions, killer moves and finally the history
+// heuristic.
+//
+// The time budget is hard: the clock is polled every 2048 nodes and an unfinished iteration is
+// thrown away, so search() returns within a few milliseconds of the deadline. A node limit is
+// checked at the same points, so a search stops less than 2048 nodes past it. A Search instance
+// owns its buffers and is not thread-safe; run one search at a time per instance. Several
+// instances can share one table and search the same root in parallel, see ParallelSearch.
+// With setNetwork the static evaluation comes from an NNUE network instead of Evaluator.
+public final class Search {
+    public static final int MAX_PLY = 128;
+    public static final int INFINITE = 32000;
+    public static final int MATE = 31000;
+    public static final int MATE_BOUND = MATE - MAX_PLY; // Scores at least this large are mates
+    public static final int DEFAULT_HASH_MB = 16;
+
+    // Receives every completed iteration, on the searching thread
+    public interface Listener {
+        void onIteration(SearchResult result);
+    }
+
+    private final TranspositionTable table;
+    private final Position position = new Position();
+    private final Evaluator evaluator = new Evaluator();
+    private NnueEvaluator nnue; // Replaces evaluator when set
+    private final int[] moves = new int[MAX_PLY * MoveGenerator.MAX_MOVES];
+    private final int[] moveScores = new int[MAX_PLY * MoveGenerator.MAX_MOVES];
+    private final int[][] killers = new int[MAX_PLY][2];
+    private final int[][] history = new int[12][64];
+    private final int[][] pvTable = new int[MAX_PLY][MAX_PLY];
+    private final int[] pvLength = new int[MAX_PLY];
+    private int[] previousPv = new int[0];
+
+    // Depth staggering for Lazy SMP helpers: helper i skips a depth when
+    // ((depth + SKIP_PHASE[j]) / SKIP_SIZE[j]) is odd, with j = (i - 1) % 20
+    private static final int[] SKIP_SIZE = {1, 1, 2, 2, 2, 2, 3, 3, 3, 3, 3, 3, 4, 4, 4, 4, 4, 4, 4, 4};
+    private static final int[] SKIP_PHASE = {0, 1, 0, 1, 2, 3, 0, 1, 2, 3, 4, 5, 0, 1, 2, 3, 4, 5, 6, 7};
+
+    private long nodes;
+    private long startNanos;
+    private long deadlineNanos;
+    private long nodeLimit = Long.MAX_VALUE;
+    private volatile boolean stopRequested;
+    private boolean aborted;
+
+    public Search() {
+        this(new TranspositionTable(DEFAULT_HASH_MB));
+    }
+
+    // The table may be shared with other Search instances, also while they are running
+    public Search(TranspositionTable table) {
+        this.table = table;
+    }
+
+    public TranspositionTable table() {
+        return table;
+    }
+
+    // Evaluates with network from the next search on, or with Evaluator again if it is null
+    public void setNetwork(NnueNetwork network) {
+        nnue = network == null ? null : new NnueEvaluator(network);
+    }
+
+    // Searches the given position (which is copied, not modified) until maxDepth is reached or
+    // timeMillis has passed. Returns the last completed iteration, or null if there are no legal moves.
+    public SearchResult search(Position root, long timeMillis, int maxDepth, Listener listener) {
+        stopRequested = false;
+        table.newSearch();
+        return iterate(root, timeMillis, maxDepth, listener, 0);
+    }
+
+    // Same as above, also stopping once maxNodes nodes have been searched
+    public SearchResult search(Position root, long timeMillis, int maxDepth, long maxNodes, Listener listener) {
+        limitNodes(maxNodes);
+        try {
+            return search(root, timeMillis, maxDepth, listener);
+        } finally {
+            limitNodes(Long.MAX_VALUE);
+        }
+    }
+
+    // Node limit for the searches started after this, Long.MAX_VALUE for none
+    void limitNodes(long maxNodes) {
+        nodeLimit = maxNodes;
+    }
+
+    // The iterative deepening loop. Helper threads of a parallel search pass their index (1 and up)
+    // so they skip some depths and run ahead of the main thread instead of repeating its work.
+    // Unlike search(), this neither resets a pending stop() nor starts a new table generation.
+    SearchResult iterate(Position root, long timeMillis, int maxDepth, Listener listener, int helper) {
+        position.copyFrom(root);
+        if (nnue != null) {
+            nnue.reset(position);
+        }
+        startNanos = System.nanoTime();
+        deadlineNanos = startNanos + timeMillis * 1_000_000L;
+        nodes = 0;
+        aborted = false;
+        previousPv = new int[0];
+        for (int[] pair : killers) {
+            pair[0] = Move.NONE;
+            pair[1] = Move.NONE;
+        }
+        for (int[] row : history) {
+            for (int sq = 0; sq < 64; sq++) {
+                row[sq] /= 8;
+            }
+        }
+
+        if (MoveGenerator.generateLegal(position, moves, 0) == 0) {
+            return null;
+        }
+        SearchResult best = null;
+        maxDepth = Math.min(maxDepth, MAX_PLY - 1);
+        for (int depth = 1; depth <= maxDepth; depth++) {
+            if (helper > 0 && skipDepth(depth, helper)) {
+                continue;
+            }
+            int score = negamax(depth, 0, -INFINITE, INFINITE, 0);
+            // A partial iteration is only better than nothing
+            if (aborted && best != null) {
+                break;
+            }
+            if (pvLength[0] > 0) {
+                previousPv = java.util.Arrays.copyOf(pvTable[0], pvLength[0]);
+                best = new SearchResult(previousPv[0], score, depth, nodes, System.nanoTime() - startNanos, previousPv);
+                if (listener != null) {
+                    listener.onIteration(best);
+                }
+            }
+            if (aborted) {
+                break;
+            }
+            // A mate found within the full width of this iteration cannot get any shorter
+            if (Math.abs(score) >= MATE_BOUND && MATE - Math.abs(score) <= depth) {
+                break;
+            }
+            // Not worth starting an iteration we most likely cannot finish
+            if (System.nanoTime() - startNanos > (deadlineNanos - startNanos) / 2 || nodes > nodeLimit / 2) {
+                break;
+            }
+        }
+        if (Metrics.ENABLED) {
+            Metrics.SEARCHES.increment();
+            Metrics.SEARCH_NODES.add(nodes);
+        }
+        return best;
+    }
+
+    private static boolean skipDepth(int depth, int helper) {
+        int j = (helper - 1) % SKIP_SIZE.length;
+        return ((depth + SKIP_PHASE[j]) / SKIP_SIZE[j]) % 2 != 0;
+    }
+
+    // Asks a running search to return as soon as possible; safe to call from any thread
+    public void stop() {
+        stopRequested = true;
+    }
+
+    // Clears a stop() left over from the last search, before iterate() is started on another thread
+    void clearStop() {
+        stopRequested = false;
+    }
+
+    // Nodes of the current or last search; only approximate while it runs on another thread
+    public long nodes() {
+        return nodes;
+    }
+
+    private int negamax(int depth, int ply, int alpha, int beta, int start) {
+        pvLength[ply] = ply;
+        if (ply > 0 && (position.halfmoveClock() >= 100 || position.isRepetition())) {
+            return 0;
+        }
+        boolean inCheck = position.isInCheck(position.sideToMove());
+        if (inCheck) {
+            depth++; // Check extension: never stop the search on a position in check
+        }
+        if (depth <= 0 || ply >= MAX_PLY - 1) {
+            return quiescence(ply, alpha, beta, start);
+        }
+        if ((++nodes & 2047) == 0) {
+            checkTime();
+        }
+        if (aborted) {
+            return 0;
+        }
+
+        long entry = table.probe(position.key());
+        int ttMove = Move.NONE;
+        if (entry != TranspositionTable.NO_ENTRY) {
+            ttMove = TranspositionTable.move(entry);
+            // The root always searches so it has a best move and a PV to report
+            if (ply > 0 && TranspositionTable.depth(entry) >= depth) {
+                int score = TranspositionTable.score(entry, ply);
+                int bound = TranspositionTable.bound(entry);
+                if (bound == TranspositionTable.BOUND_EXACT
+                        || (bound == TranspositionTable.BOUND_LOWER && score >= beta)
+                        || (bound == TranspositionTable.BOUND_UPPER && score <= alpha)) {
+                    return score;
+                }
+            }
+        }
+
+        int end = MoveGenerator.generateLegal(position, moves, start);
+        if (end == start) {
+            return inCheck ? -MATE + ply : 0;
+        }
+        scoreMoves(start, end, ply, ply < previousPv.length ? previousPv[ply] : Move.NONE, ttMove);
+
+        int originalAlpha = alpha;
+        int bestScore = -INFINITE;
+        int bestMove = Move.NONE;
+        for (int i = start; i < end; i++) {
+            int move = pickNext(i, end);
+            makeMove(move);
+            int score = -negamax(depth - 1, ply + 1, -beta, -alpha, end);
+            unmakeMove(move);
+            if (aborted) {
+                return 0;
+            }
+
+            if (score > bestScore) {
+                bestScore = score;
+                if (score > alpha) {
+                    alpha = score;
+                    bestMove = move;
+                    updatePv(ply, move);
+                    if (alpha >= beta) {
+                        if (!Move.isCapture(move) && !Move.isPromotion(move)) {
+                            rememberQuietCutoff(move, ply, depth);
+                        }
+                        break;
+                    }
+                }
+            }
+        }
+
+        int bound = bestScore >= beta ? TranspositionTable.BOUND_LOWER
+                : bestScore > originalAlpha ? TranspositionTable.BOUND_EXACT
+                : TranspositionTable.BOUND_UPPER;
+        table.store(position.key(), bestMove, bestScore, depth, bound, ply);
+        return bestScore;
+    }
+
+    private int quiescence(int ply, int alpha, int beta, int start) {
+        pvLength[ply] = ply;
+        if ((++nodes & 2047) == 0) {
+            checkTime();
+        }
+        if (aborted) {
+            return 0;
+        }
+        if (ply >= MAX_PLY - 1) {
+            return evaluate();
+        }
+
+        boolean inCheck = position.isInCheck(position.sideToMove());
+        int bestScore;
+        int end;
+        if (inCheck) {
+            // Every evasion has to be looked at, standing pat is not an option in check
+            end = MoveGenerator.generateLegal(position, moves, start);
+            if (end == start) {
+                return -MATE + ply;
+            }
+            bestScore = -INFINITE;
+        } else {
+            bestScore = evaluate();
+            if (bestScore >= beta) {
+                return bestScore;
+            }
+            if (bestScore > alpha) {
+                alpha = bestScore;
+            }
+            end = MoveGenerator.generateCaptures(position, moves, start);
+        }
+        scoreMoves(start, end, ply, Move.NONE, Move.NONE);
+
+        for (int i = start; i < end; i++) {
+            int move = pickNext(i, end);
+            makeMove(move);
+            int score = -quiescence(ply + 1, -beta, -alpha, end);
+            unmakeMove(move);
+            if (aborted) {
+                return 0;
+            }
+            if (score > bestScore) {
+                bestScore = score;
+                if (score > alpha) {
+                    alpha = score;
+                    updatePv(ply, move);
+                    if (alpha >= beta) {
+                        break;
+                    }
+                }
+            }
+        }
+        return bestScore;
+    }
+
+    private void makeMove(int move) {
+        if (nnue != null) {
+            nnue.makeMove(position, move);
+        } else {
+            position.makeMove(move);
+        }
+    }
+
+    private void unmakeMove(int move) {
+        if (nnue != null) {
+            nnue.unmakeMove(position, move);
+        } else {
+            position.unmakeMove(move);
+        }
+    }
+
+    private int evaluate() {
+        return nnue != null ? nnue.evaluate(position) : evaluator.evaluate(position);
+    }
+
+    private void scoreMoves(int start, int end, int ply, int pvMove, int ttMove) {
+        for (int i = start; i < end; i++) {
+            int move = moves[i];
+            int score;
+            if (move == pvMove) {
+                score = 2_000_000;
+            } else if (move == ttMove) {
+                score = 1_500_000;
+            } else if (Move.isCapture(move)) {
+                int victim = Move.flags(move) == Move.EN_PASSANT
+                        ? Piece.PAWN
+                        : Piece.type(position.pieceAt(Move.to(move)));
+                int attacker = Piece.type(position.pieceAt(Move.from(move)));
+                score = 1_000_000 + Evaluator.PIECE_VALUE[victim] * 10 - attacker;
+                if (Move.isPromotion(move)) {
+                    score += Evaluator.PIECE_VALUE[Move.promotionType(move)];
+                }
+            } else if (Move.isPromotion(move)) {
+                score = 950_000 + Evaluator.PIECE_VALUE[Move.promotionType(move)];
+            } else if (move == killers[ply][0]) {
+                score = 900_000;
+            } else if (move == killers[ply][1]) {
+                score = 899_000;
+            } else {
+                score = history[position.pieceAt(Move.from(move))][Move.to(move)];
+            }
+            moveScores[i] = score;
+        }
+    }
+
+    // Selection sort step: moves the best remaining move to index i and returns it
+    private int pickNext(int i, int end) {
+        int best = i;
+        for (int j = i + 1; j < end; j++) {
+            if (moveScores[j] > moveScores[best]) {
+                best = j;
+            }
+        }
+        int move = moves[best];
+        moves[best] = moves[i];
+        moves[i] = move;
+        int score = moveScores[best];
+        moveScores[best] = moveScores[i];
+        moveScores[i] = score;
+        return move;
+    }
+
+    private void rememberQuietCutoff(int move, int ply, int depth) {
+        if (killers[ply][0] != move) {
+            killers[ply][1] = killers[ply][0];
+            killers[ply][0] = move;
+        }
+        int[] row = history[position.pieceAt(Move.from(move))];
+        row[Move.to(move)] += depth * depth;
+        if (row[Move.to(move)] > 800_000) {
+            // Keep history scores below the killer and capture bands
+            for (int[] r : history) {
+                for (int sq = 0; sq < 64; sq++) {
+                    r[sq] /= 2;
+                }
+            }
+        }
+    }
+
+    private void updatePv(int ply, int move) {
+        int[] line = pvTable[ply];
+        int[] child = pvTable[ply + 1];
+        line[ply] = move;
+        int length = pvLength[ply + 1];
+        for (int i = ply + 1; i < length; i++) {
+            line[i] = child[i];
+        }
+        pvLength[ply] = Math.max(length, ply + 1);
+    }
+
+    private void checkTime() {
+        if (stopRequested || nodes >= nodeLimit || System.nanoTime() >= deadlineNanos) {
+            aborted = true;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package chessproject;
+
+// Outcome of one completed search iteration: best move, score and principal variation,
+// plus the work done so far for depth and nodes-per-second reporting.
+public final class SearchResult {
+    public final int bestMove;
+    public final int score;
+    public final int depth;
+    public final long nodes;
+    public final long nanos;
+    public final int[] pv;
+
+    public SearchResult(int bestMove, int score, int depth, long nodes, long nanos, int[] pv) {
+        this.bestMove = bestMove;
+        this.score = score;
+        this.depth = depth;
+        this.nodes = nodes;
+        this.nanos = nanos;
+        this.pv = pv;
+    }
+
+    public long nodesPerSecond() {
+        return nanos == 0 ? 0 : nodes * 1_000_000_000L / nanos;
+    }
+
+    public boolean isMate() {
+        return Math.abs(score) >= Search.MATE_BOUND;
+    }
+
+    // Moves to mate, positive when the side to move mates
+    public int mateIn() {
+        int plies = Search.MATE - Math.abs(score);
+        return (score > 0 ? 1 : -1) * ((plies + 1) / 2);
+    }
+
+    public String pvString() {
+        StringBuilder sb = new StringBuilder();
+        for (int move : pv) {
+            if (sb.length() > 0) {
+                sb.append(' ');
+            }
+            sb.append(Move.toUci(move));
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        String scoreText = isMate() ? "mate " + mateIn() : String.format("%+.2f", score / 100.0);
+        return String.format("depth %d  %s  %,d nodes  %,d nps  %s",
+                depth, scoreText, nodes, nodesPerSecond(), pvString());
+    }
+}
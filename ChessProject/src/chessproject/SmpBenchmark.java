@@ -0,0 +1,99 @@
+package chessproject;
+
+import java.util.concurrent.TimeUnit;
+
+// Time-to-depth scaling of the Lazy SMP search. Every position of a fixed set is searched to
+// the same depth with 1, 2, 4, ... up to N threads, starting from an empty table each time, and
+// the wall time is compared with the single-threaded run. Time to depth rather than nodes per
+// second is the figure that matters: helpers that only add nodes without getting the main thread
+// deeper sooner are wasted.
+//
+// Usage:
+//   java -cp ChessProject.jar chessproject.SmpBenchmark [--threads N] [--depth D] [--hash MB] [--runs R]
+public final class SmpBenchmark {
+    private static final String[][] POSITIONS = {
+        {"start position", Position.START_FEN},
+        {"kiwipete", "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1"},
+        {"italian", "r1bqk1nr/pppp1ppp/2n5/2b1p3/2B1P3/5N2/PPPP1PPP/RNBQK2R w KQkq - 4 4"},
+        {"queen's gambit", "rnbqkb1r/ppp2ppp/4pn2/3p4/2PP4/2N5/PP2PPPP/R1BQKBNR w KQkq - 2 4"},
+        {"middlegame", "r2q1rk1/pp2bppp/2n1pn2/3p4/3P4/2NBPN2/PP3PPP/R2Q1RK1 w - - 0 10"},
+        {"open files", "2rr2k1/pp3ppp/2n1bn2/q7/3N4/2N1B3/PPQ2PPP/3RR1K1 w - - 0 16"},
+        {"rook endgame", "8/5pk1/6p1/R7/5P2/6PK/r7/8 w - - 0 40"},
+        {"pawn endgame", "8/pp3k2/2p5/3p1p2/3P1P2/2P3K1/PP6/8 w - - 0 35"},
+    };
+
+    private static final int DEFAULT_DEPTH = 8;
+    private static final int DEFAULT_HASH_MB = 64;
+    private static final long NO_TIME_LIMIT = TimeUnit.DAYS.toMillis(1);
+
+    private SmpBenchmark() {
+    }
+
+    // Total nanoseconds for the main thread to finish depth on every position, best of runs
+    private static long timeToDepth(int threads, int depth, int hashMegabytes, int runs, long[] nodesOut) {
+        long best = Long.MAX_VALUE;
+        try (ParallelSearch search = new ParallelSearch(threads, hashMegabytes)) {
+            for (int run = 0; run < runs; run++) {
+                long total = 0;
+                long nodes = 0;
+                for (String[] entry : POSITIONS) {
+                    Position position = new Position();
+                    position.setFen(entry[1]);
+                    search.table().clear();
+                    long start = System.nanoTime();
+                    SearchResult result = search.search(position, NO_TIME_LIMIT, depth, null);
+                    total += System.nanoTime() - start;
+                    nodes += result.nodes;
+                }
+                if (total < best) {
+                    best = total;
+                    nodesOut[0] = nodes;
+                }
+            }
+        }
+        return best;
+    }
+
+    public static void main(String[] args) {
+        int maxThreads = Runtime.getRuntime().availableProcessors();
+        int depth = DEFAULT_DEPTH;
+        int hashMegabytes = DEFAULT_HASH_MB;
+        int runs = 1;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--threads":
+                    maxThreads = Integer.parseInt(args[++i]);
+                    break;
+                case "--depth":
+                    depth = Integer.parseInt(args[++i]);
+                    break;
+                case "--hash":
+                    hashMegabytes = Integer.parseInt(args[++i]);
+                    break;
+                case "--runs":
+                    runs = Integer.parseInt(args[++i]);
+                    break;
+                default:
+                    System.err.println("Unknown argument: " + args[i]);
+                    System.exit(2);
+            }
+        }
+
+        System.out.printf("%d positions to depth %d, %d MB hash, %d cores%n",
+                POSITIONS.length, depth, hashMegabytes, Runtime.getRuntime().availableProcessors());
+        // One throwaway pass so the single-threaded baseline is not measured on a cold JIT
+        timeToDepth(1, Math.min(depth, 6), hashMegabytes, 1, new long[1]);
+
+        long baseline = 0;
+        // Powers of two, plus the full thread count if it is not one
+        for (int threads = 1; threads <= maxThreads; threads = threads == maxThreads ? threads + 1 : Math.min(threads * 2, maxThreads)) {
+            long[] nodes = new long[1];
+            long nanos = timeToDepth(threads, depth, hashMegabytes, runs, nodes);
+            if (threads == 1) {
+                baseline = nanos;
+            }
+            System.out.printf("%3d threads  %9.0f ms  speedup %5.2f  %,15d nodes  %,12d nps%n",
+                    threads, nanos / 1e6, (double) baseline / nanos, nodes[0], nodes[0] * 1_000_000_000L / nanos);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package chessproject;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.imageio.ImageIO;
+import javax.swing.ImageIcon;
+import javax.swing.SwingUtilities;
+
+// The twelve piece images, decoded once from resources/<piece>.png and kept scaled to the current
+// square size, so drawing a piece is an array lookup instead of a PNG decode and rescale on the EDT.
+//
+// When the board is resized the images are rescaled on a background thread and the whole set is
+// swapped in at once; until then the old set keeps being drawn. Requests that arrive while a
+// rescale is running are coalesced, only the latest size is scaled.
+public final class SpriteCache {
+    private static final String RESOURCE_DIR = "resources/";
+
+    private final BufferedImage[] originals = new BufferedImage[12];
+    private volatile ImageIcon[] icons;
+    private volatile int size;
+    private final AtomicInteger requestedSize = new AtomicInteger();
+    private final ExecutorService scaler = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "sprite-scaler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Decodes the images and scales them to the initial size on the calling thread
+    public SpriteCache(int initialSize) {
+        for (int piece = 0; piece < 12; piece++) {
+            String path = RESOURCE_DIR + Piece.name(piece) + ".png";
+            try {
+                originals[piece] = ImageIO.read(new File(path));
+            } catch (IOException e) {
+                System.err.println("Cannot load " + path + ": " + e.getMessage());
+            }
+            if (originals[piece] == null) {
+                System.err.println("Missing piece image " + path);
+            }
+        }
+        requestedSize.set(initialSize);
+        icons = scaleAll(initialSize);
+        size = initialSize;
+    }
+
+    // The icon for a piece at the current size, null if its image could not be loaded
+    public ImageIcon icon(int piece) {
+        return icons[piece];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Rescales to a new size in the background; onSwap runs on the EDT once the new icons are live
+    public void resize(int newSize, Runnable onSwap) {
+        if (newSize < 1 || requestedSize.getAndSet(newSize) == newSize) {
+            return;
+        }
+        scaler.execute(() -> {
+            int target = requestedSize.get();
+            if (target == size) {
+                return; // Already done by an earlier task
+            }
+            ImageIcon[] scaled = scaleAll(target);
+            if (requestedSize.get() != target) {
+                return; // Superseded while scaling, the task for the newer size follows
+            }
+            icons = scaled;
+            size = target;
+            SwingUtilities.invokeLater(onSwap);
+        });
+    }
+
+    private ImageIcon[] scaleAll(int target) {
+        ImageIcon[] scaled = new ImageIcon[12];
+        for (int piece = 0; piece < 12; piece++) {
+            if (originals[piece] != null) {
+                scaled[piece] = new ImageIcon(scale(originals[piece], target));
+            }
+        }
+        return scaled;
+    }
+
+    // Bicubic scaling; large reductions go in halving steps, since one bicubic pass only samples
+    // a 4x4 neighbourhood and would alias
+    static BufferedImage scale(BufferedImage source, int target) {
+        BufferedImage current = source;
+        int width = source.getWidth();
+        int height = source.getHeight();
+        do {
+            width = Math.max(target, width / 2);
+            height = Math.max(target, height / 2);
+            if (width < target * 2 && height < target * 2) {
+                width = target;
+                height = target;
+            }
+            BufferedImage next = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g = next.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g.drawImage(current, 0, 0, width, height, null);
+            g.dispose();
+            current = next;
+        } while (width != target || height != target);
+        return current;
+    }
+}
@@ -0,0 +1,161 @@
+package chessproject;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Endgame tables by material class, probed from either side: a position with the stronger pieces
+// on black is looked up in the table of its mirror image. Scores follow Search: Search.MATE
+// minus the plies to mate for a win of the side to move, its negation for a loss, 0 for a draw.
+//
+// The tables leave out castling and en passant rights. Positions with castling rights are not
+// answered; with an en passant square the answer is worked out from the moves, which all lead
+// to positions without one.
+public final class Tablebase {
+    public static final int NO_SCORE = Integer.MIN_VALUE; // No table covers the position
+
+    private final Map<String, EndgameTable> tables = new ConcurrentHashMap<>();
+
+    // All tables in dir (files ending in .dtm); an empty tablebase if there is no such directory
+    public static Tablebase load(Path dir) {
+        Tablebase tablebase = new Tablebase();
+        if (!Files.isDirectory(dir)) {
+            return tablebase;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*.dtm")) {
+            for (Path file : files) {
+                try {
+                    tablebase.add(EndgameTable.open(file));
+                } catch (IOException e) {
+                    System.err.println("Cannot open endgame table " + file + ": " + e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Cannot read endgame tables from " + dir + ": " + e.getMessage());
+        }
+        return tablebase;
+    }
+
+    public void add(EndgameTable table) {
+        tables.put(table.name(), table);
+    }
+
+    // The table of a material class in either orientation, null if there is none
+    public EndgameTable table(String name) {
+        EndgameTable table = tables.get(name);
+        return table != null ? table : tables.get(EndgameTable.flippedName(name));
+    }
+
+    public boolean isEmpty() {
+        return tables.isEmpty();
+    }
+
+    // The tables by name, for reports
+    public Map<String, EndgameTable> tables() {
+        return new TreeMap<>(tables);
+    }
+
+    // Most men of any table
+    public int maxMen() {
+        int men = 2;
+        for (EndgameTable table : tables.values()) {
+            men = Math.max(men, table.men());
+        }
+        return men;
+    }
+
+    // The EndgameTable code of a position for its side to move, ignoring castling and en passant
+    // rights: EndgameTable.UNKNOWN when no table covers it, DRAW for bare kings
+    int code(Position pos) {
+        int men = Long.bitCount(pos.occupied);
+        if (men == 2) {
+            return EndgameTable.DRAW;
+        }
+        if (men > EndgameTable.MAX_MEN) {
+            return EndgameTable.UNKNOWN;
+        }
+        int[] squares = new int[men];
+        int[] scratch = new int[men];
+        EndgameTable table = tables.get(EndgameTable.materialName(pos, false));
+        if (table != null) {
+            return table.code(pos, false, squares, scratch);
+        }
+        table = tables.get(EndgameTable.materialName(pos, true));
+        return table != null ? table.code(pos, true, squares, scratch) : EndgameTable.UNKNOWN;
+    }
+
+    // The score of the position, NO_SCORE if no table covers it
+    public int probe(Position pos) {
+        if (pos.castlingRights != 0 || Long.bitCount(pos.occupied) > maxMen()) {
+            return NO_SCORE;
+        }
+        if (pos.epSquare >= 0) {
+            int[] moves = new int[MoveGenerator.MAX_MOVES];
+            int best = NO_SCORE;
+            for (int i = 0, n = MoveGenerator.generateLegal(pos, moves); i < n; i++) {
+                int score = moveScore(pos, moves[i]);
+                if (score == NO_SCORE) {
+                    return NO_SCORE;
+                }
+                best = Math.max(best, score);
+            }
+            return best != NO_SCORE ? best : pos.isInCheck(pos.sideToMove) ? -Search.MATE : 0;
+        }
+        return score(code(pos));
+    }
+
+    // The best move by the tables: the fastest mate when winning, the longest defence when
+    // losing, any move that keeps the draw otherwise. Move.NONE if the position is not covered.
+    public int bestMove(Position pos) {
+        if (probe(pos) == NO_SCORE) {
+            return Move.NONE;
+        }
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+        int bestMove = Move.NONE;
+        int bestScore = NO_SCORE;
+        for (int i = 0, n = MoveGenerator.generateLegal(pos, moves); i < n; i++) {
+            int score = moveScore(pos, moves[i]);
+            if (score > bestScore) {
+                bestScore = score;
+                bestMove = moves[i];
+            }
+        }
+        return bestMove;
+    }
+
+    // "1-0", "0-1" or "1/2-1/2" as the tables see the position with perfect play, null if they
+    // do not cover it
+    public String adjudicate(Position pos) {
+        int score = probe(pos);
+        if (score == NO_SCORE) {
+            return null;
+        }
+        if (score == 0) {
+            return "1/2-1/2";
+        }
+        return (score > 0) == (pos.sideToMove == Piece.WHITE) ? "1-0" : "0-1";
+    }
+
+    // Score of a move for the side playing it, one ply further from mate than the reply
+    private int moveScore(Position pos, int move) {
+        pos.makeMove(move);
+        int score = probe(pos);
+        pos.unmakeMove(move);
+        if (score == NO_SCORE || score == 0) {
+            return score;
+        }
+        return score > 0 ? -score + 1 : -score - 1;
+    }
+
+    static int score(int code) {
+        if (code < EndgameTable.DTM_BASE) {
+            return code == EndgameTable.DRAW ? 0 : NO_SCORE;
+        }
+        int plies = code - EndgameTable.DTM_BASE;
+        return (plies & 1) != 0 ? Search.MATE - plies : -(Search.MATE - plies);
+    }
+}
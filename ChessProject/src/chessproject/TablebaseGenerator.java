@@ -0,0 +1,497 @@
+package chessproject;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Builds EndgameTables by retrograde analysis. Tables reached by a capture or a promotion are
+// built (or loaded from the output directory) first, so every move out of the material class
+// has a known value.
+//
+// 1. Every index is set up and its legal moves generated. Mates and stalemates are resolved, and
+//    so are positions whose moves all leave the class. Each position keeps the number of its
+//    distinct successors inside the class and what its best exit is worth: the shortest mate
+//    it wins by, or else the longest it loses by.
+// 2. Pass d takes the positions resolved at d - 1 plies and undoes moves of the side that just
+//    moved. A predecessor of a loss is a win in d plies; a predecessor of a win has one successor
+//    fewer to go and is a loss when none is left.
+// 3. What is unresolved when the passes run dry is a draw. A last pass checks every position
+//    against its legal moves from MoveGenerator.
+//
+// Each pass splits the indexes over the worker threads. Resolved codes never change again, so
+// threads only race on writing the same value; the successor counters are updated by CAS.
+//
+// Usage:
+//   java -cp ChessProject.jar chessproject.TablebaseGenerator [--dir tb] [--threads N] [--no-verify] KQvK KRvK KPvK KBNvK ...
+public final class TablebaseGenerator implements AutoCloseable {
+    private static final int CHUNK = 1 << 14;
+    private static final int NEVER = 255; // Successor count of a position with a drawing exit
+    private static final VarHandle WORDS = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final Tablebase tablebase;
+    private final Path dir;
+    private final boolean verify;
+    private final int threads;
+    private final ExecutorService pool;
+
+    // State of the table being built
+    private EndgameTable table;
+    private byte[][] codes;
+    private byte[][] successors;
+    private byte[][] exits;
+    private final AtomicInteger maxPlies = new AtomicInteger();
+
+    public TablebaseGenerator(Path dir, int threads, boolean verify) {
+        this.tablebase = Tablebase.load(dir);
+        this.dir = dir;
+        this.threads = threads;
+        this.verify = verify;
+        AtomicInteger threadNumber = new AtomicInteger(1);
+        pool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "tablebase-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public Tablebase tablebase() {
+        return tablebase;
+    }
+
+    // The table of a material class, built with the ones it depends on if it is not there yet
+    public EndgameTable generate(String name) throws IOException, InterruptedException {
+        name = EndgameTable.canonicalName(name);
+        EndgameTable existing = tablebase.table(name);
+        if (existing != null || name.length() == 3) {
+            return existing;
+        }
+        EndgameTable target = new EndgameTable(name);
+        for (String exit : exitClasses(target)) {
+            generate(exit);
+        }
+
+        long start = System.nanoTime();
+        build(target);
+        long built = System.nanoTime();
+        long errors = verify ? verify() : 0;
+        long verified = System.nanoTime();
+        if (errors != 0) {
+            throw new IllegalStateException(name + ": " + errors + " positions disagree with their moves");
+        }
+        Files.createDirectories(dir);
+        Path file = dir.resolve(name + ".dtm");
+        target.write(file);
+        target.close();
+        codes = successors = exits = null;
+        EndgameTable stored = EndgameTable.open(file);
+        tablebase.add(stored);
+        report(stored, (built - start) / 1e9, verify ? (verified - built) / 1e9 : -1, Files.size(file));
+        return stored;
+    }
+
+    // Material classes one capture or promotion away, in canonical orientation
+    private static Set<String> exitClasses(EndgameTable table) {
+        Set<String> classes = new LinkedHashSet<>();
+        String name = table.name();
+        int split = name.indexOf('v');
+        for (int side = 0; side < 2; side++) {
+            String us = side == 0 ? name.substring(0, split) : name.substring(split + 1);
+            String them = side == 0 ? name.substring(split + 1) : name.substring(0, split);
+            // Captures of one of their pieces, with or without promoting one of our pawns
+            for (int i = 1; i < them.length(); i++) {
+                String captured = them.substring(0, i) + them.substring(i + 1);
+                classes.add(EndgameTable.canonicalName(us + "v" + captured));
+                for (String promoted : promotions(us)) {
+                    classes.add(EndgameTable.canonicalName(promoted + "v" + captured));
+                }
+            }
+            for (String promoted : promotions(us)) {
+                classes.add(EndgameTable.canonicalName(promoted + "v" + them));
+            }
+        }
+        return classes;
+    }
+
+    private static List<String> promotions(String side) {
+        List<String> result = new ArrayList<>();
+        int pawn = side.indexOf('P');
+        if (pawn > 0) {
+            String rest = side.substring(0, pawn) + side.substring(pawn + 1);
+            for (char piece : new char[] {'Q', 'R', 'B', 'N'}) {
+                int at = 1;
+                while (at < rest.length() && "KQRBNP".indexOf(rest.charAt(at)) <= "KQRBNP".indexOf(piece)) {
+                    at++;
+                }
+                result.add(rest.substring(0, at) + piece + rest.substring(at));
+            }
+        }
+        return result;
+    }
+
+    private void build(EndgameTable target) throws InterruptedException {
+        table = target;
+        codes = target.allocate();
+        successors = new byte[2][target.size()];
+        exits = new byte[2][target.size()];
+        maxPlies.set(0);
+        AtomicInteger maxExit = new AtomicInteger();
+        parallel((worker, stm, index) -> worker.initialize(stm, index, maxExit));
+        for (int plies = 1; plies <= maxPlies.get() + 1 || plies <= maxExit.get(); plies++) {
+            int level = plies;
+            parallel((worker, stm, index) -> worker.propagate(stm, index, level));
+        }
+        for (byte[] side : codes) {
+            for (int i = 0; i < side.length; i++) {
+                if (side[i] == EndgameTable.UNKNOWN) {
+                    side[i] = EndgameTable.DRAW;
+                }
+            }
+        }
+    }
+
+    private long verify() throws InterruptedException {
+        AtomicLong errors = new AtomicLong();
+        parallel((worker, stm, index) -> {
+            if (!worker.check(stm, index)) {
+                errors.incrementAndGet();
+            }
+        });
+        return errors.get();
+    }
+
+    private interface Task {
+        void run(Worker worker, int stm, int index);
+    }
+
+    // Runs task on every index of both sides to move
+    private void parallel(Task task) throws InterruptedException {
+        int size = table.size();
+        AtomicInteger next = new AtomicInteger();
+        int chunks = (int) ((2L * size + CHUNK - 1) / CHUNK);
+        List<Callable<Void>> jobs = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            jobs.add(() -> {
+                Worker worker = new Worker();
+                for (int chunk; (chunk = next.getAndIncrement()) < chunks; ) {
+                    long first = (long) chunk * CHUNK;
+                    long end = Math.min(first + CHUNK, 2L * size);
+                    for (long i = first; i < end; i++) {
+                        task.run(worker, (int) (i / size), (int) (i % size));
+                    }
+                }
+                return null;
+            });
+        }
+        for (Future<Void> job : pool.invokeAll(jobs)) {
+            try {
+                job.get();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Tablebase worker failed", e.getCause());
+            }
+        }
+    }
+
+    // Scratch state of one thread
+    private final class Worker {
+        final Position pos = new Position();
+        final int[] moves = new int[MoveGenerator.MAX_MOVES];
+        final int[] squares = new int[EndgameTable.MAX_MEN];
+        final int[] moved = new int[EndgameTable.MAX_MEN];
+        final int[] scratch = new int[EndgameTable.MAX_MEN];
+        final int[] found = new int[MoveGenerator.MAX_MOVES];
+
+        void initialize(int stm, int index, AtomicInteger maxExit) {
+            table.decode(index, squares);
+            if (!table.setup(pos, squares, stm) || table.index(squares, scratch) != index) {
+                codes[stm][index] = EndgameTable.ILLEGAL;
+                return;
+            }
+            int n = MoveGenerator.generateLegal(pos, moves);
+            if (n == 0) {
+                resolve(stm, index, pos.isInCheck(stm) ? 0 : -1);
+                return;
+            }
+            int win = 0;
+            int loss = 0;
+            boolean drawn = false;
+            int distinct = 0;
+            for (int i = 0; i < n; i++) {
+                int move = moves[i];
+                pos.makeMove(move);
+                if (Move.isCapture(move) || Move.isPromotion(move)) {
+                    int code = tablebase.code(pos);
+                    if (code == EndgameTable.UNKNOWN) {
+                        throw new IllegalStateException("No table for " + EndgameTable.materialName(pos, false));
+                    } else if (code < EndgameTable.DTM_BASE) {
+                        drawn = true;
+                    } else if (((code - EndgameTable.DTM_BASE) & 1) == 0) {
+                        int plies = code - EndgameTable.DTM_BASE + 1;
+                        win = win == 0 ? plies : Math.min(win, plies);
+                    } else {
+                        loss = Math.max(loss, code - EndgameTable.DTM_BASE + 1);
+                    }
+                } else {
+                    table.squaresOf(pos, false, moved);
+                    distinct = addDistinct(found, distinct, table.index(moved, scratch));
+                }
+                pos.unmakeMove(move);
+            }
+            successors[stm][index] = (byte) (drawn ? NEVER : distinct);
+            exits[stm][index] = (byte) (win != 0 ? win : loss);
+            if (win != 0) {
+                maxExit.accumulateAndGet(win, Math::max);
+            }
+            if (distinct == 0) {
+                if (win != 0) {
+                    resolve(stm, index, win);
+                } else if (!drawn) {
+                    resolve(stm, index, loss);
+                }
+            }
+        }
+
+        // Pass for mates in plies: pushes the positions resolved one ply earlier to their
+        // predecessors, and takes winning exits of exactly that length
+        void propagate(int stm, int index, int plies) {
+            int code = codes[stm][index] & 0xFF;
+            if (code == EndgameTable.UNKNOWN) {
+                int exit = exits[stm][index] & 0xFF;
+                if (exit == plies && (exit & 1) != 0) {
+                    resolve(stm, index, plies);
+                }
+                return;
+            }
+            if (code != EndgameTable.DTM_BASE + plies - 1) {
+                return;
+            }
+            int mover = stm ^ 1;
+            int count = predecessors(stm, index);
+            for (int i = 0; i < count; i++) {
+                int previous = found[i];
+                if (codes[mover][previous] != EndgameTable.UNKNOWN) {
+                    continue;
+                }
+                if ((plies & 1) != 0) {
+                    resolve(mover, previous, plies); // It can move into a loss
+                } else if (decrement(successors[mover], previous) == 0) {
+                    int exit = exits[mover][previous] & 0xFF;
+                    if ((exit & 1) == 0) {
+                        resolve(mover, previous, Math.max(plies, exit)); // Every move loses
+                    }
+                }
+            }
+        }
+
+        // Distinct indexes the side not to move could have come from, into found[]
+        int predecessors(int stm, int index) {
+            table.decode(index, squares);
+            long occupied = 0;
+            for (int i = 0; i < table.men(); i++) {
+                occupied |= 1L << squares[i];
+            }
+            int mover = stm ^ 1;
+            int count = 0;
+            for (int i = 0; i < table.men(); i++) {
+                int piece = table.slotPiece(i);
+                if (Piece.color(piece) != mover) {
+                    continue;
+                }
+                int from = squares[i];
+                long origins;
+                if (Piece.type(piece) == Piece.PAWN) {
+                    int back = mover == Piece.WHITE ? -8 : 8;
+                    int rank = mover == Piece.WHITE ? from >>> 3 : 7 - (from >>> 3);
+                    origins = 0;
+                    if (rank >= 2 && (occupied & 1L << (from + back)) == 0) {
+                        origins |= 1L << (from + back);
+                        if (rank == 3 && (occupied & 1L << (from + 2 * back)) == 0) {
+                            origins |= 1L << (from + 2 * back);
+                        }
+                    }
+                } else {
+                    origins = MoveGenerator.attacks(Piece.type(piece), from, occupied) & ~occupied;
+                }
+                for (; origins != 0; origins &= origins - 1) {
+                    System.arraycopy(squares, 0, moved, 0, table.men());
+                    moved[i] = Long.numberOfTrailingZeros(origins);
+                    count = addDistinct(found, count, table.index(moved, scratch));
+                }
+            }
+            return count;
+        }
+
+        // Whether the stored code of a position is what its legal moves give
+        boolean check(int stm, int index) {
+            int stored = codes[stm][index] & 0xFF;
+            if (stored == EndgameTable.ILLEGAL) {
+                return true;
+            }
+            table.decode(index, squares);
+            if (!table.setup(pos, squares, stm)) {
+                return false;
+            }
+            int n = MoveGenerator.generateLegal(pos, moves);
+            int expected;
+            if (n == 0) {
+                expected = pos.isInCheck(stm) ? EndgameTable.DTM_BASE : EndgameTable.DRAW;
+            } else {
+                int win = Integer.MAX_VALUE;
+                int loss = -1;
+                boolean drawn = false;
+                for (int i = 0; i < n; i++) {
+                    int move = moves[i];
+                    pos.makeMove(move);
+                    int code;
+                    if (Move.isCapture(move) || Move.isPromotion(move)) {
+                        code = tablebase.code(pos);
+                    } else {
+                        table.squaresOf(pos, false, moved);
+                        code = table.code(stm ^ 1, table.index(moved, scratch));
+                    }
+                    pos.unmakeMove(move);
+                    if (code < EndgameTable.DTM_BASE) {
+                        if (code != EndgameTable.DRAW) {
+                            return false;
+                        }
+                        drawn = true;
+                    } else if (((code - EndgameTable.DTM_BASE) & 1) == 0) {
+                        win = Math.min(win, code - EndgameTable.DTM_BASE + 1);
+                    } else {
+                        loss = Math.max(loss, code - EndgameTable.DTM_BASE + 1);
+                    }
+                }
+                expected = win != Integer.MAX_VALUE ? EndgameTable.DTM_BASE + win
+                        : drawn ? EndgameTable.DRAW : EndgameTable.DTM_BASE + loss;
+            }
+            return stored == expected;
+        }
+    }
+
+    // Stores a result; plies < 0 is a draw
+    private void resolve(int stm, int index, int plies) {
+        if (plies < 0) {
+            codes[stm][index] = EndgameTable.DRAW;
+            return;
+        }
+        if (plies > EndgameTable.MAX_DTM) {
+            throw new IllegalStateException(table.name() + ": mates over " + EndgameTable.MAX_DTM + " plies");
+        }
+        codes[stm][index] = (byte) (EndgameTable.DTM_BASE + plies);
+        maxPlies.accumulateAndGet(plies, Math::max);
+    }
+
+    private static int addDistinct(int[] list, int count, int value) {
+        for (int i = 0; i < count; i++) {
+            if (list[i] == value) {
+                return count;
+            }
+        }
+        list[count] = value;
+        return count + 1;
+    }
+
+    // Atomically counts down a byte counter and returns the new count; NEVER stays as it is
+    private static int decrement(byte[] counters, int index) {
+        int word = index & ~3;
+        int shift = (index & 3) * 8;
+        while (true) {
+            int old = (int) WORDS.getVolatile(counters, word);
+            int count = (old >>> shift) & 0xFF;
+            if (count == NEVER || count == 0) {
+                return NEVER;
+            }
+            if (WORDS.compareAndSet(counters, word, old, old - (1 << shift))) {
+                return count - 1;
+            }
+        }
+    }
+
+    private void report(EndgameTable target, double buildSeconds, double verifySeconds, long fileBytes) {
+        long legal = 0;
+        long[] wins = new long[2];
+        long[] losses = new long[2];
+        long[] draws = new long[2];
+        int longest = 0;
+        for (int stm = 0; stm < 2; stm++) {
+            for (int i = 0; i < target.size(); i++) {
+                int code = target.code(stm, i);
+                if (code == EndgameTable.ILLEGAL) {
+                    continue;
+                }
+                legal++;
+                if (code == EndgameTable.DRAW) {
+                    draws[stm]++;
+                } else if (((code - EndgameTable.DTM_BASE) & 1) != 0) {
+                    wins[stm]++;
+                    longest = Math.max(longest, code - EndgameTable.DTM_BASE);
+                } else {
+                    losses[stm]++;
+                    longest = Math.max(longest, code - EndgameTable.DTM_BASE);
+                }
+            }
+        }
+        System.out.printf("%-8s %,13d indexes %,12d legal  wtm %5.1f%% won %5.1f%% drawn  btm %5.1f%% won %5.1f%% drawn  longest mate %3d plies%n",
+                target.name(), 2L * target.size(), legal,
+                percent(wins[0], wins[0] + losses[0] + draws[0]), percent(draws[0], wins[0] + losses[0] + draws[0]),
+                percent(wins[1], wins[1] + losses[1] + draws[1]), percent(draws[1], wins[1] + losses[1] + draws[1]), longest);
+        System.out.printf("%-8s build %.2f s, verify %s, %,d bytes on disk (%d bits per index)%n", "",
+                buildSeconds, verifySeconds < 0 ? "skipped" : String.format("%.2f s", verifySeconds), fileBytes, target.bits());
+    }
+
+    private static double percent(long part, long whole) {
+        return whole == 0 ? 0 : part * 100.0 / whole;
+    }
+
+    @Override
+    public void close() {
+        pool.shutdownNow();
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Path dir = Path.of("tb");
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean verify = true;
+        int i = 0;
+        for (; i < args.length && args[i].startsWith("--"); i++) {
+            switch (args[i]) {
+                case "--dir":
+                    dir = Path.of(args[++i]);
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "--no-verify":
+                    verify = false;
+                    break;
+                default:
+                    System.err.println("Unknown argument: " + args[i]);
+                    System.exit(2);
+            }
+        }
+        if (i == args.length) {
+            System.err.println("Usage: TablebaseGenerator [--dir tb] [--threads N] [--no-verify] <class> ...   (classes like KQvK, KBNvK, KRPvKR)");
+            System.exit(2);
+        }
+        long start = System.nanoTime();
+        try (TablebaseGenerator generator = new TablebaseGenerator(dir, threads, verify)) {
+            for (; i < args.length; i++) {
+                generator.generate(args[i]);
+            }
+        }
+        System.out.printf("Done in %.1f s with %d threads%n", (System.nanoTime() - start) / 1e9, threads);
+    }
+}
@@ -0,0 +1,208 @@
+package chessproject;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// Fixed-size hash table of search results, shared without locks by any number of searcher threads.
+//
+// Each entry is two longs: the packed data and the position key XOR the data. A reader accepts an
+// entry only if the two words XOR back to the key it is looking for, so an entry torn by two
+// threads writing at once (or a word split by the JVM) simply reads as a miss instead of
+// returning another position's data. Writers never wait for each other; the worst a race can do
+// is lose one of the two stores.
+//
+// Entries sit in buckets of four (64 bytes, one cache line). A store overwrites the entry for the
+// same position if there is one, otherwise the entry that is least worth keeping: shallow
+// searches, and results from earlier searches as they age, go first.
+//
+// Data layout: bits 0-15 move, 16-31 score (signed), 32-39 depth, 40-41 bound, 42-47 generation.
+//
+// The probe and store counters only run with Metrics.ENABLED, so they cost nothing in a normal
+// search, and count from the table's creation on. Metrics reports them in its snapshot.
+public final class TranspositionTable {
+    public static final int BOUND_EXACT = 1;
+    public static final int BOUND_LOWER = 2; // Score is at least this (fail high)
+    public static final int BOUND_UPPER = 3; // Score is at most this (fail low)
+
+    public static final long NO_ENTRY = 0;
+
+    private static final int BUCKET_SIZE = 4;
+    private static final int ENTRY_BYTES = 16;
+    private static final int GENERATION_MASK = 63;
+    private static final int AGE_WEIGHT = 8; // Plies of depth one search of age is worth
+
+    private final long[] table;
+    private final long bucketCount;
+    private int generation;
+
+    private final LongAdder probes = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder stores = new LongAdder();
+    private final LongAdder collisions = new LongAdder();
+
+    public TranspositionTable(int megabytes) {
+        if (megabytes < 1) {
+            throw new IllegalArgumentException("Table size must be at least 1 MB: " + megabytes);
+        }
+        long buckets = (long) megabytes * 1024 * 1024 / (ENTRY_BYTES * BUCKET_SIZE);
+        // Java arrays are int indexed
+        buckets = Math.min(buckets, (Integer.MAX_VALUE - 8) / (2 * BUCKET_SIZE));
+        bucketCount = buckets;
+        table = new long[(int) (buckets * 2 * BUCKET_SIZE)];
+        if (Metrics.ENABLED) {
+            Metrics.register(this);
+        }
+    }
+
+    public int sizeMegabytes() {
+        return (int) ((long) table.length * Long.BYTES / (1024 * 1024));
+    }
+
+    // Marks the start of a new search so entries from older searches age out
+    public void newSearch() {
+        generation = (generation + 1) & GENERATION_MASK;
+    }
+
+    public void clear() {
+        java.util.Arrays.fill(table, 0);
+        generation = 0;
+    }
+
+    // Returns the packed data stored for the position, or NO_ENTRY
+    public long probe(long key) {
+        if (Metrics.ENABLED) {
+            probes.increment();
+        }
+        int base = bucketIndex(key);
+        for (int i = base; i < base + 2 * BUCKET_SIZE; i += 2) {
+            long data = table[i];
+            if ((table[i + 1] ^ data) == key && data != NO_ENTRY) {
+                if (Metrics.ENABLED) {
+                    hits.increment();
+                }
+                return data;
+            }
+        }
+        return NO_ENTRY;
+    }
+
+    // Scores are stored relative to the node so mates found through different paths stay correct;
+    // ply is the distance from the root of the node being stored.
+    public void store(long key, int move, int score, int depth, int bound, int ply) {
+        int base = bucketIndex(key);
+        int victim = base;
+        int victimWorth = Integer.MAX_VALUE;
+        for (int i = base; i < base + 2 * BUCKET_SIZE; i += 2) {
+            long data = table[i];
+            if ((table[i + 1] ^ data) == key) {
+                // Same position: keep the old best move if this search found none
+                if (move == Move.NONE) {
+                    move = move(data);
+                }
+                victim = i;
+                victimWorth = -1;
+                break;
+            }
+            int age = (generation - generation(data)) & GENERATION_MASK;
+            int worth = data == NO_ENTRY ? -1 : depth(data) - AGE_WEIGHT * age;
+            if (worth < victimWorth) {
+                victim = i;
+                victimWorth = worth;
+            }
+        }
+        if (Metrics.ENABLED) {
+            long old = table[victim];
+            if (old != NO_ENTRY && victimWorth >= 0 && generation(old) == generation) {
+                // Evicting another position searched during this very search
+                collisions.increment();
+            }
+            stores.increment();
+        }
+        long data = (move & 0xFFFFL)
+                | ((toStored(score, ply) & 0xFFFFL) << 16)
+                | ((long) Math.min(depth, 255) << 32)
+                | ((long) bound << 40)
+                | ((long) generation << 42);
+        table[victim] = data;
+        table[victim + 1] = key ^ data;
+    }
+
+    public static int move(long data) {
+        return (int) (data & 0xFFFF);
+    }
+
+    // The stored score converted back to the distance from the root of the probing node
+    public static int score(long data, int ply) {
+        int score = (short) (data >>> 16);
+        if (score >= Search.MATE_BOUND) {
+            return score - ply;
+        }
+        if (score <= -Search.MATE_BOUND) {
+            return score + ply;
+        }
+        return score;
+    }
+
+    public static int depth(long data) {
+        return (int) ((data >>> 32) & 0xFF);
+    }
+
+    public static int bound(long data) {
+        return (int) ((data >>> 40) & 3);
+    }
+
+    private static int generation(long data) {
+        return (int) ((data >>> 42) & GENERATION_MASK);
+    }
+
+    private static int toStored(int score, int ply) {
+        if (score >= Search.MATE_BOUND) {
+            return score + ply;
+        }
+        if (score <= -Search.MATE_BOUND) {
+            return score - ply;
+        }
+        return score;
+    }
+
+    // Maps the whole key range evenly onto the buckets, so the size need not be a power of two
+    private int bucketIndex(long key) {
+        return (int) Math.unsignedMultiplyHigh(key, bucketCount) * 2 * BUCKET_SIZE;
+    }
+
+    public long probes() {
+        return probes.sum();
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long stores() {
+        return stores.sum();
+    }
+
+    // Stores that evicted an entry written earlier in the same search for a different position
+    public long collisions() {
+        return collisions.sum();
+    }
+
+    // Permille of a sample of entries written by the current search, as reported by UCI engines
+    public int hashfull() {
+        int sample = (int) Math.min(1000, bucketCount) * BUCKET_SIZE;
+        int used = 0;
+        for (int i = 0; i < sample; i++) {
+            long data = table[2 * i];
+            if (data != NO_ENTRY && generation(data) == generation) {
+                used++;
+            }
+        }
+        return used * 1000 / sample;
+    }
+
+    @Override
+    public String toString() {
+        long p = probes();
+        return String.format("%d MB, %,d probes, %,d hits (%.1f%%), %,d stores, %,d collisions, %d permille full",
+                sizeMegabytes(), p, hits(), p == 0 ? 0.0 : 100.0 * hits() / p, stores(), collisions(), hashfull());
+    }
+}
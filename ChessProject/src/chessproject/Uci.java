@@ -0,0 +1,496 @@
+package chessproject;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+// Universal Chess Interface front-end, for chess GUIs and tournament managers:
+//   java -jar ChessProject.jar --uci
+//
+// Three threads: this one reads commands from stdin, a search thread runs ParallelSearch (with
+// its own helpers), and a writer thread prints the search's output. The search hands info lines
+// to the writer through a queue, so a GUI that is slow to read never holds it up. Answers to
+// commands are written by this thread itself, after whatever is still queued, to save waking
+// up the writer.
+//
+// stop does not wait for the search to unwind: the best move of the last completed iteration is
+// sent at once and the search finishes in the background. The next command that needs the
+// search waits for that, which takes a few milliseconds at most. go ponder and go infinite search
+// without a time limit and keep the best move until stop or ponderhit, as the protocol wants
+// even when the search ends by itself. After ponderhit the clock from the go command applies,
+// counted from the ponderhit.
+//
+// Options: Hash and Threads (as -Dchessproject.threads in the GUI), Ponder, and EvalFile, an
+// NNUE network file, "test" for the bundled one or empty for the handcrafted evaluation.
+public final class Uci {
+    private static final String NAME = "ChessProject";
+    private static final long NO_TIME_LIMIT = TimeUnit.DAYS.toMillis(1);
+    private static final long MOVE_OVERHEAD_MILLIS = 10; // Kept back from every clock budget
+
+    // One go command and what has been sent for it; guarded by its own lock
+    private static final class Job {
+        final Position root;
+        final boolean infinite;
+        final long millisAfterPonderhit;
+        volatile SearchResult latest;
+        boolean holding; // Keep the best move until stop or ponderhit
+        boolean pondering;
+        boolean finished;
+        boolean sent;
+        Future<?> future;
+        ScheduledFuture<?> timer;
+
+        Job(Position root, boolean infinite, boolean pondering, long millisAfterPonderhit) {
+            this.root = root;
+            this.infinite = infinite;
+            this.pondering = pondering;
+            this.holding = infinite || pondering;
+            this.millisAfterPonderhit = millisAfterPonderhit;
+        }
+    }
+
+    // Lines from the search for the writer thread; only taken out while holding the writer
+    private final Queue<String> output = new ConcurrentLinkedQueue<>();
+    private final BufferedWriter out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(FileDescriptor.out), StandardCharsets.UTF_8));
+    private Thread writer;
+    private final ExecutorService searchThread = Executors.newSingleThreadExecutor(runnable -> daemon(runnable, "uci-search"));
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> daemon(runnable, "uci-timer"));
+    private ParallelSearch search;
+    private int hashMegabytes = 64;
+    private int threads = Integer.getInteger("chessproject.threads", 1);
+    private NnueNetwork network = NnueNetwork.fromSystemProperty();
+    private final Position position = new Position();
+    private volatile Job current; // Only replaced under the lock of the job it replaces
+
+    private Uci() {
+        search = new ParallelSearch(threads, hashMegabytes);
+        search.setNetwork(network);
+        position.setStartPosition();
+    }
+
+    private static Thread daemon(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    public static void main(String[] args) throws IOException {
+        Uci uci = new Uci();
+        uci.writer = daemon(uci::writeOutput, "uci-output");
+        uci.writer.start();
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (!uci.command(line.trim())) {
+                break;
+            }
+        }
+        uci.stop();
+        uci.awaitSearch();
+        uci.reply(null);
+    }
+
+    private void writeOutput() {
+        while (true) {
+            reply(null);
+            if (output.isEmpty()) {
+                LockSupport.park();
+            }
+        }
+    }
+
+    // Queues a line from the search for the writer thread; never blocks
+    private void send(String line) {
+        output.add(line);
+        LockSupport.unpark(writer);
+    }
+
+    // Writes what is queued, then line unless it is null, and flushes
+    private void reply(String line) {
+        synchronized (out) {
+            try {
+                for (String queued; (queued = output.poll()) != null; ) {
+                    out.write(queued);
+                    out.newLine();
+                }
+                if (line != null) {
+                    out.write(line);
+                    out.newLine();
+                }
+                out.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    // Runs one command; false for quit
+    private boolean command(String line) {
+        String[] tokens = line.split("\\s+");
+        try {
+            switch (tokens[0]) {
+                case "uci":
+                    reply("id name " + NAME);
+                    reply("id author ChessProject contributors");
+                    reply("option name Hash type spin default 64 min 1 max 65536");
+                    reply("option name Threads type spin default " + threads + " min 1 max 512");
+                    reply("option name Ponder type check default false");
+                    reply("option name EvalFile type string default <empty>");
+                    reply("uciok");
+                    break;
+                case "isready":
+                    reply("readyok");
+                    break;
+                case "setoption":
+                    setOption(line);
+                    break;
+                case "ucinewgame":
+                    awaitSearch();
+                    search.table().clear();
+                    break;
+                case "position":
+                    awaitSearch();
+                    setPosition(tokens);
+                    break;
+                case "go":
+                    go(tokens);
+                    break;
+                case "stop":
+                    stop();
+                    break;
+                case "ponderhit":
+                    ponderhit();
+                    break;
+                case "quit":
+                    return false;
+                default:
+                    if (!tokens[0].isEmpty()) {
+                        reply("info string Unknown command: " + line);
+                    }
+            }
+        } catch (IllegalArgumentException e) {
+            reply("info string " + e.getMessage());
+        } catch (RuntimeException e) {
+            // A malformed command must not end the session
+            reply("info string " + line + ": " + e);
+        }
+        return true;
+    }
+
+    // setoption name <id> [value <x>]; names may contain spaces
+    private void setOption(String line) {
+        int nameAt = line.indexOf(" name ");
+        int valueAt = line.indexOf(" value ");
+        if (nameAt < 0) {
+            throw new IllegalArgumentException("setoption without a name");
+        }
+        String name = (valueAt < 0 ? line.substring(nameAt + 6) : line.substring(nameAt + 6, valueAt)).trim();
+        String value = valueAt < 0 ? "" : line.substring(valueAt + 7).trim();
+        awaitSearch();
+        switch (name.toLowerCase()) {
+            case "hash":
+                restartSearch(threads, Integer.parseInt(value));
+                break;
+            case "threads":
+                restartSearch(Integer.parseInt(value), hashMegabytes);
+                break;
+            case "ponder":
+                break;
+            case "evalfile":
+                network = loadNetwork(value);
+                search.setNetwork(network);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown option: " + name);
+        }
+    }
+
+    private static NnueNetwork loadNetwork(String value) {
+        if (value.isEmpty() || value.equals("<empty>")) {
+            return null;
+        }
+        if (value.equals("test")) {
+            return NnueNetwork.testNetwork();
+        }
+        try {
+            return NnueNetwork.load(Path.of(value));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Cannot load NNUE network " + value + ": " + e.getMessage());
+        }
+    }
+
+    // The new search is built before the old one is closed, so a rejected value keeps the old
+    // search and settings
+    private void restartSearch(int newThreads, int newHashMegabytes) {
+        ParallelSearch next = new ParallelSearch(newThreads, newHashMegabytes);
+        next.setNetwork(network);
+        ParallelSearch old = search;
+        search = next;
+        threads = newThreads;
+        hashMegabytes = newHashMegabytes;
+        old.close();
+    }
+
+    // position (startpos | fen <fen>) [moves <move> ...]
+    private void setPosition(String[] tokens) {
+        Position next = new Position();
+        int i = 1;
+        if (i < tokens.length && tokens[i].equals("startpos")) {
+            next.setStartPosition();
+            i++;
+        } else if (i < tokens.length && tokens[i].equals("fen")) {
+            StringBuilder fen = new StringBuilder();
+            for (i++; i < tokens.length && !tokens[i].equals("moves"); i++) {
+                fen.append(fen.length() == 0 ? "" : " ").append(tokens[i]);
+            }
+            next.setFen(fen.toString());
+        } else {
+            throw new IllegalArgumentException("position needs startpos or fen");
+        }
+        if (i < tokens.length && tokens[i].equals("moves")) {
+            int[] moves = new int[MoveGenerator.MAX_MOVES];
+            for (i++; i < tokens.length; i++) {
+                int move = findMove(next, tokens[i], moves);
+                if (move == Move.NONE) {
+                    throw new IllegalArgumentException("Illegal move " + tokens[i] + " in " + next.toFen());
+                }
+                next.makeMove(move);
+            }
+        }
+        position.copyFrom(next);
+    }
+
+    private static int findMove(Position pos, String uci, int[] moves) {
+        int count = MoveGenerator.generateLegal(pos, moves);
+        for (int i = 0; i < count; i++) {
+            if (Move.toUci(moves[i]).equals(uci)) {
+                return moves[i];
+            }
+        }
+        return Move.NONE;
+    }
+
+    private void go(String[] tokens) {
+        // A go without a stop for the last one ends it first
+        if (current != null && !current.finished) {
+            stop();
+        }
+        awaitSearch();
+        long[] time = new long[2];
+        long[] increment = new long[2];
+        int movesToGo = 0;
+        int depth = Search.MAX_PLY;
+        long nodes = Long.MAX_VALUE;
+        long moveTime = -1;
+        boolean infinite = false;
+        boolean ponder = false;
+        for (int i = 1; i < tokens.length; i++) {
+            switch (tokens[i]) {
+                case "wtime":
+                    time[Piece.WHITE] = Long.parseLong(argument(tokens, ++i));
+                    break;
+                case "btime":
+                    time[Piece.BLACK] = Long.parseLong(argument(tokens, ++i));
+                    break;
+                case "winc":
+                    increment[Piece.WHITE] = Long.parseLong(argument(tokens, ++i));
+                    break;
+                case "binc":
+                    increment[Piece.BLACK] = Long.parseLong(argument(tokens, ++i));
+                    break;
+                case "movestogo":
+                    movesToGo = Integer.parseInt(argument(tokens, ++i));
+                    break;
+                case "depth":
+                    depth = Math.min(Integer.parseInt(argument(tokens, ++i)), Search.MAX_PLY);
+                    break;
+                case "nodes":
+                    nodes = Long.parseLong(argument(tokens, ++i));
+                    break;
+                case "mate":
+                    depth = Math.min(2 * Integer.parseInt(argument(tokens, ++i)) + 1, Search.MAX_PLY);
+                    break;
+                case "movetime":
+                    moveTime = Long.parseLong(argument(tokens, ++i));
+                    break;
+                case "infinite":
+                    infinite = true;
+                    break;
+                case "ponder":
+                    ponder = true;
+                    break;
+                default:
+                    break; // searchmoves and its moves are not supported and ignored
+            }
+        }
+
+        int us = position.sideToMove();
+        long budget;
+        if (moveTime >= 0) {
+            budget = moveTime;
+        } else if (time[us] > 0) {
+            budget = allotMillis(time[us], increment[us], movesToGo);
+        } else {
+            // No clock: depth or nodes decide, and a bare go searches until stop
+            infinite |= depth == Search.MAX_PLY && nodes == Long.MAX_VALUE;
+            budget = NO_TIME_LIMIT;
+        }
+        Job job = new Job(new Position(position), infinite, ponder, budget);
+        long millis = infinite || ponder ? NO_TIME_LIMIT : budget;
+        int maxDepth = depth;
+        long maxNodes = nodes;
+        Job previous = current;
+        if (previous == null) {
+            current = job;
+        } else {
+            synchronized (previous) {
+                current = job;
+            }
+        }
+        job.future = searchThread.submit(() -> {
+            SearchResult result = null;
+            try {
+                result = search.search(job.root, millis, maxDepth, maxNodes, iteration -> {
+                    job.latest = iteration;
+                    send(info(iteration));
+                });
+            } finally {
+                finished(job, result);
+            }
+        });
+    }
+
+    // Time for one move: an even share of the clock over the moves to go (30 if unknown) plus
+    // most of the increment, never more than half the clock
+    static long allotMillis(long time, long increment, int movesToGo) {
+        int moves = movesToGo > 0 ? Math.min(movesToGo, 50) : 30;
+        long millis = Math.min(time / moves + increment * 3 / 4, time / 2);
+        return Math.max(1, millis - MOVE_OVERHEAD_MILLIS);
+    }
+
+    // The value after a go parameter
+    private static String argument(String[] tokens, int i) {
+        if (i >= tokens.length) {
+            throw new IllegalArgumentException("go " + tokens[i - 1] + " without a value");
+        }
+        return tokens[i];
+    }
+
+    private static String info(SearchResult result) {
+        String score = result.isMate() ? "mate " + result.mateIn() : "cp " + result.score;
+        return "info depth " + result.depth + " score " + score + " nodes " + result.nodes + " nps "
+                + result.nodesPerSecond() + " time " + result.nanos / 1_000_000 + " pv " + result.pvString();
+    }
+
+    private void finished(Job job, SearchResult result) {
+        synchronized (job) {
+            if (result != null) {
+                job.latest = result;
+            }
+            job.finished = true;
+            if (!job.holding) {
+                sendBestMove(job);
+            }
+        }
+    }
+
+    private void stop() {
+        Job job = current;
+        if (job != null) {
+            stop(job);
+        }
+    }
+
+    // Stops job if it is still the current one. The check and search.stop() both happen under its
+    // lock, which go needs to replace it, so a late ponderhit timer cannot stop the next search.
+    private void stop(Job job) {
+        synchronized (job) {
+            if (current != job) {
+                return;
+            }
+            job.holding = false;
+            job.pondering = false;
+            if (job.timer != null) {
+                job.timer.cancel(false);
+            }
+            // Without a finished iteration yet, the search sends its move when it returns
+            if (job.finished || job.latest != null) {
+                sendBestMove(job);
+            }
+            search.stop();
+        }
+    }
+
+    private void ponderhit() {
+        Job job = current;
+        if (job == null) {
+            return;
+        }
+        synchronized (job) {
+            if (!job.pondering) {
+                return;
+            }
+            job.pondering = false;
+            job.holding = job.infinite;
+            if (job.finished) {
+                if (!job.holding) {
+                    sendBestMove(job);
+                }
+            } else if (!job.infinite) {
+                job.timer = timer.schedule(() -> stop(job), job.millisAfterPonderhit, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    // Sends the best move of job once; the caller holds its lock. It goes out directly from
+    // whichever thread calls this: the search has returned or its moves are no longer wanted.
+    private void sendBestMove(Job job) {
+        if (job.sent) {
+            return;
+        }
+        job.sent = true;
+        SearchResult result = job.latest;
+        if (result != null) {
+            reply(result.pv.length > 1
+                    ? "bestmove " + Move.toUci(result.bestMove) + " ponder " + Move.toUci(result.pv[1])
+                    : "bestmove " + Move.toUci(result.bestMove));
+            return;
+        }
+        // Stopped before the first iteration: any legal move beats none
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+        int count = MoveGenerator.generateLegal(job.root, moves);
+        reply(count > 0 ? "bestmove " + Move.toUci(moves[0]) : "bestmove 0000");
+    }
+
+    // Waits until the last search has returned, after its best move may already have been sent
+    private void awaitSearch() {
+        Job job = current;
+        if (job == null || job.future == null) {
+            return;
+        }
+        try {
+            job.future.get();
+        } catch (ExecutionException e) {
+            reply("info string Search failed: " + e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package chessproject;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// Scripted test of the UCI front-end's response times. Starts the engine in a child JVM
+// (java -cp <this classpath> chessproject.ChessProject --uci) and drives it over its stdin
+// with a fixed script, timing each command from the moment it is flushed to the moment the
+// answer line is read:
+//   stop       go infinite, wait a random 10-100 ms, stop: until bestmove
+//   ponderhit  go ponder with a clock, wait, ponderhit, wait, stop: from stop until bestmove
+//   isready    sent while a search runs: until readyok
+//   movetime   go movetime 50: how long after the 50 ms the bestmove comes, negative when the
+//              search stops early because its next iteration could not finish in time
+// The pipe is part of every figure, as it is for a GUI.
+//
+// Usage:
+//   java -cp ChessProject.jar chessproject.UciLatencyTest [--rounds 200] [--threads 1] [--seed 1]
+public final class UciLatencyTest {
+    private static final String[] POSITIONS = {
+        "startpos",
+        "startpos moves e2e4 e7e5 g1f3 b8c6 f1b5 a7a6",
+        "fen r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+        "fen r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P3/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10",
+        "fen 8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+    };
+    private static final long MOVE_TIME = 50;
+    private static final long TIMEOUT_SECONDS = 10;
+
+    private final Process engine;
+    private final Writer in;
+    // Lines from the engine with the nanoTime they were read at
+    private final BlockingQueue<Object[]> lines = new LinkedBlockingQueue<>();
+
+    private UciLatencyTest(Process engine) {
+        this.engine = engine;
+        this.in = new OutputStreamWriter(engine.getOutputStream(), StandardCharsets.UTF_8);
+        Thread reader = new Thread(() -> {
+            try (BufferedReader out = new BufferedReader(new InputStreamReader(engine.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = out.readLine()) != null) {
+                    lines.add(new Object[] {line, System.nanoTime()});
+                }
+            } catch (IOException e) {
+                // The engine has gone; waiting for a line will time out
+            }
+        }, "uci-reader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    // Sends a command and returns the nanoTime it was sent at
+    private long send(String command) throws IOException {
+        long nanos = System.nanoTime();
+        in.write(command);
+        in.write('\n');
+        in.flush();
+        return nanos;
+    }
+
+    // Reads lines up to the first one starting with prefix and returns the nanoTime it was read at
+    private long await(String prefix) throws InterruptedException {
+        while (true) {
+            Object[] line = lines.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            if (line == null) {
+                throw new IllegalStateException("No " + prefix + " from the engine within " + TIMEOUT_SECONDS + " s");
+            }
+            if (((String) line[0]).startsWith(prefix)) {
+                return (long) line[1];
+            }
+        }
+    }
+
+    private static void report(String name, List<Long> nanos) {
+        long[] sorted = nanos.stream().mapToLong(Long::longValue).sorted().toArray();
+        System.out.printf("%-10s %5d  min %8.3f  median %8.3f  p99 %8.3f  max %8.3f ms%n", name, sorted.length,
+                sorted[0] / 1e6, sorted[sorted.length / 2] / 1e6,
+                sorted[Math.min(sorted.length - 1, sorted.length * 99 / 100)] / 1e6, sorted[sorted.length - 1] / 1e6);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rounds = 200;
+        int threads = 1;
+        long seed = 1;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--rounds":
+                    rounds = Integer.parseInt(args[++i]);
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "--seed":
+                    seed = Long.parseLong(args[++i]);
+                    break;
+                default:
+                    System.err.println("Unknown argument: " + args[i]);
+                    System.exit(2);
+            }
+        }
+
+        String java = ProcessHandle.current().info().command().orElse("java");
+        Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                "chessproject.ChessProject", "--uci").redirectError(ProcessBuilder.Redirect.INHERIT).start();
+        UciLatencyTest test = new UciLatencyTest(process);
+        Random random = new Random(seed);
+        List<Long> stop = new ArrayList<>();
+        List<Long> ponder = new ArrayList<>();
+        List<Long> ready = new ArrayList<>();
+        List<Long> moveTime = new ArrayList<>();
+        try {
+            test.send("uci");
+            test.await("uciok");
+            test.send("setoption name Threads value " + threads);
+            test.send("isready");
+            test.await("readyok");
+            // Warm up the JIT of the engine so the first rounds are not all compilation
+            test.send("position startpos");
+            test.send("go movetime 1000");
+            test.await("bestmove");
+
+            for (int round = 0; round < rounds; round++) {
+                test.send("position " + POSITIONS[round % POSITIONS.length]);
+
+                test.send("go infinite");
+                Thread.sleep(10 + random.nextInt(91));
+                long sent = test.send("isready");
+                ready.add(test.await("readyok") - sent);
+                sent = test.send("stop");
+                stop.add(test.await("bestmove") - sent);
+
+                test.send("go ponder wtime 10000 btime 10000 winc 100 binc 100");
+                Thread.sleep(10 + random.nextInt(41));
+                test.send("ponderhit");
+                Thread.sleep(random.nextInt(20));
+                sent = test.send("stop");
+                ponder.add(test.await("bestmove") - sent);
+
+                if (round % 5 == 0) {
+                    sent = test.send("go movetime " + MOVE_TIME);
+                    moveTime.add(test.await("bestmove") - sent - TimeUnit.MILLISECONDS.toNanos(MOVE_TIME));
+                }
+            }
+            test.send("quit");
+            process.waitFor(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } finally {
+            process.destroy();
+        }
+
+        System.out.printf("%d rounds, %d search thread%s%n", rounds, threads, threads == 1 ? "" : "s");
+        report("stop", stop);
+        report("ponderhit", ponder);
+        report("isready", ready);
+        report("movetime", moveTime);
+        System.out.println("stop, ponderhit and isready: command to answer; movetime: bestmove after the "
+                + MOVE_TIME + " ms");
+    }
+}
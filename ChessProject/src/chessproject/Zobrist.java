@@ -0,0 +1,61 @@
+package chessproject;
+
+// Random 64-bit keys for Zobrist hashing. A position's key is the XOR of the keys of every
+// piece on its square, the side to move, the castling rights and the en-passant file, so a
+// move only has to XOR out what changed and XOR in the new state (see Position.makeMove).
+//
+// The keys come from a fixed seed so hashes are stable between runs and machines, which
+// matters once they are written to files or shared between processes.
+public final class Zobrist {
+    static final long[][] PIECE_SQUARE = new long[12][64];
+    static final long SIDE;
+    static final long[] CASTLING = new long[16];
+    static final long[] EP_FILE = new long[8];
+
+    static {
+        long seed = 0x2545F4914F6CDD1DL;
+        for (int piece = 0; piece < 12; piece++) {
+            for (int sq = 0; sq < 64; sq++) {
+                seed = next(seed);
+                PIECE_SQUARE[piece][sq] = mix(seed);
+            }
+        }
+        seed = next(seed);
+        SIDE = mix(seed);
+        // Each castling right gets its own key and combinations XOR them together
+        long[] rights = new long[4];
+        for (int i = 0; i < 4; i++) {
+            seed = next(seed);
+            rights[i] = mix(seed);
+        }
+        for (int mask = 0; mask < 16; mask++) {
+            for (int i = 0; i < 4; i++) {
+                if ((mask & (1 << i)) != 0) {
+                    CASTLING[mask] ^= rights[i];
+                }
+            }
+        }
+        for (int file = 0; file < 8; file++) {
+            seed = next(seed);
+            EP_FILE[file] = mix(seed);
+        }
+    }
+
+    private Zobrist() {
+    }
+
+    public static long pieceSquare(int piece, int square) {
+        return PIECE_SQUARE[piece][square];
+    }
+
+    private static long next(long seed) {
+        return seed + 0x9E3779B97F4A7C15L;
+    }
+
+    // SplitMix64 finalizer
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}